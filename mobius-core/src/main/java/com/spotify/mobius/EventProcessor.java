@@ -22,6 +22,8 @@ package com.spotify.mobius;
 import static com.spotify.mobius.internal_util.Preconditions.checkNotNull;
 
 import com.spotify.mobius.functions.Consumer;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.annotation.Nullable;
 
 /**
  * Processes events and emits effects and models as a result of that.
@@ -35,28 +37,50 @@ class EventProcessor<M, E, F> {
   private final MobiusStore<M, E, F> store;
   private final Consumer<F> effectConsumer;
   private final Consumer<M> modelConsumer;
+  @Nullable private final ModelComparison modelComparison;
+  private final AtomicLong suppressedModelCount = new AtomicLong();
 
   EventProcessor(
       MobiusStore<M, E, F> store, Consumer<F> effectConsumer, Consumer<M> modelConsumer) {
+    this(store, effectConsumer, modelConsumer, null);
+  }
+
+  EventProcessor(
+      MobiusStore<M, E, F> store,
+      Consumer<F> effectConsumer,
+      Consumer<M> modelConsumer,
+      @Nullable ModelComparison modelComparison) {
     this.store = checkNotNull(store);
     this.effectConsumer = checkNotNull(effectConsumer);
     this.modelConsumer = checkNotNull(modelConsumer);
+    this.modelComparison = modelComparison;
   }
 
   synchronized void update(E event) {
+    final M previousModel = store.currentModel();
     Next<M, F> next = store.update(event);
 
     next.ifHasModel(
         new Consumer<M>() {
           @Override
           public void accept(M model) {
-            dispatchModel(model);
+            dispatchModel(previousModel, model);
           }
         });
     dispatchEffects(next.effects());
   }
 
-  private void dispatchModel(M model) {
+  /** Returns the number of models that weren't emitted because they hadn't changed. */
+  long suppressedModelCount() {
+    return suppressedModelCount.get();
+  }
+
+  private void dispatchModel(M previousModel, M model) {
+    if (modelComparison != null && modelComparison.same(previousModel, model)) {
+      suppressedModelCount.incrementAndGet();
+      return;
+    }
+
     modelConsumer.accept(model);
   }
 
@@ -76,13 +100,20 @@ class EventProcessor<M, E, F> {
   static class Factory<M, E, F> {
 
     private final MobiusStore<M, E, F> store;
+    @Nullable private final ModelComparison modelComparison;
 
     Factory(MobiusStore<M, E, F> store) {
+      this(store, null);
+    }
+
+    Factory(MobiusStore<M, E, F> store, @Nullable ModelComparison modelComparison) {
       this.store = checkNotNull(store);
+      this.modelComparison = modelComparison;
     }
 
     public EventProcessor<M, E, F> create(Consumer<F> effectConsumer, Consumer<M> modelConsumer) {
-      return new EventProcessor<>(store, checkNotNull(effectConsumer), checkNotNull(modelConsumer));
+      return new EventProcessor<>(
+          store, checkNotNull(effectConsumer), checkNotNull(modelConsumer), modelComparison);
     }
   }
 }
@@ -0,0 +1,233 @@
+/*
+ * -\-\-
+ * Mobius
+ * --
+ * Copyright (c) 2017-2020 Spotify AB
+ * --
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -/-/-
+ */
+package com.spotify.mobius;
+
+import static com.spotify.mobius.internal_util.Preconditions.checkArgument;
+import static com.spotify.mobius.internal_util.Preconditions.checkNotNull;
+
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import javax.annotation.Nonnull;
+
+/**
+ * An {@link Update} that remembers the results of another update function, and returns the
+ * remembered {@link Next} when it sees the same model and event again.
+ *
+ * <p>This relies on update functions being pure, and pays off for loops that frequently get the
+ * same event for the same model, such as toggles, re-sent state or idempotent commands. The results
+ * are kept in a bounded cache that evicts the least recently used entry when it's full. Events are
+ * always compared using {@link Object#equals(Object)}; models can be compared either by equality,
+ * or by identity if models are large and comparing them is expensive.
+ *
+ * <p>To use it in a loop, pass it to {@link Mobius#loop(Update, Connectable)} instead of the
+ * original update function. The loop's logger still sees every event, whether the result was
+ * remembered or not. A single instance can be shared between loops, and is safe to call from any
+ * thread.
+ *
+ * @param <M> the model type
+ * @param <E> the event type
+ * @param <F> the effect type
+ */
+public final class MemoizingUpdate<M, E, F> implements Update<M, E, F> {
+
+  private final Update<M, E, F> actualUpdate;
+  private final boolean identityKeys;
+  private final Cache<M, F> cache;
+
+  // guarded by 'cache'
+  private long hitCount;
+  private long missCount;
+
+  private MemoizingUpdate(Update<M, E, F> actualUpdate, int maxSize, boolean identityKeys) {
+    this.actualUpdate = checkNotNull(actualUpdate);
+    this.identityKeys = identityKeys;
+    this.cache = new Cache<>(maxSize);
+  }
+
+  /**
+   * Creates an update function that remembers up to {@code maxSize} results, finding them by
+   * comparing models using {@link Object#equals(Object)}.
+   */
+  public static <M, E, F> MemoizingUpdate<M, E, F> byModelEquality(
+      Update<M, E, F> update, int maxSize) {
+    checkArgument(maxSize > 0);
+    return new MemoizingUpdate<>(update, maxSize, false);
+  }
+
+  /**
+   * Creates an update function that remembers up to {@code maxSize} results, finding them by
+   * comparing models by identity. This avoids calling {@link Object#equals(Object)} and {@link
+   * Object#hashCode()} on the model, but only finds results for the very same model instance.
+   */
+  public static <M, E, F> MemoizingUpdate<M, E, F> byModelIdentity(
+      Update<M, E, F> update, int maxSize) {
+    checkArgument(maxSize > 0);
+    return new MemoizingUpdate<>(update, maxSize, true);
+  }
+
+  @Nonnull
+  @Override
+  public Next<M, F> update(M model, E event) {
+    Key key = new Key(model, event, identityKeys);
+
+    synchronized (cache) {
+      Next<M, F> remembered = cache.get(key);
+      if (remembered != null) {
+        hitCount++;
+        return remembered;
+      }
+      missCount++;
+    }
+
+    // the update function runs outside the lock; if two threads miss on the same key, both results
+    // are equal, so it doesn't matter which one is kept
+    Next<M, F> next = checkNotNull(actualUpdate.update(model, event));
+
+    synchronized (cache) {
+      cache.put(key, next);
+    }
+
+    return next;
+  }
+
+  /** Returns a snapshot of the hit and miss counts so far. */
+  public Stats stats() {
+    synchronized (cache) {
+      return new Stats(hitCount, missCount, cache.evictionCount, cache.size());
+    }
+  }
+
+  /** Forgets all remembered results. The counts in {@link #stats()} are kept. */
+  public void clear() {
+    synchronized (cache) {
+      cache.clear();
+    }
+  }
+
+  /** Cache statistics for a {@link MemoizingUpdate}. */
+  public static final class Stats {
+    private final long hitCount;
+    private final long missCount;
+    private final long evictionCount;
+    private final int size;
+
+    Stats(long hitCount, long missCount, long evictionCount, int size) {
+      this.hitCount = hitCount;
+      this.missCount = missCount;
+      this.evictionCount = evictionCount;
+      this.size = size;
+    }
+
+    /** The number of updates that returned a remembered result. */
+    public long hitCount() {
+      return hitCount;
+    }
+
+    /** The number of updates that called the wrapped update function. */
+    public long missCount() {
+      return missCount;
+    }
+
+    /** The number of results that were forgotten to make room for new ones. */
+    public long evictionCount() {
+      return evictionCount;
+    }
+
+    /** The number of results currently remembered. */
+    public int size() {
+      return size;
+    }
+
+    /** The fraction of updates that returned a remembered result, or 0 if there were none. */
+    public double hitRate() {
+      long total = hitCount + missCount;
+      return total == 0 ? 0 : (double) hitCount / total;
+    }
+
+    @Override
+    public String toString() {
+      return String.format(
+          Locale.ENGLISH,
+          "Stats{hits=%d, misses=%d, evictions=%d, size=%d, hitRate=%.3f}",
+          hitCount,
+          missCount,
+          evictionCount,
+          size,
+          hitRate());
+    }
+  }
+
+  private static final class Key {
+    private final Object model;
+    private final Object event;
+    private final boolean identity;
+    private final int hash;
+
+    Key(Object model, Object event, boolean identity) {
+      this.model = checkNotNull(model);
+      this.event = checkNotNull(event);
+      this.identity = identity;
+
+      int modelHash = identity ? System.identityHashCode(model) : model.hashCode();
+      this.hash = 31 * modelHash + event.hashCode();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (!(o instanceof Key)) {
+        return false;
+      }
+
+      Key other = (Key) o;
+      if (hash != other.hash || !event.equals(other.event)) {
+        return false;
+      }
+      return identity ? model == other.model : model.equals(other.model);
+    }
+
+    @Override
+    public int hashCode() {
+      return hash;
+    }
+  }
+
+  private static final class Cache<M, F> extends LinkedHashMap<Key, Next<M, F>> {
+    private final int maxSize;
+    private long evictionCount;
+
+    Cache(int maxSize) {
+      super(16, 0.75f, true);
+      this.maxSize = maxSize;
+    }
+
+    @Override
+    protected boolean removeEldestEntry(Map.Entry<Key, Next<M, F>> eldest) {
+      if (size() > maxSize) {
+        evictionCount++;
+        return true;
+      }
+      return false;
+    }
+  }
+}
@@ -118,7 +118,33 @@ public final class Mobius {
           public WorkRunner get() {
             return WorkRunners.from(Executors.newCachedThreadPool(Builder.THREAD_FACTORY));
           }
-        });
+        },
+        null);
+  }
+
+  /**
+   * Create a {@link ThreadConfinedMobiusLoop.Builder} to help you configure a loop that is confined
+   * to a single thread.
+   *
+   * <p>Loops created this way process events and dispatch effects on the thread that interacts with
+   * them, without any of the synchronization that {@link MobiusLoop} needs. Only use this if all
+   * events, including those emitted by effect handlers and event sources, are dispatched from the
+   * thread that started the loop.
+   *
+   * @param update the {@link Update} function of the loop
+   * @param effectHandler the {@link Connectable} effect handler of the loop
+   * @return a {@link ThreadConfinedMobiusLoop.Builder} instance that you can further configure
+   *     before starting the loop
+   */
+  public static <M, E, F> ThreadConfinedMobiusLoop.Builder<M, E, F> threadConfinedLoop(
+      Update<M, E, F> update, Connectable<F, E> effectHandler) {
+
+    //noinspection unchecked
+    return new ThreadConfinedMobiusLoop.Builder<>(
+        update,
+        effectHandler,
+        (Connectable<M, E>) NOOP_EVENT_SOURCE,
+        (MobiusLoop.Logger<M, E, F>) NOOP_LOGGER);
   }
 
   /**
@@ -187,6 +213,7 @@ public final class Mobius {
     private final Producer<WorkRunner> eventRunner;
     private final Producer<WorkRunner> effectRunner;
     private final MobiusLoop.Logger<M, E, F> logger;
+    @Nullable private final ModelComparison modelComparison;
 
     private Builder(
         Update<M, E, F> update,
@@ -195,7 +222,8 @@ public final class Mobius {
         Connectable<M, E> eventSource,
         MobiusLoop.Logger<M, E, F> logger,
         Producer<WorkRunner> eventRunner,
-        Producer<WorkRunner> effectRunner) {
+        Producer<WorkRunner> effectRunner,
+        @Nullable ModelComparison modelComparison) {
       this.update = checkNotNull(update);
       this.effectHandler = checkNotNull(effectHandler);
       this.init = init;
@@ -203,6 +231,7 @@ public final class Mobius {
       this.eventRunner = checkNotNull(eventRunner);
       this.effectRunner = checkNotNull(effectRunner);
       this.logger = checkNotNull(logger);
+      this.modelComparison = modelComparison;
     }
 
     @Override
@@ -215,14 +244,22 @@ public final class Mobius {
           eventSource,
           logger,
           eventRunner,
-          effectRunner);
+          effectRunner,
+          modelComparison);
     }
 
     @Override
     @Nonnull
     public MobiusLoop.Builder<M, E, F> eventSource(Connectable<M, E> eventSource) {
       return new Builder<>(
-          update, effectHandler, init, eventSource, logger, eventRunner, effectRunner);
+          update,
+          effectHandler,
+          init,
+          eventSource,
+          logger,
+          eventRunner,
+          effectRunner,
+          modelComparison);
     }
 
     @Override
@@ -235,7 +272,8 @@ public final class Mobius {
           EventSourceConnectable.<M, E>create(eventSource),
           logger,
           eventRunner,
-          effectRunner);
+          effectRunner,
+          modelComparison);
     }
 
     @Nonnull
@@ -250,28 +288,64 @@ public final class Mobius {
           EventSourceConnectable.<M, E>create(mergedSource),
           logger,
           eventRunner,
-          effectRunner);
+          effectRunner,
+          modelComparison);
     }
 
     @Override
     @Nonnull
     public MobiusLoop.Builder<M, E, F> logger(MobiusLoop.Logger<M, E, F> logger) {
       return new Builder<>(
-          update, effectHandler, init, eventSource, logger, eventRunner, effectRunner);
+          update,
+          effectHandler,
+          init,
+          eventSource,
+          logger,
+          eventRunner,
+          effectRunner,
+          modelComparison);
     }
 
     @Override
     @Nonnull
     public MobiusLoop.Builder<M, E, F> eventRunner(Producer<WorkRunner> eventRunner) {
       return new Builder<>(
-          update, effectHandler, init, eventSource, logger, eventRunner, effectRunner);
+          update,
+          effectHandler,
+          init,
+          eventSource,
+          logger,
+          eventRunner,
+          effectRunner,
+          modelComparison);
     }
 
     @Override
     @Nonnull
     public MobiusLoop.Builder<M, E, F> effectRunner(Producer<WorkRunner> effectRunner) {
       return new Builder<>(
-          update, effectHandler, init, eventSource, logger, eventRunner, effectRunner);
+          update,
+          effectHandler,
+          init,
+          eventSource,
+          logger,
+          eventRunner,
+          effectRunner,
+          modelComparison);
+    }
+
+    @Override
+    @Nonnull
+    public MobiusLoop.Builder<M, E, F> distinctModels(ModelComparison comparison) {
+      return new Builder<>(
+          update,
+          effectHandler,
+          init,
+          eventSource,
+          logger,
+          eventRunner,
+          effectRunner,
+          checkNotNull(comparison));
     }
 
     @Override
@@ -318,7 +392,8 @@ public final class Mobius {
           effectHandler,
           eventSource,
           checkNotNull(eventRunner.get()),
-          checkNotNull(effectRunner.get()));
+          checkNotNull(effectRunner.get()),
+          modelComparison);
     }
 
     private static class MyThreadFactory implements ThreadFactory {
@@ -23,6 +23,7 @@ import static com.spotify.mobius.internal_util.Preconditions.checkNotNull;
 
 import com.spotify.mobius.disposables.Disposable;
 import com.spotify.mobius.functions.Consumer;
+import com.spotify.mobius.functions.Function;
 import com.spotify.mobius.functions.Producer;
 import com.spotify.mobius.runners.WorkRunner;
 import java.util.List;
@@ -50,6 +51,7 @@ public class MobiusLoop<M, E, F> implements Loop<M, E, F> {
   @Nonnull private final QueuingConnection<M> eventSourceModelConsumer;
 
   @Nonnull private final List<Consumer<M>> modelObservers = new CopyOnWriteArrayList<>();
+  @Nonnull private final SelectorObservers<M> selectorObservers = new SelectorObservers<>();
 
   @Nullable private volatile M mostRecentModel;
 
@@ -73,10 +75,30 @@ public class MobiusLoop<M, E, F> implements Loop<M, E, F> {
       Connectable<M, E> eventSource,
       WorkRunner eventRunner,
       WorkRunner effectRunner) {
+    return create(
+        update,
+        startModel,
+        startEffects,
+        effectHandler,
+        eventSource,
+        eventRunner,
+        effectRunner,
+        null);
+  }
+
+  static <M, E, F> MobiusLoop<M, E, F> create(
+      Update<M, E, F> update,
+      M startModel,
+      Iterable<F> startEffects,
+      Connectable<F, E> effectHandler,
+      Connectable<M, E> eventSource,
+      WorkRunner eventRunner,
+      WorkRunner effectRunner,
+      @Nullable ModelComparison modelComparison) {
 
     return new MobiusLoop<>(
         new EventProcessor.Factory<>(
-            MobiusStore.create(checkNotNull(update), checkNotNull(startModel))),
+            MobiusStore.create(checkNotNull(update), checkNotNull(startModel)), modelComparison),
         checkNotNull(startModel),
         checkNotNull(startEffects),
         checkNotNull(effectHandler),
@@ -126,6 +148,7 @@ public class MobiusLoop<M, E, F> implements Loop<M, E, F> {
             for (Consumer<M> observer : modelObservers) {
               observer.accept(model);
             }
+            selectorObservers.accept(model);
           }
         };
 
@@ -182,6 +205,15 @@ public class MobiusLoop<M, E, F> implements Loop<M, E, F> {
     return mostRecentModel;
   }
 
+  /**
+   * Returns the number of models that this loop didn't emit because they were the same as the
+   * previous model. This is always 0 unless the loop was built with {@link
+   * Builder#distinctModels(ModelComparison)}.
+   */
+  public long getSuppressedModelCount() {
+    return eventProcessor.suppressedModelCount();
+  }
+
   @Override
   public Disposable observe(final Consumer<M> observer) {
     if (runState == RunState.DISPOSED) {
@@ -210,6 +242,33 @@ public class MobiusLoop<M, E, F> implements Loop<M, E, F> {
     };
   }
 
+  /**
+   * Add an observer of a projection of the model, such as the part of the model that a view
+   * renders. The selector is applied once per model, and the result is shared by all observers that
+   * use the same selector instance. Observers are only notified when the projected value changes
+   * according to {@link Object#equals(Object)}. If {@link #getMostRecentModel()} is non-null, the
+   * observer is immediately notified of its projection.
+   *
+   * @param selector computes the projection from a model; it must be pure, and may not return null
+   * @param observer an observer of the projection
+   * @return a {@link Disposable} that can be used to stop further notifications to the observer
+   * @throws NullPointerException if either argument is null
+   * @throws IllegalStateException if the loop has been disposed
+   */
+  public <T> Disposable observe(Function<M, T> selector, Consumer<T> observer) {
+    if (runState == RunState.DISPOSED) {
+      throw new IllegalStateException(
+          "This loop has already been disposed. You cannot observe a disposed loop");
+    }
+
+    if (runState == RunState.DISPOSING) {
+      // ignore observation requests on a disposing loop
+      return () -> {};
+    }
+
+    return selectorObservers.observe(selector, observer);
+  }
+
   @Override
   public synchronized void dispose() {
     if (runState == RunState.DISPOSED) {
@@ -220,6 +279,7 @@ public class MobiusLoop<M, E, F> implements Loop<M, E, F> {
 
     // Remove model observers so that they receive no further model changes.
     modelObservers.clear();
+    selectorObservers.clear();
 
     // Disable the event and effect handling. This will cause any further
     // events or effects that are received by the loop to be ignored.
@@ -306,6 +366,18 @@ public class MobiusLoop<M, E, F> implements Loop<M, E, F> {
      */
     @Nonnull
     Builder<M, E, F> effectRunner(Producer<WorkRunner> effectRunner);
+
+    /**
+     * Returns a new {@link Builder} whose loops only emit a model after an update if it isn't the
+     * same as the previous one, and the same values as the current one for the other fields. This
+     * saves model observers, event sources and controllers from reacting to models that haven't
+     * changed. The number of models that weren't emitted is available from {@link
+     * MobiusLoop#getSuppressedModelCount()}.
+     *
+     * @param comparison how to decide whether two models are the same
+     */
+    @Nonnull
+    Builder<M, E, F> distinctModels(ModelComparison comparison);
   }
 
   public interface Factory<M, E, F> {
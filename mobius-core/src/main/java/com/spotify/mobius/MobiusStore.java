@@ -40,6 +40,11 @@ class MobiusStore<M, E, F> {
     return new MobiusStore<>(update, startModel);
   }
 
+  @Nonnull
+  synchronized M currentModel() {
+    return currentModel;
+  }
+
   @Nonnull
   synchronized Next<M, F> update(E event) {
     Next<M, F> next = update.update(currentModel, checkNotNull(event));
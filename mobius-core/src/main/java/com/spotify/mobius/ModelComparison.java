@@ -0,0 +1,44 @@
+/*
+ * -\-\-
+ * Mobius
+ * --
+ * Copyright (c) 2017-2020 Spotify AB
+ * --
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -/-/-
+ */
+package com.spotify.mobius;
+
+/**
+ * Decides whether a model returned by an update function is the same as the current one, for loops
+ * that only emit models that have changed. See {@link MobiusLoop.Builder#distinctModels}.
+ */
+public enum ModelComparison {
+  /** Models are the same if they are the same instance. This is cheap, but finds fewer matches. */
+  IDENTITY {
+    @Override
+    boolean same(Object previous, Object next) {
+      return previous == next;
+    }
+  },
+
+  /** Models are the same if they are equal according to {@link Object#equals(Object)}. */
+  EQUALITY {
+    @Override
+    boolean same(Object previous, Object next) {
+      return previous == next || previous.equals(next);
+    }
+  };
+
+  abstract boolean same(Object previous, Object next);
+}
@@ -0,0 +1,169 @@
+/*
+ * -\-\-
+ * Mobius
+ * --
+ * Copyright (c) 2017-2020 Spotify AB
+ * --
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -/-/-
+ */
+package com.spotify.mobius;
+
+import static com.spotify.mobius.internal_util.Preconditions.checkNotNull;
+
+import com.spotify.mobius.disposables.Disposable;
+import com.spotify.mobius.functions.Consumer;
+import com.spotify.mobius.functions.Function;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import javax.annotation.Nullable;
+
+/**
+ * Keeps track of observers of projections of a loop's model. Each selector is applied once per
+ * model, no matter how many observers use it, and observers are only notified when the projected
+ * value changes according to {@link Object#equals(Object)}.
+ *
+ * @param <M> model type
+ */
+class SelectorObservers<M> implements Consumer<M> {
+
+  // guarded by 'this'; selectors are compared by identity, so that observers share a projection
+  // only if they use the same selector instance
+  private final Map<Function<M, ?>, Selection<M, ?>> selections = new IdentityHashMap<>();
+  @Nullable private M latestModel;
+
+  <T> Disposable observe(final Function<M, T> selector, final Consumer<T> observer) {
+    checkNotNull(selector);
+    checkNotNull(observer);
+
+    final Selection<M, T> selection;
+    T currentValue;
+
+    synchronized (this) {
+      selection = selectionFor(selector);
+      currentValue = selection.value;
+      selection.observers.add(observer);
+    }
+
+    if (currentValue != null) {
+      // Start by emitting the most recently projected value.
+      observer.accept(currentValue);
+    }
+
+    return new Disposable() {
+      @Override
+      public void dispose() {
+        synchronized (SelectorObservers.this) {
+          selection.observers.remove(observer);
+          if (selection.observers.isEmpty()) {
+            selections.remove(selector);
+          }
+        }
+      }
+    };
+  }
+
+  @Override
+  public void accept(M model) {
+    List<Notification<?>> notifications;
+
+    synchronized (this) {
+      latestModel = model;
+      if (selections.isEmpty()) {
+        return;
+      }
+
+      notifications = new ArrayList<>();
+      for (Selection<M, ?> selection : selections.values()) {
+        Notification<?> notification = selection.update(model);
+        if (notification != null) {
+          notifications.add(notification);
+        }
+      }
+    }
+
+    for (Notification<?> notification : notifications) {
+      notification.deliver();
+    }
+  }
+
+  synchronized void clear() {
+    selections.clear();
+  }
+
+  // must be called with 'this' held
+  private <T> Selection<M, T> selectionFor(Function<M, T> selector) {
+    @SuppressWarnings("unchecked")
+    Selection<M, T> selection = (Selection<M, T>) selections.get(selector);
+    if (selection == null) {
+      selection = new Selection<>(selector);
+      selections.put(selector, selection);
+
+      // existing selections are kept up to date by accept(), but a new one must catch up
+      if (latestModel != null) {
+        selection.update(latestModel);
+      }
+    }
+    return selection;
+  }
+
+  private static final class Selection<M, T> {
+    private final Function<M, T> selector;
+    private final List<Consumer<T>> observers = new ArrayList<>();
+    @Nullable private M model;
+    @Nullable private T value;
+
+    Selection(Function<M, T> selector) {
+      this.selector = selector;
+    }
+
+    /**
+     * Projects the model, unless it's the one that was projected last.
+     *
+     * @return the observers to notify, or null if the projected value didn't change
+     */
+    @Nullable
+    Notification<T> update(M newModel) {
+      if (newModel == model) {
+        return null;
+      }
+      model = newModel;
+
+      T newValue = checkNotNull(selector.apply(newModel));
+      if (newValue.equals(value)) {
+        return null;
+      }
+      value = newValue;
+
+      return new Notification<>(new ArrayList<>(observers), newValue);
+    }
+  }
+
+  private static final class Notification<T> {
+    private final List<Consumer<T>> observers;
+    private final T value;
+
+    Notification(List<Consumer<T>> observers, T value) {
+      this.observers = observers;
+      this.value = value;
+    }
+
+    void deliver() {
+      for (Consumer<T> observer : observers) {
+        observer.accept(value);
+      }
+    }
+  }
+}
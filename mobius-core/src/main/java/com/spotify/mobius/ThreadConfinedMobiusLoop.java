@@ -0,0 +1,392 @@
+/*
+ * -\-\-
+ * Mobius
+ * --
+ * Copyright (c) 2017-2020 Spotify AB
+ * --
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -/-/-
+ */
+package com.spotify.mobius;
+
+import static com.spotify.mobius.internal_util.Preconditions.checkNotNull;
+
+import com.spotify.mobius.disposables.Disposable;
+import com.spotify.mobius.functions.Consumer;
+import com.spotify.mobius.internal_util.ImmutableUtil;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Set;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * A Mobius loop that is confined to the thread that created it.
+ *
+ * <p>This is an alternative to {@link MobiusLoop} for cases where all interaction with a loop
+ * happens on a single thread - for instance game or simulation loops, or batch replays of events.
+ * Events are processed and effects are dispatched on the calling thread, like when using {@link
+ * com.spotify.mobius.runners.WorkRunners#immediate()} for both runners, but without any of the
+ * locking, volatile reads and copy-on-write collections that make {@link MobiusLoop} safe to use
+ * from multiple threads.
+ *
+ * <p>Events dispatched while the loop is already processing an event (for instance from an effect
+ * handler or a model observer) are queued and processed in order once the current event has been
+ * fully handled, rather than recursively.
+ *
+ * <p>Like with {@link MobiusLoop}, exceptions thrown by the update function are propagated to the
+ * caller of {@link #dispatchEvent(Object)}, wrapped in an {@link IllegalStateException}. Events
+ * that were queued behind the failing one are processed on the next dispatch.
+ *
+ * <p>It is an error to interact with the loop from any other thread than the one that created it,
+ * including emitting events from an effect handler or event source on a background thread. When
+ * Java assertions are enabled (using the {@code -ea} JVM flag), this is verified on every call;
+ * otherwise the behaviour is undefined.
+ */
+public final class ThreadConfinedMobiusLoop<M, E, F> implements Loop<M, E, F> {
+
+  private static final Consumer<?>[] NO_OBSERVERS = new Consumer<?>[0];
+
+  @Nonnull private final Update<M, E, F> update;
+  @Nonnull private final Thread ownerThread;
+  @Nonnull private final ArrayDeque<E> pendingEvents = new ArrayDeque<>();
+
+  @Nonnull private Consumer<M>[] modelObservers;
+  @Nonnull private M currentModel;
+  @Nullable private Connection<F> effectConnection;
+  @Nullable private Connection<M> eventSourceConnection;
+
+  private boolean processing;
+  private boolean disposed;
+
+  @SuppressWarnings("unchecked")
+  private ThreadConfinedMobiusLoop(Update<M, E, F> update, M startModel) {
+    this.update = checkNotNull(update);
+    this.currentModel = checkNotNull(startModel);
+    this.ownerThread = Thread.currentThread();
+    this.modelObservers = (Consumer<M>[]) NO_OBSERVERS;
+  }
+
+  static <M, E, F> ThreadConfinedMobiusLoop<M, E, F> create(
+      Update<M, E, F> update,
+      M startModel,
+      Iterable<F> startEffects,
+      Connectable<F, E> effectHandler,
+      Connectable<M, E> eventSource) {
+
+    ThreadConfinedMobiusLoop<M, E, F> loop = new ThreadConfinedMobiusLoop<>(update, startModel);
+    loop.start(checkNotNull(startEffects), checkNotNull(effectHandler), checkNotNull(eventSource));
+    return loop;
+  }
+
+  private void start(
+      Iterable<F> startEffects, Connectable<F, E> effectHandler, Connectable<M, E> eventSource) {
+    Consumer<E> eventConsumer =
+        new Consumer<E>() {
+          @Override
+          public void accept(E event) {
+            dispatchEvent(event);
+          }
+        };
+
+    // Any events emitted while connecting and dispatching the start effects get queued up, and are
+    // processed once the event source has received the start model.
+    processing = true;
+    try {
+      effectConnection = effectHandler.connect(eventConsumer);
+
+      for (F effect : startEffects) {
+        dispatchEffect(effect);
+      }
+
+      eventSourceConnection = eventSource.connect(eventConsumer);
+      eventSourceConnection.accept(currentModel);
+    } finally {
+      processing = false;
+    }
+
+    processPendingEvents();
+  }
+
+  @Override
+  public void dispatchEvent(E event) {
+    assert isOwnerThread() : threadViolationMessage("dispatchEvent");
+
+    if (disposed) {
+      throw new IllegalStateException(
+          String.format(
+              "This loop has already been disposed. You cannot dispatch events after "
+                  + "disposal - event received: %s=%s, currentModel: %s",
+              event.getClass().getName(), event, currentModel));
+    }
+
+    pendingEvents.add(checkNotNull(event));
+
+    if (!processing) {
+      processPendingEvents();
+    }
+  }
+
+  private void processPendingEvents() {
+    processing = true;
+    try {
+      E event;
+      while (!disposed && (event = pendingEvents.poll()) != null) {
+        processEvent(event);
+      }
+    } finally {
+      processing = false;
+    }
+  }
+
+  private void processEvent(E event) {
+    Next<M, F> next;
+
+    try {
+      next = update.update(currentModel, event);
+    } catch (RuntimeException e) {
+      throw new IllegalStateException("Exception processing event: " + event, e);
+    }
+
+    if (next.hasModel()) {
+      currentModel = next.modelUnsafe();
+      dispatchModel(currentModel);
+    }
+
+    for (F effect : next.effects()) {
+      if (disposed) {
+        return;
+      }
+
+      dispatchEffect(effect);
+    }
+  }
+
+  private void dispatchModel(M model) {
+    if (eventSourceConnection != null) {
+      eventSourceConnection.accept(model);
+    }
+
+    // iterating over the array reference we have now means observers can safely be added and
+    // removed by the observers themselves.
+    for (Consumer<M> observer : modelObservers) {
+      observer.accept(model);
+    }
+  }
+
+  private void dispatchEffect(F effect) {
+    try {
+      checkNotNull(effectConnection).accept(effect);
+    } catch (Throwable throwable) {
+      MobiusHooks.handleError(
+          new RuntimeException(
+              "Consumer threw an exception when accepting message: " + effect,
+              new ConnectionException(effect, throwable)));
+    }
+  }
+
+  @Override
+  @Nonnull
+  public M getMostRecentModel() {
+    assert isOwnerThread() : threadViolationMessage("getMostRecentModel");
+
+    return currentModel;
+  }
+
+  @Override
+  public Disposable observe(final Consumer<M> observer) {
+    assert isOwnerThread() : threadViolationMessage("observe");
+
+    if (disposed) {
+      throw new IllegalStateException(
+          "This loop has already been disposed. You cannot observe a disposed loop");
+    }
+
+    checkNotNull(observer);
+
+    observer.accept(currentModel);
+
+    Consumer<M>[] observers = Arrays.copyOf(modelObservers, modelObservers.length + 1);
+    observers[observers.length - 1] = observer;
+    modelObservers = observers;
+
+    return new Disposable() {
+      @Override
+      public void dispose() {
+        assert isOwnerThread() : threadViolationMessage("dispose observer");
+
+        removeObserver(observer);
+      }
+    };
+  }
+
+  private void removeObserver(Consumer<M> observer) {
+    Consumer<M>[] observers = modelObservers;
+
+    for (int i = 0; i < observers.length; i++) {
+      if (observers[i] == observer) {
+        Consumer<M>[] remaining = Arrays.copyOf(observers, observers.length - 1);
+        System.arraycopy(observers, i + 1, remaining, i, observers.length - i - 1);
+        modelObservers = remaining;
+        return;
+      }
+    }
+  }
+
+  @Override
+  @SuppressWarnings("unchecked")
+  public void dispose() {
+    assert isOwnerThread() : threadViolationMessage("dispose");
+
+    if (disposed) {
+      return;
+    }
+
+    disposed = true;
+
+    modelObservers = (Consumer<M>[]) NO_OBSERVERS;
+    pendingEvents.clear();
+
+    if (eventSourceConnection != null) {
+      eventSourceConnection.dispose();
+    }
+
+    if (effectConnection != null) {
+      effectConnection.dispose();
+    }
+  }
+
+  private boolean isOwnerThread() {
+    return Thread.currentThread() == ownerThread;
+  }
+
+  private String threadViolationMessage(String method) {
+    return String.format(
+        "%s called from thread '%s', but this loop is confined to thread '%s'",
+        method, Thread.currentThread().getName(), ownerThread.getName());
+  }
+
+  /**
+   * Defines a fluent API for configuring a {@link ThreadConfinedMobiusLoop}. Instances are
+   * immutable, making them safe to share between threads, but each loop is confined to the thread
+   * that started it.
+   *
+   * @param <M> the model type
+   * @param <E> the event type
+   * @param <F> the effect type
+   */
+  public static final class Builder<M, E, F> {
+
+    private final Update<M, E, F> update;
+    private final Connectable<F, E> effectHandler;
+    private final Connectable<M, E> eventSource;
+    private final MobiusLoop.Logger<M, E, F> logger;
+
+    Builder(
+        Update<M, E, F> update,
+        Connectable<F, E> effectHandler,
+        Connectable<M, E> eventSource,
+        MobiusLoop.Logger<M, E, F> logger) {
+      this.update = checkNotNull(update);
+      this.effectHandler = checkNotNull(effectHandler);
+      this.eventSource = checkNotNull(eventSource);
+      this.logger = checkNotNull(logger);
+    }
+
+    /**
+     * Returns a new {@link Builder} with the supplied {@link EventSource}, and the same values as
+     * the current one for the other fields. NOTE: Invoking this method will replace the current
+     * event source with the supplied one.
+     */
+    @Nonnull
+    public Builder<M, E, F> eventSource(EventSource<E> eventSource) {
+      return new Builder<>(
+          update, effectHandler, new ConfinedEventSource<M, E>(checkNotNull(eventSource)), logger);
+    }
+
+    /**
+     * Returns a new {@link Builder} with the supplied {@link Connectable<M,E>} as its event source,
+     * and the same values as the current one for the other fields. NOTE: Invoking this method will
+     * replace the current event source with the supplied one.
+     */
+    @Nonnull
+    public Builder<M, E, F> eventSource(Connectable<M, E> eventSource) {
+      return new Builder<>(update, effectHandler, eventSource, logger);
+    }
+
+    /**
+     * Returns a new {@link Builder} with the supplied logger, and the same values as the current
+     * one for the other fields.
+     */
+    @Nonnull
+    public Builder<M, E, F> logger(MobiusLoop.Logger<M, E, F> logger) {
+      return new Builder<>(update, effectHandler, eventSource, logger);
+    }
+
+    /**
+     * Start a {@link ThreadConfinedMobiusLoop} confined to the calling thread.
+     *
+     * @param startModel the model that the loop should start from
+     * @return the started loop
+     */
+    @Nonnull
+    public ThreadConfinedMobiusLoop<M, E, F> startFrom(M startModel) {
+      return startFrom(startModel, ImmutableUtil.<F>emptySet());
+    }
+
+    /**
+     * Start a {@link ThreadConfinedMobiusLoop} confined to the calling thread.
+     *
+     * @param startModel the model that the loop should start from
+     * @param startEffects the effects that the loop should start with
+     * @return the started loop
+     */
+    @Nonnull
+    public ThreadConfinedMobiusLoop<M, E, F> startFrom(M startModel, Set<F> startEffects) {
+      return ThreadConfinedMobiusLoop.create(
+          new LoggingUpdate<>(update, logger),
+          startModel,
+          startEffects,
+          effectHandler,
+          eventSource);
+    }
+  }
+
+  /**
+   * Adapts an {@link EventSource} to a {@link Connectable}, like {@link EventSourceConnectable} but
+   * without synchronizing, since the loop only calls it from its own thread.
+   */
+  private static final class ConfinedEventSource<M, E> implements Connectable<M, E> {
+    private final EventSource<E> eventSource;
+
+    ConfinedEventSource(EventSource<E> eventSource) {
+      this.eventSource = eventSource;
+    }
+
+    @Nonnull
+    @Override
+    public Connection<M> connect(Consumer<E> output) {
+      final Disposable subscription = eventSource.subscribe(output);
+
+      return new Connection<M>() {
+        @Override
+        public void accept(M value) {}
+
+        @Override
+        public void dispose() {
+          subscription.dispose();
+        }
+      };
+    }
+  }
+}
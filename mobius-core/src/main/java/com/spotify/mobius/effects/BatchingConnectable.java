@@ -0,0 +1,307 @@
+/*
+ * -\-\-
+ * Mobius
+ * --
+ * Copyright (c) 2017-2020 Spotify AB
+ * --
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -/-/-
+ */
+package com.spotify.mobius.effects;
+
+import static com.spotify.mobius.internal_util.Preconditions.checkArgument;
+import static com.spotify.mobius.internal_util.Preconditions.checkNotNull;
+
+import com.spotify.mobius.Connectable;
+import com.spotify.mobius.Connection;
+import com.spotify.mobius.MobiusHooks;
+import com.spotify.mobius.disposables.Disposable;
+import com.spotify.mobius.functions.Consumer;
+import com.spotify.mobius.functions.Function;
+import com.spotify.mobius.runners.WorkRunner;
+import com.spotify.mobius.runners.WorkRunners;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * A {@link Connectable} that collects effects into batches and handles each batch with a single
+ * call to a function, for effects that a downstream service accepts in bulk.
+ *
+ * <p>A batch is handled as soon as it reaches the maximum batch size, or when the maximum delay has
+ * passed since its first effect arrived. Batches of a connection are handled one at a time and in
+ * order; effects that arrive while a batch is being handled are handled right after it, so batches
+ * grow when the handler is slow. If the number of effects waiting reaches the maximum pending
+ * count, {@link Connection#accept(Object)} blocks until the handler catches up, which slows down
+ * the effect runner instead of letting the backlog grow without bounds. Effects dispatched from the
+ * thread that is handling a batch, for instance through an immediate work runner, are accepted
+ * without blocking, since that thread is the one that would have to catch up.
+ *
+ * <p>Events returned by the handler are sent to the loop in order. Exceptions thrown by the handler
+ * are reported to {@link MobiusHooks#handleError(Throwable)}, and the effects of that batch are
+ * lost.
+ *
+ * @param <F> the effect type
+ * @param <E> the event type
+ */
+public final class BatchingConnectable<F, E> implements Connectable<F, E> {
+
+  private static final int DEFAULT_MAX_BATCH_SIZE = 100;
+  private static final long DEFAULT_MAX_DELAY_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+
+  private final Function<List<F>, List<E>> handler;
+  private final int maxBatchSize;
+  private final long maxDelayNanos;
+  private final int maxPendingEffects;
+  @Nullable private final WorkRunner runner;
+
+  private BatchingConnectable(Builder<F, E> builder) {
+    this.handler = builder.handler;
+    this.maxBatchSize = builder.maxBatchSize;
+    this.maxDelayNanos = builder.maxDelayNanos;
+    this.maxPendingEffects =
+        builder.maxPendingEffects > 0 ? builder.maxPendingEffects : 10 * builder.maxBatchSize;
+    this.runner = builder.runner;
+  }
+
+  /**
+   * Creates a builder for a connectable that passes batches of effects to the handler. The handler
+   * returns the events to send to the loop, in order.
+   */
+  public static <F, E> Builder<F, E> builder(Function<List<F>, List<E>> handler) {
+    return new Builder<>(
+        checkNotNull(handler), DEFAULT_MAX_BATCH_SIZE, DEFAULT_MAX_DELAY_NANOS, 0, null);
+  }
+
+  @Nonnull
+  @Override
+  public Connection<F> connect(Consumer<E> output) {
+    if (runner != null) {
+      return new BatchingConnection(output, runner, false);
+    }
+
+    return new BatchingConnection(output, WorkRunners.singleThread(), true);
+  }
+
+  private final class BatchingConnection implements Connection<F> {
+    private final Consumer<E> output;
+    private final WorkRunner runner;
+    private final boolean ownsRunner;
+    private final Runnable flushTask =
+        new Runnable() {
+          @Override
+          public void run() {
+            flush();
+          }
+        };
+
+    // guarded by 'this'
+    private final List<F> pending = new ArrayList<>();
+    @Nullable private Disposable delayedFlush;
+    @Nullable private Thread handlingThread;
+    private boolean flushPosted;
+    private boolean handling;
+    private boolean disposed;
+
+    BatchingConnection(Consumer<E> output, WorkRunner runner, boolean ownsRunner) {
+      this.output = checkNotNull(output);
+      this.runner = runner;
+      this.ownsRunner = ownsRunner;
+    }
+
+    @Override
+    public void accept(F effect) {
+      checkNotNull(effect);
+      boolean postFlush = false;
+
+      synchronized (this) {
+        while (!disposed
+            && pending.size() >= maxPendingEffects
+            && Thread.currentThread() != handlingThread) {
+          try {
+            wait();
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+          }
+        }
+
+        if (disposed) {
+          return;
+        }
+
+        pending.add(effect);
+
+        if (handling) {
+          // handled right after the current batch
+          return;
+        }
+
+        if (pending.size() >= maxBatchSize) {
+          postFlush = markFlushPosted();
+        } else if (delayedFlush == null && !flushPosted) {
+          delayedFlush = runner.postDelayed(flushTask, maxDelayNanos, TimeUnit.NANOSECONDS);
+        }
+      }
+
+      if (postFlush) {
+        runner.post(flushTask);
+      }
+    }
+
+    @Override
+    public void dispose() {
+      synchronized (this) {
+        disposed = true;
+        pending.clear();
+        cancelDelayedFlush();
+        notifyAll();
+      }
+
+      if (ownsRunner) {
+        runner.dispose();
+      }
+    }
+
+    private void flush() {
+      List<F> batch;
+
+      synchronized (this) {
+        flushPosted = false;
+        cancelDelayedFlush();
+
+        if (disposed || handling || pending.isEmpty()) {
+          return;
+        }
+
+        List<F> head = pending.subList(0, Math.min(maxBatchSize, pending.size()));
+        batch = Collections.unmodifiableList(new ArrayList<>(head));
+        head.clear();
+        handling = true;
+        handlingThread = Thread.currentThread();
+        notifyAll();
+      }
+
+      try {
+        for (E event : handler.apply(batch)) {
+          output.accept(event);
+        }
+      } catch (RuntimeException e) {
+        MobiusHooks.handleError(
+            new RuntimeException("Batch handler threw an exception for: " + batch, e));
+      } finally {
+        // also after an Error, or the connection would never flush again
+        boolean postFlush;
+        synchronized (this) {
+          handling = false;
+          handlingThread = null;
+          postFlush = !disposed && !pending.isEmpty() && markFlushPosted();
+        }
+
+        if (postFlush) {
+          runner.post(flushTask);
+        }
+      }
+    }
+
+    // must be called with 'this' held; returns true if the caller should post the flush task
+    private boolean markFlushPosted() {
+      cancelDelayedFlush();
+
+      if (flushPosted) {
+        return false;
+      }
+
+      flushPosted = true;
+      return true;
+    }
+
+    // must be called with 'this' held
+    private void cancelDelayedFlush() {
+      if (delayedFlush != null) {
+        delayedFlush.dispose();
+        delayedFlush = null;
+      }
+    }
+  }
+
+  /**
+   * Builder for a {@link BatchingConnectable}. Builders are immutable; each method returns a new
+   * builder.
+   *
+   * @param <F> the effect type
+   * @param <E> the event type
+   */
+  public static final class Builder<F, E> {
+    private final Function<List<F>, List<E>> handler;
+    private final int maxBatchSize;
+    private final long maxDelayNanos;
+    private final int maxPendingEffects;
+    @Nullable private final WorkRunner runner;
+
+    private Builder(
+        Function<List<F>, List<E>> handler,
+        int maxBatchSize,
+        long maxDelayNanos,
+        int maxPendingEffects,
+        @Nullable WorkRunner runner) {
+      this.handler = handler;
+      this.maxBatchSize = maxBatchSize;
+      this.maxDelayNanos = maxDelayNanos;
+      this.maxPendingEffects = maxPendingEffects;
+      this.runner = runner;
+    }
+
+    /** Sets the number of effects that makes a batch be handled right away. The default is 100. */
+    public Builder<F, E> maxBatchSize(int maxBatchSize) {
+      checkArgument(maxBatchSize > 0);
+      return new Builder<>(handler, maxBatchSize, maxDelayNanos, maxPendingEffects, runner);
+    }
+
+    /**
+     * Sets how long the first effect of a batch can wait for more effects before the batch is
+     * handled. The default is 10 milliseconds.
+     */
+    public Builder<F, E> maxDelay(long maxDelay, TimeUnit unit) {
+      checkArgument(maxDelay >= 0);
+      return new Builder<>(
+          handler, maxBatchSize, unit.toNanos(maxDelay), maxPendingEffects, runner);
+    }
+
+    /**
+     * Sets the number of waiting effects at which accepting more effects blocks. The default is ten
+     * times the maximum batch size.
+     */
+    public Builder<F, E> maxPendingEffects(int maxPendingEffects) {
+      checkArgument(maxPendingEffects > 0);
+      return new Builder<>(handler, maxBatchSize, maxDelayNanos, maxPendingEffects, runner);
+    }
+
+    /**
+     * Sets the work runner that batches are handled on, which isn't disposed when a connection is
+     * disposed. By default, each connection gets a thread of its own.
+     */
+    public Builder<F, E> runner(WorkRunner runner) {
+      return new Builder<>(
+          handler, maxBatchSize, maxDelayNanos, maxPendingEffects, checkNotNull(runner));
+    }
+
+    public BatchingConnectable<F, E> build() {
+      checkArgument(maxPendingEffects == 0 || maxPendingEffects >= maxBatchSize);
+      return new BatchingConnectable<>(this);
+    }
+  }
+}
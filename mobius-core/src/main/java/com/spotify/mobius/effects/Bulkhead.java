@@ -0,0 +1,283 @@
+/*
+ * -\-\-
+ * Mobius
+ * --
+ * Copyright (c) 2017-2020 Spotify AB
+ * --
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -/-/-
+ */
+package com.spotify.mobius.effects;
+
+import static com.spotify.mobius.internal_util.Preconditions.checkArgument;
+import static com.spotify.mobius.internal_util.Preconditions.checkNotNull;
+
+import com.spotify.mobius.MobiusHooks;
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Limits how many executions of a kind of effect can run at the same time, so that one slow
+ * dependency can't occupy every thread that effects run on.
+ *
+ * <p>Executions beyond the concurrency limit wait in a queue of limited size, and start in order as
+ * running ones complete. When the queue is full, the {@link OverflowPolicy} decides what to
+ * discard. Discarded executions are never started; rejections are also reported to {@link
+ * MobiusHooks#handleError(Throwable)} as a {@link BulkheadFullException}.
+ *
+ * <p>A bulkhead can be shared by several effect handlers, and by several loops, to limit their
+ * combined concurrency. Use it through {@link BulkheadConnectable}, or the subtype effect handler
+ * builders of the Rx modules.
+ */
+public final class Bulkhead {
+
+  /** What to do with an execution that arrives when the queue is full. */
+  public enum OverflowPolicy {
+    /** Discard the new execution and report a {@link BulkheadFullException}. */
+    REJECT,
+    /** Silently discard the new execution. */
+    DROP_NEWEST,
+    /** Silently discard the execution that has waited the longest, and queue the new one. */
+    DROP_OLDEST
+  }
+
+  /** Something that can be run by a bulkhead. */
+  public interface Execution {
+    /**
+     * Starts the execution. The {@code onComplete} runnable must be run once the execution is done,
+     * possibly on another thread, to free up its slot. Running it more than once has no effect.
+     */
+    void start(Runnable onComplete);
+
+    /** Called instead of {@link #start(Runnable)} if the execution is rejected or dropped. */
+    void discard();
+  }
+
+  private final String name;
+  private final int maxConcurrent;
+  private final int maxQueueSize;
+  private final OverflowPolicy overflowPolicy;
+
+  // guarded by 'this'
+  private final Queue<Execution> queue = new ArrayDeque<>();
+  private int runningCount;
+  private boolean draining;
+  private int maxQueueDepth;
+  private long completedCount;
+  private long rejectedCount;
+  private long droppedCount;
+
+  private Bulkhead(String name, int maxConcurrent, int maxQueueSize, OverflowPolicy policy) {
+    this.name = name;
+    this.maxConcurrent = maxConcurrent;
+    this.maxQueueSize = maxQueueSize;
+    this.overflowPolicy = policy;
+  }
+
+  /**
+   * Creates a bulkhead.
+   *
+   * @param name used in error messages, for instance the name of the dependency it protects
+   * @param maxConcurrent the maximum number of executions running at the same time
+   * @param maxQueueSize the maximum number of executions waiting to start; may be 0
+   * @param overflowPolicy what to do when an execution arrives and the queue is full
+   */
+  public static Bulkhead create(
+      String name, int maxConcurrent, int maxQueueSize, OverflowPolicy overflowPolicy) {
+    checkArgument(maxConcurrent > 0);
+    checkArgument(maxQueueSize >= 0);
+    return new Bulkhead(
+        checkNotNull(name), maxConcurrent, maxQueueSize, checkNotNull(overflowPolicy));
+  }
+
+  public String name() {
+    return name;
+  }
+
+  /**
+   * Starts the execution right away if fewer than the maximum number of executions are running, and
+   * otherwise queues it or discards it according to the overflow policy.
+   */
+  public void submit(Execution execution) {
+    checkNotNull(execution);
+
+    Execution discarded = null;
+    Execution start = null;
+    boolean rejected = false;
+
+    synchronized (this) {
+      if (runningCount < maxConcurrent) {
+        runningCount++;
+        // a slot was just freed and not yet handed to the queue; keep the queue in order
+        start = queue.isEmpty() ? execution : queue.remove();
+        if (start != execution) {
+          queue.add(execution);
+        }
+      } else if (queue.size() < maxQueueSize) {
+        enqueue(execution);
+      } else if (overflowPolicy == OverflowPolicy.DROP_OLDEST && maxQueueSize > 0) {
+        discarded = queue.remove();
+        droppedCount++;
+        enqueue(execution);
+      } else {
+        discarded = execution;
+        if (overflowPolicy == OverflowPolicy.REJECT) {
+          rejectedCount++;
+          rejected = true;
+        } else {
+          droppedCount++;
+        }
+      }
+    }
+
+    if (discarded != null) {
+      discarded.discard();
+    }
+
+    if (rejected) {
+      MobiusHooks.handleError(new BulkheadFullException(name, maxConcurrent, maxQueueSize));
+    }
+
+    if (start != null) {
+      start(start);
+    }
+  }
+
+  /** Returns the number of executions that are currently running. */
+  public synchronized int runningCount() {
+    return runningCount;
+  }
+
+  /** Returns the number of executions that are currently waiting to start. */
+  public synchronized int queueDepth() {
+    return queue.size();
+  }
+
+  /** Returns the largest number of executions that have been waiting at the same time. */
+  public synchronized int maxQueueDepth() {
+    return maxQueueDepth;
+  }
+
+  public synchronized long completedCount() {
+    return completedCount;
+  }
+
+  public synchronized long rejectedCount() {
+    return rejectedCount;
+  }
+
+  public synchronized long droppedCount() {
+    return droppedCount;
+  }
+
+  @Override
+  public synchronized String toString() {
+    return "Bulkhead{name="
+        + name
+        + ", running="
+        + runningCount
+        + "/"
+        + maxConcurrent
+        + ", queued="
+        + queue.size()
+        + "/"
+        + maxQueueSize
+        + ", completed="
+        + completedCount
+        + ", rejected="
+        + rejectedCount
+        + ", dropped="
+        + droppedCount
+        + "}";
+  }
+
+  // must be called with 'this' held
+  private void enqueue(Execution execution) {
+    queue.add(execution);
+    maxQueueDepth = Math.max(maxQueueDepth, queue.size());
+  }
+
+  private void start(Execution execution) {
+    Completion completion = new Completion();
+    try {
+      execution.start(completion);
+    } catch (RuntimeException e) {
+      completion.run();
+      MobiusHooks.handleError(
+          new RuntimeException("Bulkhead " + name + " failed to start " + execution, e));
+    }
+  }
+
+  private void complete() {
+    synchronized (this) {
+      completedCount++;
+      runningCount--;
+    }
+
+    drain();
+  }
+
+  /**
+   * Starts queued executions while there are free slots. Executions that complete synchronously
+   * from within {@link Execution#start(Runnable)} end up here again, so only one thread drains at a
+   * time and the others leave their freed slot for it; this keeps the stack flat however many
+   * executions are queued.
+   */
+  private void drain() {
+    synchronized (this) {
+      if (draining) {
+        return;
+      }
+      draining = true;
+    }
+
+    boolean drained = false;
+    try {
+      Execution next;
+      while ((next = nextQueued()) != null) {
+        start(next);
+      }
+      drained = true;
+    } finally {
+      if (!drained) {
+        synchronized (this) {
+          draining = false;
+        }
+      }
+    }
+  }
+
+  // clears 'draining' in the same critical section that finds nothing to start, so that a slot
+  // freed concurrently is never missed
+  private synchronized Execution nextQueued() {
+    if (runningCount >= maxConcurrent || queue.isEmpty()) {
+      draining = false;
+      return null;
+    }
+
+    runningCount++;
+    return queue.remove();
+  }
+
+  private final class Completion implements Runnable {
+    private final AtomicBoolean completed = new AtomicBoolean();
+
+    @Override
+    public void run() {
+      if (completed.compareAndSet(false, true)) {
+        complete();
+      }
+    }
+  }
+}
@@ -0,0 +1,244 @@
+/*
+ * -\-\-
+ * Mobius
+ * --
+ * Copyright (c) 2017-2020 Spotify AB
+ * --
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -/-/-
+ */
+package com.spotify.mobius.effects;
+
+import static com.spotify.mobius.internal_util.Preconditions.checkNotNull;
+
+import com.spotify.mobius.Connectable;
+import com.spotify.mobius.Connection;
+import com.spotify.mobius.MobiusHooks;
+import com.spotify.mobius.functions.Consumer;
+import com.spotify.mobius.runners.WorkRunner;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * A {@link Connectable} that runs effects on a work runner, limiting the number of concurrent
+ * executions of each class of effect with a {@link Bulkhead}.
+ *
+ * <p>Each effect is matched against the effect classes that bulkheads were added for, and runs
+ * within the bulkhead for the class it's an instance of. Effects that don't match any class use
+ * the default bulkhead if there is one, and otherwise run without limits. This way an effect that
+ * depends on a slow service can be given a few threads of the shared effect pool, without starving
+ * the other effects of the loop:
+ *
+ * <pre>{@code
+ * BulkheadConnectable.builder(handler, WorkRunners.cachedThreadPool())
+ *     .bulkhead(FetchRecommendations.class, Bulkhead.create("recs", 4, 100, DROP_OLDEST))
+ *     .build()
+ * }</pre>
+ *
+ * <p>The connection of the wrapped handler must accept effects from several threads at once. Loops
+ * using this connectable can use {@link com.spotify.mobius.runners.WorkRunners#immediate()} as
+ * their effect runner, since the effects are handed over to the work runner right away. The work
+ * runner isn't disposed along with connections.
+ *
+ * @param <F> the effect type
+ * @param <E> the event type
+ */
+public final class BulkheadConnectable<F, E> implements Connectable<F, E> {
+
+  private final Connectable<F, E> delegate;
+  private final WorkRunner runner;
+  private final Map<Class<?>, Bulkhead> bulkheads;
+  @Nullable private final Bulkhead defaultBulkhead;
+
+  private BulkheadConnectable(
+      Connectable<F, E> delegate,
+      WorkRunner runner,
+      Map<Class<?>, Bulkhead> bulkheads,
+      @Nullable Bulkhead defaultBulkhead) {
+    this.delegate = delegate;
+    this.runner = runner;
+    this.bulkheads = bulkheads;
+    this.defaultBulkhead = defaultBulkhead;
+  }
+
+  /**
+   * Creates a builder for a connectable that runs effects on the supplied work runner, passing them
+   * to the delegate.
+   */
+  public static <F, E> Builder<F, E> builder(Connectable<F, E> delegate, WorkRunner runner) {
+    return new Builder<>(
+        checkNotNull(delegate),
+        checkNotNull(runner),
+        Collections.<Class<?>, Bulkhead>emptyMap(),
+        null);
+  }
+
+  @Nonnull
+  @Override
+  public Connection<F> connect(Consumer<E> output) {
+    return new BulkheadConnection(delegate.connect(output));
+  }
+
+  @Nullable
+  private Bulkhead bulkheadFor(F effect) {
+    for (Map.Entry<Class<?>, Bulkhead> entry : bulkheads.entrySet()) {
+      if (entry.getKey().isInstance(effect)) {
+        return entry.getValue();
+      }
+    }
+
+    return defaultBulkhead;
+  }
+
+  private final class BulkheadConnection implements Connection<F> {
+    private final Connection<F> connection;
+    private volatile boolean disposed;
+
+    BulkheadConnection(Connection<F> connection) {
+      this.connection = connection;
+    }
+
+    @Override
+    public void accept(F effect) {
+      if (disposed) {
+        return;
+      }
+
+      Bulkhead bulkhead = bulkheadFor(checkNotNull(effect));
+
+      if (bulkhead == null) {
+        runner.post(new EffectTask(effect, null));
+      } else {
+        bulkhead.submit(new EffectExecution(effect));
+      }
+    }
+
+    @Override
+    public void dispose() {
+      disposed = true;
+      connection.dispose();
+    }
+
+    private final class EffectExecution implements Bulkhead.Execution {
+      private final F effect;
+
+      EffectExecution(F effect) {
+        this.effect = effect;
+      }
+
+      @Override
+      public void start(Runnable onComplete) {
+        runner.post(new EffectTask(effect, onComplete));
+      }
+
+      @Override
+      public void discard() {}
+
+      @Override
+      public String toString() {
+        return "EffectExecution{effect=" + effect + "}";
+      }
+    }
+
+    private final class EffectTask implements Runnable {
+      private final F effect;
+      @Nullable private final Runnable onComplete;
+
+      EffectTask(F effect, @Nullable Runnable onComplete) {
+        this.effect = effect;
+        this.onComplete = onComplete;
+      }
+
+      @Override
+      public void run() {
+        try {
+          // queued executions still start after dispose, but only to free up their slot
+          if (!disposed) {
+            connection.accept(effect);
+          }
+        } catch (RuntimeException e) {
+          MobiusHooks.handleError(
+              new RuntimeException("Effect handler threw an exception for: " + effect, e));
+        } finally {
+          if (onComplete != null) {
+            onComplete.run();
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * Builder for a {@link BulkheadConnectable}. Builders are immutable; each method returns a new
+   * builder.
+   *
+   * @param <F> the effect type
+   * @param <E> the event type
+   */
+  public static final class Builder<F, E> {
+    private final Connectable<F, E> delegate;
+    private final WorkRunner runner;
+    private final Map<Class<?>, Bulkhead> bulkheads;
+    @Nullable private final Bulkhead defaultBulkhead;
+
+    private Builder(
+        Connectable<F, E> delegate,
+        WorkRunner runner,
+        Map<Class<?>, Bulkhead> bulkheads,
+        @Nullable Bulkhead defaultBulkhead) {
+      this.delegate = delegate;
+      this.runner = runner;
+      this.bulkheads = bulkheads;
+      this.defaultBulkhead = defaultBulkhead;
+    }
+
+    /**
+     * Runs effects that are instances of the given class within the bulkhead. The same bulkhead may
+     * be used for several classes, to give them a shared limit.
+     *
+     * @throws IllegalArgumentException if a bulkhead has already been added for the class, a
+     *     superclass, or a subclass
+     */
+    public Builder<F, E> bulkhead(Class<? extends F> effectClass, Bulkhead bulkhead) {
+      checkNotNull(effectClass);
+      checkNotNull(bulkhead);
+
+      for (Class<?> cls : bulkheads.keySet()) {
+        if (cls.isAssignableFrom(effectClass) || effectClass.isAssignableFrom(cls)) {
+          throw new IllegalArgumentException(
+              "Effect classes may not be assignable to each other, collision found: "
+                  + effectClass.getSimpleName()
+                  + " <-> "
+                  + cls.getSimpleName());
+        }
+      }
+
+      Map<Class<?>, Bulkhead> newBulkheads = new LinkedHashMap<>(bulkheads);
+      newBulkheads.put(effectClass, bulkhead);
+      return new Builder<>(
+          delegate, runner, Collections.unmodifiableMap(newBulkheads), defaultBulkhead);
+    }
+
+    /** Runs effects that don't match any of the added classes within the bulkhead. */
+    public Builder<F, E> defaultBulkhead(Bulkhead bulkhead) {
+      return new Builder<>(delegate, runner, bulkheads, checkNotNull(bulkhead));
+    }
+
+    public BulkheadConnectable<F, E> build() {
+      return new BulkheadConnectable<>(delegate, runner, bulkheads, defaultBulkhead);
+    }
+  }
+}
@@ -0,0 +1,409 @@
+/*
+ * -\-\-
+ * Mobius
+ * --
+ * Copyright (c) 2017-2020 Spotify AB
+ * --
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -/-/-
+ */
+package com.spotify.mobius.effects;
+
+import static com.spotify.mobius.internal_util.Preconditions.checkArgument;
+import static com.spotify.mobius.internal_util.Preconditions.checkNotNull;
+
+import com.spotify.mobius.Connectable;
+import com.spotify.mobius.Connection;
+import com.spotify.mobius.MobiusHooks;
+import com.spotify.mobius.functions.Consumer;
+import com.spotify.mobius.functions.Function;
+import com.spotify.mobius.functions.Producer;
+import com.spotify.mobius.internal_util.Clocks;
+import com.spotify.mobius.runners.WorkRunner;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * A {@link Connectable} that remembers the event a function returned for an effect, and sends it
+ * again for identical effects until it expires, without calling the function.
+ *
+ * <p>Cache hits are sent on the thread that dispatched the effect, so they don't wait for a thread
+ * to become available; misses call the function on a work runner, and cache its result. Cached
+ * events expire when the time to live has passed, and the least recently used ones are evicted when
+ * the cache is full. The cache belongs to the connectable, so loops that share an instance share
+ * the cache.
+ *
+ * <p>Effects of the classes registered with {@link Builder#invalidateOn(Class, Function)} or {@link
+ * Builder#invalidateAllOn(Class)} remove cached events instead of being passed to the function.
+ * Results of calls that were running when an invalidation happened aren't cached.
+ *
+ * @param <F> the effect type
+ * @param <E> the event type
+ */
+public final class CachingConnectable<F, E> implements Connectable<F, E> {
+
+  private final Function<F, E> function;
+  private final WorkRunner runner;
+  private final Function<F, ?> keyFunction;
+  private final List<Invalidation<F>> invalidations;
+  private final long ttlNanos;
+  private final int maxSize;
+  private final Producer<Long> clock;
+
+  // guarded by 'this'
+  private final LinkedHashMap<Object, CachedEvent<E>> cache;
+  private long generation;
+  private long hitCount;
+  private long missCount;
+  private long evictionCount;
+
+  private CachingConnectable(Builder<F, E> builder) {
+    this.function = builder.function;
+    this.runner = builder.runner;
+    this.keyFunction = builder.keyFunction;
+    this.invalidations = builder.invalidations;
+    this.ttlNanos = builder.ttlNanos;
+    this.maxSize = builder.maxSize;
+    this.clock = builder.clock;
+    this.cache = new LinkedHashMap<>(16, 0.75f, true);
+  }
+
+  /**
+   * Creates a builder for a connectable that caches the events returned by the function, calling
+   * the function on the work runner when there's no cached event for an effect. The work runner
+   * isn't disposed when connections are disposed.
+   */
+  public static <F, E> Builder<F, E> builder(Function<F, E> function, WorkRunner runner) {
+    return new Builder<>(
+        checkNotNull(function),
+        checkNotNull(runner),
+        new Function<F, Object>() {
+          @Nonnull
+          @Override
+          public Object apply(F effect) {
+            return effect;
+          }
+        },
+        Collections.<Invalidation<F>>emptyList(),
+        TimeUnit.MINUTES.toNanos(1),
+        1000,
+        Clocks.systemNanos());
+  }
+
+  @Nonnull
+  @Override
+  public Connection<F> connect(Consumer<E> output) {
+    return new CachingConnection(checkNotNull(output));
+  }
+
+  /** Returns the current cache statistics. */
+  public synchronized Stats stats() {
+    return new Stats(hitCount, missCount, evictionCount, cache.size());
+  }
+
+  /** Removes all cached events. */
+  public synchronized void invalidateAll() {
+    generation++;
+    cache.clear();
+  }
+
+  /** Removes the cached event for the given key, if there is one. */
+  public synchronized void invalidate(Object key) {
+    generation++;
+    cache.remove(key);
+  }
+
+  @Nullable
+  private synchronized E lookup(Object key) {
+    CachedEvent<E> cached = cache.get(key);
+
+    if (cached != null && cached.expiresAtNanos - clock.get() > 0) {
+      hitCount++;
+      return cached.event;
+    }
+
+    if (cached != null) {
+      cache.remove(key);
+      evictionCount++;
+    }
+
+    missCount++;
+    return null;
+  }
+
+  private synchronized long generation() {
+    return generation;
+  }
+
+  private synchronized void store(Object key, E event, long startGeneration) {
+    if (generation != startGeneration) {
+      // invalidated while the function was running, so the event may be stale
+      return;
+    }
+
+    cache.put(key, new CachedEvent<>(event, clock.get() + ttlNanos));
+
+    Iterator<CachedEvent<E>> iterator = cache.values().iterator();
+    while (cache.size() > maxSize && iterator.hasNext()) {
+      iterator.next();
+      iterator.remove();
+      evictionCount++;
+    }
+  }
+
+  private final class CachingConnection implements Connection<F> {
+    private final Consumer<E> output;
+    private volatile boolean disposed;
+
+    CachingConnection(Consumer<E> output) {
+      this.output = output;
+    }
+
+    @Override
+    public void accept(final F effect) {
+      checkNotNull(effect);
+      if (disposed) {
+        return;
+      }
+
+      for (Invalidation<F> invalidation : invalidations) {
+        if (invalidation.effectClass.isInstance(effect)) {
+          invalidation.apply(CachingConnectable.this, effect);
+          return;
+        }
+      }
+
+      final Object key = checkNotNull(keyFunction.apply(effect));
+      E cached = lookup(key);
+
+      if (cached != null) {
+        output.accept(cached);
+        return;
+      }
+
+      final long startGeneration = generation();
+      runner.post(
+          new Runnable() {
+            @Override
+            public void run() {
+              E event;
+              try {
+                event = function.apply(effect);
+              } catch (RuntimeException e) {
+                MobiusHooks.handleError(
+                    new RuntimeException("Effect handler threw an exception for: " + effect, e));
+                return;
+              }
+
+              store(key, event, startGeneration);
+
+              if (!disposed) {
+                output.accept(event);
+              }
+            }
+          });
+    }
+
+    @Override
+    public void dispose() {
+      disposed = true;
+    }
+  }
+
+  private static final class CachedEvent<E> {
+    private final E event;
+    private final long expiresAtNanos;
+
+    CachedEvent(E event, long expiresAtNanos) {
+      this.event = event;
+      this.expiresAtNanos = expiresAtNanos;
+    }
+  }
+
+  private static final class Invalidation<F> {
+    private final Class<?> effectClass;
+    @Nullable private final Function<Object, ?> keyFunction;
+
+    @SuppressWarnings("unchecked")
+    <C extends F> Invalidation(Class<C> effectClass, @Nullable Function<C, ?> keyFunction) {
+      this.effectClass = effectClass;
+      this.keyFunction = (Function<Object, ?>) keyFunction;
+    }
+
+    void apply(CachingConnectable<F, ?> connectable, F effect) {
+      if (keyFunction == null) {
+        connectable.invalidateAll();
+      } else {
+        connectable.invalidate(checkNotNull(keyFunction.apply(effect)));
+      }
+    }
+  }
+
+  /** A snapshot of the statistics of a {@link CachingConnectable}. */
+  public static final class Stats {
+    private final long hitCount;
+    private final long missCount;
+    private final long evictionCount;
+    private final int size;
+
+    Stats(long hitCount, long missCount, long evictionCount, int size) {
+      this.hitCount = hitCount;
+      this.missCount = missCount;
+      this.evictionCount = evictionCount;
+      this.size = size;
+    }
+
+    /** The number of effects that were answered with a cached event. */
+    public long hitCount() {
+      return hitCount;
+    }
+
+    /** The number of effects that were passed to the function. */
+    public long missCount() {
+      return missCount;
+    }
+
+    /** The number of events that were removed because they expired or the cache was full. */
+    public long evictionCount() {
+      return evictionCount;
+    }
+
+    /** The number of events currently cached, including expired ones not yet removed. */
+    public int size() {
+      return size;
+    }
+
+    /** The fraction of effects that were answered with a cached event, or 0 if there were none. */
+    public double hitRate() {
+      long total = hitCount + missCount;
+      return total == 0 ? 0 : (double) hitCount / total;
+    }
+
+    @Override
+    public String toString() {
+      return String.format(
+          Locale.ENGLISH,
+          "Stats{hits=%d, misses=%d, evictions=%d, size=%d, hitRate=%.3f}",
+          hitCount,
+          missCount,
+          evictionCount,
+          size,
+          hitRate());
+    }
+  }
+
+  /**
+   * Builder for a {@link CachingConnectable}. Builders are immutable; each method returns a new
+   * builder.
+   *
+   * @param <F> the effect type
+   * @param <E> the event type
+   */
+  public static final class Builder<F, E> {
+    private final Function<F, E> function;
+    private final WorkRunner runner;
+    private final Function<F, ?> keyFunction;
+    private final List<Invalidation<F>> invalidations;
+    private final long ttlNanos;
+    private final int maxSize;
+    private final Producer<Long> clock;
+
+    private Builder(
+        Function<F, E> function,
+        WorkRunner runner,
+        Function<F, ?> keyFunction,
+        List<Invalidation<F>> invalidations,
+        long ttlNanos,
+        int maxSize,
+        Producer<Long> clock) {
+      this.function = function;
+      this.runner = runner;
+      this.keyFunction = keyFunction;
+      this.invalidations = invalidations;
+      this.ttlNanos = ttlNanos;
+      this.maxSize = maxSize;
+      this.clock = clock;
+    }
+
+    /**
+     * Sets the function that maps effects to cache keys. By default, effects are compared using
+     * {@link Object#equals(Object)}.
+     */
+    public Builder<F, E> key(Function<F, ?> keyFunction) {
+      return new Builder<>(
+          function, runner, checkNotNull(keyFunction), invalidations, ttlNanos, maxSize, clock);
+    }
+
+    /** Sets how long events stay cached. The default is one minute. */
+    public Builder<F, E> ttl(long ttl, TimeUnit unit) {
+      checkArgument(ttl > 0);
+      return new Builder<>(
+          function, runner, keyFunction, invalidations, unit.toNanos(ttl), maxSize, clock);
+    }
+
+    /** Sets the maximum number of cached events. The default is 1000. */
+    public Builder<F, E> maxSize(int maxSize) {
+      checkArgument(maxSize > 0);
+      return new Builder<>(function, runner, keyFunction, invalidations, ttlNanos, maxSize, clock);
+    }
+
+    /**
+     * Makes effects of the given class remove the cached event with the key returned by the
+     * function, instead of being passed to the function of the connectable.
+     */
+    public <C extends F> Builder<F, E> invalidateOn(
+        Class<C> effectClass, Function<C, ?> keyFunction) {
+      return withInvalidation(
+          new Invalidation<F>(checkNotNull(effectClass), checkNotNull(keyFunction)));
+    }
+
+    /**
+     * Makes effects of the given class remove all cached events, instead of being passed to the
+     * function of the connectable.
+     */
+    public <C extends F> Builder<F, E> invalidateAllOn(Class<C> effectClass) {
+      return withInvalidation(new Invalidation<F>(checkNotNull(effectClass), null));
+    }
+
+    // for tests
+    Builder<F, E> clock(Producer<Long> clock) {
+      return new Builder<>(
+          function, runner, keyFunction, invalidations, ttlNanos, maxSize, checkNotNull(clock));
+    }
+
+    public CachingConnectable<F, E> build() {
+      return new CachingConnectable<>(this);
+    }
+
+    private Builder<F, E> withInvalidation(Invalidation<F> invalidation) {
+      List<Invalidation<F>> newInvalidations = new ArrayList<>(invalidations);
+      newInvalidations.add(invalidation);
+      return new Builder<>(
+          function,
+          runner,
+          keyFunction,
+          Collections.unmodifiableList(newInvalidations),
+          ttlNanos,
+          maxSize,
+          clock);
+    }
+  }
+}
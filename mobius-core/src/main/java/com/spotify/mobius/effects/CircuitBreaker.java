@@ -0,0 +1,417 @@
+/*
+ * -\-\-
+ * Mobius
+ * --
+ * Copyright (c) 2017-2020 Spotify AB
+ * --
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -/-/-
+ */
+package com.spotify.mobius.effects;
+
+import static com.spotify.mobius.internal_util.Preconditions.checkArgument;
+import static com.spotify.mobius.internal_util.Preconditions.checkNotNull;
+
+import com.spotify.mobius.functions.Producer;
+import com.spotify.mobius.internal_util.Clocks;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.Nullable;
+
+/**
+ * Stops effects from calling a dependency that keeps failing, so that calls that are bound to fail
+ * or time out don't pile up and occupy the threads that effects run on.
+ *
+ * <p>The breaker starts out {@link State#CLOSED}, and records the outcome of the most recent calls
+ * in a sliding window. Once the window holds the minimum number of calls and the fraction of
+ * failures among them reaches the threshold, the breaker opens. While {@link State#OPEN}, {@link
+ * #tryAcquire()} refuses every call. When the open duration has passed, the breaker lets a few
+ * probe calls through in the {@link State#HALF_OPEN} state; it closes again if they all succeed,
+ * and opens again if one of them fails. Probes that haven't reported an outcome within the open
+ * duration are given up on, and new probes are let through instead.
+ *
+ * <p>A breaker can be shared by several effect handlers, and by several loops, that call the same
+ * dependency. Use it through {@link CircuitBreakerConnectable}, or the subtype effect handler
+ * builders of the Rx modules.
+ */
+public final class CircuitBreaker {
+
+  /** The states of a circuit breaker. */
+  public enum State {
+    /** Calls are let through, and their outcome is recorded. */
+    CLOSED,
+    /** Calls are refused until the open duration has passed. */
+    OPEN,
+    /** A limited number of probe calls are let through to find out if the dependency recovered. */
+    HALF_OPEN
+  }
+
+  /**
+   * Permission to make one call. Exactly one of its methods should be called once the call is done;
+   * calling more than one, or calling one several times, has no effect.
+   */
+  public interface Permit {
+    /** Records that the call succeeded. */
+    void recordSuccess();
+
+    /** Records that the call failed. */
+    void recordFailure();
+
+    /** Gives the permit back without recording an outcome, if the call was cancelled. */
+    void release();
+  }
+
+  private final String name;
+  private final int windowSize;
+  private final int minimumCalls;
+  private final double failureRateThreshold;
+  private final long openDurationNanos;
+  private final int halfOpenCalls;
+  private final Producer<Long> clock;
+
+  // guarded by 'this'
+  private final boolean[] window;
+  private int windowStart;
+  private int windowCount;
+  private int windowFailures;
+  private State state = State.CLOSED;
+  private long generation;
+  private long openedAtNanos;
+  private long lastProbeStartedAtNanos;
+  private int probesStarted;
+  private int probesSucceeded;
+  private long rejectedCount;
+
+  private CircuitBreaker(Builder builder) {
+    this.name = builder.name;
+    this.windowSize = builder.windowSize;
+    this.minimumCalls = builder.minimumCalls;
+    this.failureRateThreshold = builder.failureRateThreshold;
+    this.openDurationNanos = builder.openDurationNanos;
+    this.halfOpenCalls = builder.halfOpenCalls;
+    this.clock = builder.clock;
+    this.window = new boolean[windowSize];
+  }
+
+  /**
+   * Creates a builder for a circuit breaker.
+   *
+   * @param name used in error messages, for instance the name of the dependency it protects
+   */
+  public static Builder builder(String name) {
+    return new Builder(
+        checkNotNull(name), 20, 10, 0.5, TimeUnit.SECONDS.toNanos(30), 1, Clocks.systemNanos());
+  }
+
+  public String name() {
+    return name;
+  }
+
+  /**
+   * Returns a permit for one call, or null if the breaker refuses the call. Callers that get a
+   * permit must report the outcome of the call to it.
+   */
+  @Nullable
+  public synchronized Permit tryAcquire() {
+    updateState();
+
+    switch (state) {
+      case CLOSED:
+        return new CallPermit(generation);
+
+      case HALF_OPEN:
+        if (probesStarted < halfOpenCalls) {
+          probesStarted++;
+          lastProbeStartedAtNanos = clock.get();
+          return new CallPermit(generation);
+        }
+        break;
+
+      case OPEN:
+        break;
+    }
+
+    rejectedCount++;
+    return null;
+  }
+
+  /** Returns the current state, opening the breaker for probes if the open duration has passed. */
+  public synchronized State state() {
+    updateState();
+    return state;
+  }
+
+  /** Returns the fraction of failed calls in the sliding window, or 0 if it's empty. */
+  public synchronized double failureRate() {
+    return windowCount == 0 ? 0 : (double) windowFailures / windowCount;
+  }
+
+  /** Returns the number of calls that have been refused. */
+  public synchronized long rejectedCount() {
+    return rejectedCount;
+  }
+
+  @Override
+  public synchronized String toString() {
+    return "CircuitBreaker{name="
+        + name
+        + ", state="
+        + state
+        + ", failures="
+        + windowFailures
+        + "/"
+        + windowCount
+        + ", rejected="
+        + rejectedCount
+        + "}";
+  }
+
+  private synchronized void record(long permitGeneration, boolean failure) {
+    if (permitGeneration != generation) {
+      // the call started before the last state change, so it says nothing about the current state
+      return;
+    }
+
+    switch (state) {
+      case CLOSED:
+        addToWindow(failure);
+        if (windowCount >= minimumCalls
+            && (double) windowFailures / windowCount >= failureRateThreshold) {
+          transitionTo(State.OPEN);
+        }
+        break;
+
+      case HALF_OPEN:
+        if (failure) {
+          transitionTo(State.OPEN);
+        } else if (++probesSucceeded >= halfOpenCalls) {
+          transitionTo(State.CLOSED);
+        }
+        break;
+
+      case OPEN:
+        break;
+    }
+  }
+
+  private synchronized void release(long permitGeneration) {
+    if (permitGeneration == generation && state == State.HALF_OPEN) {
+      // let another probe through instead
+      probesStarted--;
+    }
+  }
+
+  // must be called with 'this' held
+  private void updateState() {
+    if (state == State.OPEN && clock.get() - openedAtNanos >= openDurationNanos) {
+      transitionTo(State.HALF_OPEN);
+    } else if (state == State.HALF_OPEN
+        && probesStarted >= halfOpenCalls
+        && clock.get() - lastProbeStartedAtNanos >= openDurationNanos) {
+      // a probe that never reports would otherwise keep the breaker from ever closing; starting
+      // over also makes late outcomes of the old probes be ignored
+      transitionTo(State.HALF_OPEN);
+    }
+  }
+
+  // must be called with 'this' held
+  private void addToWindow(boolean failure) {
+    if (windowCount == windowSize) {
+      if (window[windowStart]) {
+        windowFailures--;
+      }
+      windowStart = (windowStart + 1) % windowSize;
+      windowCount--;
+    }
+
+    window[(windowStart + windowCount) % windowSize] = failure;
+    windowCount++;
+    if (failure) {
+      windowFailures++;
+    }
+  }
+
+  // must be called with 'this' held
+  private void transitionTo(State newState) {
+    state = newState;
+    generation++;
+    probesStarted = 0;
+    probesSucceeded = 0;
+
+    if (newState == State.OPEN) {
+      openedAtNanos = clock.get();
+    } else if (newState == State.CLOSED) {
+      windowStart = 0;
+      windowCount = 0;
+      windowFailures = 0;
+    }
+  }
+
+  private final class CallPermit implements Permit {
+    private final long generation;
+    private boolean done;
+
+    CallPermit(long generation) {
+      this.generation = generation;
+    }
+
+    @Override
+    public void recordSuccess() {
+      if (markDone()) {
+        record(generation, false);
+      }
+    }
+
+    @Override
+    public void recordFailure() {
+      if (markDone()) {
+        record(generation, true);
+      }
+    }
+
+    @Override
+    public void release() {
+      if (markDone()) {
+        CircuitBreaker.this.release(generation);
+      }
+    }
+
+    private synchronized boolean markDone() {
+      if (done) {
+        return false;
+      }
+      done = true;
+      return true;
+    }
+  }
+
+  /**
+   * Builder for a {@link CircuitBreaker}. Builders are immutable; each method returns a new
+   * builder.
+   */
+  public static final class Builder {
+    private final String name;
+    private final int windowSize;
+    private final int minimumCalls;
+    private final double failureRateThreshold;
+    private final long openDurationNanos;
+    private final int halfOpenCalls;
+    private final Producer<Long> clock;
+
+    private Builder(
+        String name,
+        int windowSize,
+        int minimumCalls,
+        double failureRateThreshold,
+        long openDurationNanos,
+        int halfOpenCalls,
+        Producer<Long> clock) {
+      this.name = name;
+      this.windowSize = windowSize;
+      this.minimumCalls = minimumCalls;
+      this.failureRateThreshold = failureRateThreshold;
+      this.openDurationNanos = openDurationNanos;
+      this.halfOpenCalls = halfOpenCalls;
+      this.clock = clock;
+    }
+
+    /**
+     * Sets the number of most recent calls that the failure rate is computed from. The default is
+     * 20.
+     */
+    public Builder windowSize(int windowSize) {
+      checkArgument(windowSize > 0);
+      return new Builder(
+          name,
+          windowSize,
+          Math.min(minimumCalls, windowSize),
+          failureRateThreshold,
+          openDurationNanos,
+          halfOpenCalls,
+          clock);
+    }
+
+    /**
+     * Sets the number of calls the window must hold before the breaker can open. The default is 10,
+     * and it can't be larger than the window size.
+     */
+    public Builder minimumCalls(int minimumCalls) {
+      checkArgument(minimumCalls > 0 && minimumCalls <= windowSize);
+      return new Builder(
+          name,
+          windowSize,
+          minimumCalls,
+          failureRateThreshold,
+          openDurationNanos,
+          halfOpenCalls,
+          clock);
+    }
+
+    /** Sets the fraction of failed calls that opens the breaker. The default is 0.5. */
+    public Builder failureRateThreshold(double failureRateThreshold) {
+      checkArgument(failureRateThreshold > 0 && failureRateThreshold <= 1);
+      return new Builder(
+          name,
+          windowSize,
+          minimumCalls,
+          failureRateThreshold,
+          openDurationNanos,
+          halfOpenCalls,
+          clock);
+    }
+
+    /** Sets how long the breaker stays open before letting probes through. The default is 30s. */
+    public Builder openDuration(long duration, TimeUnit unit) {
+      checkArgument(duration >= 0);
+      return new Builder(
+          name,
+          windowSize,
+          minimumCalls,
+          failureRateThreshold,
+          unit.toNanos(duration),
+          halfOpenCalls,
+          clock);
+    }
+
+    /**
+     * Sets the number of probe calls that are let through in the half-open state, all of which must
+     * succeed for the breaker to close. The default is 1.
+     */
+    public Builder halfOpenCalls(int halfOpenCalls) {
+      checkArgument(halfOpenCalls > 0);
+      return new Builder(
+          name,
+          windowSize,
+          minimumCalls,
+          failureRateThreshold,
+          openDurationNanos,
+          halfOpenCalls,
+          clock);
+    }
+
+    // for tests
+    Builder clock(Producer<Long> clock) {
+      return new Builder(
+          name,
+          windowSize,
+          minimumCalls,
+          failureRateThreshold,
+          openDurationNanos,
+          halfOpenCalls,
+          checkNotNull(clock));
+    }
+
+    public CircuitBreaker build() {
+      return new CircuitBreaker(this);
+    }
+  }
+}
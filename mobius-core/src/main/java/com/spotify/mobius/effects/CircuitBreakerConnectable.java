@@ -0,0 +1,239 @@
+/*
+ * -\-\-
+ * Mobius
+ * --
+ * Copyright (c) 2017-2020 Spotify AB
+ * --
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -/-/-
+ */
+package com.spotify.mobius.effects;
+
+import static com.spotify.mobius.internal_util.Preconditions.checkNotNull;
+
+import com.spotify.mobius.Connectable;
+import com.spotify.mobius.Connection;
+import com.spotify.mobius.MobiusHooks;
+import com.spotify.mobius.functions.BiFunction;
+import com.spotify.mobius.functions.Consumer;
+import com.spotify.mobius.functions.Function;
+import com.spotify.mobius.runners.WorkRunner;
+import java.util.concurrent.RejectedExecutionException;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * A {@link Connectable} that calls a function for each effect on a work runner, unless its {@link
+ * CircuitBreaker} is open.
+ *
+ * <p>Effects that the breaker refuses are answered right away, on the thread that dispatched them,
+ * with the event returned by the {@link Builder#whenOpen(Function)} function, so a failing
+ * dependency doesn't hold on to threads of the work runner. Without that function, refused effects
+ * are dropped.
+ *
+ * <p>A call counts as failed if the function throws, or if it returns an event that matches {@link
+ * Builder#failureWhen(Function)}. Exceptions are turned into events by {@link
+ * Builder#onError(BiFunction)}, or reported to {@link MobiusHooks#handleError(Throwable)} if there
+ * is no such function:
+ *
+ * <pre>{@code
+ * CircuitBreakerConnectable.builder(api::fetchProfile, profileBreaker, effectRunner)
+ *     .whenOpen(effect -> Event.profileUnavailable())
+ *     .onError((effect, exception) -> Event.profileLoadFailed(exception))
+ *     .build()
+ * }</pre>
+ *
+ * <p>The work runner isn't disposed along with connections.
+ *
+ * @param <F> the effect type
+ * @param <E> the event type
+ */
+public final class CircuitBreakerConnectable<F, E> implements Connectable<F, E> {
+
+  private final Function<F, E> function;
+  private final CircuitBreaker breaker;
+  private final WorkRunner runner;
+  @Nullable private final Function<F, E> openEvent;
+  @Nullable private final BiFunction<F, Throwable, E> errorEvent;
+  @Nullable private final Function<E, Boolean> failurePredicate;
+
+  private CircuitBreakerConnectable(Builder<F, E> builder) {
+    this.function = builder.function;
+    this.breaker = builder.breaker;
+    this.runner = builder.runner;
+    this.openEvent = builder.openEvent;
+    this.errorEvent = builder.errorEvent;
+    this.failurePredicate = builder.failurePredicate;
+  }
+
+  /**
+   * Creates a builder for a connectable that calls the function on the work runner for each effect
+   * that the circuit breaker lets through.
+   */
+  public static <F, E> Builder<F, E> builder(
+      Function<F, E> function, CircuitBreaker breaker, WorkRunner runner) {
+    return new Builder<>(
+        checkNotNull(function), checkNotNull(breaker), checkNotNull(runner), null, null, null);
+  }
+
+  @Nonnull
+  @Override
+  public Connection<F> connect(Consumer<E> output) {
+    return new CircuitBreakerConnection(checkNotNull(output));
+  }
+
+  private final class CircuitBreakerConnection implements Connection<F> {
+    private final Consumer<E> output;
+    private volatile boolean disposed;
+
+    CircuitBreakerConnection(Consumer<E> output) {
+      this.output = output;
+    }
+
+    @Override
+    public void accept(final F effect) {
+      checkNotNull(effect);
+      if (disposed) {
+        return;
+      }
+
+      final CircuitBreaker.Permit permit = breaker.tryAcquire();
+
+      if (permit == null) {
+        if (openEvent != null) {
+          output.accept(openEvent.apply(effect));
+        }
+        return;
+      }
+
+      try {
+        runner.post(
+            new Runnable() {
+              @Override
+              public void run() {
+                if (disposed) {
+                  permit.release();
+                  return;
+                }
+
+                call(effect, permit);
+              }
+            });
+      } catch (RejectedExecutionException e) {
+        permit.release();
+        MobiusHooks.handleError(new RuntimeException("Work runner rejected effect: " + effect, e));
+      }
+    }
+
+    private void call(F effect, CircuitBreaker.Permit permit) {
+      try {
+        E event;
+        try {
+          event = function.apply(effect);
+        } catch (RuntimeException e) {
+          permit.recordFailure();
+
+          if (errorEvent == null) {
+            MobiusHooks.handleError(
+                new RuntimeException(
+                    "Circuit breaker " + breaker.name() + " recorded a failure for: " + effect, e));
+            return;
+          }
+
+          event = errorEvent.apply(effect, e);
+          send(event);
+          return;
+        }
+
+        if (failurePredicate != null && failurePredicate.apply(event)) {
+          permit.recordFailure();
+        } else {
+          permit.recordSuccess();
+        }
+
+        send(event);
+      } finally {
+        // gives the permit back if nothing was recorded, for instance because an Error was thrown;
+        // a lost permit would keep a half-open breaker from letting any more probes through
+        permit.release();
+      }
+    }
+
+    private void send(E event) {
+      if (!disposed) {
+        output.accept(event);
+      }
+    }
+
+    @Override
+    public void dispose() {
+      disposed = true;
+    }
+  }
+
+  /**
+   * Builder for a {@link CircuitBreakerConnectable}. Builders are immutable; each method returns a
+   * new builder.
+   *
+   * @param <F> the effect type
+   * @param <E> the event type
+   */
+  public static final class Builder<F, E> {
+    private final Function<F, E> function;
+    private final CircuitBreaker breaker;
+    private final WorkRunner runner;
+    @Nullable private final Function<F, E> openEvent;
+    @Nullable private final BiFunction<F, Throwable, E> errorEvent;
+    @Nullable private final Function<E, Boolean> failurePredicate;
+
+    private Builder(
+        Function<F, E> function,
+        CircuitBreaker breaker,
+        WorkRunner runner,
+        @Nullable Function<F, E> openEvent,
+        @Nullable BiFunction<F, Throwable, E> errorEvent,
+        @Nullable Function<E, Boolean> failurePredicate) {
+      this.function = function;
+      this.breaker = breaker;
+      this.runner = runner;
+      this.openEvent = openEvent;
+      this.errorEvent = errorEvent;
+      this.failurePredicate = failurePredicate;
+    }
+
+    /** Sets the function that returns the event sent for effects that the breaker refuses. */
+    public Builder<F, E> whenOpen(Function<F, E> openEvent) {
+      return new Builder<>(
+          function, breaker, runner, checkNotNull(openEvent), errorEvent, failurePredicate);
+    }
+
+    /** Sets the function that returns the event sent when the function throws for an effect. */
+    public Builder<F, E> onError(BiFunction<F, Throwable, E> errorEvent) {
+      return new Builder<>(
+          function, breaker, runner, openEvent, checkNotNull(errorEvent), failurePredicate);
+    }
+
+    /**
+     * Sets the predicate that tells failure events apart, for functions that catch their own
+     * exceptions and return an event describing the failure.
+     */
+    public Builder<F, E> failureWhen(Function<E, Boolean> failurePredicate) {
+      return new Builder<>(
+          function, breaker, runner, openEvent, errorEvent, checkNotNull(failurePredicate));
+    }
+
+    public CircuitBreakerConnectable<F, E> build() {
+      return new CircuitBreakerConnectable<>(this);
+    }
+  }
+}
@@ -0,0 +1,326 @@
+/*
+ * -\-\-
+ * Mobius
+ * --
+ * Copyright (c) 2017-2020 Spotify AB
+ * --
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -/-/-
+ */
+package com.spotify.mobius.effects;
+
+import static com.spotify.mobius.internal_util.Preconditions.checkArgument;
+import static com.spotify.mobius.internal_util.Preconditions.checkNotNull;
+
+import com.spotify.mobius.Connectable;
+import com.spotify.mobius.Connection;
+import com.spotify.mobius.MobiusHooks;
+import com.spotify.mobius.functions.Consumer;
+import com.spotify.mobius.functions.Function;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * Factories for effect handlers that start asynchronous work and send events when it completes,
+ * without blocking a thread while waiting.
+ *
+ * <p>The function is called on the thread that dispatches the effect, and must return quickly; the
+ * events are sent to the loop on the thread that completes the {@link CompletionStage}. This lets
+ * non-blocking clients be used as effect handlers, and {@link
+ * com.spotify.mobius.runners.WorkRunners#immediate()} be used as the effect runner of the loop.
+ *
+ * <p>When a connection is disposed, stages that haven't completed yet are cancelled through {@link
+ * CompletionStage#toCompletableFuture()}, if they support it, and their results are ignored. Stages
+ * that complete exceptionally, and exceptions thrown while sending a result to the loop, are
+ * reported to {@link MobiusHooks#handleError(Throwable)}.
+ *
+ * <p>Optionally, the number of stages in flight for a connection can be limited. Effects beyond the
+ * limit wait in a queue, and the function is called for them in order as earlier stages complete.
+ */
+public final class CompletionStageConnectables {
+
+  private CompletionStageConnectables() {
+    // prevent instantiation
+  }
+
+  /**
+   * Creates an effect handler that sends the result of each stage as an event. Stages that complete
+   * with null don't send an event.
+   */
+  public static <F, E> Connectable<F, E> fromFunction(
+      Function<F, ? extends CompletionStage<? extends E>> function) {
+    return new AsyncConnectable<>(checkNotNull(function), new SingleResult<E>(), 0);
+  }
+
+  /**
+   * Creates an effect handler that sends the result of each stage as an event, with at most {@code
+   * maxInFlight} stages in flight for each connection.
+   */
+  public static <F, E> Connectable<F, E> fromFunction(
+      Function<F, ? extends CompletionStage<? extends E>> function, int maxInFlight) {
+    checkArgument(maxInFlight > 0);
+    return new AsyncConnectable<>(checkNotNull(function), new SingleResult<E>(), maxInFlight);
+  }
+
+  /** Creates an effect handler that sends each element of the result of each stage as an event. */
+  public static <F, E> Connectable<F, E> fromMultiFunction(
+      Function<F, ? extends CompletionStage<? extends Iterable<? extends E>>> function) {
+    return new AsyncConnectable<>(checkNotNull(function), new MultipleResults<E>(), 0);
+  }
+
+  /**
+   * Creates an effect handler that sends each element of the result of each stage as an event, with
+   * at most {@code maxInFlight} stages in flight for each connection.
+   */
+  public static <F, E> Connectable<F, E> fromMultiFunction(
+      Function<F, ? extends CompletionStage<? extends Iterable<? extends E>>> function,
+      int maxInFlight) {
+    checkArgument(maxInFlight > 0);
+    return new AsyncConnectable<>(checkNotNull(function), new MultipleResults<E>(), maxInFlight);
+  }
+
+  /** Sends the result of a stage to the loop. */
+  private interface ResultSender<R, E> {
+    void send(@Nullable R result, Consumer<E> output);
+  }
+
+  private static final class SingleResult<E> implements ResultSender<E, E> {
+    @Override
+    public void send(@Nullable E result, Consumer<E> output) {
+      if (result != null) {
+        output.accept(result);
+      }
+    }
+  }
+
+  private static final class MultipleResults<E> implements ResultSender<Iterable<? extends E>, E> {
+    @Override
+    public void send(@Nullable Iterable<? extends E> result, Consumer<E> output) {
+      if (result == null) {
+        return;
+      }
+
+      for (E event : result) {
+        output.accept(event);
+      }
+    }
+  }
+
+  private static final class AsyncConnectable<F, R, E> implements Connectable<F, E> {
+    private final Function<F, ? extends CompletionStage<? extends R>> function;
+    private final ResultSender<R, E> sender;
+    private final int maxInFlight;
+
+    AsyncConnectable(
+        Function<F, ? extends CompletionStage<? extends R>> function,
+        ResultSender<R, E> sender,
+        int maxInFlight) {
+      this.function = function;
+      this.sender = sender;
+      this.maxInFlight = maxInFlight;
+    }
+
+    @Nonnull
+    @Override
+    public Connection<F> connect(Consumer<E> output) {
+      return new AsyncConnection<>(function, sender, maxInFlight, checkNotNull(output));
+    }
+  }
+
+  private static final class AsyncConnection<F, R, E> implements Connection<F> {
+    private final Function<F, ? extends CompletionStage<? extends R>> function;
+    private final ResultSender<R, E> sender;
+    private final int maxInFlight;
+    private final Consumer<E> output;
+
+    // guarded by 'this'
+    private final Set<CompletionStage<?>> inFlight =
+        Collections.newSetFromMap(new IdentityHashMap<CompletionStage<?>, Boolean>());
+    private final Queue<F> waiting = new ArrayDeque<>();
+    private int startedCount;
+    private boolean draining;
+    private boolean disposed;
+
+    AsyncConnection(
+        Function<F, ? extends CompletionStage<? extends R>> function,
+        ResultSender<R, E> sender,
+        int maxInFlight,
+        Consumer<E> output) {
+      this.function = function;
+      this.sender = sender;
+      this.maxInFlight = maxInFlight;
+      this.output = output;
+    }
+
+    @Override
+    public void accept(F effect) {
+      checkNotNull(effect);
+
+      F next;
+      synchronized (this) {
+        if (disposed) {
+          return;
+        }
+
+        if (maxInFlight > 0 && startedCount >= maxInFlight) {
+          waiting.add(effect);
+          return;
+        }
+
+        startedCount++;
+        // a slot was just freed and not yet handed to the queue; keep the effects in order
+        next = waiting.isEmpty() ? effect : waiting.remove();
+        if (next != effect) {
+          waiting.add(effect);
+        }
+      }
+
+      start(next);
+    }
+
+    @Override
+    public void dispose() {
+      List<CompletionStage<?>> cancelled;
+
+      synchronized (this) {
+        disposed = true;
+        waiting.clear();
+        cancelled = new ArrayList<>(inFlight);
+        inFlight.clear();
+      }
+
+      for (CompletionStage<?> stage : cancelled) {
+        cancel(stage);
+      }
+    }
+
+    private void start(final F effect) {
+      final CompletionStage<? extends R> stage;
+      try {
+        stage = checkNotNull(function.apply(effect));
+      } catch (RuntimeException e) {
+        MobiusHooks.handleError(
+            new RuntimeException("Async effect handler threw an exception for: " + effect, e));
+        finished();
+        return;
+      }
+
+      synchronized (this) {
+        if (disposed) {
+          cancel(stage);
+          return;
+        }
+
+        inFlight.add(stage);
+      }
+
+      stage.whenComplete(
+          (result, error) -> {
+            synchronized (this) {
+              if (!inFlight.remove(stage)) {
+                // disposed while in flight
+                return;
+              }
+            }
+
+            try {
+              if (error != null) {
+                reportFailure(effect, error);
+              } else {
+                sender.send(result, output);
+              }
+            } catch (RuntimeException e) {
+              MobiusHooks.handleError(
+                  new RuntimeException("Failed to deliver async effect result for: " + effect, e));
+            } finally {
+              finished();
+            }
+          });
+    }
+
+    private void finished() {
+      synchronized (this) {
+        startedCount--;
+      }
+
+      drain();
+    }
+
+    // Stages that are already complete run their callback inside whenComplete, so starting the
+    // next waiting effect from there would recurse once per queued effect. Instead, one thread at
+    // a time starts waiting effects in a loop, and others just leave their freed slot to it.
+    private void drain() {
+      synchronized (this) {
+        if (draining) {
+          return;
+        }
+        draining = true;
+      }
+
+      boolean drained = false;
+      try {
+        F next;
+        while ((next = nextWaiting()) != null) {
+          start(next);
+        }
+        drained = true;
+      } finally {
+        if (!drained) {
+          synchronized (this) {
+            draining = false;
+          }
+        }
+      }
+    }
+
+    // clears 'draining' in the same critical section that finds nothing to start, so that a slot
+    // freed concurrently is never missed
+    private synchronized F nextWaiting() {
+      if (disposed || startedCount >= maxInFlight || waiting.isEmpty()) {
+        draining = false;
+        return null;
+      }
+
+      startedCount++;
+      return waiting.remove();
+    }
+
+    private static void reportFailure(Object effect, Throwable error) {
+      Throwable cause = error instanceof CompletionException ? error.getCause() : error;
+      if (cause instanceof CancellationException) {
+        return;
+      }
+
+      MobiusHooks.handleError(
+          new RuntimeException("Async effect handler failed for: " + effect, cause));
+    }
+
+    private static void cancel(CompletionStage<?> stage) {
+      try {
+        stage.toCompletableFuture().cancel(true);
+      } catch (UnsupportedOperationException e) {
+        // the stage can't be cancelled; its result will be ignored
+      }
+    }
+  }
+}
@@ -0,0 +1,224 @@
+/*
+ * -\-\-
+ * Mobius
+ * --
+ * Copyright (c) 2017-2020 Spotify AB
+ * --
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -/-/-
+ */
+package com.spotify.mobius.effects;
+
+import static com.spotify.mobius.internal_util.Preconditions.checkArgument;
+import static com.spotify.mobius.internal_util.Preconditions.checkNotNull;
+
+import com.spotify.mobius.Connectable;
+import com.spotify.mobius.Connection;
+import com.spotify.mobius.MobiusHooks;
+import com.spotify.mobius.functions.Consumer;
+import com.spotify.mobius.functions.Function;
+import com.spotify.mobius.runners.WorkRunner;
+import com.spotify.mobius.runners.WorkRunners;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Queue;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * A {@link Connectable} that runs effects with the same key one at a time and in order, and
+ * effects with different keys in parallel.
+ *
+ * <p>Each effect is mapped to a key using a function, for instance the id of the entity it
+ * concerns. Effects whose key has no effect running are posted to a work runner right away; others
+ * are queued behind the running effect for their key. The queue for a key is dropped as soon as it
+ * becomes empty, so keys don't accumulate over time.
+ *
+ * <p>Ordering is only preserved for effects that reach this connectable in order, so loops using
+ * it should use {@link WorkRunners#immediate()} as their effect runner, and let this connectable
+ * decide which effects can run in parallel:
+ *
+ * <pre>{@code
+ * Mobius.loop(update, KeyedSerialConnectable.create(Effect::playlistId, handler, 8))
+ *     .effectRunner(WorkRunners::immediate)
+ * }</pre>
+ *
+ * <p>The connection of the wrapped handler must accept effects from several threads at once,
+ * though never two effects with the same key. Exceptions thrown by it are reported to {@link
+ * MobiusHooks#handleError(Throwable)}, and don't stop later effects with the same key from
+ * running.
+ *
+ * @param <F> the effect type
+ * @param <E> the event type
+ */
+public final class KeyedSerialConnectable<F, E> implements Connectable<F, E> {
+
+  private final Function<F, ?> keyFunction;
+  private final Connectable<F, E> delegate;
+  @Nullable private final WorkRunner sharedRunner;
+  private final int parallelism;
+
+  private KeyedSerialConnectable(
+      Function<F, ?> keyFunction,
+      Connectable<F, E> delegate,
+      @Nullable WorkRunner sharedRunner,
+      int parallelism) {
+    this.keyFunction = keyFunction;
+    this.delegate = delegate;
+    this.sharedRunner = sharedRunner;
+    this.parallelism = parallelism;
+  }
+
+  /**
+   * Creates a connectable that gives each connection a fixed pool of threads of its own, which is
+   * disposed along with the connection.
+   *
+   * @param keyFunction maps effects to keys; effects with equal keys are run in order
+   * @param delegate the effect handler that runs the effects
+   * @param parallelism the maximum number of effects to run at the same time
+   */
+  public static <F, E> KeyedSerialConnectable<F, E> create(
+      Function<F, ?> keyFunction, Connectable<F, E> delegate, int parallelism) {
+    checkArgument(parallelism > 0);
+    return new KeyedSerialConnectable<>(
+        checkNotNull(keyFunction), checkNotNull(delegate), null, parallelism);
+  }
+
+  /**
+   * Creates a connectable that runs effects on the supplied work runner, which isn't disposed when
+   * a connection is disposed. The work runner decides how many effects run at the same time, so it
+   * can be shared by several loops to bound their combined parallelism.
+   *
+   * @param keyFunction maps effects to keys; effects with equal keys are run in order
+   * @param delegate the effect handler that runs the effects
+   * @param runner the work runner to run effects on
+   */
+  public static <F, E> KeyedSerialConnectable<F, E> create(
+      Function<F, ?> keyFunction, Connectable<F, E> delegate, WorkRunner runner) {
+    return new KeyedSerialConnectable<>(
+        checkNotNull(keyFunction), checkNotNull(delegate), checkNotNull(runner), 0);
+  }
+
+  @Nonnull
+  @Override
+  public Connection<F> connect(Consumer<E> output) {
+    Connection<F> connection = delegate.connect(output);
+
+    if (sharedRunner != null) {
+      return new KeyedSerialConnection(connection, sharedRunner, false);
+    }
+
+    return new KeyedSerialConnection(connection, WorkRunners.fixedThreadPool(parallelism), true);
+  }
+
+  private final class KeyedSerialConnection implements Connection<F> {
+    private final Connection<F> connection;
+    private final WorkRunner runner;
+    private final boolean ownsRunner;
+
+    // guarded by 'this'; contains the keys that have an effect running
+    private final Map<Object, Queue<F>> queues = new HashMap<>();
+    private boolean disposed;
+
+    KeyedSerialConnection(Connection<F> connection, WorkRunner runner, boolean ownsRunner) {
+      this.connection = connection;
+      this.runner = runner;
+      this.ownsRunner = ownsRunner;
+    }
+
+    @Override
+    public void accept(F effect) {
+      Object key = checkNotNull(keyFunction.apply(checkNotNull(effect)));
+
+      synchronized (this) {
+        if (disposed) {
+          return;
+        }
+
+        Queue<F> queue = queues.get(key);
+        if (queue != null) {
+          queue.add(effect);
+          return;
+        }
+
+        queues.put(key, new ArrayDeque<F>());
+      }
+
+      runner.post(new EffectTask(key, effect));
+    }
+
+    @Override
+    public void dispose() {
+      synchronized (this) {
+        disposed = true;
+        queues.clear();
+      }
+
+      connection.dispose();
+
+      if (ownsRunner) {
+        runner.dispose();
+      }
+    }
+
+    private final class EffectTask implements Runnable {
+      private final Object key;
+      private final F effect;
+
+      EffectTask(Object key, F effect) {
+        this.key = key;
+        this.effect = effect;
+      }
+
+      @Override
+      public void run() {
+        synchronized (KeyedSerialConnection.this) {
+          if (disposed) {
+            return;
+          }
+        }
+
+        try {
+          connection.accept(effect);
+        } catch (RuntimeException e) {
+          MobiusHooks.handleError(
+              new RuntimeException("Effect handler threw an exception for: " + effect, e));
+        } finally {
+          // an Error escaping the handler must not leave the key blocked forever
+          startNext();
+        }
+      }
+
+      private void startNext() {
+        F next;
+        synchronized (KeyedSerialConnection.this) {
+          Queue<F> queue = queues.get(key);
+          if (queue == null) {
+            // disposed while running
+            return;
+          }
+
+          next = queue.poll();
+          if (next == null) {
+            queues.remove(key);
+            return;
+          }
+        }
+
+        // post rather than loop, so that a busy key doesn't hold on to a thread
+        runner.post(new EffectTask(key, next));
+      }
+    }
+  }
+}
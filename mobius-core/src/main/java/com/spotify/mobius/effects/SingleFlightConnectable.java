@@ -0,0 +1,202 @@
+/*
+ * -\-\-
+ * Mobius
+ * --
+ * Copyright (c) 2017-2020 Spotify AB
+ * --
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -/-/-
+ */
+package com.spotify.mobius.effects;
+
+import static com.spotify.mobius.internal_util.Preconditions.checkNotNull;
+
+import com.spotify.mobius.Connectable;
+import com.spotify.mobius.Connection;
+import com.spotify.mobius.MobiusHooks;
+import com.spotify.mobius.functions.Consumer;
+import com.spotify.mobius.functions.Function;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * A {@link Connectable} that collapses identical effects that are handled at the same time into a
+ * single execution, and sends its event to every requester.
+ *
+ * <p>Effects are identical if they have equal keys; by default, the key is the effect itself. The
+ * first effect for a key is handled on the thread that dispatched it, like with a plain effect
+ * handler. Identical effects that arrive while it's running don't call the handler; they return
+ * right away, and receive the same event when the running execution completes. Once it has
+ * completed, the next effect for the key is handled again.
+ *
+ * <p>By default, only effects from the same connection are collapsed. Use {@link
+ * Builder#acrossConnections()} to collapse identical effects from all loops that use the same
+ * instance of this connectable, for instance when many loops fetch the same configuration.
+ *
+ * <p>Exceptions thrown by the handler are reported once to {@link
+ * MobiusHooks#handleError(Throwable)}, and no requester receives an event.
+ *
+ * @param <F> the effect type
+ * @param <E> the event type
+ */
+public final class SingleFlightConnectable<F, E> implements Connectable<F, E> {
+
+  private final Function<F, E> handler;
+  @Nullable private final Function<F, ?> keyFunction;
+  @Nullable private final Flights sharedFlights;
+
+  private final AtomicLong executionCount = new AtomicLong();
+  private final AtomicLong collapsedCount = new AtomicLong();
+
+  private SingleFlightConnectable(
+      Function<F, E> handler, @Nullable Function<F, ?> keyFunction, boolean acrossConnections) {
+    this.handler = handler;
+    this.keyFunction = keyFunction;
+    this.sharedFlights = acrossConnections ? new Flights() : null;
+  }
+
+  /** Creates a builder for a connectable that collapses identical effects passed to the handler. */
+  public static <F, E> Builder<F, E> builder(Function<F, E> handler) {
+    return new Builder<>(checkNotNull(handler), null, false);
+  }
+
+  @Nonnull
+  @Override
+  public Connection<F> connect(Consumer<E> output) {
+    return new SingleFlightConnection(
+        checkNotNull(output), sharedFlights != null ? sharedFlights : new Flights());
+  }
+
+  /** Returns the number of times the handler has been called. */
+  public long executionCount() {
+    return executionCount.get();
+  }
+
+  /** Returns the number of effects that received the event of an execution started by another. */
+  public long collapsedCount() {
+    return collapsedCount.get();
+  }
+
+  /** The executions in flight, by key, along with the connections waiting for them. */
+  private final class Flights {
+    // guarded by 'this'
+    private final Map<Object, List<SingleFlightConnection>> waiting = new HashMap<>();
+  }
+
+  private final class SingleFlightConnection implements Connection<F> {
+    private final Consumer<E> output;
+    private final Flights flights;
+    private volatile boolean disposed;
+
+    SingleFlightConnection(Consumer<E> output, Flights flights) {
+      this.output = output;
+      this.flights = flights;
+    }
+
+    @Override
+    public void accept(F effect) {
+      checkNotNull(effect);
+      if (disposed) {
+        return;
+      }
+
+      Object key = keyFunction != null ? checkNotNull(keyFunction.apply(effect)) : effect;
+
+      synchronized (flights) {
+        List<SingleFlightConnection> requesters = flights.waiting.get(key);
+        if (requesters != null) {
+          requesters.add(this);
+          collapsedCount.incrementAndGet();
+          return;
+        }
+
+        requesters = new ArrayList<>();
+        requesters.add(this);
+        flights.waiting.put(key, requesters);
+      }
+
+      executionCount.incrementAndGet();
+
+      E event = null;
+      List<SingleFlightConnection> requesters;
+      try {
+        event = handler.apply(effect);
+      } catch (RuntimeException e) {
+        MobiusHooks.handleError(
+            new RuntimeException("Effect handler threw an exception for: " + effect, e));
+      } finally {
+        // an Error escaping the handler must not leave the key blocked forever
+        synchronized (flights) {
+          requesters = flights.waiting.remove(key);
+        }
+      }
+
+      if (event == null) {
+        return;
+      }
+
+      for (SingleFlightConnection requester : requesters) {
+        if (!requester.disposed) {
+          requester.output.accept(event);
+        }
+      }
+    }
+
+    @Override
+    public void dispose() {
+      disposed = true;
+    }
+  }
+
+  /**
+   * Builder for a {@link SingleFlightConnectable}. Builders are immutable; each method returns a
+   * new builder.
+   *
+   * @param <F> the effect type
+   * @param <E> the event type
+   */
+  public static final class Builder<F, E> {
+    private final Function<F, E> handler;
+    @Nullable private final Function<F, ?> keyFunction;
+    private final boolean acrossConnections;
+
+    private Builder(
+        Function<F, E> handler, @Nullable Function<F, ?> keyFunction, boolean acrossConnections) {
+      this.handler = handler;
+      this.keyFunction = keyFunction;
+      this.acrossConnections = acrossConnections;
+    }
+
+    /**
+     * Sets the function that maps effects to keys; effects with equal keys are collapsed. By
+     * default, effects are compared using {@link Object#equals(Object)}.
+     */
+    public Builder<F, E> key(Function<F, ?> keyFunction) {
+      return new Builder<>(handler, checkNotNull(keyFunction), acrossConnections);
+    }
+
+    /** Collapses identical effects from all connections, rather than within each connection. */
+    public Builder<F, E> acrossConnections() {
+      return new Builder<>(handler, keyFunction, true);
+    }
+
+    public SingleFlightConnectable<F, E> build() {
+      return new SingleFlightConnectable<>(handler, keyFunction, acrossConnections);
+    }
+  }
+}
@@ -0,0 +1,323 @@
+/*
+ * -\-\-
+ * Mobius
+ * --
+ * Copyright (c) 2017-2020 Spotify AB
+ * --
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -/-/-
+ */
+package com.spotify.mobius.effects;
+
+import static com.spotify.mobius.internal_util.Preconditions.checkNotNull;
+
+import com.spotify.mobius.Connectable;
+import com.spotify.mobius.Connection;
+import com.spotify.mobius.MobiusHooks;
+import com.spotify.mobius.functions.Consumer;
+import com.spotify.mobius.functions.Function;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * A {@link Connectable} where a new effect supersedes the running effect with the same key: the
+ * earlier execution is cancelled, and its event is never sent. This suits effects such as searches,
+ * where only the result for the latest query matters.
+ *
+ * <p>An execution that is already sending its event when it's superseded finishes sending it first:
+ * {@link Connection#accept(Object)} and {@link Connection#dispose()} wait for that, so no
+ * superseded event reaches the output once they have returned. The output should therefore not
+ * block on other effects of the same connection.
+ *
+ * <p>Effects are handled by a blocking function on an executor. Cancelling an execution interrupts
+ * the thread running it, so functions that block interruptibly stop right away; others run to
+ * completion, but their results are discarded. Exceptions thrown by cancelled executions are
+ * ignored, while other exceptions are reported to {@link MobiusHooks#handleError(Throwable)}.
+ *
+ * <p>Running executions can also be cancelled explicitly, by effects of the classes registered with
+ * {@link Builder#cancelOn(Class, Function)}. Those effects aren't passed to the handler.
+ *
+ * @param <F> the effect type
+ * @param <E> the event type
+ */
+public final class SwitchingConnectable<F, E> implements Connectable<F, E> {
+
+  private final Function<F, ?> keyFunction;
+  private final Function<F, E> handler;
+  private final List<Canceller<F>> cancellers;
+  @Nullable private final ExecutorService executor;
+
+  private SwitchingConnectable(
+      Function<F, ?> keyFunction,
+      Function<F, E> handler,
+      List<Canceller<F>> cancellers,
+      @Nullable ExecutorService executor) {
+    this.keyFunction = keyFunction;
+    this.handler = handler;
+    this.cancellers = cancellers;
+    this.executor = executor;
+  }
+
+  /**
+   * Creates a builder for a connectable that passes effects to the handler, cancelling the running
+   * execution for the same key whenever a new effect arrives.
+   *
+   * @param keyFunction maps effects to keys; an effect supersedes running effects with an equal key
+   * @param handler handles an effect, returning the event to send to the loop
+   */
+  public static <F, E> Builder<F, E> builder(Function<F, ?> keyFunction, Function<F, E> handler) {
+    return new Builder<>(
+        checkNotNull(keyFunction),
+        checkNotNull(handler),
+        Collections.<Canceller<F>>emptyList(),
+        null);
+  }
+
+  @Nonnull
+  @Override
+  public Connection<F> connect(Consumer<E> output) {
+    if (executor != null) {
+      return new SwitchingConnection(output, executor, false);
+    }
+
+    return new SwitchingConnection(output, Executors.newCachedThreadPool(), true);
+  }
+
+  private final class SwitchingConnection implements Connection<F> {
+    private final Consumer<E> output;
+    private final ExecutorService executor;
+    private final boolean ownsExecutor;
+
+    // guarded by 'this'
+    private final Map<Object, Execution> running = new HashMap<>();
+    private boolean disposed;
+
+    SwitchingConnection(Consumer<E> output, ExecutorService executor, boolean ownsExecutor) {
+      this.output = checkNotNull(output);
+      this.executor = executor;
+      this.ownsExecutor = ownsExecutor;
+    }
+
+    @Override
+    public void accept(F effect) {
+      checkNotNull(effect);
+
+      for (Canceller<F> canceller : cancellers) {
+        if (canceller.effectClass.isInstance(effect)) {
+          cancel(canceller.key(effect));
+          return;
+        }
+      }
+
+      Object key = checkNotNull(keyFunction.apply(effect));
+      Execution execution = new Execution(key, effect);
+      Execution superseded;
+
+      RejectedExecutionException rejected = null;
+
+      synchronized (this) {
+        if (disposed) {
+          return;
+        }
+
+        superseded = running.put(key, execution);
+        try {
+          execution.future = executor.submit(execution);
+        } catch (RejectedExecutionException e) {
+          running.remove(key);
+          rejected = e;
+        }
+      }
+
+      // the new effect supersedes the running one even if it can't be started itself
+      if (superseded != null) {
+        superseded.cancel();
+      }
+
+      if (rejected != null) {
+        MobiusHooks.handleError(
+            new RuntimeException("Executor rejected effect: " + effect, rejected));
+      }
+    }
+
+    @Override
+    public void dispose() {
+      List<Execution> cancelled;
+
+      synchronized (this) {
+        disposed = true;
+        cancelled = new ArrayList<>(running.values());
+        running.clear();
+      }
+
+      for (Execution execution : cancelled) {
+        execution.cancel();
+      }
+
+      if (ownsExecutor) {
+        executor.shutdownNow();
+      }
+    }
+
+    private void cancel(Object key) {
+      Execution execution;
+
+      synchronized (this) {
+        execution = running.remove(key);
+      }
+
+      if (execution != null) {
+        execution.cancel();
+      }
+    }
+
+    private final class Execution implements Runnable {
+      private final Object key;
+      private final F effect;
+
+      // guarded by SwitchingConnection.this
+      @Nullable private Future<?> future;
+
+      // written while holding 'deliveryLock', so that cancel() can't complete while the event is
+      // being sent
+      private final Object deliveryLock = new Object();
+      private volatile boolean cancelled;
+
+      Execution(Object key, F effect) {
+        this.key = key;
+        this.effect = effect;
+      }
+
+      @Override
+      public void run() {
+        if (cancelled) {
+          return;
+        }
+
+        E event;
+        try {
+          event = handler.apply(effect);
+        } catch (RuntimeException e) {
+          if (!cancelled) {
+            MobiusHooks.handleError(
+                new RuntimeException("Effect handler threw an exception for: " + effect, e));
+          }
+          event = null;
+        }
+
+        // stay in 'running' until the event is sent, so that an effect arriving meanwhile waits
+        // for it in cancel() instead of racing with it
+        try {
+          synchronized (deliveryLock) {
+            if (!cancelled && event != null) {
+              output.accept(event);
+            }
+          }
+        } finally {
+          synchronized (SwitchingConnection.this) {
+            if (running.get(key) == this) {
+              running.remove(key);
+            }
+          }
+        }
+      }
+
+      void cancel() {
+        synchronized (deliveryLock) {
+          cancelled = true;
+        }
+
+        Future<?> future;
+        synchronized (SwitchingConnection.this) {
+          future = this.future;
+        }
+
+        if (future != null) {
+          future.cancel(true);
+        }
+      }
+    }
+  }
+
+  private static final class Canceller<F> {
+    private final Class<?> effectClass;
+    private final Function<Object, ?> keyFunction;
+
+    @SuppressWarnings("unchecked")
+    <C extends F> Canceller(Class<C> effectClass, Function<C, ?> keyFunction) {
+      this.effectClass = effectClass;
+      this.keyFunction = (Function<Object, ?>) keyFunction;
+    }
+
+    Object key(F effect) {
+      return checkNotNull(keyFunction.apply(effect));
+    }
+  }
+
+  /**
+   * Builder for a {@link SwitchingConnectable}. Builders are immutable; each method returns a new
+   * builder.
+   *
+   * @param <F> the effect type
+   * @param <E> the event type
+   */
+  public static final class Builder<F, E> {
+    private final Function<F, ?> keyFunction;
+    private final Function<F, E> handler;
+    private final List<Canceller<F>> cancellers;
+    @Nullable private final ExecutorService executor;
+
+    private Builder(
+        Function<F, ?> keyFunction,
+        Function<F, E> handler,
+        List<Canceller<F>> cancellers,
+        @Nullable ExecutorService executor) {
+      this.keyFunction = keyFunction;
+      this.handler = handler;
+      this.cancellers = cancellers;
+      this.executor = executor;
+    }
+
+    /**
+     * Makes effects of the given class cancel the running execution with the key returned by the
+     * function, if there is one.
+     */
+    public <C extends F> Builder<F, E> cancelOn(Class<C> effectClass, Function<C, ?> keyFunction) {
+      List<Canceller<F>> newCancellers = new ArrayList<>(cancellers);
+      newCancellers.add(new Canceller<F>(checkNotNull(effectClass), checkNotNull(keyFunction)));
+      return new Builder<>(
+          this.keyFunction, handler, Collections.unmodifiableList(newCancellers), executor);
+    }
+
+    /**
+     * Sets the executor that effects are handled on, which isn't shut down when a connection is
+     * disposed. By default, each connection gets a cached thread pool of its own.
+     */
+    public Builder<F, E> executor(ExecutorService executor) {
+      return new Builder<>(keyFunction, handler, cancellers, checkNotNull(executor));
+    }
+
+    public SwitchingConnectable<F, E> build() {
+      return new SwitchingConnectable<>(keyFunction, handler, cancellers, executor);
+    }
+  }
+}
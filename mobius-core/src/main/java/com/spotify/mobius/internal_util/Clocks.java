@@ -0,0 +1,47 @@
+/*
+ * -\-\-
+ * Mobius
+ * --
+ * Copyright (c) 2017-2020 Spotify AB
+ * --
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -/-/-
+ */
+package com.spotify.mobius.internal_util;
+
+import com.spotify.mobius.functions.Producer;
+import javax.annotation.Nonnull;
+
+/** Utilities for reading time in a way that tests can replace. */
+public final class Clocks {
+  private static final Producer<Long> SYSTEM_NANOS =
+      new Producer<Long>() {
+        @Nonnull
+        @Override
+        public Long get() {
+          return System.nanoTime();
+        }
+      };
+
+  private Clocks() {
+    // prevent instantiation
+  }
+
+  /**
+   * Returns a clock reading {@link System#nanoTime()}, for classes that take a nanosecond clock so
+   * that tests can control time.
+   */
+  public static Producer<Long> systemNanos() {
+    return SYSTEM_NANOS;
+  }
+}
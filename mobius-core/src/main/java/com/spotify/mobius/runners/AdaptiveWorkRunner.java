@@ -0,0 +1,375 @@
+/*
+ * -\-\-
+ * Mobius
+ * --
+ * Copyright (c) 2017-2020 Spotify AB
+ * --
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -/-/-
+ */
+package com.spotify.mobius.runners;
+
+import static com.spotify.mobius.internal_util.Preconditions.checkArgument;
+import static com.spotify.mobius.internal_util.Preconditions.checkNotNull;
+
+import com.spotify.mobius.MobiusHooks;
+import com.spotify.mobius.functions.Producer;
+import com.spotify.mobius.internal_util.Clocks;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A {@link WorkRunner} that limits how many runnables it runs on another work runner at the same
+ * time, and adjusts the limit to how long they take.
+ *
+ * <p>The limit is adjusted with an additive increase, multiplicative decrease (AIMD) rule: each
+ * runnable that completes within the latency threshold while the limit is being used raises the
+ * limit by one, and each one that takes longer lowers it by the backoff ratio. This way, effects
+ * get more threads while the services they call keep up, and fewer as soon as those services slow
+ * down, instead of piling more calls onto them.
+ *
+ * <p>Runnables beyond the limit wait in a queue, and start in order as running ones complete. When
+ * the queue is full, new runnables are discarded and a {@link RejectedExecutionException} is
+ * reported to {@link MobiusHooks#handleError(Throwable)}. The current limit, the number of running
+ * and queued runnables, and the smoothed latency are exposed for monitoring. A runnable that the
+ * delegate refuses to accept doesn't count as running; the exception from the delegate is thrown to
+ * the caller of {@link #post(Runnable)}, or reported to {@link MobiusHooks#handleError(Throwable)}
+ * if the runnable was queued.
+ *
+ * <p>The latency of a runnable is the time its {@link Runnable#run()} method takes, so it only
+ * reflects the latency of effects that are handled by blocking until the work is done, for instance
+ * by a {@link com.spotify.mobius.Connectable} that calls a synchronous client. Handlers that start
+ * asynchronous work and return right away always look fast, which would let the limit grow to its
+ * maximum; don't use this work runner with them.
+ *
+ * <p>Disposing this work runner discards the queued runnables and disposes the delegate.
+ */
+public final class AdaptiveWorkRunner implements WorkRunner {
+
+  // weight of each new sample in the smoothed latency
+  private static final double LATENCY_SMOOTHING = 0.2;
+
+  private final WorkRunner delegate;
+  private final int minLimit;
+  private final int maxLimit;
+  private final int maxQueueSize;
+  private final long latencyThresholdNanos;
+  private final double backoffRatio;
+  private final Producer<Long> clock;
+
+  // guarded by 'this'
+  private final Queue<Runnable> queue = new ArrayDeque<>();
+  private int limit;
+  private int inFlight;
+  private double smoothedLatencyNanos;
+  private long rejectedCount;
+  private boolean disposed;
+
+  private AdaptiveWorkRunner(Builder builder) {
+    this.delegate = builder.delegate;
+    this.minLimit = builder.minLimit;
+    this.maxLimit = builder.maxLimit;
+    this.maxQueueSize = builder.maxQueueSize;
+    this.latencyThresholdNanos = builder.latencyThresholdNanos;
+    this.backoffRatio = builder.backoffRatio;
+    this.clock = builder.clock;
+    this.limit = builder.initialLimit;
+  }
+
+  /**
+   * Creates a builder for a work runner that runs runnables on the delegate, which should be able
+   * to run at least as many runnables at the same time as the maximum limit, for instance {@link
+   * WorkRunners#cachedThreadPool()}.
+   */
+  public static Builder builder(WorkRunner delegate) {
+    return new Builder(
+        checkNotNull(delegate),
+        4,
+        1,
+        64,
+        Integer.MAX_VALUE,
+        TimeUnit.SECONDS.toNanos(1),
+        0.9,
+        Clocks.systemNanos());
+  }
+
+  @Override
+  public void post(Runnable runnable) {
+    checkNotNull(runnable);
+    int rejectedAtLimit;
+
+    synchronized (this) {
+      if (disposed) {
+        return;
+      }
+
+      if (inFlight < limit) {
+        inFlight++;
+        rejectedAtLimit = 0;
+      } else if (queue.size() < maxQueueSize) {
+        queue.add(runnable);
+        return;
+      } else {
+        rejectedCount++;
+        rejectedAtLimit = limit;
+      }
+    }
+
+    if (rejectedAtLimit > 0) {
+      MobiusHooks.handleError(
+          new RejectedExecutionException(
+              "AdaptiveWorkRunner is full: "
+                  + rejectedAtLimit
+                  + " running and "
+                  + maxQueueSize
+                  + " queued"));
+      return;
+    }
+
+    start(runnable);
+  }
+
+  @Override
+  public void dispose() {
+    synchronized (this) {
+      disposed = true;
+      queue.clear();
+    }
+
+    delegate.dispose();
+  }
+
+  /** Returns the current concurrency limit. */
+  public synchronized int limit() {
+    return limit;
+  }
+
+  /** Returns the number of runnables that are currently running or posted to the delegate. */
+  public synchronized int inFlight() {
+    return inFlight;
+  }
+
+  /** Returns the number of runnables that are waiting for the number in flight to drop. */
+  public synchronized int queueDepth() {
+    return queue.size();
+  }
+
+  /** Returns the number of runnables that were discarded because the queue was full. */
+  public synchronized long rejectedCount() {
+    return rejectedCount;
+  }
+
+  /** Returns the exponentially smoothed time runnables took to run, or 0 if none has completed. */
+  public synchronized long latency(TimeUnit unit) {
+    return unit.convert((long) smoothedLatencyNanos, TimeUnit.NANOSECONDS);
+  }
+
+  @Override
+  public synchronized String toString() {
+    return "AdaptiveWorkRunner{limit="
+        + limit
+        + ", inFlight="
+        + inFlight
+        + ", queued="
+        + queue.size()
+        + ", latencyMillis="
+        + TimeUnit.NANOSECONDS.toMillis((long) smoothedLatencyNanos)
+        + ", rejected="
+        + rejectedCount
+        + "}";
+  }
+
+  private void complete(long latencyNanos) {
+    List<Runnable> toStart = new ArrayList<>();
+
+    synchronized (this) {
+      smoothedLatencyNanos =
+          smoothedLatencyNanos == 0
+              ? latencyNanos
+              : smoothedLatencyNanos + LATENCY_SMOOTHING * (latencyNanos - smoothedLatencyNanos);
+
+      if (latencyNanos > latencyThresholdNanos) {
+        limit = Math.max(minLimit, (int) (limit * backoffRatio));
+      } else if (inFlight * 2 >= limit) {
+        // only raise the limit when it's actually being used
+        limit = Math.min(maxLimit, limit + 1);
+      }
+
+      inFlight--;
+
+      while (!disposed && inFlight < limit && !queue.isEmpty()) {
+        toStart.add(queue.remove());
+        inFlight++;
+      }
+    }
+
+    for (Runnable runnable : toStart) {
+      try {
+        start(runnable);
+      } catch (RuntimeException e) {
+        MobiusHooks.handleError(new RuntimeException("Failed to start queued runnable", e));
+      }
+    }
+  }
+
+  // must be called with a slot already counted in inFlight, which is given back if posting fails
+  private void start(Runnable runnable) {
+    try {
+      delegate.post(new MeasuredRunnable(runnable));
+    } catch (RuntimeException e) {
+      synchronized (this) {
+        inFlight--;
+      }
+      throw e;
+    }
+  }
+
+  private final class MeasuredRunnable implements Runnable {
+    private final Runnable runnable;
+
+    MeasuredRunnable(Runnable runnable) {
+      this.runnable = runnable;
+    }
+
+    // measures run() only; see the class documentation for why that requires blocking handlers
+    @Override
+    public void run() {
+      long start = clock.get();
+      try {
+        runnable.run();
+      } finally {
+        complete(clock.get() - start);
+      }
+    }
+  }
+
+  /**
+   * Builder for an {@link AdaptiveWorkRunner}. Builders are immutable; each method returns a new
+   * builder.
+   */
+  public static final class Builder {
+    private final WorkRunner delegate;
+    private final int initialLimit;
+    private final int minLimit;
+    private final int maxLimit;
+    private final int maxQueueSize;
+    private final long latencyThresholdNanos;
+    private final double backoffRatio;
+    private final Producer<Long> clock;
+
+    private Builder(
+        WorkRunner delegate,
+        int initialLimit,
+        int minLimit,
+        int maxLimit,
+        int maxQueueSize,
+        long latencyThresholdNanos,
+        double backoffRatio,
+        Producer<Long> clock) {
+      this.delegate = delegate;
+      this.initialLimit = initialLimit;
+      this.minLimit = minLimit;
+      this.maxLimit = maxLimit;
+      this.maxQueueSize = maxQueueSize;
+      this.latencyThresholdNanos = latencyThresholdNanos;
+      this.backoffRatio = backoffRatio;
+      this.clock = clock;
+    }
+
+    /**
+     * Sets the limit to start from, and the range it's kept within. The defaults are 4, 1 and 64.
+     */
+    public Builder limit(int initialLimit, int minLimit, int maxLimit) {
+      checkArgument(minLimit > 0 && minLimit <= initialLimit && initialLimit <= maxLimit);
+      return new Builder(
+          delegate,
+          initialLimit,
+          minLimit,
+          maxLimit,
+          maxQueueSize,
+          latencyThresholdNanos,
+          backoffRatio,
+          clock);
+    }
+
+    /**
+     * Sets the maximum number of runnables waiting to start; runnables posted when the queue is
+     * full are rejected. By default, the queue is unbounded.
+     */
+    public Builder maxQueueSize(int maxQueueSize) {
+      checkArgument(maxQueueSize >= 0);
+      return new Builder(
+          delegate,
+          initialLimit,
+          minLimit,
+          maxLimit,
+          maxQueueSize,
+          latencyThresholdNanos,
+          backoffRatio,
+          clock);
+    }
+
+    /**
+     * Sets the latency above which a runnable makes the limit decrease. The default is one second.
+     */
+    public Builder latencyThreshold(long threshold, TimeUnit unit) {
+      checkArgument(threshold > 0);
+      return new Builder(
+          delegate,
+          initialLimit,
+          minLimit,
+          maxLimit,
+          maxQueueSize,
+          unit.toNanos(threshold),
+          backoffRatio,
+          clock);
+    }
+
+    /**
+     * Sets the factor the limit is multiplied by when a runnable is too slow. The default is 0.9.
+     */
+    public Builder backoffRatio(double backoffRatio) {
+      checkArgument(backoffRatio > 0 && backoffRatio < 1);
+      return new Builder(
+          delegate,
+          initialLimit,
+          minLimit,
+          maxLimit,
+          maxQueueSize,
+          latencyThresholdNanos,
+          backoffRatio,
+          clock);
+    }
+
+    // for tests
+    Builder clock(Producer<Long> clock) {
+      return new Builder(
+          delegate,
+          initialLimit,
+          minLimit,
+          maxLimit,
+          maxQueueSize,
+          latencyThresholdNanos,
+          backoffRatio,
+          checkNotNull(clock));
+    }
+
+    public AdaptiveWorkRunner build() {
+      return new AdaptiveWorkRunner(this);
+    }
+  }
+}
@@ -0,0 +1,285 @@
+/*
+ * -\-\-
+ * Mobius
+ * --
+ * Copyright (c) 2017-2020 Spotify AB
+ * --
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -/-/-
+ */
+package com.spotify.mobius.runners;
+
+import static com.spotify.mobius.internal_util.Preconditions.checkArgument;
+import static com.spotify.mobius.internal_util.Preconditions.checkNotNull;
+
+import com.spotify.mobius.MobiusHooks;
+import com.spotify.mobius.disposables.Disposable;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.annotation.Nullable;
+
+/**
+ * A timer that keeps scheduled tasks in a hashed wheel of buckets, all served by a single daemon
+ * thread. Scheduling and cancelling are O(1), which makes it suitable for large numbers of
+ * short-lived timeouts, at the price of a resolution of one tick.
+ *
+ * <p>Tasks are executed on the timer thread, so they must be quick and must not block. When used
+ * through {@link WorkRunner#postDelayed(Runnable, long, TimeUnit)}, the task executed on the timer
+ * thread is just a post to the work runner.
+ */
+final class HashedWheelTimer {
+
+  private static final long DEFAULT_TICK_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+  private static final int DEFAULT_WHEEL_SIZE = 512;
+  private static final int MAX_TRANSFERS_PER_TICK = 100_000;
+
+  private static final int STATE_SCHEDULED = 0;
+  private static final int STATE_CANCELLED = 1;
+  private static final int STATE_EXPIRED = 2;
+
+  private final long tickNanos;
+  private final int mask;
+  private final Bucket[] wheel;
+  private final long startTime;
+
+  private final Queue<Timeout> pendingTimeouts = new ConcurrentLinkedQueue<>();
+  private final Queue<Timeout> cancelledTimeouts = new ConcurrentLinkedQueue<>();
+
+  // only accessed from the timer thread
+  private long tick;
+
+  private static final class Holder {
+    static final HashedWheelTimer INSTANCE =
+        new HashedWheelTimer(DEFAULT_TICK_NANOS, DEFAULT_WHEEL_SIZE, "mobius-timer");
+  }
+
+  /** Returns the timer shared by all work runners in this JVM, starting it if necessary. */
+  static HashedWheelTimer shared() {
+    return Holder.INSTANCE;
+  }
+
+  private HashedWheelTimer(long tickNanos, int wheelSize, String threadName) {
+    checkArgument(tickNanos > 0);
+    checkArgument(wheelSize > 0 && Integer.bitCount(wheelSize) == 1);
+
+    this.tickNanos = tickNanos;
+    this.mask = wheelSize - 1;
+    this.wheel = new Bucket[wheelSize];
+    for (int i = 0; i < wheelSize; i++) {
+      wheel[i] = new Bucket();
+    }
+
+    this.startTime = System.nanoTime();
+
+    Thread thread = new Thread(new Worker(), checkNotNull(threadName));
+    thread.setDaemon(true);
+    thread.start();
+  }
+
+  /**
+   * Schedules a task to be run on the timer thread after the given delay, and then optionally
+   * repeatedly with the given period.
+   *
+   * @param task the task to run
+   * @param delayNanos the delay before the first execution
+   * @param periodNanos the period between subsequent executions, or 0 to only run the task once
+   * @return a {@link Disposable} that cancels any future executions of the task
+   */
+  Disposable schedule(Runnable task, long delayNanos, long periodNanos) {
+    checkArgument(periodNanos >= 0);
+
+    long deadline = saturatedAdd(System.nanoTime() - startTime, Math.max(delayNanos, 0));
+    Timeout timeout = new Timeout(checkNotNull(task), deadline, periodNanos);
+    pendingTimeouts.add(timeout);
+    return timeout;
+  }
+
+  // deadlines far enough in the future to overflow would otherwise wrap around and expire at once
+  private static long saturatedAdd(long a, long b) {
+    return b > Long.MAX_VALUE - a ? Long.MAX_VALUE : a + b;
+  }
+
+  private final class Worker implements Runnable {
+    @Override
+    public void run() {
+      //noinspection InfiniteLoopStatement
+      while (true) {
+        waitForNextTick();
+
+        removeCancelledTimeouts();
+        transferPendingTimeouts();
+        wheel[(int) (tick & mask)].expireTimeouts();
+
+        tick++;
+      }
+    }
+
+    private void waitForNextTick() {
+      long deadline = tickNanos * (tick + 1);
+
+      while (true) {
+        long now = System.nanoTime() - startTime;
+        long sleepMillis = TimeUnit.NANOSECONDS.toMillis(deadline - now + 999_999);
+
+        if (sleepMillis <= 0) {
+          return;
+        }
+
+        try {
+          Thread.sleep(sleepMillis);
+        } catch (InterruptedException e) {
+          // the shared timer never stops; ignore interruptions
+        }
+      }
+    }
+
+    private void removeCancelledTimeouts() {
+      Timeout timeout;
+      while ((timeout = cancelledTimeouts.poll()) != null) {
+        if (timeout.bucket != null) {
+          timeout.bucket.remove(timeout);
+        }
+      }
+    }
+
+    private void transferPendingTimeouts() {
+      for (int i = 0; i < MAX_TRANSFERS_PER_TICK; i++) {
+        Timeout timeout = pendingTimeouts.poll();
+        if (timeout == null) {
+          return;
+        }
+
+        if (timeout.state.get() == STATE_CANCELLED) {
+          continue;
+        }
+
+        long calculatedTick = timeout.deadline / tickNanos;
+        timeout.remainingRounds = (calculatedTick - tick) / wheel.length;
+
+        // timeouts whose deadline has already passed go in the current bucket
+        long targetTick = Math.max(calculatedTick, tick);
+        wheel[(int) (targetTick & mask)].add(timeout);
+      }
+    }
+  }
+
+  private final class Timeout implements Disposable {
+    private final Runnable task;
+    private final long periodNanos;
+    private final AtomicInteger state = new AtomicInteger(STATE_SCHEDULED);
+
+    // the remaining fields are only accessed from the timer thread
+    private long deadline;
+    private long remainingRounds;
+    @Nullable private Bucket bucket;
+    @Nullable private Timeout next;
+    @Nullable private Timeout prev;
+
+    Timeout(Runnable task, long deadline, long periodNanos) {
+      this.task = task;
+      this.deadline = deadline;
+      this.periodNanos = periodNanos;
+    }
+
+    @Override
+    public void dispose() {
+      if (state.compareAndSet(STATE_SCHEDULED, STATE_CANCELLED)) {
+        cancelledTimeouts.add(this);
+      }
+    }
+
+    void expire() {
+      if (periodNanos == 0 && !state.compareAndSet(STATE_SCHEDULED, STATE_EXPIRED)) {
+        return;
+      }
+
+      if (periodNanos > 0 && state.get() != STATE_SCHEDULED) {
+        return;
+      }
+
+      try {
+        task.run();
+      } catch (Throwable t) {
+        MobiusHooks.handleError(new RuntimeException("Timer task threw an exception: " + task, t));
+      }
+
+      if (periodNanos > 0) {
+        deadline = saturatedAdd(deadline, periodNanos);
+        pendingTimeouts.add(this);
+      }
+    }
+  }
+
+  /** A doubly-linked list of timeouts, only accessed from the timer thread. */
+  private static final class Bucket {
+    @Nullable private Timeout head;
+    @Nullable private Timeout tail;
+
+    void add(Timeout timeout) {
+      timeout.bucket = this;
+      if (head == null) {
+        head = tail = timeout;
+      } else {
+        checkNotNull(tail).next = timeout;
+        timeout.prev = tail;
+        tail = timeout;
+      }
+    }
+
+    void expireTimeouts() {
+      Timeout timeout = head;
+
+      while (timeout != null) {
+        Timeout next = timeout.next;
+
+        if (timeout.remainingRounds <= 0) {
+          // the deadline is within the tick that just passed
+          remove(timeout);
+          timeout.expire();
+        } else if (timeout.state.get() == STATE_CANCELLED) {
+          remove(timeout);
+        } else {
+          timeout.remainingRounds--;
+        }
+
+        timeout = next;
+      }
+    }
+
+    void remove(Timeout timeout) {
+      if (timeout.bucket != this) {
+        return;
+      }
+
+      if (timeout.prev != null) {
+        timeout.prev.next = timeout.next;
+      }
+      if (timeout.next != null) {
+        timeout.next.prev = timeout.prev;
+      }
+
+      if (timeout == head) {
+        head = timeout.next;
+      }
+      if (timeout == tail) {
+        tail = timeout.prev;
+      }
+
+      timeout.prev = null;
+      timeout.next = null;
+      timeout.bucket = null;
+    }
+  }
+}
@@ -0,0 +1,43 @@
+/*
+ * -\-\-
+ * Mobius
+ * --
+ * Copyright (c) 2017-2020 Spotify AB
+ * --
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -/-/-
+ */
+package com.spotify.mobius.runners;
+
+import static com.spotify.mobius.internal_util.Preconditions.checkNotNull;
+
+/** A {@link Runnable} that posts another runnable to a {@link WorkRunner} when run. */
+final class PostTo implements Runnable {
+  private final WorkRunner runner;
+  private final Runnable runnable;
+
+  PostTo(WorkRunner runner, Runnable runnable) {
+    this.runner = checkNotNull(runner);
+    this.runnable = checkNotNull(runnable);
+  }
+
+  @Override
+  public void run() {
+    runner.post(runnable);
+  }
+
+  @Override
+  public String toString() {
+    return "PostTo{runner=" + runner + ", runnable=" + runnable + "}";
+  }
+}
@@ -20,6 +20,7 @@
 package com.spotify.mobius.runners;
 
 import com.spotify.mobius.disposables.Disposable;
+import java.util.concurrent.TimeUnit;
 
 /** Interface for posting runnables to be executed using different scheduling mechanisms. */
 public interface WorkRunner extends Disposable {
@@ -28,4 +29,47 @@ public interface WorkRunner extends Disposable {
    * called. Not doing this may result in undesired side effects, crashes, race conditions etc.
    */
   void post(Runnable runnable);
+
+  /**
+   * Posts the {@link Runnable} to this work runner after the given delay.
+   *
+   * <p>The default implementation uses a timer that is shared by all work runners in the JVM, and
+   * which has a resolution of about 10 milliseconds. When the delay has passed, the runnable is
+   * passed to {@link #post(Runnable)}, so it will be discarded if this work runner has been
+   * disposed by then.
+   *
+   * @param runnable the runnable to execute
+   * @param delay the time to wait before posting the runnable
+   * @param unit the unit of the delay
+   * @return a {@link Disposable} that can be used to cancel the runnable if it hasn't been posted
+   *     yet
+   */
+  default Disposable postDelayed(Runnable runnable, long delay, TimeUnit unit) {
+    return HashedWheelTimer.shared().schedule(new PostTo(this, runnable), unit.toNanos(delay), 0);
+  }
+
+  /**
+   * Posts the {@link Runnable} to this work runner periodically, first after the initial delay and
+   * then each time the period has passed, until the returned {@link Disposable} is disposed.
+   *
+   * <p>The default implementation uses the same shared timer as {@link #postDelayed(Runnable, long,
+   * TimeUnit)}. Callers are responsible for disposing of the returned {@link Disposable} when they
+   * no longer need the runnable to execute, for instance when an effect handler connection or event
+   * source subscription is disposed.
+   *
+   * @param runnable the runnable to execute
+   * @param initialDelay the time to wait before posting the runnable the first time
+   * @param period the time between subsequent posts of the runnable
+   * @param unit the unit of the initial delay and period
+   * @return a {@link Disposable} that can be used to stop any further executions
+   */
+  default Disposable schedulePeriodic(
+      Runnable runnable, long initialDelay, long period, TimeUnit unit) {
+    if (period <= 0) {
+      throw new IllegalArgumentException("period must be positive, was: " + period);
+    }
+
+    return HashedWheelTimer.shared()
+        .schedule(new PostTo(this, runnable), unit.toNanos(initialDelay), unit.toNanos(period));
+  }
 }
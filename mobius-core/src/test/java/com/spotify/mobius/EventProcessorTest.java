@@ -19,6 +19,9 @@
  */
 package com.spotify.mobius;
 
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
 import com.google.common.collect.Sets;
 import com.spotify.mobius.test.RecordingConsumer;
 import java.util.Set;
@@ -70,6 +73,62 @@ public class EventProcessorTest {
     effectConsumer.assertValuesInAnyOrder(10L, 20L, 30L);
   }
 
+  @Test
+  public void shouldEmitUnchangedModelsByDefault() throws Exception {
+    underTest.update(-1);
+    underTest.update(-2);
+    stateConsumer.assertValues("init!", "init!");
+  }
+
+  @Test
+  public void shouldSuppressIdenticalModelsWhenComparingByIdentity() throws Exception {
+    underTest =
+        new EventProcessor<>(
+            MobiusStore.create(createUpdate(), "init!"),
+            effectConsumer,
+            stateConsumer,
+            ModelComparison.IDENTITY);
+
+    underTest.update(-1);
+    underTest.update(-2);
+    underTest.update(1);
+
+    stateConsumer.assertValues("init!", "init!->1");
+    assertThat(underTest.suppressedModelCount(), is(1L));
+  }
+
+  @Test
+  public void shouldSuppressEqualModelsWhenComparingByEquality() throws Exception {
+    underTest =
+        new EventProcessor<>(
+            MobiusStore.create(createUpdate(), "init!"),
+            effectConsumer,
+            stateConsumer,
+            ModelComparison.EQUALITY);
+
+    underTest.update(-1);
+    underTest.update(-2);
+    underTest.update(1);
+
+    stateConsumer.assertValues("init!->1");
+    assertThat(underTest.suppressedModelCount(), is(2L));
+  }
+
+  @Test
+  public void shouldDispatchEffectsWhenModelIsSuppressed() throws Exception {
+    underTest =
+        new EventProcessor<>(
+            MobiusStore.create(createUpdate(), "init!"),
+            effectConsumer,
+            stateConsumer,
+            ModelComparison.EQUALITY);
+
+    underTest.update(-3);
+
+    stateConsumer.assertValues();
+    effectConsumer.assertValues(99L);
+  }
+
   private Update<String, Integer, Long> createUpdate() {
     return new Update<String, Integer, Long>() {
       @Nonnull
@@ -78,6 +137,15 @@ public class EventProcessorTest {
         if (event == 0) {
           return Next.noChange();
         }
+        if (event == -1) {
+          return Next.next(model);
+        }
+        if (event == -2) {
+          return Next.next(new String(model));
+        }
+        if (event == -3) {
+          return Next.next(new String(model), Effects.effects(99L));
+        }
 
         Set<Long> effects = Sets.newHashSet();
         for (int i = 0; i < event; i++) {
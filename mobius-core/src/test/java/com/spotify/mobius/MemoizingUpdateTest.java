@@ -0,0 +1,135 @@
+/*
+ * -\-\-
+ * Mobius
+ * --
+ * Copyright (c) 2017-2020 Spotify AB
+ * --
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -/-/-
+ */
+package com.spotify.mobius;
+
+import static com.spotify.mobius.Effects.effects;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.util.ArrayList;
+import java.util.List;
+import javax.annotation.Nonnull;
+import org.junit.Before;
+import org.junit.Test;
+
+public class MemoizingUpdateTest {
+
+  private List<String> calls;
+  private Update<String, Integer, Boolean> update;
+
+  @Before
+  public void setUp() throws Exception {
+    calls = new ArrayList<>();
+    update =
+        new Update<String, Integer, Boolean>() {
+          @Nonnull
+          @Override
+          public Next<String, Boolean> update(String model, Integer event) {
+            calls.add(model + event);
+            if (event < 0) {
+              throw new IllegalArgumentException("negative");
+            }
+            return Next.next(model + "-", effects(event % 2 == 0));
+          }
+        };
+  }
+
+  @Test
+  public void shouldReturnRememberedResultForSameModelAndEvent() throws Exception {
+    MemoizingUpdate<String, Integer, Boolean> memoizing =
+        MemoizingUpdate.byModelEquality(update, 10);
+
+    Next<String, Boolean> first = memoizing.update("model", 1);
+    Next<String, Boolean> second = memoizing.update(new String("model"), 1);
+
+    assertThat(second).isSameAs(first);
+    assertThat(calls).containsExactly("model1");
+    assertThat(memoizing.stats().hitCount()).isEqualTo(1);
+    assertThat(memoizing.stats().missCount()).isEqualTo(1);
+    assertThat(memoizing.stats().hitRate()).isEqualTo(0.5);
+  }
+
+  @Test
+  public void shouldCallUpdateForDifferentEvents() throws Exception {
+    MemoizingUpdate<String, Integer, Boolean> memoizing =
+        MemoizingUpdate.byModelEquality(update, 10);
+
+    assertThat(memoizing.update("model", 1)).isEqualTo(Next.next("model-", effects(false)));
+    assertThat(memoizing.update("model", 2)).isEqualTo(Next.next("model-", effects(true)));
+    assertThat(calls).containsExactly("model1", "model2");
+  }
+
+  @Test
+  public void shouldCompareModelsByIdentity() throws Exception {
+    MemoizingUpdate<String, Integer, Boolean> memoizing =
+        MemoizingUpdate.byModelIdentity(update, 10);
+    String model = "model";
+
+    memoizing.update(model, 1);
+    memoizing.update(model, 1);
+    memoizing.update(new String("model"), 1);
+
+    assertThat(calls).containsExactly("model1", "model1");
+    assertThat(memoizing.stats().hitCount()).isEqualTo(1);
+  }
+
+  @Test
+  public void shouldEvictLeastRecentlyUsedResults() throws Exception {
+    MemoizingUpdate<String, Integer, Boolean> memoizing =
+        MemoizingUpdate.byModelEquality(update, 2);
+
+    memoizing.update("a", 1);
+    memoizing.update("b", 1);
+    memoizing.update("a", 1);
+    memoizing.update("c", 1);
+    memoizing.update("a", 1);
+    memoizing.update("b", 1);
+
+    assertThat(calls).containsExactly("a1", "b1", "c1", "b1");
+    assertThat(memoizing.stats().evictionCount()).isEqualTo(2);
+    assertThat(memoizing.stats().size()).isEqualTo(2);
+  }
+
+  @Test
+  public void shouldNotRememberExceptions() throws Exception {
+    MemoizingUpdate<String, Integer, Boolean> memoizing =
+        MemoizingUpdate.byModelEquality(update, 10);
+
+    assertThatThrownBy(() -> memoizing.update("model", -1))
+        .isInstanceOf(IllegalArgumentException.class);
+    assertThatThrownBy(() -> memoizing.update("model", -1))
+        .isInstanceOf(IllegalArgumentException.class);
+
+    assertThat(calls).containsExactly("model-1", "model-1");
+  }
+
+  @Test
+  public void shouldForgetResultsWhenCleared() throws Exception {
+    MemoizingUpdate<String, Integer, Boolean> memoizing =
+        MemoizingUpdate.byModelEquality(update, 10);
+
+    memoizing.update("model", 1);
+    memoizing.clear();
+    memoizing.update("model", 1);
+
+    assertThat(calls).containsExactly("model1", "model1");
+    assertThat(memoizing.stats().size()).isEqualTo(1);
+  }
+}
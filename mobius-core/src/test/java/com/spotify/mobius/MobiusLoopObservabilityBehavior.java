@@ -24,6 +24,7 @@ import static org.assertj.core.api.Assertions.assertThat;
 
 import com.spotify.mobius.disposables.Disposable;
 import com.spotify.mobius.functions.Consumer;
+import com.spotify.mobius.functions.Function;
 import com.spotify.mobius.runners.ImmediateWorkRunner;
 import com.spotify.mobius.test.RecordingModelObserver;
 import com.spotify.mobius.testdomain.TestEvent;
@@ -33,6 +34,7 @@ import java.util.List;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 import javax.annotation.Nonnull;
 import org.junit.Test;
 
@@ -69,6 +71,50 @@ public class MobiusLoopObservabilityBehavior extends MobiusLoopTest {
     observer.assertStates("init", "init->active observer");
   }
 
+  @Test
+  public void shouldOnlyNotifySelectorObserversWhenProjectionChanges() throws Exception {
+    List<Boolean> projections = new ArrayList<>();
+    mobiusLoop.observe(model -> model.contains("first"), projections::add);
+
+    mobiusLoop.dispatchEvent(new TestEvent("first"));
+    mobiusLoop.dispatchEvent(new TestEvent("second"));
+
+    assertThat(projections).containsExactly(false, true);
+  }
+
+  @Test
+  public void shouldApplySelectorOncePerModelForAllObservers() throws Exception {
+    AtomicInteger selections = new AtomicInteger();
+    Function<String, Integer> selector =
+        model -> {
+          selections.incrementAndGet();
+          return model.length();
+        };
+    List<Integer> first = new ArrayList<>();
+    List<Integer> second = new ArrayList<>();
+
+    mobiusLoop.observe(selector, first::add);
+    mobiusLoop.observe(selector, second::add);
+    mobiusLoop.dispatchEvent(new TestEvent("first"));
+    mobiusLoop.dispatchEvent(new TestEvent("second"));
+
+    assertThat(selections.get()).isEqualTo(3);
+    assertThat(first).containsExactly(4, 11, 19);
+    assertThat(second).isEqualTo(first);
+  }
+
+  @Test
+  public void shouldSupportUnregisteringSelectorObserver() throws Exception {
+    List<String> projections = new ArrayList<>();
+    Disposable unregister = mobiusLoop.observe(model -> model.toUpperCase(), projections::add);
+
+    mobiusLoop.dispatchEvent(new TestEvent("active observer"));
+    unregister.dispose();
+    mobiusLoop.dispatchEvent(new TestEvent("shouldn't be seen"));
+
+    assertThat(projections).containsExactly("INIT", "INIT->ACTIVE OBSERVER");
+  }
+
   @Test
   public void shouldNotReportModelsInIncorrectOrder() throws Exception {
     // 1. create a loop with initial model A
@@ -163,6 +163,33 @@ public class MobiusTest {
             "after update: start, 7, Next{model=start7, effects=[false]}"));
   }
 
+  @Test
+  public void shouldPermitSuppressingUnchangedModels() throws Exception {
+    Update<String, Integer, Boolean> update =
+        (model, event) -> {
+          if (event == 0) {
+            return Next.next(new String(model));
+          }
+          return Next.next(model + event);
+        };
+    List<String> models = new ArrayList<>();
+
+    loop =
+        Mobius.loop(update, HANDLER)
+            .distinctModels(ModelComparison.EQUALITY)
+            .eventRunner(ImmediateWorkRunner::new)
+            .effectRunner(ImmediateWorkRunner::new)
+            .startFrom(MY_MODEL);
+    loop.observe(models::add);
+
+    loop.dispatchEvent(0);
+    loop.dispatchEvent(1);
+    loop.dispatchEvent(0);
+
+    assertThat(models, contains("start", "start1"));
+    assertThat(loop.getSuppressedModelCount(), is(2L));
+  }
+
   @Test
   public void shouldSupportCreatingFactory() throws Exception {
     MobiusLoop.Factory<String, Integer, Boolean> factory = Mobius.loop(UPDATE, HANDLER);
@@ -0,0 +1,115 @@
+/*
+ * -\-\-
+ * Mobius
+ * --
+ * Copyright (c) 2017-2020 Spotify AB
+ * --
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -/-/-
+ */
+package com.spotify.mobius;
+
+import com.spotify.mobius.runners.WorkRunners;
+import java.util.Collections;
+import java.util.Locale;
+import javax.annotation.Nonnull;
+
+/**
+ * Compares the per-event cost of a {@link MobiusLoop} using immediate work runners with that of a
+ * {@link ThreadConfinedMobiusLoop}. This is not a unit test; run it manually using the main method,
+ * preferably without assertions enabled.
+ */
+public final class ThreadConfinedMobiusLoopBenchmark {
+
+  private static final int WARMUP_ROUNDS = 5;
+  private static final int MEASURED_ROUNDS = 10;
+  private static final int EVENTS_PER_ROUND = 1_000_000;
+
+  private static final Update<Long, Integer, Integer> UPDATE =
+      new Update<Long, Integer, Integer>() {
+        @Nonnull
+        @Override
+        public Next<Long, Integer> update(Long model, Integer event) {
+          if (event % 10 == 0) {
+            return Next.next(model + event, Collections.singleton(event));
+          }
+          return Next.next(model + event);
+        }
+      };
+
+  private static final Connectable<Integer, Integer> EFFECT_HANDLER =
+      output ->
+          new Connection<Integer>() {
+            @Override
+            public void accept(Integer value) {
+              // effects are ignored; we only measure the loop itself
+            }
+
+            @Override
+            public void dispose() {}
+          };
+
+  private ThreadConfinedMobiusLoopBenchmark() {}
+
+  public static void main(String[] args) {
+    long standard = 0;
+    long confined = 0;
+
+    for (int round = 0; round < WARMUP_ROUNDS + MEASURED_ROUNDS; round++) {
+      long standardNanos = runStandard();
+      long confinedNanos = runConfined();
+
+      if (round >= WARMUP_ROUNDS) {
+        standard += standardNanos;
+        confined += confinedNanos;
+      }
+    }
+
+    double standardPerEvent = (double) standard / MEASURED_ROUNDS / EVENTS_PER_ROUND;
+    double confinedPerEvent = (double) confined / MEASURED_ROUNDS / EVENTS_PER_ROUND;
+
+    System.out.println(
+        String.format(
+            Locale.ENGLISH,
+            "MobiusLoop (immediate runners): %.1f ns/event%n"
+                + "ThreadConfinedMobiusLoop:       %.1f ns/event%n"
+                + "speedup:                        %.2fx",
+            standardPerEvent,
+            confinedPerEvent,
+            standardPerEvent / confinedPerEvent));
+  }
+
+  private static long runStandard() {
+    MobiusLoop<Long, Integer, Integer> loop =
+        Mobius.loop(UPDATE, EFFECT_HANDLER)
+            .eventRunner(WorkRunners::immediate)
+            .effectRunner(WorkRunners::immediate)
+            .startFrom(0L);
+    return time(loop);
+  }
+
+  private static long runConfined() {
+    return time(Mobius.threadConfinedLoop(UPDATE, EFFECT_HANDLER).startFrom(0L));
+  }
+
+  private static long time(Loop<Long, Integer, Integer> loop) {
+    long start = System.nanoTime();
+    for (int i = 0; i < EVENTS_PER_ROUND; i++) {
+      loop.dispatchEvent(i);
+    }
+    long elapsed = System.nanoTime() - start;
+
+    loop.dispose();
+    return elapsed;
+  }
+}
@@ -0,0 +1,241 @@
+/*
+ * -\-\-
+ * Mobius
+ * --
+ * Copyright (c) 2017-2020 Spotify AB
+ * --
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -/-/-
+ */
+package com.spotify.mobius;
+
+import static com.spotify.mobius.Effects.effects;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import com.spotify.mobius.disposables.Disposable;
+import com.spotify.mobius.functions.Consumer;
+import com.spotify.mobius.test.RecordingConsumer;
+import com.spotify.mobius.test.RecordingModelObserver;
+import com.spotify.mobius.test.SimpleConnection;
+import com.spotify.mobius.testdomain.EventWithSafeEffect;
+import com.spotify.mobius.testdomain.SafeEffect;
+import com.spotify.mobius.testdomain.TestEffect;
+import com.spotify.mobius.testdomain.TestEvent;
+import java.util.concurrent.atomic.AtomicReference;
+import javax.annotation.Nonnull;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ThreadConfinedMobiusLoopTest {
+
+  private Update<String, TestEvent, TestEffect> update;
+  private RecordingModelObserver<String> observer;
+  private RecordingConsumer<String> effectObserver;
+  private Connectable<TestEffect, TestEvent> effectHandler;
+
+  @Before
+  public void setUp() throws Exception {
+    update =
+        new Update<String, TestEvent, TestEffect>() {
+          @Nonnull
+          @Override
+          public Next<String, TestEffect> update(String model, TestEvent event) {
+            if (event instanceof EventWithSafeEffect) {
+              return Next.next(
+                  model + "->" + event.toString(), effects(new SafeEffect(event.toString())));
+            }
+
+            return Next.next(model + "->" + event.toString());
+          }
+        };
+
+    observer = new RecordingModelObserver<>();
+    effectObserver = new RecordingConsumer<>();
+
+    effectHandler =
+        eventConsumer ->
+            new SimpleConnection<TestEffect>() {
+              @Override
+              public void accept(TestEffect effect) {
+                effectObserver.accept(effect.toString());
+              }
+            };
+  }
+
+  @Test
+  public void shouldProcessEventsOnCallingThread() throws Exception {
+    ThreadConfinedMobiusLoop<String, TestEvent, TestEffect> loop =
+        Mobius.threadConfinedLoop(update, effectHandler).startFrom("init");
+    loop.observe(observer);
+
+    loop.dispatchEvent(new TestEvent("first"));
+    loop.dispatchEvent(new EventWithSafeEffect("second"));
+
+    observer.assertStates("init", "init->first", "init->first->second");
+    effectObserver.assertValues("effectsecond");
+    assertThat(loop.getMostRecentModel()).isEqualTo("init->first->second");
+  }
+
+  @Test
+  public void shouldQueueEventsFromEffectHandlersUntilCurrentEventIsHandled() throws Exception {
+    Connectable<TestEffect, TestEvent> echoingHandler =
+        eventConsumer ->
+            new SimpleConnection<TestEffect>() {
+              @Override
+              public void accept(TestEffect effect) {
+                eventConsumer.accept(new TestEvent(effect.toString()));
+                effectObserver.accept(effect.toString());
+              }
+            };
+
+    ThreadConfinedMobiusLoop<String, TestEvent, TestEffect> loop =
+        Mobius.threadConfinedLoop(update, echoingHandler).startFrom("init");
+    loop.observe(observer);
+
+    loop.dispatchEvent(new EventWithSafeEffect("hi"));
+
+    observer.assertStates("init", "init->hi", "init->hi->effecthi");
+    effectObserver.assertValues("effecthi");
+  }
+
+  @Test
+  public void shouldProcessEventsFromStartEffectsAfterStarting() throws Exception {
+    Connectable<TestEffect, TestEvent> echoingHandler =
+        eventConsumer ->
+            new SimpleConnection<TestEffect>() {
+              @Override
+              public void accept(TestEffect effect) {
+                eventConsumer.accept(new TestEvent(effect.toString()));
+              }
+            };
+
+    ThreadConfinedMobiusLoop<String, TestEvent, TestEffect> loop =
+        Mobius.threadConfinedLoop(update, echoingHandler)
+            .startFrom("init", effects(new SafeEffect("start")));
+
+    assertThat(loop.getMostRecentModel()).isEqualTo("init->effectstart");
+  }
+
+  @Test
+  public void shouldSendModelsToEventSource() throws Exception {
+    final RecordingConsumer<String> eventSourceModels = new RecordingConsumer<>();
+    final AtomicReference<Consumer<TestEvent>> eventSourceOutput = new AtomicReference<>();
+
+    Connectable<String, TestEvent> eventSource =
+        output -> {
+          eventSourceOutput.set(output);
+          return new SimpleConnection<String>() {
+            @Override
+            public void accept(String value) {
+              eventSourceModels.accept(value);
+            }
+          };
+        };
+
+    ThreadConfinedMobiusLoop<String, TestEvent, TestEffect> loop =
+        Mobius.threadConfinedLoop(update, effectHandler).eventSource(eventSource).startFrom("init");
+
+    eventSourceOutput.get().accept(new TestEvent("from source"));
+
+    eventSourceModels.assertValues("init", "init->from source");
+    assertThat(loop.getMostRecentModel()).isEqualTo("init->from source");
+  }
+
+  @Test
+  public void shouldStopNotifyingDisposedObservers() throws Exception {
+    ThreadConfinedMobiusLoop<String, TestEvent, TestEffect> loop =
+        Mobius.threadConfinedLoop(update, effectHandler).startFrom("init");
+    Disposable disposable = loop.observe(observer);
+
+    loop.dispatchEvent(new TestEvent("first"));
+    disposable.dispose();
+    loop.dispatchEvent(new TestEvent("second"));
+
+    observer.assertStates("init", "init->first");
+  }
+
+  @Test
+  public void shouldDisallowEventsAfterDispose() throws Exception {
+    ThreadConfinedMobiusLoop<String, TestEvent, TestEffect> loop =
+        Mobius.threadConfinedLoop(update, effectHandler).startFrom("init");
+
+    loop.dispose();
+
+    assertThatThrownBy(() -> loop.dispatchEvent(new TestEvent("too late")))
+        .isInstanceOf(IllegalStateException.class);
+  }
+
+  @Test
+  public void shouldPropagateExceptionsFromUpdate() throws Exception {
+    ThreadConfinedMobiusLoop<String, TestEvent, TestEffect> loop =
+        Mobius.<String, TestEvent, TestEffect>threadConfinedLoop(
+                (model, event) -> {
+                  throw new IllegalArgumentException("bad event");
+                },
+                effectHandler)
+            .startFrom("init");
+
+    assertThatThrownBy(() -> loop.dispatchEvent(new TestEvent("bad")))
+        .isInstanceOf(IllegalStateException.class)
+        .hasCauseInstanceOf(IllegalArgumentException.class);
+    assertThat(loop.getMostRecentModel()).isEqualTo("init");
+  }
+
+  @Test
+  public void shouldSubscribeToEventSource() throws Exception {
+    final AtomicReference<Consumer<TestEvent>> eventSourceOutput = new AtomicReference<>();
+    final AtomicReference<Boolean> unsubscribed = new AtomicReference<>(false);
+
+    ThreadConfinedMobiusLoop<String, TestEvent, TestEffect> loop =
+        Mobius.threadConfinedLoop(update, effectHandler)
+            .eventSource(
+                (EventSource<TestEvent>)
+                    eventConsumer -> {
+                      eventSourceOutput.set(eventConsumer);
+                      return () -> unsubscribed.set(true);
+                    })
+            .startFrom("init");
+    eventSourceOutput.get().accept(new TestEvent("from source"));
+    loop.dispose();
+
+    assertThat(loop.getMostRecentModel()).isEqualTo("init->from source");
+    assertThat(unsubscribed.get()).isTrue();
+  }
+
+  @Test
+  public void shouldAssertOwnerThreadWhenAssertionsAreEnabled() throws Exception {
+    if (!ThreadConfinedMobiusLoop.class.desiredAssertionStatus()) {
+      return;
+    }
+
+    final ThreadConfinedMobiusLoop<String, TestEvent, TestEffect> loop =
+        Mobius.threadConfinedLoop(update, effectHandler).startFrom("init");
+    final AtomicReference<Throwable> error = new AtomicReference<>();
+
+    Thread thread =
+        new Thread(
+            () -> {
+              try {
+                loop.dispatchEvent(new TestEvent("from another thread"));
+              } catch (Throwable t) {
+                error.set(t);
+              }
+            });
+    thread.start();
+    thread.join();
+
+    assertThat(error.get()).isInstanceOf(AssertionError.class);
+    assertThat(loop.getMostRecentModel()).isEqualTo("init");
+  }
+}
@@ -0,0 +1,223 @@
+/*
+ * -\-\-
+ * Mobius
+ * --
+ * Copyright (c) 2017-2020 Spotify AB
+ * --
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -/-/-
+ */
+package com.spotify.mobius.effects;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.spotify.mobius.Connection;
+import com.spotify.mobius.MobiusHooks;
+import com.spotify.mobius.runners.WorkRunners;
+import com.spotify.mobius.test.RecordingConsumer;
+import com.spotify.mobius.test.VirtualTimeScheduler;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class BatchingConnectableTest {
+
+  private VirtualTimeScheduler scheduler;
+  private List<List<String>> batches;
+  private RecordingConsumer<String> events;
+  private List<Throwable> errors;
+
+  @Before
+  public void setUp() throws Exception {
+    scheduler = new VirtualTimeScheduler();
+    batches = Collections.synchronizedList(new ArrayList<>());
+    events = new RecordingConsumer<>();
+    errors = new ArrayList<>();
+    MobiusHooks.setErrorHandler(errors::add);
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    MobiusHooks.setDefaultErrorHandler();
+  }
+
+  @Test
+  public void shouldHandleFullBatchesRightAway() throws Exception {
+    Connection<String> connection =
+        connect(BatchingConnectable.builder(this::handle).maxBatchSize(3));
+
+    for (String effect : new String[] {"a", "b", "c", "d", "e", "f", "g"}) {
+      connection.accept(effect);
+    }
+    scheduler.runUntilIdle();
+
+    assertThat(batches).hasSize(3);
+    assertThat(batches.get(0)).containsExactly("a", "b", "c");
+    assertThat(batches.get(1)).containsExactly("d", "e", "f");
+    assertThat(batches.get(2)).containsExactly("g");
+  }
+
+  @Test
+  public void shouldHandlePartialBatchAfterMaxDelay() throws Exception {
+    Connection<String> connection =
+        connect(BatchingConnectable.builder(this::handle).maxDelay(50, MILLISECONDS));
+
+    connection.accept("a");
+    scheduler.advanceTimeBy(30, MILLISECONDS);
+    connection.accept("b");
+    scheduler.advanceTimeBy(19, MILLISECONDS);
+
+    assertThat(batches).isEmpty();
+
+    scheduler.advanceTimeBy(1, MILLISECONDS);
+
+    assertThat(batches).hasSize(1);
+    assertThat(batches.get(0)).containsExactly("a", "b");
+  }
+
+  @Test
+  public void shouldSendEventsReturnedByHandler() throws Exception {
+    Connection<String> connection =
+        connect(BatchingConnectable.builder(this::handle).maxBatchSize(2));
+
+    connection.accept("a");
+    connection.accept("b");
+    scheduler.runUntilIdle();
+
+    events.assertValues("a handled", "b handled");
+  }
+
+  @Test
+  public void shouldBlockWhenTooManyEffectsArePending() throws Exception {
+    Connection<String> connection =
+        connect(BatchingConnectable.builder(this::handle).maxBatchSize(2).maxPendingEffects(2));
+
+    connection.accept("a");
+    connection.accept("b");
+
+    Thread producer = new Thread(() -> connection.accept("c"));
+    producer.start();
+    producer.join(100);
+    assertThat(producer.isAlive()).isTrue();
+
+    scheduler.runUntilIdle();
+    producer.join(5000);
+    assertThat(producer.isAlive()).isFalse();
+
+    scheduler.advanceTimeBy(10, MILLISECONDS);
+    assertThat(batches).hasSize(2);
+    assertThat(batches.get(1)).containsExactly("c");
+  }
+
+  @Test
+  public void shouldReportHandlerExceptionsAndContinue() throws Exception {
+    Connection<String> connection =
+        connect(
+            BatchingConnectable.<String, String>builder(
+                    batch -> {
+                      if (batch.contains("bad")) {
+                        throw new IllegalStateException("failed");
+                      }
+                      return handle(batch);
+                    })
+                .maxBatchSize(1));
+
+    connection.accept("bad");
+    connection.accept("good");
+    scheduler.runUntilIdle();
+
+    assertThat(errors).hasSize(1);
+    events.assertValues("good handled");
+  }
+
+  @Test
+  public void shouldDropPendingEffectsWhenDisposed() throws Exception {
+    Connection<String> connection = connect(BatchingConnectable.builder(this::handle));
+
+    connection.accept("a");
+    connection.dispose();
+    scheduler.advanceTimeBy(1, SECONDS);
+
+    assertThat(batches).isEmpty();
+  }
+
+  @Test
+  public void shouldKeepHandlingBatchesAfterHandlerThrowsError() throws Exception {
+    Connection<String> connection =
+        connect(
+            BatchingConnectable.<String, String>builder(
+                    batch -> {
+                      if (batch.contains("bad")) {
+                        throw new AssertionError("failed");
+                      }
+                      return handle(batch);
+                    })
+                .maxBatchSize(1));
+
+    connection.accept("bad");
+    connection.accept("good");
+    try {
+      scheduler.runUntilIdle();
+    } catch (AssertionError expected) {
+      // the error propagates to the work runner
+    }
+    scheduler.runUntilIdle();
+
+    events.assertValues("good handled");
+  }
+
+  @Test
+  public void shouldNotBlockEffectsDispatchedWhileHandlingBatch() throws Exception {
+    AtomicReference<Connection<String>> connection = new AtomicReference<>();
+    connection.set(
+        BatchingConnectable.builder(this::handle)
+            .maxBatchSize(1)
+            .maxPendingEffects(1)
+            .runner(WorkRunners.immediate())
+            .build()
+            .connect(
+                event -> {
+                  if (event.equals("a handled")) {
+                    connection.get().accept("b");
+                    connection.get().accept("c");
+                  }
+                }));
+
+    Thread producer = new Thread(() -> connection.get().accept("a"));
+    producer.start();
+    producer.join(5000);
+
+    assertThat(producer.isAlive()).isFalse();
+    assertThat(batches).hasSize(3);
+  }
+
+  private Connection<String> connect(BatchingConnectable.Builder<String, String> builder) {
+    return builder.runner(scheduler.createWorkRunner()).build().connect(events);
+  }
+
+  private List<String> handle(List<String> batch) {
+    batches.add(batch);
+
+    List<String> result = new ArrayList<>();
+    for (String effect : batch) {
+      result.add(effect + " handled");
+    }
+    return result;
+  }
+}
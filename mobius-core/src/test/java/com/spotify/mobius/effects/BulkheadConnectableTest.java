@@ -0,0 +1,116 @@
+/*
+ * -\-\-
+ * Mobius
+ * --
+ * Copyright (c) 2017-2020 Spotify AB
+ * --
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -/-/-
+ */
+package com.spotify.mobius.effects;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import com.spotify.mobius.Connection;
+import com.spotify.mobius.effects.Bulkhead.OverflowPolicy;
+import com.spotify.mobius.test.RecordingConnection;
+import com.spotify.mobius.test.RecordingConsumer;
+import com.spotify.mobius.test.TestWorkRunner;
+import org.junit.Before;
+import org.junit.Test;
+
+public class BulkheadConnectableTest {
+
+  private TestWorkRunner runner;
+  private RecordingConnection<Object> handler;
+
+  @Before
+  public void setUp() throws Exception {
+    runner = new TestWorkRunner();
+    handler = new RecordingConnection<>();
+  }
+
+  @Test
+  public void shouldLimitEffectsOfConfiguredClass() throws Exception {
+    Bulkhead bulkhead = Bulkhead.create("strings", 1, 10, OverflowPolicy.REJECT);
+    Connection<Object> connection =
+        BulkheadConnectable.<Object, String>builder(output -> handler, runner)
+            .bulkhead(String.class, bulkhead)
+            .build()
+            .connect(new RecordingConsumer<>());
+
+    connection.accept("a");
+    connection.accept("b");
+    connection.accept(1);
+
+    assertThat(bulkhead.runningCount()).isEqualTo(1);
+    assertThat(bulkhead.queueDepth()).isEqualTo(1);
+
+    runner.runAll();
+
+    handler.assertValues("a", 1, "b");
+    assertThat(bulkhead.runningCount()).isZero();
+    assertThat(bulkhead.completedCount()).isEqualTo(2);
+  }
+
+  @Test
+  public void shouldUseDefaultBulkheadForOtherEffects() throws Exception {
+    Bulkhead strings = Bulkhead.create("strings", 1, 10, OverflowPolicy.REJECT);
+    Bulkhead others = Bulkhead.create("others", 1, 10, OverflowPolicy.REJECT);
+    Connection<Object> connection =
+        BulkheadConnectable.<Object, String>builder(output -> handler, runner)
+            .bulkhead(String.class, strings)
+            .defaultBulkhead(others)
+            .build()
+            .connect(new RecordingConsumer<>());
+
+    connection.accept(1);
+    connection.accept(2L);
+
+    assertThat(others.runningCount()).isEqualTo(1);
+    assertThat(others.queueDepth()).isEqualTo(1);
+    assertThat(strings.runningCount()).isZero();
+  }
+
+  @Test
+  public void shouldFreeSlotsOfQueuedEffectsAfterDispose() throws Exception {
+    Bulkhead bulkhead = Bulkhead.create("strings", 1, 10, OverflowPolicy.REJECT);
+    Connection<Object> connection =
+        BulkheadConnectable.<Object, String>builder(output -> handler, runner)
+            .defaultBulkhead(bulkhead)
+            .build()
+            .connect(new RecordingConsumer<>());
+
+    connection.accept("a");
+    connection.accept("b");
+    connection.dispose();
+    runner.runAll();
+
+    handler.assertValues();
+    assertThat(bulkhead.runningCount()).isZero();
+    assertThat(bulkhead.queueDepth()).isZero();
+  }
+
+  @Test
+  public void shouldNotAllowOverlappingEffectClasses() throws Exception {
+    BulkheadConnectable.Builder<Object, String> builder =
+        BulkheadConnectable.<Object, String>builder(output -> handler, runner)
+            .bulkhead(Number.class, Bulkhead.create("numbers", 1, 0, OverflowPolicy.REJECT));
+
+    Bulkhead ints = Bulkhead.create("ints", 1, 0, OverflowPolicy.REJECT);
+
+    assertThatThrownBy(() -> builder.bulkhead(Integer.class, ints))
+        .isInstanceOf(IllegalArgumentException.class);
+  }
+}
@@ -0,0 +1,185 @@
+/*
+ * -\-\-
+ * Mobius
+ * --
+ * Copyright (c) 2017-2020 Spotify AB
+ * --
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -/-/-
+ */
+package com.spotify.mobius.effects;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.spotify.mobius.MobiusHooks;
+import com.spotify.mobius.effects.Bulkhead.OverflowPolicy;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class BulkheadTest {
+
+  private List<String> log;
+  private List<Runnable> completions;
+  private List<Throwable> errors;
+
+  @Before
+  public void setUp() throws Exception {
+    log = new ArrayList<>();
+    completions = new ArrayList<>();
+    errors = new ArrayList<>();
+    MobiusHooks.setErrorHandler(errors::add);
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    MobiusHooks.setDefaultErrorHandler();
+  }
+
+  @Test
+  public void shouldQueueExecutionsBeyondLimit() throws Exception {
+    Bulkhead bulkhead = Bulkhead.create("test", 2, 10, OverflowPolicy.REJECT);
+
+    bulkhead.submit(execution("a"));
+    bulkhead.submit(execution("b"));
+    bulkhead.submit(execution("c"));
+
+    assertThat(log).containsExactly("start a", "start b");
+    assertThat(bulkhead.runningCount()).isEqualTo(2);
+    assertThat(bulkhead.queueDepth()).isEqualTo(1);
+
+    completions.get(0).run();
+
+    assertThat(log).containsExactly("start a", "start b", "start c");
+    assertThat(bulkhead.runningCount()).isEqualTo(2);
+    assertThat(bulkhead.queueDepth()).isZero();
+    assertThat(bulkhead.maxQueueDepth()).isEqualTo(1);
+  }
+
+  @Test
+  public void shouldReleaseSlotOnlyOncePerExecution() throws Exception {
+    Bulkhead bulkhead = Bulkhead.create("test", 1, 10, OverflowPolicy.REJECT);
+
+    bulkhead.submit(execution("a"));
+    completions.get(0).run();
+    completions.get(0).run();
+
+    assertThat(bulkhead.runningCount()).isZero();
+    assertThat(bulkhead.completedCount()).isEqualTo(1);
+  }
+
+  @Test
+  public void shouldRejectWhenQueueIsFull() throws Exception {
+    Bulkhead bulkhead = Bulkhead.create("test", 1, 1, OverflowPolicy.REJECT);
+
+    bulkhead.submit(execution("a"));
+    bulkhead.submit(execution("b"));
+    bulkhead.submit(execution("c"));
+
+    assertThat(log).containsExactly("start a", "discard c");
+    assertThat(bulkhead.rejectedCount()).isEqualTo(1);
+    assertThat(errors).hasSize(1);
+    assertThat(errors.get(0)).isInstanceOf(BulkheadFullException.class);
+  }
+
+  @Test
+  public void shouldDropNewestWhenQueueIsFull() throws Exception {
+    Bulkhead bulkhead = Bulkhead.create("test", 1, 1, OverflowPolicy.DROP_NEWEST);
+
+    bulkhead.submit(execution("a"));
+    bulkhead.submit(execution("b"));
+    bulkhead.submit(execution("c"));
+    completions.get(0).run();
+
+    assertThat(log).containsExactly("start a", "discard c", "start b");
+    assertThat(bulkhead.droppedCount()).isEqualTo(1);
+    assertThat(errors).isEmpty();
+  }
+
+  @Test
+  public void shouldDropOldestWhenQueueIsFull() throws Exception {
+    Bulkhead bulkhead = Bulkhead.create("test", 1, 1, OverflowPolicy.DROP_OLDEST);
+
+    bulkhead.submit(execution("a"));
+    bulkhead.submit(execution("b"));
+    bulkhead.submit(execution("c"));
+    completions.get(0).run();
+
+    assertThat(log).containsExactly("start a", "discard b", "start c");
+    assertThat(bulkhead.droppedCount()).isEqualTo(1);
+    assertThat(errors).isEmpty();
+  }
+
+  @Test
+  public void shouldFreeSlotWhenStartThrows() throws Exception {
+    Bulkhead bulkhead = Bulkhead.create("test", 1, 0, OverflowPolicy.REJECT);
+
+    bulkhead.submit(
+        new Bulkhead.Execution() {
+          @Override
+          public void start(Runnable onComplete) {
+            throw new IllegalStateException("broken");
+          }
+
+          @Override
+          public void discard() {}
+        });
+
+    assertThat(bulkhead.runningCount()).isZero();
+    assertThat(errors).hasSize(1);
+  }
+
+  @Test
+  public void shouldStartManySynchronousExecutionsWithoutRecursing() throws Exception {
+    int count = 100_000;
+    Bulkhead bulkhead = Bulkhead.create("test", 1, count, OverflowPolicy.REJECT);
+
+    bulkhead.submit(execution("first"));
+    for (int i = 0; i < count; i++) {
+      bulkhead.submit(
+          new Bulkhead.Execution() {
+            @Override
+            public void start(Runnable onComplete) {
+              onComplete.run();
+            }
+
+            @Override
+            public void discard() {
+              log.add("discard");
+            }
+          });
+    }
+    completions.get(0).run();
+
+    assertThat(bulkhead.completedCount()).isEqualTo(count + 1);
+    assertThat(bulkhead.runningCount()).isZero();
+    assertThat(log).containsExactly("start first");
+  }
+
+  private Bulkhead.Execution execution(final String name) {
+    return new Bulkhead.Execution() {
+      @Override
+      public void start(Runnable onComplete) {
+        log.add("start " + name);
+        completions.add(onComplete);
+      }
+
+      @Override
+      public void discard() {
+        log.add("discard " + name);
+      }
+    };
+  }
+}
@@ -0,0 +1,155 @@
+/*
+ * -\-\-
+ * Mobius
+ * --
+ * Copyright (c) 2017-2020 Spotify AB
+ * --
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -/-/-
+ */
+package com.spotify.mobius.effects;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.spotify.mobius.Connection;
+import com.spotify.mobius.test.RecordingConsumer;
+import com.spotify.mobius.test.TestWorkRunner;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.Before;
+import org.junit.Test;
+
+public class CachingConnectableTest {
+
+  private TestWorkRunner runner;
+  private AtomicLong nanos;
+  private AtomicInteger calls;
+  private RecordingConsumer<String> events;
+
+  @Before
+  public void setUp() throws Exception {
+    runner = new TestWorkRunner();
+    nanos = new AtomicLong();
+    calls = new AtomicInteger();
+    events = new RecordingConsumer<>();
+  }
+
+  @Test
+  public void shouldSendCachedEventWithoutCallingFunction() throws Exception {
+    CachingConnectable<String, String> connectable = builder().build();
+    Connection<String> connection = connectable.connect(events);
+
+    connection.accept("user");
+    runner.runAll();
+    connection.accept("user");
+
+    events.assertValues("user 1", "user 1");
+    assertThat(calls.get()).isEqualTo(1);
+    assertThat(connectable.stats().hitCount()).isEqualTo(1);
+    assertThat(connectable.stats().missCount()).isEqualTo(1);
+  }
+
+  @Test
+  public void shouldCallFunctionAgainWhenCachedEventExpires() throws Exception {
+    Connection<String> connection = builder().build().connect(events);
+
+    connection.accept("user");
+    runner.runAll();
+    nanos.addAndGet(TimeUnit.SECONDS.toNanos(10));
+    connection.accept("user");
+    runner.runAll();
+
+    events.assertValues("user 1", "user 2");
+  }
+
+  @Test
+  public void shouldEvictLeastRecentlyUsedEventsWhenFull() throws Exception {
+    CachingConnectable<String, String> connectable = builder().maxSize(2).build();
+    Connection<String> connection = connectable.connect(events);
+
+    connection.accept("a");
+    connection.accept("b");
+    runner.runAll();
+    connection.accept("a");
+    connection.accept("c");
+    runner.runAll();
+    connection.accept("a");
+    connection.accept("b");
+    runner.runAll();
+
+    events.assertValues("a 1", "b 2", "a 1", "c 3", "a 1", "b 4");
+    assertThat(connectable.stats().evictionCount()).isEqualTo(2);
+    assertThat(connectable.stats().size()).isEqualTo(2);
+  }
+
+  @Test
+  public void shouldShareCacheBetweenConnections() throws Exception {
+    CachingConnectable<String, String> connectable = builder().build();
+    RecordingConsumer<String> otherEvents = new RecordingConsumer<>();
+
+    connectable.connect(events).accept("user");
+    runner.runAll();
+    connectable.connect(otherEvents).accept("user");
+
+    otherEvents.assertValues("user 1");
+    assertThat(calls.get()).isEqualTo(1);
+  }
+
+  @Test
+  public void shouldInvalidateOnConfiguredEffects() throws Exception {
+    RecordingConsumer<Object> objectEvents = new RecordingConsumer<>();
+    Connection<Object> connection =
+        CachingConnectable.<Object, Object>builder(
+                effect -> effect + " " + calls.incrementAndGet(), runner)
+            .invalidateOn(Invalidate.class, invalidate -> invalidate.key)
+            .build()
+            .connect(objectEvents);
+
+    connection.accept("user");
+    runner.runAll();
+    connection.accept(new Invalidate("user"));
+    connection.accept("user");
+    runner.runAll();
+
+    objectEvents.assertValues("user 1", "user 2");
+    assertThat(calls.get()).isEqualTo(2);
+  }
+
+  @Test
+  public void shouldNotCacheResultsThatRaceWithInvalidation() throws Exception {
+    CachingConnectable<String, String> connectable = builder().build();
+    Connection<String> connection = connectable.connect(events);
+
+    connection.accept("user");
+    connectable.invalidateAll();
+    runner.runAll();
+
+    assertThat(connectable.stats().size()).isEqualTo(0);
+  }
+
+  private CachingConnectable.Builder<String, String> builder() {
+    return CachingConnectable.<String, String>builder(
+            effect -> effect + " " + calls.incrementAndGet(), runner)
+        .ttl(5, TimeUnit.SECONDS)
+        .clock(nanos::get);
+  }
+
+  private static final class Invalidate {
+    private final String key;
+
+    Invalidate(String key) {
+      this.key = key;
+    }
+  }
+}
@@ -0,0 +1,192 @@
+/*
+ * -\-\-
+ * Mobius
+ * --
+ * Copyright (c) 2017-2020 Spotify AB
+ * --
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -/-/-
+ */
+package com.spotify.mobius.effects;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.spotify.mobius.Connection;
+import com.spotify.mobius.MobiusHooks;
+import com.spotify.mobius.runners.WorkRunner;
+import com.spotify.mobius.test.RecordingConsumer;
+import com.spotify.mobius.test.TestWorkRunner;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class CircuitBreakerConnectableTest {
+
+  private TestWorkRunner runner;
+  private CircuitBreaker breaker;
+  private AtomicInteger calls;
+  private RecordingConsumer<String> events;
+  private List<Throwable> errors;
+
+  @Before
+  public void setUp() throws Exception {
+    runner = new TestWorkRunner();
+    breaker = CircuitBreaker.builder("test").windowSize(2).minimumCalls(2).build();
+    calls = new AtomicInteger();
+    events = new RecordingConsumer<>();
+    errors = new ArrayList<>();
+    MobiusHooks.setErrorHandler(errors::add);
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    MobiusHooks.setDefaultErrorHandler();
+  }
+
+  @Test
+  public void shouldFailFastWithOpenEventWhenOpen() throws Exception {
+    Connection<String> connection =
+        CircuitBreakerConnectable.builder(this::failingCall, breaker, runner)
+            .whenOpen(effect -> effect + " unavailable")
+            .build()
+            .connect(events);
+
+    connection.accept("a");
+    connection.accept("b");
+    runner.runAll();
+    connection.accept("c");
+
+    events.assertValues("c unavailable");
+    assertThat(calls.get()).isEqualTo(2);
+    assertThat(errors).hasSize(2);
+  }
+
+  @Test
+  public void shouldTurnExceptionsIntoEvents() throws Exception {
+    Connection<String> connection =
+        CircuitBreakerConnectable.builder(this::failingCall, breaker, runner)
+            .onError((effect, exception) -> effect + " failed")
+            .build()
+            .connect(events);
+
+    connection.accept("a");
+    runner.runAll();
+
+    events.assertValues("a failed");
+    assertThat(errors).isEmpty();
+  }
+
+  @Test
+  public void shouldCountFailureEventsAsFailures() throws Exception {
+    Connection<String> connection =
+        CircuitBreakerConnectable.<String, String>builder(effect -> "failed", breaker, runner)
+            .failureWhen("failed"::equals)
+            .build()
+            .connect(events);
+
+    connection.accept("a");
+    connection.accept("b");
+    runner.runAll();
+
+    assertThat(breaker.state()).isEqualTo(CircuitBreaker.State.OPEN);
+  }
+
+  @Test
+  public void shouldReleasePermitsOfEffectsNotRunBeforeDispose() throws Exception {
+    Connection<String> connection =
+        CircuitBreakerConnectable.builder(this::failingCall, breaker, runner)
+            .build()
+            .connect(events);
+
+    connection.accept("a");
+    connection.dispose();
+    runner.runAll();
+
+    assertThat(calls.get()).isEqualTo(0);
+    assertThat(breaker.failureRate()).isEqualTo(0.0);
+  }
+
+  @Test
+  public void shouldReleasePermitWhenFunctionThrowsError() throws Exception {
+    CircuitBreaker halfOpen = halfOpenBreaker();
+    Connection<String> connection =
+        CircuitBreakerConnectable.<String, String>builder(
+                effect -> {
+                  throw new AssertionError("boom");
+                },
+                halfOpen,
+                runner)
+            .build()
+            .connect(events);
+
+    connection.accept("a");
+    try {
+      runner.runAll();
+    } catch (AssertionError expected) {
+      // the error propagates to the work runner
+    }
+
+    assertThat(halfOpen.tryAcquire()).isNotNull();
+  }
+
+  @Test
+  public void shouldReleasePermitWhenRunnerRejectsEffect() throws Exception {
+    CircuitBreaker halfOpen = halfOpenBreaker();
+    WorkRunner rejecting =
+        new WorkRunner() {
+          @Override
+          public void post(Runnable runnable) {
+            throw new RejectedExecutionException("shut down");
+          }
+
+          @Override
+          public void dispose() {}
+        };
+    Connection<String> connection =
+        CircuitBreakerConnectable.builder(this::failingCall, halfOpen, rejecting)
+            .build()
+            .connect(events);
+
+    connection.accept("a");
+
+    assertThat(errors).hasSize(1);
+    assertThat(errors.get(0).getCause()).isInstanceOf(RejectedExecutionException.class);
+    assertThat(halfOpen.tryAcquire()).isNotNull();
+  }
+
+  private static CircuitBreaker halfOpenBreaker() {
+    AtomicLong nanos = new AtomicLong();
+    CircuitBreaker breaker =
+        CircuitBreaker.builder("half-open")
+            .windowSize(1)
+            .minimumCalls(1)
+            .openDuration(1, TimeUnit.SECONDS)
+            .clock(nanos::get)
+            .build();
+    breaker.tryAcquire().recordFailure();
+    nanos.addAndGet(TimeUnit.SECONDS.toNanos(1));
+    assertThat(breaker.state()).isEqualTo(CircuitBreaker.State.HALF_OPEN);
+    return breaker;
+  }
+
+  private String failingCall(String effect) {
+    calls.incrementAndGet();
+    throw new IllegalStateException("service down");
+  }
+}
@@ -0,0 +1,145 @@
+/*
+ * -\-\-
+ * Mobius
+ * --
+ * Copyright (c) 2017-2020 Spotify AB
+ * --
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -/-/-
+ */
+package com.spotify.mobius.effects;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.spotify.mobius.effects.CircuitBreaker.State;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.Before;
+import org.junit.Test;
+
+public class CircuitBreakerTest {
+
+  private AtomicLong nanos;
+  private CircuitBreaker breaker;
+
+  @Before
+  public void setUp() throws Exception {
+    nanos = new AtomicLong();
+    breaker =
+        CircuitBreaker.builder("test")
+            .windowSize(4)
+            .minimumCalls(2)
+            .failureRateThreshold(0.5)
+            .openDuration(10, TimeUnit.SECONDS)
+            .halfOpenCalls(2)
+            .clock(nanos::get)
+            .build();
+  }
+
+  @Test
+  public void shouldStayClosedBelowMinimumCalls() throws Exception {
+    breaker.tryAcquire().recordFailure();
+
+    assertThat(breaker.state()).isEqualTo(State.CLOSED);
+    assertThat(breaker.tryAcquire()).isNotNull();
+  }
+
+  @Test
+  public void shouldOpenWhenFailureRateReachesThreshold() throws Exception {
+    breaker.tryAcquire().recordSuccess();
+    breaker.tryAcquire().recordFailure();
+
+    assertThat(breaker.state()).isEqualTo(State.OPEN);
+    assertThat(breaker.tryAcquire()).isNull();
+    assertThat(breaker.rejectedCount()).isEqualTo(1);
+  }
+
+  @Test
+  public void shouldOnlyCountRecentCalls() throws Exception {
+    breaker.tryAcquire().recordSuccess();
+    breaker.tryAcquire().recordSuccess();
+    breaker.tryAcquire().recordFailure();
+    for (int i = 0; i < 4; i++) {
+      breaker.tryAcquire().recordSuccess();
+    }
+    breaker.tryAcquire().recordFailure();
+
+    assertThat(breaker.state()).isEqualTo(State.CLOSED);
+    assertThat(breaker.failureRate()).isEqualTo(0.25);
+  }
+
+  @Test
+  public void shouldCloseWhenAllProbesSucceed() throws Exception {
+    open();
+    nanos.addAndGet(TimeUnit.SECONDS.toNanos(10));
+
+    CircuitBreaker.Permit first = breaker.tryAcquire();
+    CircuitBreaker.Permit second = breaker.tryAcquire();
+    assertThat(breaker.state()).isEqualTo(State.HALF_OPEN);
+    assertThat(breaker.tryAcquire()).isNull();
+
+    first.recordSuccess();
+    second.recordSuccess();
+
+    assertThat(breaker.state()).isEqualTo(State.CLOSED);
+    assertThat(breaker.failureRate()).isEqualTo(0.0);
+  }
+
+  @Test
+  public void shouldOpenAgainWhenProbeFails() throws Exception {
+    open();
+    nanos.addAndGet(TimeUnit.SECONDS.toNanos(10));
+
+    breaker.tryAcquire().recordFailure();
+
+    assertThat(breaker.state()).isEqualTo(State.OPEN);
+    nanos.addAndGet(TimeUnit.SECONDS.toNanos(9));
+    assertThat(breaker.tryAcquire()).isNull();
+  }
+
+  @Test
+  public void shouldIgnoreOutcomesOfCallsStartedBeforeStateChange() throws Exception {
+    CircuitBreaker.Permit slow = breaker.tryAcquire();
+    open();
+    nanos.addAndGet(TimeUnit.SECONDS.toNanos(10));
+    CircuitBreaker.Permit probe = breaker.tryAcquire();
+
+    slow.recordFailure();
+    probe.release();
+
+    assertThat(breaker.state()).isEqualTo(State.HALF_OPEN);
+    assertThat(breaker.tryAcquire()).isNotNull();
+  }
+
+  @Test
+  public void shouldGiveUpOnProbesThatNeverReport() throws Exception {
+    open();
+    nanos.addAndGet(TimeUnit.SECONDS.toNanos(10));
+    CircuitBreaker.Permit lost = breaker.tryAcquire();
+    breaker.tryAcquire();
+    assertThat(breaker.tryAcquire()).isNull();
+
+    nanos.addAndGet(TimeUnit.SECONDS.toNanos(10));
+    CircuitBreaker.Permit probe = breaker.tryAcquire();
+    lost.recordFailure();
+
+    assertThat(probe).isNotNull();
+    assertThat(breaker.state()).isEqualTo(State.HALF_OPEN);
+  }
+
+  private void open() {
+    breaker.tryAcquire().recordFailure();
+    breaker.tryAcquire().recordFailure();
+    assertThat(breaker.state()).isEqualTo(State.OPEN);
+  }
+}
@@ -0,0 +1,194 @@
+/*
+ * -\-\-
+ * Mobius
+ * --
+ * Copyright (c) 2017-2020 Spotify AB
+ * --
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -/-/-
+ */
+package com.spotify.mobius.effects;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.spotify.mobius.Connection;
+import com.spotify.mobius.MobiusHooks;
+import com.spotify.mobius.test.RecordingConsumer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class CompletionStageConnectablesTest {
+
+  private Map<String, CompletableFuture<String>> futures;
+  private RecordingConsumer<String> events;
+  private List<Throwable> errors;
+
+  @Before
+  public void setUp() throws Exception {
+    futures = new LinkedHashMap<>();
+    events = new RecordingConsumer<>();
+    errors = new ArrayList<>();
+    MobiusHooks.setErrorHandler(errors::add);
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    MobiusHooks.setDefaultErrorHandler();
+  }
+
+  @Test
+  public void shouldSendResultWhenStageCompletes() throws Exception {
+    Connection<String> connection =
+        CompletionStageConnectables.fromFunction(this::start).connect(events);
+
+    connection.accept("a");
+    connection.accept("b");
+    events.assertValues();
+
+    futures.get("b").complete("b done");
+    futures.get("a").complete("a done");
+
+    events.assertValues("b done", "a done");
+  }
+
+  @Test
+  public void shouldNotSendEventForNullResult() throws Exception {
+    Connection<String> connection =
+        CompletionStageConnectables.fromFunction(this::start).connect(events);
+
+    connection.accept("a");
+    futures.get("a").complete(null);
+
+    events.assertValues();
+  }
+
+  @Test
+  public void shouldSendEachElementOfMultipleResults() throws Exception {
+    Connection<String> connection =
+        CompletionStageConnectables.<String, String>fromMultiFunction(
+                effect -> CompletableFuture.completedFuture(Arrays.asList(effect + 1, effect + 2)))
+            .connect(events);
+
+    connection.accept("a");
+
+    events.assertValues("a1", "a2");
+  }
+
+  @Test
+  public void shouldCancelOutstandingStagesWhenDisposed() throws Exception {
+    Connection<String> connection =
+        CompletionStageConnectables.fromFunction(this::start).connect(events);
+
+    connection.accept("a");
+    connection.dispose();
+
+    assertThat(futures.get("a").isCancelled()).isTrue();
+    events.assertValues();
+    assertThat(errors).isEmpty();
+  }
+
+  @Test
+  public void shouldLimitStagesInFlight() throws Exception {
+    Connection<String> connection =
+        CompletionStageConnectables.fromFunction(this::start, 2).connect(events);
+
+    connection.accept("a");
+    connection.accept("b");
+    connection.accept("c");
+
+    assertThat(futures.keySet()).containsExactly("a", "b");
+
+    futures.get("a").complete("a done");
+
+    assertThat(futures.keySet()).containsExactly("a", "b", "c");
+  }
+
+  @Test
+  public void shouldReportFailedStages() throws Exception {
+    Connection<String> connection =
+        CompletionStageConnectables.fromFunction(this::start).connect(events);
+
+    connection.accept("a");
+    futures.get("a").completeExceptionally(new IllegalStateException("failed"));
+
+    assertThat(errors).hasSize(1);
+    assertThat(errors.get(0).getCause()).isInstanceOf(IllegalStateException.class);
+    events.assertValues();
+  }
+
+  @Test
+  public void shouldStartWaitingEffectsWhenSendingResultThrows() throws Exception {
+    Connection<String> connection =
+        CompletionStageConnectables.fromFunction(this::start, 1)
+            .connect(
+                event -> {
+                  throw new IllegalStateException("output failed");
+                });
+
+    connection.accept("a");
+    connection.accept("b");
+    futures.get("a").complete("a done");
+
+    assertThat(futures.keySet()).containsExactly("a", "b");
+  }
+
+  @Test
+  public void shouldReportExceptionsFromSendingResult() throws Exception {
+    Connection<String> connection =
+        CompletionStageConnectables.fromFunction(this::start)
+            .connect(
+                event -> {
+                  throw new IllegalStateException("output failed");
+                });
+
+    connection.accept("a");
+    futures.get("a").complete("a done");
+
+    assertThat(errors).hasSize(1);
+    assertThat(errors.get(0).getCause()).isInstanceOf(IllegalStateException.class);
+  }
+
+  @Test
+  public void shouldStartManyCompletedStagesWithoutRecursing() throws Exception {
+    int count = 100_000;
+    CompletableFuture<String> first = new CompletableFuture<>();
+    List<String> results = new ArrayList<>();
+    Connection<String> connection =
+        CompletionStageConnectables.<String, String>fromFunction(
+                effect ->
+                    effect.equals("first") ? first : CompletableFuture.completedFuture(effect),
+                1)
+            .connect(results::add);
+
+    connection.accept("first");
+    for (int i = 0; i < count; i++) {
+      connection.accept("effect " + i);
+    }
+    first.complete("first");
+
+    assertThat(results).hasSize(count + 1);
+  }
+
+  private CompletableFuture<String> start(String effect) {
+    CompletableFuture<String> future = new CompletableFuture<>();
+    futures.put(effect, future);
+    return future;
+  }
+}
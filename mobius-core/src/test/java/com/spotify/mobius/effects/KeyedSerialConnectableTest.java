@@ -0,0 +1,218 @@
+/*
+ * -\-\-
+ * Mobius
+ * --
+ * Copyright (c) 2017-2020 Spotify AB
+ * --
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -/-/-
+ */
+package com.spotify.mobius.effects;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.spotify.mobius.Connection;
+import com.spotify.mobius.MobiusHooks;
+import com.spotify.mobius.functions.Consumer;
+import com.spotify.mobius.functions.Function;
+import com.spotify.mobius.test.RecordingConnection;
+import com.spotify.mobius.test.RecordingConsumer;
+import com.spotify.mobius.test.TestWorkRunner;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class KeyedSerialConnectableTest {
+
+  private static final Function<String, Character> FIRST_CHARACTER = value -> value.charAt(0);
+
+  private TestWorkRunner runner;
+  private RecordingConnection<String> handler;
+  private List<Throwable> errors;
+
+  @Before
+  public void setUp() throws Exception {
+    runner = new TestWorkRunner();
+    handler = new RecordingConnection<>();
+    errors = new ArrayList<>();
+    MobiusHooks.setErrorHandler(errors::add);
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    MobiusHooks.setDefaultErrorHandler();
+  }
+
+  @Test
+  public void shouldRunEffectsWithSameKeyInOrderAfterEachOther() throws Exception {
+    Connection<String> connection =
+        KeyedSerialConnectable.<String, String>create(FIRST_CHARACTER, output -> handler, runner)
+            .connect(new RecordingConsumer<>());
+
+    connection.accept("a1");
+    connection.accept("a2");
+    connection.accept("b1");
+    connection.accept("a3");
+    runner.runAll();
+
+    // b1 doesn't wait for a2 and a3, which are only posted once the effect before them is done
+    handler.assertValues("a1", "b1", "a2", "a3");
+  }
+
+  @Test
+  public void shouldRunEffectsWithDifferentKeysInParallel() throws Exception {
+    CountDownLatch release = new CountDownLatch(1);
+    CountDownLatch otherKeyDone = new CountDownLatch(1);
+
+    Connection<String> connection =
+        KeyedSerialConnectable.<String, String>create(
+                FIRST_CHARACTER,
+                output ->
+                    new Connection<String>() {
+                      @Override
+                      public void accept(String value) {
+                        try {
+                          if (value.startsWith("a")) {
+                            release.await();
+                          } else {
+                            otherKeyDone.countDown();
+                          }
+                        } catch (InterruptedException e) {
+                          throw new RuntimeException(e);
+                        }
+                      }
+
+                      @Override
+                      public void dispose() {}
+                    },
+                2)
+            .connect(new RecordingConsumer<>());
+
+    connection.accept("a1");
+    connection.accept("b1");
+
+    assertThat(otherKeyDone.await(5, TimeUnit.SECONDS)).isTrue();
+    release.countDown();
+    connection.dispose();
+  }
+
+  @Test
+  public void shouldKeepRunningEffectsForKeyAfterException() throws Exception {
+    Connection<String> connection =
+        KeyedSerialConnectable.<String, String>create(
+                FIRST_CHARACTER,
+                output ->
+                    new Connection<String>() {
+                      @Override
+                      public void accept(String value) {
+                        if (value.equals("a1")) {
+                          throw new IllegalStateException("failed");
+                        }
+                        handler.accept(value);
+                      }
+
+                      @Override
+                      public void dispose() {}
+                    },
+                runner)
+            .connect(new RecordingConsumer<>());
+
+    connection.accept("a1");
+    connection.accept("a2");
+    runner.runAll();
+
+    handler.assertValues("a2");
+    assertThat(errors).hasSize(1);
+  }
+
+  @Test
+  public void shouldKeepRunningEffectsForKeyAfterError() throws Exception {
+    Connection<String> connection =
+        KeyedSerialConnectable.<String, String>create(
+                FIRST_CHARACTER,
+                output ->
+                    new Connection<String>() {
+                      @Override
+                      public void accept(String value) {
+                        if (value.equals("a1")) {
+                          throw new AssertionError("failed");
+                        }
+                        handler.accept(value);
+                      }
+
+                      @Override
+                      public void dispose() {}
+                    },
+                runner)
+            .connect(new RecordingConsumer<>());
+
+    connection.accept("a1");
+    connection.accept("a2");
+    try {
+      runner.runAll();
+    } catch (AssertionError expected) {
+      // the error propagates to the work runner
+    }
+    runner.runAll();
+
+    handler.assertValues("a2");
+  }
+
+  @Test
+  public void shouldDropQueuedEffectsWhenDisposed() throws Exception {
+    Connection<String> connection =
+        KeyedSerialConnectable.<String, String>create(FIRST_CHARACTER, output -> handler, runner)
+            .connect(new RecordingConsumer<>());
+
+    connection.accept("a1");
+    runner.runAll();
+    connection.accept("a2");
+    connection.accept("a3");
+    connection.dispose();
+    connection.accept("a4");
+    runner.runAll();
+
+    handler.assertValues("a1");
+    assertThat(handler.disposed).isTrue();
+    assertThat(runner.isDisposed()).isFalse();
+  }
+
+  @Test
+  public void shouldForwardEventsFromHandler() throws Exception {
+    RecordingConsumer<String> events = new RecordingConsumer<>();
+    Connection<String> connection =
+        KeyedSerialConnectable.<String, String>create(
+                FIRST_CHARACTER,
+                (Consumer<String> output) ->
+                    new Connection<String>() {
+                      @Override
+                      public void accept(String value) {
+                        output.accept(value + " done");
+                      }
+
+                      @Override
+                      public void dispose() {}
+                    },
+                runner)
+            .connect(events);
+
+    connection.accept("a1");
+    runner.runAll();
+
+    events.assertValues("a1 done");
+  }
+}
@@ -0,0 +1,164 @@
+/*
+ * -\-\-
+ * Mobius
+ * --
+ * Copyright (c) 2017-2020 Spotify AB
+ * --
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -/-/-
+ */
+package com.spotify.mobius.effects;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.spotify.mobius.Connection;
+import com.spotify.mobius.test.RecordingConsumer;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Before;
+import org.junit.Test;
+
+public class SingleFlightConnectableTest {
+
+  private CountDownLatch started;
+  private CountDownLatch release;
+  private AtomicInteger calls;
+
+  @Before
+  public void setUp() throws Exception {
+    started = new CountDownLatch(1);
+    release = new CountDownLatch(1);
+    calls = new AtomicInteger();
+  }
+
+  @Test
+  public void shouldCollapseIdenticalEffectsWithinConnection() throws Exception {
+    SingleFlightConnectable<String, String> connectable =
+        SingleFlightConnectable.builder(this::fetch).build();
+    RecordingConsumer<String> events = new RecordingConsumer<>();
+    Connection<String> connection = connectable.connect(events);
+
+    Thread first = acceptInBackground(connection, "config");
+    assertThat(started.await(5, TimeUnit.SECONDS)).isTrue();
+    connection.accept("config");
+    release.countDown();
+    first.join(5000);
+
+    events.assertValues("config fetched", "config fetched");
+    assertThat(calls.get()).isEqualTo(1);
+    assertThat(connectable.executionCount()).isEqualTo(1);
+    assertThat(connectable.collapsedCount()).isEqualTo(1);
+  }
+
+  @Test
+  public void shouldNotCollapseAcrossConnectionsByDefault() throws Exception {
+    SingleFlightConnectable<String, String> connectable =
+        SingleFlightConnectable.builder(this::fetch).build();
+    release.countDown();
+
+    connectable.connect(new RecordingConsumer<>()).accept("config");
+    connectable.connect(new RecordingConsumer<>()).accept("config");
+
+    assertThat(calls.get()).isEqualTo(2);
+  }
+
+  @Test
+  public void shouldCollapseAcrossConnectionsWhenShared() throws Exception {
+    SingleFlightConnectable<String, String> connectable =
+        SingleFlightConnectable.builder(this::fetch).acrossConnections().build();
+    RecordingConsumer<String> events1 = new RecordingConsumer<>();
+    RecordingConsumer<String> events2 = new RecordingConsumer<>();
+
+    Thread first = acceptInBackground(connectable.connect(events1), "config");
+    assertThat(started.await(5, TimeUnit.SECONDS)).isTrue();
+    connectable.connect(events2).accept("config");
+    release.countDown();
+    first.join(5000);
+
+    events1.assertValues("config fetched");
+    events2.assertValues("config fetched");
+    assertThat(calls.get()).isEqualTo(1);
+  }
+
+  @Test
+  public void shouldUseKeyFunctionToFindIdenticalEffects() throws Exception {
+    SingleFlightConnectable<String, String> connectable =
+        SingleFlightConnectable.builder(this::fetch).key(effect -> effect.length()).build();
+    RecordingConsumer<String> events = new RecordingConsumer<>();
+    Connection<String> connection = connectable.connect(events);
+
+    Thread first = acceptInBackground(connection, "aaa");
+    assertThat(started.await(5, TimeUnit.SECONDS)).isTrue();
+    connection.accept("bbb");
+    release.countDown();
+    first.join(5000);
+
+    events.assertValues("aaa fetched", "aaa fetched");
+  }
+
+  @Test
+  public void shouldHandleEffectAgainAfterExecutionCompletes() throws Exception {
+    SingleFlightConnectable<String, String> connectable =
+        SingleFlightConnectable.builder(this::fetch).build();
+    release.countDown();
+    Connection<String> connection = connectable.connect(new RecordingConsumer<>());
+
+    connection.accept("config");
+    connection.accept("config");
+
+    assertThat(calls.get()).isEqualTo(2);
+  }
+
+  @Test
+  public void shouldReleaseKeyWhenHandlerThrowsError() throws Exception {
+    SingleFlightConnectable<String, String> connectable =
+        SingleFlightConnectable.<String, String>builder(
+                effect -> {
+                  if (calls.incrementAndGet() == 1) {
+                    throw new AssertionError("boom");
+                  }
+                  return effect + " fetched";
+                })
+            .build();
+    RecordingConsumer<String> events = new RecordingConsumer<>();
+    Connection<String> connection = connectable.connect(events);
+
+    try {
+      connection.accept("config");
+    } catch (AssertionError expected) {
+      // the error propagates, but the key must not stay in flight
+    }
+    connection.accept("config");
+
+    events.assertValues("config fetched");
+    assertThat(calls.get()).isEqualTo(2);
+  }
+
+  private String fetch(String effect) {
+    calls.incrementAndGet();
+    started.countDown();
+    try {
+      release.await();
+    } catch (InterruptedException e) {
+      throw new RuntimeException(e);
+    }
+    return effect + " fetched";
+  }
+
+  private static Thread acceptInBackground(Connection<String> connection, String effect) {
+    Thread thread = new Thread(() -> connection.accept(effect));
+    thread.start();
+    return thread;
+  }
+}
@@ -0,0 +1,200 @@
+/*
+ * -\-\-
+ * Mobius
+ * --
+ * Copyright (c) 2017-2020 Spotify AB
+ * --
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -/-/-
+ */
+package com.spotify.mobius.effects;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.spotify.mobius.Connection;
+import com.spotify.mobius.MobiusHooks;
+import com.spotify.mobius.test.RecordingConsumer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import org.junit.Before;
+import org.junit.Test;
+
+public class SwitchingConnectableTest {
+
+  private Map<String, CountDownLatch> started;
+  private Map<String, CountDownLatch> interrupted;
+  private RecordingConsumer<String> events;
+  private Connection<Object> connection;
+
+  @Before
+  public void setUp() throws Exception {
+    started = new ConcurrentHashMap<>();
+    interrupted = new ConcurrentHashMap<>();
+    events = new RecordingConsumer<>();
+    connection =
+        SwitchingConnectable.<Object, String>builder(effect -> key(effect), this::handle)
+            .cancelOn(Cancel.class, cancel -> cancel.key)
+            .build()
+            .connect(events);
+  }
+
+  @Test
+  public void shouldCancelRunningEffectWithSameKey() throws Exception {
+    connection.accept("search:slow");
+    awaitStarted("search:slow");
+
+    connection.accept("search:fast");
+
+    awaitInterrupted("search:slow");
+    events.waitForChange(1000);
+    events.assertValues("search:fast done");
+  }
+
+  @Test
+  public void shouldNotCancelEffectsWithOtherKeys() throws Exception {
+    connection.accept("a:slow");
+    awaitStarted("a:slow");
+
+    connection.accept("b:fast");
+    events.waitForChange(1000);
+
+    events.assertValues("b:fast done");
+    assertThat(interrupted.containsKey("a:slow")).isFalse();
+    connection.dispose();
+  }
+
+  @Test
+  public void shouldCancelEffectsExplicitly() throws Exception {
+    connection.accept("search:slow");
+    awaitStarted("search:slow");
+
+    connection.accept(new Cancel("search"));
+
+    awaitInterrupted("search:slow");
+    events.assertValues();
+  }
+
+  @Test
+  public void shouldCancelRunningEffectsWhenDisposed() throws Exception {
+    connection.accept("search:slow");
+    awaitStarted("search:slow");
+
+    connection.dispose();
+
+    awaitInterrupted("search:slow");
+    events.assertValues();
+  }
+
+  @Test
+  public void shouldWaitForEventBeingSentBeforeSupersedingIt() throws Exception {
+    CountDownLatch sending = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+    Connection<Object> blocking =
+        SwitchingConnectable.<Object, String>builder(effect -> key(effect), this::handle)
+            .build()
+            .connect(
+                event -> {
+                  sending.countDown();
+                  try {
+                    release.await();
+                  } catch (InterruptedException e) {
+                    throw new RuntimeException(e);
+                  }
+                });
+
+    blocking.accept("search:first");
+    assertThat(sending.await(5, TimeUnit.SECONDS)).isTrue();
+
+    Thread superseding = new Thread(() -> blocking.accept("search:second"));
+    superseding.start();
+    superseding.join(100);
+    assertThat(superseding.isAlive()).isTrue();
+
+    release.countDown();
+    superseding.join(5000);
+    assertThat(superseding.isAlive()).isFalse();
+    blocking.dispose();
+  }
+
+  @Test
+  public void shouldReportEffectsRejectedByExecutor() throws Exception {
+    List<Throwable> errors = new ArrayList<>();
+    MobiusHooks.setErrorHandler(errors::add);
+    ExecutorService executor = Executors.newSingleThreadExecutor();
+    executor.shutdown();
+
+    try {
+      Connection<Object> rejecting =
+          SwitchingConnectable.<Object, String>builder(effect -> key(effect), this::handle)
+              .executor(executor)
+              .build()
+              .connect(events);
+
+      rejecting.accept("search:fast");
+      rejecting.dispose();
+    } finally {
+      MobiusHooks.setDefaultErrorHandler();
+    }
+
+    assertThat(errors).hasSize(1);
+    assertThat(errors.get(0).getCause()).isInstanceOf(RejectedExecutionException.class);
+    events.assertValues();
+  }
+
+  private static Object key(Object effect) {
+    return ((String) effect).split(":")[0];
+  }
+
+  private String handle(Object effect) {
+    String name = (String) effect;
+    latch(started, name).countDown();
+
+    if (name.endsWith("slow")) {
+      try {
+        Thread.sleep(10_000);
+      } catch (InterruptedException e) {
+        latch(interrupted, name).countDown();
+        return name + " interrupted";
+      }
+    }
+
+    return name + " done";
+  }
+
+  private void awaitStarted(String name) throws InterruptedException {
+    assertThat(latch(started, name).await(5, TimeUnit.SECONDS)).isTrue();
+  }
+
+  private void awaitInterrupted(String name) throws InterruptedException {
+    assertThat(latch(interrupted, name).await(5, TimeUnit.SECONDS)).isTrue();
+  }
+
+  private static CountDownLatch latch(Map<String, CountDownLatch> latches, String name) {
+    return latches.computeIfAbsent(name, ignored -> new CountDownLatch(1));
+  }
+
+  private static final class Cancel {
+    private final String key;
+
+    Cancel(String key) {
+      this.key = key;
+    }
+  }
+}
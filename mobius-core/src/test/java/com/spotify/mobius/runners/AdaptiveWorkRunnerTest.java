@@ -0,0 +1,201 @@
+/*
+ * -\-\-
+ * Mobius
+ * --
+ * Copyright (c) 2017-2020 Spotify AB
+ * --
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -/-/-
+ */
+package com.spotify.mobius.runners;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import com.spotify.mobius.MobiusHooks;
+import com.spotify.mobius.test.TestWorkRunner;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class AdaptiveWorkRunnerTest {
+
+  private TestWorkRunner delegate;
+  private AtomicLong nanos;
+  private List<Throwable> errors;
+  private AdaptiveWorkRunner.Builder builder;
+
+  @Before
+  public void setUp() throws Exception {
+    delegate = new TestWorkRunner();
+    nanos = new AtomicLong();
+    errors = new ArrayList<>();
+    MobiusHooks.setErrorHandler(errors::add);
+
+    builder =
+        AdaptiveWorkRunner.builder(delegate)
+            .limit(2, 1, 4)
+            .latencyThreshold(100, TimeUnit.MILLISECONDS)
+            .backoffRatio(0.5)
+            .clock(nanos::get);
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    MobiusHooks.setDefaultErrorHandler();
+  }
+
+  @Test
+  public void shouldQueueRunnablesBeyondLimit() throws Exception {
+    AdaptiveWorkRunner runner = builder.build();
+    List<Integer> ran = new ArrayList<>();
+
+    for (int i = 0; i < 3; i++) {
+      final int value = i;
+      runner.post(() -> ran.add(value));
+    }
+
+    assertThat(runner.inFlight()).isEqualTo(2);
+    assertThat(runner.queueDepth()).isEqualTo(1);
+
+    delegate.runAll();
+
+    assertThat(ran).containsExactly(0, 1, 2);
+    assertThat(runner.inFlight()).isEqualTo(0);
+  }
+
+  @Test
+  public void shouldRaiseLimitWhileFastAndUsed() throws Exception {
+    AdaptiveWorkRunner runner = builder.build();
+
+    runner.post(taking(10));
+    runner.post(taking(10));
+    delegate.runAll();
+
+    // the second runnable completes with only one in flight, which doesn't use the limit
+    assertThat(runner.limit()).isEqualTo(3);
+    assertThat(runner.latency(TimeUnit.MILLISECONDS)).isEqualTo(10);
+  }
+
+  @Test
+  public void shouldNotRaiseLimitWhileUnused() throws Exception {
+    AdaptiveWorkRunner runner = builder.limit(4, 1, 8).build();
+
+    runner.post(taking(10));
+    delegate.runAll();
+
+    assertThat(runner.limit()).isEqualTo(4);
+  }
+
+  @Test
+  public void shouldLowerLimitWhenSlow() throws Exception {
+    AdaptiveWorkRunner runner = builder.limit(4, 1, 4).build();
+
+    runner.post(taking(500));
+    delegate.runAll();
+    assertThat(runner.limit()).isEqualTo(2);
+
+    runner.post(taking(500));
+    runner.post(taking(500));
+    delegate.runAll();
+    assertThat(runner.limit()).isEqualTo(1);
+  }
+
+  @Test
+  public void shouldRejectRunnablesWhenQueueIsFull() throws Exception {
+    AdaptiveWorkRunner runner = builder.maxQueueSize(1).build();
+
+    for (int i = 0; i < 4; i++) {
+      runner.post(taking(10));
+    }
+
+    assertThat(runner.rejectedCount()).isEqualTo(1);
+    assertThat(errors).hasSize(1);
+    assertThat(errors.get(0)).isInstanceOf(RejectedExecutionException.class);
+  }
+
+  @Test
+  public void shouldDiscardQueuedRunnablesAndDisposeDelegateWhenDisposed() throws Exception {
+    AdaptiveWorkRunner runner = builder.limit(1, 1, 1).build();
+    List<String> ran = new ArrayList<>();
+
+    runner.post(() -> ran.add("first"));
+    runner.post(() -> ran.add("second"));
+    runner.dispose();
+    runner.post(() -> ran.add("third"));
+
+    assertThat(runner.queueDepth()).isEqualTo(0);
+    assertThat(delegate.isDisposed()).isTrue();
+    assertThat(ran).isEmpty();
+  }
+
+  @Test
+  public void shouldGiveBackSlotWhenDelegateRejectsRunnable() throws Exception {
+    AtomicBoolean rejecting = new AtomicBoolean(true);
+    AdaptiveWorkRunner runner = AdaptiveWorkRunner.builder(rejectingWhile(rejecting)).build();
+
+    assertThatThrownBy(() -> runner.post(taking(10)))
+        .isInstanceOf(RejectedExecutionException.class);
+    assertThat(runner.inFlight()).isEqualTo(0);
+
+    rejecting.set(false);
+    runner.post(taking(10));
+    delegate.runAll();
+
+    assertThat(runner.inFlight()).isEqualTo(0);
+  }
+
+  @Test
+  public void shouldGiveBackSlotWhenDelegateRejectsQueuedRunnable() throws Exception {
+    AtomicBoolean rejecting = new AtomicBoolean(false);
+    AdaptiveWorkRunner runner =
+        AdaptiveWorkRunner.builder(rejectingWhile(rejecting)).limit(1, 1, 1).build();
+
+    runner.post(taking(10));
+    runner.post(taking(10));
+    rejecting.set(true);
+    delegate.runAll();
+
+    assertThat(runner.inFlight()).isEqualTo(0);
+    assertThat(runner.queueDepth()).isEqualTo(0);
+    assertThat(errors).hasSize(1);
+    assertThat(errors.get(0).getCause()).isInstanceOf(RejectedExecutionException.class);
+  }
+
+  private WorkRunner rejectingWhile(AtomicBoolean rejecting) {
+    return new WorkRunner() {
+      @Override
+      public void post(Runnable runnable) {
+        if (rejecting.get()) {
+          throw new RejectedExecutionException("rejected");
+        }
+        delegate.post(runnable);
+      }
+
+      @Override
+      public void dispose() {
+        delegate.dispose();
+      }
+    };
+  }
+
+  private Runnable taking(long millis) {
+    return () -> nanos.addAndGet(TimeUnit.MILLISECONDS.toNanos(millis));
+  }
+}
@@ -0,0 +1,175 @@
+/*
+ * -\-\-
+ * Mobius
+ * --
+ * Copyright (c) 2017-2020 Spotify AB
+ * --
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -/-/-
+ */
+package com.spotify.mobius.runners;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.spotify.mobius.disposables.Disposable;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Test;
+
+public class HashedWheelTimerTest {
+
+  @Test
+  public void shouldRunTaskAfterDelay() throws Exception {
+    final CountDownLatch latch = new CountDownLatch(1);
+    long start = System.nanoTime();
+
+    HashedWheelTimer.shared().schedule(latch::countDown, TimeUnit.MILLISECONDS.toNanos(50), 0);
+
+    assertThat(latch.await(1, TimeUnit.SECONDS)).isTrue();
+    assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start))
+        .isGreaterThanOrEqualTo(50L);
+  }
+
+  @Test
+  public void shouldRunTasksInDeadlineOrder() throws Exception {
+    final List<Integer> order = new CopyOnWriteArrayList<>();
+    final CountDownLatch latch = new CountDownLatch(3);
+
+    HashedWheelTimer.shared().schedule(() -> record(order, 3, latch), millis(90), 0);
+    HashedWheelTimer.shared().schedule(() -> record(order, 1, latch), millis(10), 0);
+    HashedWheelTimer.shared().schedule(() -> record(order, 2, latch), millis(50), 0);
+
+    assertThat(latch.await(1, TimeUnit.SECONDS)).isTrue();
+    assertThat(order).containsExactly(1, 2, 3);
+  }
+
+  @Test
+  public void shouldNotRunCancelledTasks() throws Exception {
+    final AtomicInteger runs = new AtomicInteger();
+    final CountDownLatch latch = new CountDownLatch(1);
+
+    Disposable cancelled = HashedWheelTimer.shared().schedule(runs::incrementAndGet, millis(20), 0);
+    HashedWheelTimer.shared().schedule(latch::countDown, millis(60), 0);
+    cancelled.dispose();
+
+    assertThat(latch.await(1, TimeUnit.SECONDS)).isTrue();
+    assertThat(runs.get()).isEqualTo(0);
+  }
+
+  @Test
+  public void shouldNotRunTasksWithOverflowingDelay() throws Exception {
+    final AtomicInteger runs = new AtomicInteger();
+    final CountDownLatch latch = new CountDownLatch(1);
+
+    Disposable far = HashedWheelTimer.shared().schedule(runs::incrementAndGet, Long.MAX_VALUE, 0);
+    HashedWheelTimer.shared().schedule(latch::countDown, millis(30), 0);
+
+    assertThat(latch.await(1, TimeUnit.SECONDS)).isTrue();
+    assertThat(runs.get()).isEqualTo(0);
+    far.dispose();
+  }
+
+  @Test
+  public void shouldRepeatPeriodicTasksUntilDisposed() throws Exception {
+    final AtomicInteger runs = new AtomicInteger();
+    final CountDownLatch latch = new CountDownLatch(3);
+
+    Disposable periodic =
+        HashedWheelTimer.shared()
+            .schedule(
+                () -> {
+                  runs.incrementAndGet();
+                  latch.countDown();
+                },
+                millis(10),
+                millis(20));
+
+    assertThat(latch.await(1, TimeUnit.SECONDS)).isTrue();
+    periodic.dispose();
+
+    int runsAfterDispose = runs.get();
+    Thread.sleep(100);
+
+    // at most one execution could have been in flight when disposing
+    assertThat(runs.get()).isLessThanOrEqualTo(runsAfterDispose + 1);
+  }
+
+  @Test
+  public void shouldPostDelayedWorkToWorkRunner() throws Exception {
+    final CountDownLatch latch = new CountDownLatch(1);
+    final List<String> threads = new CopyOnWriteArrayList<>();
+    WorkRunner runner = WorkRunners.singleThread();
+
+    runner.postDelayed(
+        () -> {
+          threads.add(Thread.currentThread().getName());
+          latch.countDown();
+        },
+        20,
+        TimeUnit.MILLISECONDS);
+
+    assertThat(latch.await(1, TimeUnit.SECONDS)).isTrue();
+    assertThat(threads).doesNotContain("mobius-timer");
+
+    runner.dispose();
+  }
+
+  @Test
+  public void shouldShareTimerThreadBetweenWorkRunners() throws Exception {
+    final int runnerCount = 1000;
+    final Set<String> timerThreads = ConcurrentHashMap.newKeySet();
+    final CountDownLatch latch = new CountDownLatch(runnerCount);
+
+    for (int i = 0; i < runnerCount; i++) {
+      new ImmediateWorkRunner()
+          .postDelayed(
+              () -> {
+                timerThreads.add(Thread.currentThread().getName());
+                latch.countDown();
+              },
+              i % 50,
+              TimeUnit.MILLISECONDS);
+    }
+
+    assertThat(latch.await(1, TimeUnit.SECONDS)).isTrue();
+    assertThat(timerThreads).containsExactly("mobius-timer");
+  }
+
+  @Test
+  public void shouldDiscardDelayedWorkForDisposedRunners() throws Exception {
+    final AtomicInteger runs = new AtomicInteger();
+    final CountDownLatch latch = new CountDownLatch(1);
+    WorkRunner runner = new ImmediateWorkRunner();
+
+    runner.postDelayed(runs::incrementAndGet, 20, TimeUnit.MILLISECONDS);
+    runner.dispose();
+    HashedWheelTimer.shared().schedule(latch::countDown, millis(60), 0);
+
+    assertThat(latch.await(1, TimeUnit.SECONDS)).isTrue();
+    assertThat(runs.get()).isEqualTo(0);
+  }
+
+  private static long millis(long millis) {
+    return TimeUnit.MILLISECONDS.toNanos(millis);
+  }
+
+  private static void record(List<Integer> order, int value, CountDownLatch latch) {
+    order.add(value);
+    latch.countDown();
+  }
+}
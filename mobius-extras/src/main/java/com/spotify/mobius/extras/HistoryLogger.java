@@ -0,0 +1,237 @@
+/*
+ * -\-\-
+ * Mobius
+ * --
+ * Copyright (c) 2017-2020 Spotify AB
+ * --
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -/-/-
+ */
+package com.spotify.mobius.extras;
+
+import static com.spotify.mobius.internal_util.Preconditions.checkArgument;
+import static com.spotify.mobius.internal_util.Preconditions.checkNotNull;
+
+import com.spotify.mobius.First;
+import com.spotify.mobius.MobiusLoop;
+import com.spotify.mobius.Next;
+import com.spotify.mobius.functions.Consumer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import javax.annotation.Nullable;
+
+/**
+ * A {@link MobiusLoop.Logger} that keeps the most recent updates of a loop in a fixed-size ring
+ * buffer, so that the events leading up to a problem can be inspected after the fact.
+ *
+ * <p>Each update is recorded as the model it started from, the event, the resulting {@link Next}
+ * (or the exception it threw) and a timestamp. Recording only stores references in preallocated
+ * arrays, so it's cheap enough to leave on in production, unlike debug logging of every event. The
+ * history can be read at any time using {@link #records()}, and can be handed to a callback when an
+ * update throws.
+ *
+ * <p>Since the records hold on to models and events, they stay reachable until they're overwritten
+ * or {@link #clear()} is called.
+ *
+ * @param <M> the model type
+ * @param <E> the event type
+ * @param <F> the effect type
+ */
+public final class HistoryLogger<M, E, F> implements MobiusLoop.Logger<M, E, F> {
+
+  private final int capacity;
+  @Nullable private final Consumer<List<Record<M, E, F>>> onUpdateException;
+
+  // guarded by 'this'; record number n is stored at index n % capacity
+  private final long[] timestamps;
+  private final Object[] models;
+  private final Object[] events;
+  private final Object[] results;
+  private long recordCount;
+
+  private HistoryLogger(int capacity, @Nullable Consumer<List<Record<M, E, F>>> onUpdateException) {
+    this.capacity = capacity;
+    this.onUpdateException = onUpdateException;
+    this.timestamps = new long[capacity];
+    this.models = new Object[capacity];
+    this.events = new Object[capacity];
+    this.results = new Object[capacity];
+  }
+
+  /** Creates a logger that keeps the given number of most recent updates. */
+  public static <M, E, F> HistoryLogger<M, E, F> create(int capacity) {
+    checkArgument(capacity > 0);
+    return new HistoryLogger<>(capacity, null);
+  }
+
+  /**
+   * Creates a logger that keeps the given number of most recent updates, and passes them to the
+   * supplied consumer when an update throws. The consumer is called on the thread that ran the
+   * update, and the last record is the failed update.
+   */
+  public static <M, E, F> HistoryLogger<M, E, F> create(
+      int capacity, Consumer<List<Record<M, E, F>>> onUpdateException) {
+    checkArgument(capacity > 0);
+    return new HistoryLogger<>(capacity, checkNotNull(onUpdateException));
+  }
+
+  /** Returns a copy of the recorded updates, oldest first. */
+  public List<Record<M, E, F>> records() {
+    synchronized (this) {
+      int size = (int) Math.min(recordCount, capacity);
+      List<Record<M, E, F>> records = new ArrayList<>(size);
+
+      for (long n = recordCount - size; n < recordCount; n++) {
+        records.add(recordAt((int) (n % capacity)));
+      }
+
+      return Collections.unmodifiableList(records);
+    }
+  }
+
+  /** Returns the number of updates recorded since creation, including those overwritten since. */
+  public synchronized long recordCount() {
+    return recordCount;
+  }
+
+  /** Drops all recorded updates, releasing the models and events they refer to. */
+  public synchronized void clear() {
+    for (int i = 0; i < capacity; i++) {
+      models[i] = null;
+      events[i] = null;
+      results[i] = null;
+    }
+    recordCount = 0;
+  }
+
+  @Override
+  public void beforeInit(M model) {}
+
+  @Override
+  public void afterInit(M model, First<M, F> result) {}
+
+  @Override
+  public void exceptionDuringInit(M model, Throwable exception) {}
+
+  @Override
+  public void beforeUpdate(M model, E event) {}
+
+  @Override
+  public void afterUpdate(M model, E event, Next<M, F> result) {
+    record(model, event, result);
+  }
+
+  @Override
+  public void exceptionDuringUpdate(M model, E event, Throwable exception) {
+    record(model, event, exception);
+
+    if (onUpdateException != null) {
+      onUpdateException.accept(records());
+    }
+  }
+
+  private void record(M model, E event, Object result) {
+    long timestamp = System.currentTimeMillis();
+
+    synchronized (this) {
+      int index = (int) (recordCount % capacity);
+      timestamps[index] = timestamp;
+      models[index] = model;
+      events[index] = event;
+      results[index] = result;
+      recordCount++;
+    }
+  }
+
+  // must be called with 'this' held
+  @SuppressWarnings("unchecked")
+  private Record<M, E, F> recordAt(int index) {
+    M model = (M) models[index];
+    E event = (E) events[index];
+    Object result = results[index];
+
+    if (result instanceof Throwable) {
+      return new Record<>(timestamps[index], model, event, null, (Throwable) result);
+    }
+
+    return new Record<>(timestamps[index], model, event, (Next<M, F>) result, null);
+  }
+
+  /**
+   * A single update recorded by a {@link HistoryLogger}: either {@link #next()} or {@link
+   * #exception()} is non-null.
+   *
+   * @param <M> the model type
+   * @param <E> the event type
+   * @param <F> the effect type
+   */
+  public static final class Record<M, E, F> {
+    private final long timestampMillis;
+    private final M model;
+    private final E event;
+    @Nullable private final Next<M, F> next;
+    @Nullable private final Throwable exception;
+
+    Record(
+        long timestampMillis,
+        M model,
+        E event,
+        @Nullable Next<M, F> next,
+        @Nullable Throwable exception) {
+      this.timestampMillis = timestampMillis;
+      this.model = model;
+      this.event = event;
+      this.next = next;
+      this.exception = exception;
+    }
+
+    /** The wall clock time at which the update finished, in milliseconds since the epoch. */
+    public long timestampMillis() {
+      return timestampMillis;
+    }
+
+    /** The model the update started from. */
+    public M model() {
+      return model;
+    }
+
+    public E event() {
+      return event;
+    }
+
+    /** The result of the update, or null if it threw. */
+    @Nullable
+    public Next<M, F> next() {
+      return next;
+    }
+
+    /** The exception thrown by the update, or null if it succeeded. */
+    @Nullable
+    public Throwable exception() {
+      return exception;
+    }
+
+    @Override
+    public String toString() {
+      return "Record{timestampMillis="
+          + timestampMillis
+          + ", model="
+          + model
+          + ", event="
+          + event
+          + (exception != null ? ", exception=" + exception : ", next=" + next)
+          + "}";
+    }
+  }
+}
@@ -0,0 +1,743 @@
+/*
+ * -\-\-
+ * Mobius
+ * --
+ * Copyright (c) 2017-2020 Spotify AB
+ * --
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -/-/-
+ */
+package com.spotify.mobius.extras;
+
+import static com.spotify.mobius.internal_util.Preconditions.checkArgument;
+import static com.spotify.mobius.internal_util.Preconditions.checkNotNull;
+
+import com.spotify.mobius.Connectable;
+import com.spotify.mobius.Connection;
+import com.spotify.mobius.EventSource;
+import com.spotify.mobius.disposables.Disposable;
+import com.spotify.mobius.functions.Consumer;
+import com.spotify.mobius.functions.Function;
+import com.spotify.mobius.functions.Producer;
+import com.spotify.mobius.runners.WorkRunner;
+import com.spotify.mobius.runners.WorkRunners;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * Event sources and effect handlers for time-based behaviour, and wrappers that debounce or
+ * throttle existing ones, built on {@link WorkRunner#postDelayed(Runnable, long, TimeUnit)} and
+ * {@link WorkRunner#schedulePeriodic(Runnable, long, long, TimeUnit)}.
+ *
+ * <p>Unless a {@link WorkRunner} is specified, events are emitted directly from the timer thread
+ * that is shared by all work runners, so any number of loops can use these without creating
+ * additional threads. Debounced or throttled effects are also timed on that timer, but passed on
+ * from a single delivery thread that is shared by all connections, since an effect handler that
+ * blocks on the timer thread would delay every timer in the process; effect handlers that block
+ * still delay each other, so pass in a work runner for those. Passing in a {@link WorkRunner} makes
+ * the timing follow that work runner, which is useful for instance to control time in tests.
+ */
+public final class Timers {
+
+  private static final WorkRunner TIMER_THREAD = WorkRunners.immediate();
+
+  private static final ThreadFactory DELIVERY_THREAD_FACTORY =
+      new ThreadFactory() {
+        @Override
+        public Thread newThread(@Nonnull Runnable runnable) {
+          Thread thread = new Thread(runnable, "mobius-timers-delivery");
+          thread.setDaemon(true);
+          return thread;
+        }
+      };
+
+  private Timers() {
+    // prevent instantiation
+  }
+
+  /**
+   * Creates an {@link EventSource} that emits an event every {@code period}, starting one period
+   * after subscribing.
+   *
+   * @param period the time between events
+   * @param unit the unit of the period
+   * @param eventProducer creates the event to emit on each tick
+   * @param <E> the event type
+   */
+  @Nonnull
+  public static <E> EventSource<E> interval(long period, TimeUnit unit, Producer<E> eventProducer) {
+    return interval(TIMER_THREAD, period, unit, eventProducer);
+  }
+
+  /**
+   * Creates an {@link EventSource} that emits an event every {@code period}, starting one period
+   * after subscribing, using the supplied {@link WorkRunner} for scheduling and emitting events.
+   *
+   * @param runner the work runner to schedule on
+   * @param period the time between events
+   * @param unit the unit of the period
+   * @param eventProducer creates the event to emit on each tick
+   * @param <E> the event type
+   */
+  @Nonnull
+  public static <E> EventSource<E> interval(
+      final WorkRunner runner,
+      final long period,
+      final TimeUnit unit,
+      final Producer<E> eventProducer) {
+    checkNotNull(runner);
+    checkArgument(period > 0);
+    checkNotNull(unit);
+    checkNotNull(eventProducer);
+
+    return new EventSource<E>() {
+      @Nonnull
+      @Override
+      public Disposable subscribe(Consumer<E> eventConsumer) {
+        return new IntervalSubscription<>(runner, period, unit, eventProducer, eventConsumer);
+      }
+    };
+  }
+
+  /**
+   * Creates an effect handler that, for every effect it receives, emits an event after the given
+   * delay. Any events that haven't been emitted yet are discarded when the connection is disposed.
+   *
+   * <p>This can be used to implement timeouts: the update function dispatches a {@code
+   * StartTimeout} effect, and gets a {@code TimedOut} event back after the delay.
+   *
+   * @param delay the time between receiving an effect and emitting the event
+   * @param unit the unit of the delay
+   * @param eventForEffect creates the event to emit for an effect
+   * @param <F> the effect type
+   * @param <E> the event type
+   */
+  @Nonnull
+  public static <F, E> Connectable<F, E> delay(
+      long delay, TimeUnit unit, Function<F, E> eventForEffect) {
+    return delay(TIMER_THREAD, delay, unit, eventForEffect);
+  }
+
+  /**
+   * Creates an effect handler that, for every effect it receives, emits an event after the given
+   * delay, using the supplied {@link WorkRunner} for scheduling and emitting events. Any events
+   * that haven't been emitted yet are discarded when the connection is disposed.
+   *
+   * @param runner the work runner to schedule on
+   * @param delay the time between receiving an effect and emitting the event
+   * @param unit the unit of the delay
+   * @param eventForEffect creates the event to emit for an effect
+   * @param <F> the effect type
+   * @param <E> the event type
+   */
+  @Nonnull
+  public static <F, E> Connectable<F, E> delay(
+      final WorkRunner runner,
+      final long delay,
+      final TimeUnit unit,
+      final Function<F, E> eventForEffect) {
+    checkNotNull(runner);
+    checkArgument(delay >= 0);
+    checkNotNull(unit);
+    checkNotNull(eventForEffect);
+
+    return SimpleConnectable.withConnectionFactory(
+        new Function<Consumer<E>, Connection<F>>() {
+          @Nonnull
+          @Override
+          public Connection<F> apply(Consumer<E> output) {
+            return new DelayConnection<>(runner, delay, unit, eventForEffect, output);
+          }
+        });
+  }
+
+  /**
+   * Wraps an effect handler so that effects are only passed on once no other effect with the same
+   * key has been received for the duration of the window. Each effect restarts the window for its
+   * key, and only the most recent one is passed on when the window ends. Effects that haven't been
+   * passed on yet are discarded when the connection is disposed.
+   *
+   * <p>This can be used to save a draft once the user stops typing, without saving it on every
+   * keystroke.
+   *
+   * @param effectHandler the effect handler to pass effects on to
+   * @param key returns the key of an effect; effects with different keys are debounced separately
+   * @param window the time without effects that must pass before the last one is passed on
+   * @param unit the unit of the window
+   * @param <F> the effect type
+   * @param <E> the event type
+   */
+  @Nonnull
+  public static <F, E> Connectable<F, E> debounceEffects(
+      Connectable<F, E> effectHandler, Function<F, ?> key, long window, TimeUnit unit) {
+    return debounceEffects(SharedDelivery.RUNNER, effectHandler, key, window, unit);
+  }
+
+  /**
+   * Wraps an effect handler so that effects are only passed on once no other effect with the same
+   * key has been received for the duration of the window, using the supplied {@link WorkRunner} for
+   * scheduling and passing on effects. See {@link #debounceEffects(Connectable, Function, long,
+   * TimeUnit)}.
+   *
+   * <p>The work runner should not be {@link WorkRunners#immediate()}, unless the effect handler
+   * never blocks, because that passes effects on from the timer thread shared by all work runners.
+   *
+   * @param runner the work runner to schedule on
+   * @param effectHandler the effect handler to pass effects on to
+   * @param key returns the key of an effect; effects with different keys are debounced separately
+   * @param window the time without effects that must pass before the last one is passed on
+   * @param unit the unit of the window
+   * @param <F> the effect type
+   * @param <E> the event type
+   */
+  @Nonnull
+  public static <F, E> Connectable<F, E> debounceEffects(
+      final WorkRunner runner,
+      final Connectable<F, E> effectHandler,
+      final Function<F, ?> key,
+      final long window,
+      final TimeUnit unit) {
+    checkNotNull(runner);
+    checkNotNull(effectHandler);
+    checkNotNull(key);
+    checkArgument(window > 0);
+    checkNotNull(unit);
+
+    return SimpleConnectable.withConnectionFactory(
+        new Function<Consumer<E>, Connection<F>>() {
+          @Nonnull
+          @Override
+          public Connection<F> apply(Consumer<E> output) {
+            Connection<F> delegate = effectHandler.connect(output);
+            return new TimedConnection<>(
+                new Debouncer<>(runner, window, unit, key, delegate), delegate);
+          }
+        });
+  }
+
+  /**
+   * Wraps an effect handler so that it receives at most one effect per window. The first effect is
+   * passed on right away and starts a window; effects received during the window replace each
+   * other, and the most recent one is passed on when the window ends, starting a new window.
+   * Effects that haven't been passed on yet are discarded when the connection is disposed.
+   *
+   * @param effectHandler the effect handler to pass effects on to
+   * @param window the minimum time between effects passed on
+   * @param unit the unit of the window
+   * @param <F> the effect type
+   * @param <E> the event type
+   */
+  @Nonnull
+  public static <F, E> Connectable<F, E> throttleEffects(
+      Connectable<F, E> effectHandler, long window, TimeUnit unit) {
+    return throttleEffects(SharedDelivery.RUNNER, effectHandler, window, unit);
+  }
+
+  /**
+   * Wraps an effect handler so that it receives at most one effect per window, using the supplied
+   * {@link WorkRunner} for scheduling and passing on effects. See {@link
+   * #throttleEffects(Connectable, long, TimeUnit)}.
+   *
+   * <p>The work runner should not be {@link WorkRunners#immediate()}, unless the effect handler
+   * never blocks, because that passes effects on from the timer thread shared by all work runners.
+   *
+   * @param runner the work runner to schedule on
+   * @param effectHandler the effect handler to pass effects on to
+   * @param window the minimum time between effects passed on
+   * @param unit the unit of the window
+   * @param <F> the effect type
+   * @param <E> the event type
+   */
+  @Nonnull
+  public static <F, E> Connectable<F, E> throttleEffects(
+      final WorkRunner runner,
+      final Connectable<F, E> effectHandler,
+      final long window,
+      final TimeUnit unit) {
+    checkNotNull(runner);
+    checkNotNull(effectHandler);
+    checkArgument(window > 0);
+    checkNotNull(unit);
+
+    return SimpleConnectable.withConnectionFactory(
+        new Function<Consumer<E>, Connection<F>>() {
+          @Nonnull
+          @Override
+          public Connection<F> apply(Consumer<E> output) {
+            Connection<F> delegate = effectHandler.connect(output);
+            return new TimedConnection<>(new Throttler<>(runner, window, unit, delegate), delegate);
+          }
+        });
+  }
+
+  /**
+   * Wraps an event source so that events are only emitted once no other event with the same key has
+   * been emitted by the source for the duration of the window. Each event restarts the window for
+   * its key, and only the most recent one is emitted when the window ends.
+   *
+   * @param eventSource the event source to wrap
+   * @param key returns the key of an event; events with different keys are debounced separately
+   * @param window the time without events that must pass before the last one is emitted
+   * @param unit the unit of the window
+   * @param <E> the event type
+   */
+  @Nonnull
+  public static <E> EventSource<E> debounceEvents(
+      EventSource<E> eventSource, Function<E, ?> key, long window, TimeUnit unit) {
+    return debounceEvents(TIMER_THREAD, eventSource, key, window, unit);
+  }
+
+  /**
+   * Wraps an event source so that events are only emitted once no other event with the same key has
+   * been emitted by the source for the duration of the window, using the supplied {@link
+   * WorkRunner} for scheduling and emitting events. See {@link #debounceEvents(EventSource,
+   * Function, long, TimeUnit)}.
+   *
+   * @param runner the work runner to schedule on
+   * @param eventSource the event source to wrap
+   * @param key returns the key of an event; events with different keys are debounced separately
+   * @param window the time without events that must pass before the last one is emitted
+   * @param unit the unit of the window
+   * @param <E> the event type
+   */
+  @Nonnull
+  public static <E> EventSource<E> debounceEvents(
+      final WorkRunner runner,
+      final EventSource<E> eventSource,
+      final Function<E, ?> key,
+      final long window,
+      final TimeUnit unit) {
+    checkNotNull(runner);
+    checkNotNull(eventSource);
+    checkNotNull(key);
+    checkArgument(window > 0);
+    checkNotNull(unit);
+
+    return new EventSource<E>() {
+      @Nonnull
+      @Override
+      public Disposable subscribe(Consumer<E> eventConsumer) {
+        return new TimedSubscription<>(
+            eventSource, new Debouncer<>(runner, window, unit, key, checkNotNull(eventConsumer)));
+      }
+    };
+  }
+
+  /**
+   * Wraps an event source so that it emits at most one event per window. The first event is emitted
+   * right away and starts a window; events emitted by the source during the window replace each
+   * other, and the most recent one is emitted when the window ends, starting a new window.
+   *
+   * <p>This can be used to follow the scroll position of a list without updating the model for
+   * every frame.
+   *
+   * @param eventSource the event source to wrap
+   * @param window the minimum time between events
+   * @param unit the unit of the window
+   * @param <E> the event type
+   */
+  @Nonnull
+  public static <E> EventSource<E> throttleEvents(
+      EventSource<E> eventSource, long window, TimeUnit unit) {
+    return throttleEvents(TIMER_THREAD, eventSource, window, unit);
+  }
+
+  /**
+   * Wraps an event source so that it emits at most one event per window, using the supplied {@link
+   * WorkRunner} for scheduling and emitting events. See {@link #throttleEvents(EventSource, long,
+   * TimeUnit)}.
+   *
+   * @param runner the work runner to schedule on
+   * @param eventSource the event source to wrap
+   * @param window the minimum time between events
+   * @param unit the unit of the window
+   * @param <E> the event type
+   */
+  @Nonnull
+  public static <E> EventSource<E> throttleEvents(
+      final WorkRunner runner,
+      final EventSource<E> eventSource,
+      final long window,
+      final TimeUnit unit) {
+    checkNotNull(runner);
+    checkNotNull(eventSource);
+    checkArgument(window > 0);
+    checkNotNull(unit);
+
+    return new EventSource<E>() {
+      @Nonnull
+      @Override
+      public Disposable subscribe(Consumer<E> eventConsumer) {
+        return new TimedSubscription<>(
+            eventSource, new Throttler<>(runner, window, unit, checkNotNull(eventConsumer)));
+      }
+    };
+  }
+
+  /**
+   * Holds the work runner that debounced and throttled effects are passed on from by default. Its
+   * single daemon thread is created the first time it's used, and never stopped; its timing uses
+   * the shared timer.
+   */
+  private static final class SharedDelivery {
+    static final WorkRunner RUNNER =
+        WorkRunners.from(Executors.newSingleThreadExecutor(DELIVERY_THREAD_FACTORY));
+  }
+
+  private static final class IntervalSubscription<E> implements Disposable, Runnable {
+    private final Producer<E> eventProducer;
+    private final Consumer<E> eventConsumer;
+    private final Disposable scheduled;
+
+    // cancelling a scheduled task doesn't stop an already posted tick from running
+    private volatile boolean disposed;
+
+    IntervalSubscription(
+        WorkRunner runner,
+        long period,
+        TimeUnit unit,
+        Producer<E> eventProducer,
+        Consumer<E> eventConsumer) {
+      this.eventProducer = eventProducer;
+      this.eventConsumer = checkNotNull(eventConsumer);
+      this.scheduled = runner.schedulePeriodic(this, period, period, unit);
+    }
+
+    @Override
+    public void run() {
+      if (disposed) {
+        return;
+      }
+
+      eventConsumer.accept(eventProducer.get());
+    }
+
+    @Override
+    public void dispose() {
+      disposed = true;
+      scheduled.dispose();
+    }
+  }
+
+  private static final class DelayConnection<F, E> implements Connection<F> {
+    private final WorkRunner runner;
+    private final long delay;
+    private final TimeUnit unit;
+    private final Function<F, E> eventForEffect;
+    private final Consumer<E> output;
+
+    // guarded by 'this'
+    private final Set<DelayedEvent> pending = new HashSet<>();
+    private boolean disposed;
+
+    DelayConnection(
+        WorkRunner runner,
+        long delay,
+        TimeUnit unit,
+        Function<F, E> eventForEffect,
+        Consumer<E> output) {
+      this.runner = runner;
+      this.delay = delay;
+      this.unit = unit;
+      this.eventForEffect = eventForEffect;
+      this.output = checkNotNull(output);
+    }
+
+    @Override
+    public void accept(F effect) {
+      DelayedEvent delayedEvent = new DelayedEvent(eventForEffect.apply(effect));
+
+      synchronized (this) {
+        if (disposed) {
+          return;
+        }
+
+        pending.add(delayedEvent);
+        delayedEvent.scheduled = runner.postDelayed(delayedEvent, delay, unit);
+      }
+    }
+
+    @Override
+    public void dispose() {
+      synchronized (this) {
+        if (disposed) {
+          return;
+        }
+
+        disposed = true;
+
+        for (DelayedEvent delayedEvent : pending) {
+          if (delayedEvent.scheduled != null) {
+            delayedEvent.scheduled.dispose();
+          }
+        }
+
+        pending.clear();
+      }
+    }
+
+    private final class DelayedEvent implements Runnable {
+      private final E event;
+      @Nullable private Disposable scheduled;
+
+      DelayedEvent(E event) {
+        this.event = checkNotNull(event);
+      }
+
+      @Override
+      public void run() {
+        synchronized (DelayConnection.this) {
+          if (!pending.remove(this)) {
+            return;
+          }
+        }
+
+        output.accept(event);
+      }
+    }
+  }
+
+  /** Passes values on to a consumer once no value with the same key has arrived for a while. */
+  private static final class Debouncer<T> implements Consumer<T>, Disposable {
+    private final WorkRunner runner;
+    private final long window;
+    private final TimeUnit unit;
+    private final Function<T, ?> key;
+    private final Consumer<T> target;
+
+    // guarded by 'this'
+    private final Map<Object, PendingValue> pending = new HashMap<>();
+    private boolean disposed;
+
+    Debouncer(
+        WorkRunner runner, long window, TimeUnit unit, Function<T, ?> key, Consumer<T> target) {
+      this.runner = runner;
+      this.window = window;
+      this.unit = unit;
+      this.key = key;
+      this.target = target;
+    }
+
+    @Override
+    public void accept(T value) {
+      PendingValue pendingValue = new PendingValue(checkNotNull(key.apply(value)), value);
+
+      synchronized (this) {
+        if (disposed) {
+          return;
+        }
+
+        PendingValue previous = pending.put(pendingValue.key, pendingValue);
+        if (previous != null && previous.scheduled != null) {
+          previous.scheduled.dispose();
+        }
+
+        pendingValue.scheduled = runner.postDelayed(pendingValue, window, unit);
+      }
+    }
+
+    @Override
+    public synchronized void dispose() {
+      disposed = true;
+
+      for (PendingValue pendingValue : pending.values()) {
+        if (pendingValue.scheduled != null) {
+          pendingValue.scheduled.dispose();
+        }
+      }
+
+      pending.clear();
+    }
+
+    private synchronized boolean isDisposed() {
+      return disposed;
+    }
+
+    private final class PendingValue implements Runnable {
+      private final Object key;
+      private final T value;
+      @Nullable private Disposable scheduled;
+
+      PendingValue(Object key, T value) {
+        this.key = key;
+        this.value = value;
+      }
+
+      @Override
+      public void run() {
+        synchronized (Debouncer.this) {
+          // a cancelled task may already have been posted, so check that this is still the latest
+          if (pending.get(key) != this) {
+            return;
+          }
+          pending.remove(key);
+        }
+
+        // checked again right before calling the handler, without holding the lock during the call
+        if (!isDisposed()) {
+          target.accept(value);
+        }
+      }
+    }
+  }
+
+  /**
+   * Passes values on to a consumer at most once per window, passing on the most recent value
+   * received during a window when it ends.
+   */
+  private static final class Throttler<T> implements Consumer<T>, Disposable {
+    private final WorkRunner runner;
+    private final long window;
+    private final TimeUnit unit;
+    private final Consumer<T> target;
+
+    // guarded by 'this'; incremented when a window opens and on dispose, so that window ends and
+    // values from an earlier window or from before dispose() are ignored
+    private long generation;
+    @Nullable private T latest;
+    @Nullable private Disposable scheduled;
+    private boolean windowOpen;
+    private boolean disposed;
+
+    Throttler(WorkRunner runner, long window, TimeUnit unit, Consumer<T> target) {
+      this.runner = runner;
+      this.window = window;
+      this.unit = unit;
+      this.target = target;
+    }
+
+    @Override
+    public void accept(T value) {
+      checkNotNull(value);
+      long current;
+
+      synchronized (this) {
+        if (disposed) {
+          return;
+        }
+
+        if (windowOpen) {
+          latest = value;
+          return;
+        }
+
+        windowOpen = true;
+        current = ++generation;
+        scheduled = runner.postDelayed(new WindowEnd(current), window, unit);
+      }
+
+      passOn(value, current);
+    }
+
+    @Override
+    public void dispose() {
+      synchronized (this) {
+        disposed = true;
+        generation++;
+        latest = null;
+
+        if (scheduled != null) {
+          scheduled.dispose();
+        }
+      }
+    }
+
+    private void passOn(T value, long valueGeneration) {
+      // checked again right before calling the handler, without holding the lock during the call
+      if (isCurrent(valueGeneration)) {
+        target.accept(value);
+      }
+    }
+
+    private synchronized boolean isCurrent(long valueGeneration) {
+      return !disposed && generation == valueGeneration;
+    }
+
+    private final class WindowEnd implements Runnable {
+      private final long windowGeneration;
+
+      WindowEnd(long windowGeneration) {
+        this.windowGeneration = windowGeneration;
+      }
+
+      @Override
+      public void run() {
+        T value;
+
+        synchronized (Throttler.this) {
+          // a cancelled task may already have been posted
+          if (disposed || generation != windowGeneration) {
+            return;
+          }
+
+          value = latest;
+          latest = null;
+
+          if (value == null) {
+            windowOpen = false;
+            return;
+          }
+
+          scheduled = runner.postDelayed(this, window, unit);
+        }
+
+        passOn(value, windowGeneration);
+      }
+    }
+  }
+
+  private static final class TimedConnection<F, T extends Consumer<F> & Disposable>
+      implements Connection<F> {
+    private final T timed;
+    private final Connection<F> delegate;
+
+    TimedConnection(T timed, Connection<F> delegate) {
+      this.timed = timed;
+      this.delegate = delegate;
+    }
+
+    @Override
+    public void accept(F effect) {
+      timed.accept(effect);
+    }
+
+    @Override
+    public void dispose() {
+      timed.dispose();
+      delegate.dispose();
+    }
+  }
+
+  private static final class TimedSubscription<E> implements Disposable {
+    private final Disposable timed;
+    private final Disposable subscription;
+
+    <T extends Consumer<E> & Disposable> TimedSubscription(EventSource<E> eventSource, T timed) {
+      this.timed = timed;
+      this.subscription = eventSource.subscribe(timed);
+    }
+
+    @Override
+    public void dispose() {
+      subscription.dispose();
+      timed.dispose();
+    }
+  }
+}
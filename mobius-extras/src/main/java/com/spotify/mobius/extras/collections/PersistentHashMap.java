@@ -0,0 +1,649 @@
+/*
+ * -\-\-
+ * Mobius
+ * --
+ * Copyright (c) 2017-2020 Spotify AB
+ * --
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -/-/-
+ */
+package com.spotify.mobius.extras.collections;
+
+import static com.spotify.mobius.internal_util.Preconditions.checkNotNull;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import javax.annotation.Nullable;
+
+/**
+ * An immutable map that shares structure with the maps it was derived from, for use in models.
+ *
+ * <p>Entries are stored in a hash array mapped trie: each node uses 5 bits of the key's hash to
+ * pick a child, and a bitmap to store only the children that exist. Adding, replacing or removing
+ * an entry creates new versions of the nodes on a single path through the trie, so it takes
+ * practically constant time and allocation, where copying a {@link java.util.HashMap} takes time
+ * proportional to its size. Keys with equal hashes are kept in collision nodes.
+ *
+ * <p>Batches of changes can be made without creating intermediate versions using a {@link Builder},
+ * which changes the nodes it has already copied in place.
+ *
+ * <p>This class implements {@link Map}, so it can be used wherever maps are read. The mutating
+ * methods of the {@link Map} interface throw {@link UnsupportedOperationException}. Null keys and
+ * values aren't supported. Iteration order is unspecified, but the same for equal maps built in the
+ * same way.
+ *
+ * @param <K> the key type
+ * @param <V> the value type
+ */
+public final class PersistentHashMap<K, V> extends AbstractMap<K, V> {
+
+  private static final int BITS = 5;
+  private static final int MASK = (1 << BITS) - 1;
+
+  // the deepest level is a collision node below 7 levels of bitmap nodes
+  private static final int MAX_DEPTH = 8;
+
+  private static final Object NOT_FOUND = new Object();
+
+  private static final PersistentHashMap<?, ?> EMPTY = new PersistentHashMap<>(0, null);
+
+  private final int size;
+  @Nullable private final Node root;
+
+  // cached, like String.hashCode(); 0 means not computed yet
+  private int hashCode;
+
+  private PersistentHashMap(int size, @Nullable Node root) {
+    this.size = size;
+    this.root = root;
+  }
+
+  /** Returns the empty map. */
+  @SuppressWarnings("unchecked")
+  public static <K, V> PersistentHashMap<K, V> empty() {
+    return (PersistentHashMap<K, V>) EMPTY;
+  }
+
+  /** Returns a map with the entries of the given map. */
+  public static <K, V> PersistentHashMap<K, V> copyOf(Map<? extends K, ? extends V> map) {
+    if (map instanceof PersistentHashMap) {
+      @SuppressWarnings("unchecked")
+      PersistentHashMap<K, V> persistent = (PersistentHashMap<K, V>) map;
+      return persistent;
+    }
+
+    Builder<K, V> builder = builder();
+    for (Map.Entry<? extends K, ? extends V> entry : map.entrySet()) {
+      builder.put(entry.getKey(), entry.getValue());
+    }
+    return builder.build();
+  }
+
+  /** Returns a builder that starts out empty. */
+  public static <K, V> Builder<K, V> builder() {
+    return PersistentHashMap.<K, V>empty().toBuilder();
+  }
+
+  /** Returns a builder that starts out with the entries of this map. */
+  public Builder<K, V> toBuilder() {
+    return new Builder<>(this);
+  }
+
+  @Override
+  public int size() {
+    return size;
+  }
+
+  @Override
+  public boolean containsKey(Object key) {
+    return root != null && root.find(0, hash(key), key) != NOT_FOUND;
+  }
+
+  @Nullable
+  @Override
+  public V get(Object key) {
+    if (root == null) {
+      return null;
+    }
+
+    Object value = root.find(0, hash(key), key);
+    if (value == NOT_FOUND) {
+      return null;
+    }
+
+    @SuppressWarnings("unchecked")
+    V result = (V) value;
+    return result;
+  }
+
+  /**
+   * Returns a map where the key maps to the value. Returns this map if the key already maps to the
+   * same instance.
+   */
+  public PersistentHashMap<K, V> plus(K key, V value) {
+    checkNotNull(key);
+    checkNotNull(value);
+
+    Change change = new Change();
+    Node base = root != null ? root : BitmapNode.EMPTY;
+    Node newRoot = base.assoc(null, 0, hash(key), key, value, change);
+
+    if (newRoot == root) {
+      return this;
+    }
+    return new PersistentHashMap<>(change.added ? size + 1 : size, newRoot);
+  }
+
+  /** Returns a map without the key. Returns this map if it doesn't contain the key. */
+  public PersistentHashMap<K, V> minus(Object key) {
+    checkNotNull(key);
+    if (root == null) {
+      return this;
+    }
+
+    Change change = new Change();
+    Node newRoot = root.without(null, 0, hash(key), key, change);
+
+    if (!change.removed) {
+      return this;
+    }
+    return newRoot == null
+        ? PersistentHashMap.<K, V>empty()
+        : new PersistentHashMap<>(size - 1, newRoot);
+  }
+
+  @Override
+  public Set<Map.Entry<K, V>> entrySet() {
+    return new AbstractSet<Map.Entry<K, V>>() {
+      @Override
+      public Iterator<Map.Entry<K, V>> iterator() {
+        return new EntryIterator<>(root);
+      }
+
+      @Override
+      public int size() {
+        return size;
+      }
+    };
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (o == this) {
+      return true;
+    }
+
+    if (o instanceof PersistentHashMap) {
+      PersistentHashMap<?, ?> other = (PersistentHashMap<?, ?>) o;
+      if (size != other.size) {
+        return false;
+      }
+      if (root == other.root) {
+        return true;
+      }
+      if (hashCode != 0 && other.hashCode != 0 && hashCode != other.hashCode) {
+        return false;
+      }
+    }
+
+    return super.equals(o);
+  }
+
+  @Override
+  public int hashCode() {
+    int result = hashCode;
+    if (result == 0) {
+      result = super.hashCode();
+      hashCode = result;
+    }
+    return result;
+  }
+
+  private static int hash(Object key) {
+    int h = key.hashCode();
+    return h ^ (h >>> 16);
+  }
+
+  /** Records whether an operation added or removed an entry. */
+  private static final class Change {
+    private boolean added;
+    private boolean removed;
+  }
+
+  /**
+   * A node of the trie. Its array holds pairs of a key and a value, or of null and a child node.
+   * Nodes belong to the builder whose edit token they hold while that builder is in use, and are
+   * immutable otherwise.
+   */
+  private abstract static class Node {
+    @Nullable final Object edit;
+    Object[] array;
+
+    Node(@Nullable Object edit, Object[] array) {
+      this.edit = edit;
+      this.array = array;
+    }
+
+    boolean isEditableBy(@Nullable Object edit) {
+      return edit != null && this.edit == edit;
+    }
+
+    /** Returns the value for the key, or {@link #NOT_FOUND}. */
+    abstract Object find(int shift, int hash, Object key);
+
+    abstract Node assoc(
+        @Nullable Object edit, int shift, int hash, Object key, Object value, Change change);
+
+    /** Returns the node without the key, or null if that leaves it empty. */
+    @Nullable
+    abstract Node without(@Nullable Object edit, int shift, int hash, Object key, Change change);
+  }
+
+  private static final class BitmapNode extends Node {
+    static final BitmapNode EMPTY = new BitmapNode(null, 0, new Object[0]);
+
+    int bitmap;
+
+    BitmapNode(@Nullable Object edit, int bitmap, Object[] array) {
+      super(edit, array);
+      this.bitmap = bitmap;
+    }
+
+    private static int bit(int hash, int shift) {
+      return 1 << ((hash >>> shift) & MASK);
+    }
+
+    private int index(int bit) {
+      return Integer.bitCount(bitmap & (bit - 1));
+    }
+
+    @Override
+    Object find(int shift, int hash, Object key) {
+      int bit = bit(hash, shift);
+      if ((bitmap & bit) == 0) {
+        return NOT_FOUND;
+      }
+
+      int index = index(bit);
+      Object keyOrNull = array[2 * index];
+      Object valueOrNode = array[2 * index + 1];
+
+      if (keyOrNull == null) {
+        return ((Node) valueOrNode).find(shift + BITS, hash, key);
+      }
+      return key.equals(keyOrNull) ? valueOrNode : NOT_FOUND;
+    }
+
+    @Override
+    Node assoc(
+        @Nullable Object edit, int shift, int hash, Object key, Object value, Change change) {
+      int bit = bit(hash, shift);
+      int index = index(bit);
+
+      if ((bitmap & bit) == 0) {
+        change.added = true;
+
+        int count = Integer.bitCount(bitmap);
+        Object[] newArray = new Object[2 * (count + 1)];
+        System.arraycopy(array, 0, newArray, 0, 2 * index);
+        newArray[2 * index] = key;
+        newArray[2 * index + 1] = value;
+        System.arraycopy(array, 2 * index, newArray, 2 * (index + 1), 2 * (count - index));
+
+        if (isEditableBy(edit)) {
+          array = newArray;
+          bitmap |= bit;
+          return this;
+        }
+        return new BitmapNode(edit, bitmap | bit, newArray);
+      }
+
+      Object keyOrNull = array[2 * index];
+      Object valueOrNode = array[2 * index + 1];
+
+      if (keyOrNull == null) {
+        Node child = (Node) valueOrNode;
+        Node newChild = child.assoc(edit, shift + BITS, hash, key, value, change);
+        return newChild == child ? this : with(edit, 2 * index + 1, newChild);
+      }
+
+      if (key.equals(keyOrNull)) {
+        return value == valueOrNode ? this : with(edit, 2 * index + 1, value);
+      }
+
+      // two different keys share this slot, so they move down into a new child node
+      change.added = true;
+      Node child = pair(edit, shift + BITS, keyOrNull, valueOrNode, hash, key, value);
+      return with(edit, 2 * index, null, 2 * index + 1, child);
+    }
+
+    @Nullable
+    @Override
+    Node without(@Nullable Object edit, int shift, int hash, Object key, Change change) {
+      int bit = bit(hash, shift);
+      if ((bitmap & bit) == 0) {
+        return this;
+      }
+
+      int index = index(bit);
+      Object keyOrNull = array[2 * index];
+      Object valueOrNode = array[2 * index + 1];
+
+      if (keyOrNull == null) {
+        Node child = (Node) valueOrNode;
+        Node newChild = child.without(edit, shift + BITS, hash, key, change);
+        if (newChild == child) {
+          return this;
+        }
+        if (newChild != null) {
+          return with(edit, 2 * index + 1, newChild);
+        }
+      } else if (key.equals(keyOrNull)) {
+        change.removed = true;
+      } else {
+        return this;
+      }
+
+      // the slot becomes empty
+      if (bitmap == bit) {
+        return null;
+      }
+
+      int count = Integer.bitCount(bitmap);
+      Object[] newArray = new Object[2 * (count - 1)];
+      System.arraycopy(array, 0, newArray, 0, 2 * index);
+      System.arraycopy(array, 2 * (index + 1), newArray, 2 * index, 2 * (count - index - 1));
+
+      if (isEditableBy(edit)) {
+        array = newArray;
+        bitmap ^= bit;
+        return this;
+      }
+      return new BitmapNode(edit, bitmap ^ bit, newArray);
+    }
+
+    private BitmapNode with(@Nullable Object edit, int index, Object element) {
+      if (isEditableBy(edit)) {
+        array[index] = element;
+        return this;
+      }
+
+      Object[] newArray = array.clone();
+      newArray[index] = element;
+      return new BitmapNode(edit, bitmap, newArray);
+    }
+
+    private BitmapNode with(
+        @Nullable Object edit, int index1, @Nullable Object element1, int index2, Object element2) {
+      BitmapNode node = isEditableBy(edit) ? this : new BitmapNode(edit, bitmap, array.clone());
+      node.array[index1] = element1;
+      node.array[index2] = element2;
+      return node;
+    }
+
+    private static Node pair(
+        @Nullable Object edit,
+        int shift,
+        Object key1,
+        Object value1,
+        int hash2,
+        Object key2,
+        Object value2) {
+      int hash1 = hash(key1);
+      if (hash1 == hash2) {
+        return new CollisionNode(edit, hash1, new Object[] {key1, value1, key2, value2});
+      }
+
+      Change ignored = new Change();
+      return EMPTY
+          .assoc(edit, shift, hash1, key1, value1, ignored)
+          .assoc(edit, shift, hash2, key2, value2, ignored);
+    }
+  }
+
+  /** Holds the entries of keys whose hashes are equal. */
+  private static final class CollisionNode extends Node {
+    final int hash;
+
+    CollisionNode(@Nullable Object edit, int hash, Object[] array) {
+      super(edit, array);
+      this.hash = hash;
+    }
+
+    private int indexOf(Object key) {
+      for (int i = 0; i < array.length; i += 2) {
+        if (key.equals(array[i])) {
+          return i;
+        }
+      }
+      return -1;
+    }
+
+    @Override
+    Object find(int shift, int hash, Object key) {
+      if (hash != this.hash) {
+        return NOT_FOUND;
+      }
+
+      int index = indexOf(key);
+      return index < 0 ? NOT_FOUND : array[index + 1];
+    }
+
+    @Override
+    Node assoc(
+        @Nullable Object edit, int shift, int hash, Object key, Object value, Change change) {
+      if (hash != this.hash) {
+        // the new key differs at some level, so this node moves below a bitmap node
+        BitmapNode parent =
+            new BitmapNode(edit, BitmapNode.bit(this.hash, shift), new Object[] {null, this});
+        return parent.assoc(edit, shift, hash, key, value, change);
+      }
+
+      int index = indexOf(key);
+      if (index >= 0) {
+        if (array[index + 1] == value) {
+          return this;
+        }
+
+        CollisionNode node =
+            isEditableBy(edit) ? this : new CollisionNode(edit, hash, array.clone());
+        node.array[index + 1] = value;
+        return node;
+      }
+
+      change.added = true;
+      Object[] newArray = new Object[array.length + 2];
+      System.arraycopy(array, 0, newArray, 0, array.length);
+      newArray[array.length] = key;
+      newArray[array.length + 1] = value;
+
+      if (isEditableBy(edit)) {
+        array = newArray;
+        return this;
+      }
+      return new CollisionNode(edit, hash, newArray);
+    }
+
+    @Nullable
+    @Override
+    Node without(@Nullable Object edit, int shift, int hash, Object key, Change change) {
+      int index = hash == this.hash ? indexOf(key) : -1;
+      if (index < 0) {
+        return this;
+      }
+
+      change.removed = true;
+      if (array.length == 2) {
+        return null;
+      }
+
+      Object[] newArray = new Object[array.length - 2];
+      System.arraycopy(array, 0, newArray, 0, index);
+      System.arraycopy(array, index + 2, newArray, index, array.length - index - 2);
+
+      if (isEditableBy(edit)) {
+        array = newArray;
+        return this;
+      }
+      return new CollisionNode(edit, hash, newArray);
+    }
+  }
+
+  /** Walks the trie depth first, keeping a stack of node arrays and positions in them. */
+  private static final class EntryIterator<K, V> implements Iterator<Map.Entry<K, V>> {
+    private final Object[][] arrays = new Object[MAX_DEPTH][];
+    private final int[] positions = new int[MAX_DEPTH];
+    private int depth = -1;
+    @Nullable private Map.Entry<K, V> next;
+
+    EntryIterator(@Nullable Node root) {
+      if (root != null) {
+        depth = 0;
+        arrays[0] = root.array;
+      }
+      advance();
+    }
+
+    @Override
+    public boolean hasNext() {
+      return next != null;
+    }
+
+    @Override
+    public Map.Entry<K, V> next() {
+      Map.Entry<K, V> result = next;
+      if (result == null) {
+        throw new NoSuchElementException();
+      }
+
+      advance();
+      return result;
+    }
+
+    @SuppressWarnings("unchecked")
+    private void advance() {
+      while (depth >= 0) {
+        Object[] array = arrays[depth];
+        int position = positions[depth];
+
+        if (position >= array.length) {
+          arrays[depth] = null;
+          positions[depth] = 0;
+          depth--;
+          continue;
+        }
+
+        positions[depth] = position + 2;
+        Object key = array[position];
+
+        if (key == null) {
+          depth++;
+          arrays[depth] = ((Node) array[position + 1]).array;
+          positions[depth] = 0;
+        } else {
+          next = new SimpleImmutableEntry<>((K) key, (V) array[position + 1]);
+          return;
+        }
+      }
+
+      next = null;
+    }
+  }
+
+  /**
+   * Builds a {@link PersistentHashMap} by changing nodes in place, rather than creating a new
+   * version for each change. A builder can't be used after {@link #build()} has been called, which
+   * is what makes it safe to hand out its nodes.
+   *
+   * @param <K> the key type
+   * @param <V> the value type
+   */
+  public static final class Builder<K, V> {
+    @Nullable private Object edit = new Object();
+    private int size;
+    @Nullable private Node root;
+
+    private Builder(PersistentHashMap<K, V> map) {
+      this.size = map.size;
+      this.root = map.root;
+    }
+
+    public int size() {
+      return size;
+    }
+
+    @Nullable
+    public V get(Object key) {
+      ensureValid();
+      if (root == null) {
+        return null;
+      }
+
+      Object value = root.find(0, hash(key), key);
+      if (value == NOT_FOUND) {
+        return null;
+      }
+
+      @SuppressWarnings("unchecked")
+      V result = (V) value;
+      return result;
+    }
+
+    /** Maps the key to the value, replacing any previous value. */
+    public Builder<K, V> put(K key, V value) {
+      ensureValid();
+      checkNotNull(key);
+      checkNotNull(value);
+
+      Change change = new Change();
+      Node base = root != null ? root : BitmapNode.EMPTY;
+      root = base.assoc(edit, 0, hash(key), key, value, change);
+      if (change.added) {
+        size++;
+      }
+      return this;
+    }
+
+    /** Removes the key, if present. */
+    public Builder<K, V> remove(Object key) {
+      ensureValid();
+      checkNotNull(key);
+
+      if (root != null) {
+        Change change = new Change();
+        root = root.without(edit, 0, hash(key), key, change);
+        if (change.removed) {
+          size--;
+        }
+      }
+      return this;
+    }
+
+    /** Returns a map with the entries of this builder. The builder can't be used after this. */
+    public PersistentHashMap<K, V> build() {
+      ensureValid();
+      edit = null;
+      return size == 0 ? PersistentHashMap.<K, V>empty() : new PersistentHashMap<K, V>(size, root);
+    }
+
+    private void ensureValid() {
+      if (edit == null) {
+        throw new IllegalStateException("This builder has already been built");
+      }
+    }
+  }
+}
@@ -0,0 +1,201 @@
+/*
+ * -\-\-
+ * Mobius
+ * --
+ * Copyright (c) 2017-2020 Spotify AB
+ * --
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -/-/-
+ */
+package com.spotify.mobius.extras.collections;
+
+import static com.spotify.mobius.internal_util.Preconditions.checkNotNull;
+
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * An immutable set that shares structure with the sets it was derived from, for use in models. It
+ * is backed by a {@link PersistentHashMap}, and has the same performance characteristics.
+ *
+ * <p>This class implements {@link java.util.Set}, so it can be used wherever sets are read. The
+ * mutating methods of the {@link java.util.Set} interface throw {@link
+ * UnsupportedOperationException}. Null elements aren't supported.
+ *
+ * @param <T> the element type
+ */
+public final class PersistentHashSet<T> extends AbstractSet<T> {
+
+  private static final PersistentHashSet<?> EMPTY =
+      new PersistentHashSet<>(PersistentHashMap.empty());
+
+  // maps each element to itself
+  private final PersistentHashMap<T, T> map;
+
+  // cached, like String.hashCode(); 0 means not computed yet
+  private int hashCode;
+
+  private PersistentHashSet(PersistentHashMap<T, T> map) {
+    this.map = map;
+  }
+
+  /** Returns the empty set. */
+  @SuppressWarnings("unchecked")
+  public static <T> PersistentHashSet<T> empty() {
+    return (PersistentHashSet<T>) EMPTY;
+  }
+
+  /** Returns a set with the given elements. */
+  @SafeVarargs
+  public static <T> PersistentHashSet<T> of(T... elements) {
+    return PersistentHashSet.<T>builder().addAll(Arrays.asList(elements)).build();
+  }
+
+  /** Returns a set with the elements of the iterable. */
+  public static <T> PersistentHashSet<T> copyOf(Iterable<? extends T> elements) {
+    if (elements instanceof PersistentHashSet) {
+      @SuppressWarnings("unchecked")
+      PersistentHashSet<T> set = (PersistentHashSet<T>) elements;
+      return set;
+    }
+
+    return PersistentHashSet.<T>builder().addAll(elements).build();
+  }
+
+  /** Returns a builder that starts out empty. */
+  public static <T> Builder<T> builder() {
+    return PersistentHashSet.<T>empty().toBuilder();
+  }
+
+  /** Returns a builder that starts out with the elements of this set. */
+  public Builder<T> toBuilder() {
+    return new Builder<>(map.toBuilder());
+  }
+
+  @Override
+  public int size() {
+    return map.size();
+  }
+
+  @Override
+  public boolean contains(Object element) {
+    return map.containsKey(element);
+  }
+
+  /** Returns a set with the element added. Returns this set if it already contains the element. */
+  public PersistentHashSet<T> plus(T element) {
+    if (map.containsKey(checkNotNull(element))) {
+      return this;
+    }
+    return new PersistentHashSet<>(map.plus(element, element));
+  }
+
+  /** Returns a set without the element. Returns this set if it doesn't contain the element. */
+  public PersistentHashSet<T> minus(Object element) {
+    PersistentHashMap<T, T> newMap = map.minus(element);
+    if (newMap == map) {
+      return this;
+    }
+    return newMap.isEmpty() ? PersistentHashSet.<T>empty() : new PersistentHashSet<>(newMap);
+  }
+
+  @Override
+  public Iterator<T> iterator() {
+    final Iterator<Map.Entry<T, T>> entries = map.entrySet().iterator();
+
+    return new Iterator<T>() {
+      @Override
+      public boolean hasNext() {
+        return entries.hasNext();
+      }
+
+      @Override
+      public T next() {
+        return entries.next().getKey();
+      }
+    };
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (o == this) {
+      return true;
+    }
+    if (o instanceof PersistentHashSet) {
+      // the map compares sizes and shared structure before comparing elements
+      return map.equals(((PersistentHashSet<?>) o).map);
+    }
+    return super.equals(o);
+  }
+
+  @Override
+  public int hashCode() {
+    // the map's hash code doesn't work here, since each entry hashes to key ^ key == 0
+    int result = hashCode;
+    if (result == 0) {
+      result = super.hashCode();
+      hashCode = result;
+    }
+    return result;
+  }
+
+  /**
+   * Builds a {@link PersistentHashSet} by changing nodes in place, rather than creating a new
+   * version for each change. A builder can't be used after {@link #build()} has been called.
+   *
+   * @param <T> the element type
+   */
+  public static final class Builder<T> {
+    private final PersistentHashMap.Builder<T, T> map;
+
+    private Builder(PersistentHashMap.Builder<T, T> map) {
+      this.map = map;
+    }
+
+    public int size() {
+      return map.size();
+    }
+
+    public boolean contains(Object element) {
+      return map.get(element) != null;
+    }
+
+    /** Adds an element. */
+    public Builder<T> add(T element) {
+      map.put(element, element);
+      return this;
+    }
+
+    /** Adds all elements of the iterable. */
+    public Builder<T> addAll(Iterable<? extends T> elements) {
+      for (T element : elements) {
+        add(element);
+      }
+      return this;
+    }
+
+    /** Removes an element, if present. */
+    public Builder<T> remove(Object element) {
+      map.remove(element);
+      return this;
+    }
+
+    /** Returns a set with the elements of this builder. The builder can't be used after this. */
+    public PersistentHashSet<T> build() {
+      PersistentHashMap<T, T> built = map.build();
+      return built.isEmpty() ? PersistentHashSet.<T>empty() : new PersistentHashSet<>(built);
+    }
+  }
+}
@@ -0,0 +1,491 @@
+/*
+ * -\-\-
+ * Mobius
+ * --
+ * Copyright (c) 2017-2020 Spotify AB
+ * --
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -/-/-
+ */
+package com.spotify.mobius.extras.collections;
+
+import static com.spotify.mobius.internal_util.Preconditions.checkNotNull;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.RandomAccess;
+
+/**
+ * An immutable list that shares structure with the lists it was derived from, for use in models.
+ *
+ * <p>Elements are stored in a tree with 32 children per node, plus a tail of up to 32 elements
+ * that's kept outside the tree. Appending, replacing and removing the last element create new
+ * versions of the tail or of a single path through the tree, so they take practically constant time
+ * and allocation, where copying an {@link java.util.ArrayList} takes time proportional to its size.
+ * Reads don't copy anything.
+ *
+ * <p>Batches of changes can be made without creating intermediate versions using a {@link Builder},
+ * which changes the nodes it has already copied in place.
+ *
+ * <p>This class implements {@link java.util.List}, so it can be used wherever lists are read. The
+ * mutating methods of the {@link java.util.List} interface throw {@link
+ * UnsupportedOperationException}. Null elements aren't supported.
+ *
+ * @param <T> the element type
+ */
+public final class PersistentVector<T> extends AbstractList<T> implements RandomAccess {
+
+  private static final int BITS = 5;
+  private static final int WIDTH = 1 << BITS;
+  private static final int MASK = WIDTH - 1;
+
+  private static final Node EMPTY_NODE = new Node(null, new Object[WIDTH]);
+  private static final PersistentVector<?> EMPTY =
+      new PersistentVector<>(0, BITS, EMPTY_NODE, new Object[0]);
+
+  private final int size;
+  private final int shift;
+  private final Node root;
+  private final Object[] tail;
+
+  // cached, like String.hashCode(); 0 means not computed yet
+  private int hashCode;
+
+  private PersistentVector(int size, int shift, Node root, Object[] tail) {
+    this.size = size;
+    this.shift = shift;
+    this.root = root;
+    this.tail = tail;
+  }
+
+  /** Returns the empty vector. */
+  @SuppressWarnings("unchecked")
+  public static <T> PersistentVector<T> empty() {
+    return (PersistentVector<T>) EMPTY;
+  }
+
+  /** Returns a vector with the given elements. */
+  @SafeVarargs
+  public static <T> PersistentVector<T> of(T... elements) {
+    return PersistentVector.<T>builder().addAll(Arrays.asList(elements)).build();
+  }
+
+  /** Returns a vector with the elements of the iterable, in iteration order. */
+  public static <T> PersistentVector<T> copyOf(Iterable<? extends T> elements) {
+    if (elements instanceof PersistentVector) {
+      @SuppressWarnings("unchecked")
+      PersistentVector<T> vector = (PersistentVector<T>) elements;
+      return vector;
+    }
+
+    return PersistentVector.<T>builder().addAll(elements).build();
+  }
+
+  /** Returns a builder that starts out empty. */
+  public static <T> Builder<T> builder() {
+    return PersistentVector.<T>empty().toBuilder();
+  }
+
+  /** Returns a builder that starts out with the elements of this vector. */
+  public Builder<T> toBuilder() {
+    return new Builder<>(this);
+  }
+
+  @Override
+  public int size() {
+    return size;
+  }
+
+  @Override
+  public T get(int index) {
+    checkIndex(index, size);
+
+    @SuppressWarnings("unchecked")
+    T element = (T) arrayFor(index)[index & MASK];
+    return element;
+  }
+
+  /** Returns a vector with the element appended. */
+  public PersistentVector<T> plus(T element) {
+    checkNotNull(element);
+
+    int tailSize = size - tailOffset();
+    if (tailSize < WIDTH) {
+      Object[] newTail = Arrays.copyOf(tail, tailSize + 1);
+      newTail[tailSize] = element;
+      return new PersistentVector<>(size + 1, shift, root, newTail);
+    }
+
+    // the tail is full, so it moves into the tree and a new tail is started
+    Node tailNode = new Node(null, tail);
+    Node newRoot;
+    int newShift = shift;
+
+    if ((size >>> BITS) > (1 << shift)) {
+      // the tree is full, so it gets a new level
+      newRoot = new Node(null, new Object[WIDTH]);
+      newRoot.array[0] = root;
+      newRoot.array[1] = newPath(null, shift, tailNode);
+      newShift += BITS;
+    } else {
+      newRoot = pushTail(null, size, shift, root, tailNode);
+    }
+
+    return new PersistentVector<>(size + 1, newShift, newRoot, new Object[] {element});
+  }
+
+  /**
+   * Returns a vector with the element at the index replaced. Returns this vector if the index
+   * already holds the same instance. An index equal to the size appends the element.
+   */
+  public PersistentVector<T> with(int index, T element) {
+    checkNotNull(element);
+    if (index == size) {
+      return plus(element);
+    }
+    checkIndex(index, size);
+
+    if (arrayFor(index)[index & MASK] == element) {
+      return this;
+    }
+
+    if (index >= tailOffset()) {
+      Object[] newTail = tail.clone();
+      newTail[index & MASK] = element;
+      return new PersistentVector<>(size, shift, root, newTail);
+    }
+
+    return new PersistentVector<>(size, shift, assoc(null, shift, root, index, element), tail);
+  }
+
+  /**
+   * Returns a vector without its last element.
+   *
+   * @throws IllegalStateException if the vector is empty
+   */
+  public PersistentVector<T> minusLast() {
+    if (size == 0) {
+      throw new IllegalStateException("Can't remove the last element of an empty vector");
+    }
+    if (size == 1) {
+      return empty();
+    }
+
+    int tailSize = size - tailOffset();
+    if (tailSize > 1) {
+      return new PersistentVector<>(size - 1, shift, root, Arrays.copyOf(tail, tailSize - 1));
+    }
+
+    // the tail becomes empty, so the last leaf moves out of the tree to become the new tail
+    Object[] newTail = arrayFor(size - 2);
+    Node newRoot = popTail(size, shift, root);
+    int newShift = shift;
+
+    if (newRoot == null) {
+      newRoot = EMPTY_NODE;
+    }
+    if (shift > BITS && newRoot.array[1] == null) {
+      newRoot = (Node) newRoot.array[0];
+      newShift -= BITS;
+    }
+
+    return new PersistentVector<>(size - 1, newShift, newRoot, newTail);
+  }
+
+  @Override
+  public Iterator<T> iterator() {
+    return new Iterator<T>() {
+      private int index;
+      private int base;
+      private Object[] array = size > 0 ? arrayFor(0) : tail;
+
+      @Override
+      public boolean hasNext() {
+        return index < size;
+      }
+
+      @Override
+      public T next() {
+        if (index >= size) {
+          throw new NoSuchElementException();
+        }
+
+        if (index - base == WIDTH) {
+          array = arrayFor(index);
+          base = index;
+        }
+
+        @SuppressWarnings("unchecked")
+        T element = (T) array[index++ & MASK];
+        return element;
+      }
+    };
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (o == this) {
+      return true;
+    }
+
+    if (o instanceof PersistentVector) {
+      PersistentVector<?> other = (PersistentVector<?>) o;
+      if (size != other.size) {
+        return false;
+      }
+      if (root == other.root && Arrays.equals(tail, other.tail)) {
+        // versions that share their whole tree only need their tails compared
+        return true;
+      }
+      if (hashCode != 0 && other.hashCode != 0 && hashCode != other.hashCode) {
+        return false;
+      }
+    }
+
+    return super.equals(o);
+  }
+
+  @Override
+  public int hashCode() {
+    int result = hashCode;
+    if (result == 0) {
+      result = super.hashCode();
+      hashCode = result;
+    }
+    return result;
+  }
+
+  private int tailOffset() {
+    return tailOffset(size);
+  }
+
+  private Object[] arrayFor(int index) {
+    return arrayFor(index, size, shift, root, tail);
+  }
+
+  private static int tailOffset(int size) {
+    return size < WIDTH ? 0 : ((size - 1) >>> BITS) << BITS;
+  }
+
+  private static Object[] arrayFor(int index, int size, int shift, Node root, Object[] tail) {
+    if (index >= tailOffset(size)) {
+      return tail;
+    }
+
+    Node node = root;
+    for (int level = shift; level > 0; level -= BITS) {
+      node = (Node) node.array[(index >>> level) & MASK];
+    }
+    return node.array;
+  }
+
+  private static void checkIndex(int index, int size) {
+    if (index < 0 || index >= size) {
+      throw new IndexOutOfBoundsException("Index: " + index + ", size: " + size);
+    }
+  }
+
+  /** Returns a node that can be changed in place by the owner of the edit token. */
+  private static Node editable(Object edit, Node node) {
+    if (edit != null && node.edit == edit) {
+      return node;
+    }
+    return new Node(edit, node.array.clone());
+  }
+
+  private static Node newPath(Object edit, int level, Node node) {
+    if (level == 0) {
+      return node;
+    }
+
+    Node path = new Node(edit, new Object[WIDTH]);
+    path.array[0] = newPath(edit, level - BITS, node);
+    return path;
+  }
+
+  private static Node pushTail(Object edit, int size, int level, Node parent, Node tailNode) {
+    Node result = editable(edit, parent);
+    int childIndex = ((size - 1) >>> level) & MASK;
+
+    Node child;
+    if (level == BITS) {
+      child = tailNode;
+    } else {
+      Node existing = (Node) parent.array[childIndex];
+      child =
+          existing != null
+              ? pushTail(edit, size, level - BITS, existing, tailNode)
+              : newPath(edit, level - BITS, tailNode);
+    }
+
+    result.array[childIndex] = child;
+    return result;
+  }
+
+  private static Node assoc(Object edit, int level, Node node, int index, Object element) {
+    Node result = editable(edit, node);
+
+    if (level == 0) {
+      result.array[index & MASK] = element;
+    } else {
+      int childIndex = (index >>> level) & MASK;
+      result.array[childIndex] =
+          assoc(edit, level - BITS, (Node) node.array[childIndex], index, element);
+    }
+
+    return result;
+  }
+
+  private static Node popTail(int size, int level, Node node) {
+    int childIndex = ((size - 2) >>> level) & MASK;
+
+    if (level > BITS) {
+      Node newChild = popTail(size, level - BITS, (Node) node.array[childIndex]);
+      if (newChild == null && childIndex == 0) {
+        return null;
+      }
+
+      Node result = new Node(null, node.array.clone());
+      result.array[childIndex] = newChild;
+      return result;
+    }
+
+    if (childIndex == 0) {
+      return null;
+    }
+
+    Node result = new Node(null, node.array.clone());
+    result.array[childIndex] = null;
+    return result;
+  }
+
+  /**
+   * A node of the tree. Nodes belong to the builder whose edit token they hold while that builder
+   * is in use, and are immutable otherwise.
+   */
+  private static final class Node {
+    private final Object edit;
+    private final Object[] array;
+
+    Node(Object edit, Object[] array) {
+      this.edit = edit;
+      this.array = array;
+    }
+  }
+
+  /**
+   * Builds a {@link PersistentVector} by changing nodes in place, rather than creating a new
+   * version for each change. A builder can't be used after {@link #build()} has been called, which
+   * is what makes it safe to hand out its nodes.
+   *
+   * @param <T> the element type
+   */
+  public static final class Builder<T> {
+    private Object edit = new Object();
+    private int size;
+    private int shift;
+    private Node root;
+    private Object[] tail;
+
+    private Builder(PersistentVector<T> vector) {
+      this.size = vector.size;
+      this.shift = vector.shift;
+      this.root = vector.root;
+      this.tail = Arrays.copyOf(vector.tail, WIDTH);
+    }
+
+    public int size() {
+      return size;
+    }
+
+    public T get(int index) {
+      ensureValid();
+      checkIndex(index, size);
+
+      @SuppressWarnings("unchecked")
+      T element = (T) arrayFor(index, size, shift, root, tail)[index & MASK];
+      return element;
+    }
+
+    /** Appends an element. */
+    public Builder<T> add(T element) {
+      ensureValid();
+      checkNotNull(element);
+
+      if (size - tailOffset(size) < WIDTH) {
+        tail[size & MASK] = element;
+        size++;
+        return this;
+      }
+
+      Node tailNode = new Node(edit, tail);
+      tail = new Object[WIDTH];
+      tail[0] = element;
+
+      if ((size >>> BITS) > (1 << shift)) {
+        Node newRoot = new Node(edit, new Object[WIDTH]);
+        newRoot.array[0] = root;
+        newRoot.array[1] = newPath(edit, shift, tailNode);
+        root = newRoot;
+        shift += BITS;
+      } else {
+        root = pushTail(edit, size, shift, root, tailNode);
+      }
+
+      size++;
+      return this;
+    }
+
+    /** Appends all elements of the iterable, in iteration order. */
+    public Builder<T> addAll(Iterable<? extends T> elements) {
+      for (T element : elements) {
+        add(element);
+      }
+      return this;
+    }
+
+    /** Replaces the element at the index. */
+    public Builder<T> set(int index, T element) {
+      ensureValid();
+      checkNotNull(element);
+      checkIndex(index, size);
+
+      if (index >= tailOffset(size)) {
+        tail[index & MASK] = element;
+      } else {
+        root = assoc(edit, shift, root, index, element);
+      }
+      return this;
+    }
+
+    /** Returns a vector with the elements of this builder. The builder can't be used after this. */
+    public PersistentVector<T> build() {
+      ensureValid();
+      edit = null;
+
+      if (size == 0) {
+        return empty();
+      }
+      return new PersistentVector<>(
+          size, shift, root, Arrays.copyOf(tail, size - tailOffset(size)));
+    }
+
+    private void ensureValid() {
+      if (edit == null) {
+        throw new IllegalStateException("This builder has already been built");
+      }
+    }
+  }
+}
@@ -0,0 +1,37 @@
+/*
+ * -\-\-
+ * Mobius
+ * --
+ * Copyright (c) 2017-2020 Spotify AB
+ * --
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -/-/-
+ */
+package com.spotify.mobius.extras.diff;
+
+import javax.annotation.Nonnull;
+
+/**
+ * Computes a description of what changed between two values, which lets observers of large models
+ * apply incremental updates instead of processing the whole model.
+ *
+ * <p>Implementations must be pure, and are called off the loop's event thread.
+ *
+ * @param <T> the type of values to compare
+ * @param <D> the type of diff
+ */
+public interface Differ<T, D> {
+
+  @Nonnull
+  D diff(T previous, T current);
+}
@@ -0,0 +1,75 @@
+/*
+ * -\-\-
+ * Mobius
+ * --
+ * Copyright (c) 2017-2020 Spotify AB
+ * --
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -/-/-
+ */
+package com.spotify.mobius.extras.diff;
+
+import static com.spotify.mobius.internal_util.Preconditions.checkNotNull;
+
+import com.spotify.mobius.functions.Function;
+import java.util.List;
+import java.util.Map;
+import javax.annotation.Nonnull;
+
+/** Factory methods for {@link Differ}s of collections, and of fields of a model. */
+public final class Differs {
+
+  private Differs() {
+    // prevent instantiation
+  }
+
+  /** Returns a differ that describes changes to a list as a {@link ListDiff}. */
+  public static <T> Differ<List<T>, ListDiff<T>> list() {
+    return new Differ<List<T>, ListDiff<T>>() {
+      @Nonnull
+      @Override
+      public ListDiff<T> diff(List<T> previous, List<T> current) {
+        return ListDiff.between(previous, current);
+      }
+    };
+  }
+
+  /** Returns a differ that describes changes to a map as a {@link MapDiff}. */
+  public static <K, V> Differ<Map<K, V>, MapDiff<K, V>> map() {
+    return new Differ<Map<K, V>, MapDiff<K, V>>() {
+      @Nonnull
+      @Override
+      public MapDiff<K, V> diff(Map<K, V> previous, Map<K, V> current) {
+        return MapDiff.between(previous, current);
+      }
+    };
+  }
+
+  /**
+   * Returns a differ for a model that diffs one of its fields. For instance, {@code
+   * Differs.field(Model::items, Differs.list())} diffs the items of a model.
+   */
+  public static <M, T, D> Differ<M, D> field(
+      final Function<M, T> getter, final Differ<T, D> differ) {
+    checkNotNull(getter);
+    checkNotNull(differ);
+
+    return new Differ<M, D>() {
+      @Nonnull
+      @Override
+      public D diff(M previous, M current) {
+        return differ.diff(getter.apply(previous), getter.apply(current));
+      }
+    };
+  }
+}
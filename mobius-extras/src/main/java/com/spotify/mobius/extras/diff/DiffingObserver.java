@@ -0,0 +1,151 @@
+/*
+ * -\-\-
+ * Mobius
+ * --
+ * Copyright (c) 2017-2020 Spotify AB
+ * --
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -/-/-
+ */
+package com.spotify.mobius.extras.diff;
+
+import static com.spotify.mobius.internal_util.Preconditions.checkNotNull;
+
+import com.spotify.mobius.MobiusHooks;
+import com.spotify.mobius.disposables.Disposable;
+import com.spotify.mobius.functions.Consumer;
+import com.spotify.mobius.runners.WorkRunner;
+import com.spotify.mobius.runners.WorkRunners;
+import javax.annotation.Nullable;
+
+/**
+ * A model observer that computes diffs between consecutive models on a work runner of its own, and
+ * passes them to another observer. Register it using {@link
+ * com.spotify.mobius.MobiusLoop#observe(Consumer)} or as part of a view connected to a {@link
+ * com.spotify.mobius.MobiusLoop.Controller}.
+ *
+ * <p>Models are handed over to the work runner without blocking the caller, so diffing never slows
+ * down the loop's event thread. If models arrive faster than they can be diffed, the intermediate
+ * ones are skipped, and the next diff is computed between the last model that was delivered and the
+ * most recent one. The diffs that observers receive therefore always apply to the previous model
+ * they received.
+ *
+ * <p>Exceptions thrown by the differ or the observer are reported to {@link
+ * MobiusHooks#handleError(Throwable)}. A model whose diff wasn't delivered doesn't count as
+ * received, so the next diff is computed from the last model that was.
+ *
+ * @param <M> the model type
+ * @param <D> the type of diff
+ */
+public final class DiffingObserver<M, D> implements Consumer<M>, Disposable {
+
+  private final Differ<M, D> differ;
+  private final WorkRunner runner;
+  private final boolean ownsRunner;
+  private final Consumer<ModelDiff<M, D>> observer;
+  private final Runnable diffTask = this::diffLatest;
+
+  // guarded by 'this'
+  @Nullable private M latest;
+  private boolean scheduled;
+  private boolean disposed;
+
+  // only accessed from the work runner
+  @Nullable private M previous;
+
+  private DiffingObserver(
+      Differ<M, D> differ,
+      WorkRunner runner,
+      boolean ownsRunner,
+      Consumer<ModelDiff<M, D>> observer) {
+    this.differ = differ;
+    this.runner = runner;
+    this.ownsRunner = ownsRunner;
+    this.observer = observer;
+  }
+
+  /** Creates an observer that diffs models on a background thread of its own. */
+  public static <M, D> DiffingObserver<M, D> create(
+      Differ<M, D> differ, Consumer<ModelDiff<M, D>> observer) {
+    return new DiffingObserver<>(
+        checkNotNull(differ), WorkRunners.singleThread(), true, checkNotNull(observer));
+  }
+
+  /**
+   * Creates an observer that diffs models on the supplied work runner. The work runner must run one
+   * thing at a time, and isn't disposed when the observer is disposed.
+   */
+  public static <M, D> DiffingObserver<M, D> create(
+      Differ<M, D> differ, WorkRunner runner, Consumer<ModelDiff<M, D>> observer) {
+    return new DiffingObserver<>(
+        checkNotNull(differ), checkNotNull(runner), false, checkNotNull(observer));
+  }
+
+  @Override
+  public void accept(M model) {
+    checkNotNull(model);
+
+    synchronized (this) {
+      if (disposed) {
+        return;
+      }
+
+      latest = model;
+      if (scheduled) {
+        return;
+      }
+      scheduled = true;
+    }
+
+    runner.post(diffTask);
+  }
+
+  @Override
+  public void dispose() {
+    synchronized (this) {
+      disposed = true;
+      latest = null;
+    }
+
+    if (ownsRunner) {
+      runner.dispose();
+    }
+  }
+
+  private void diffLatest() {
+    M current;
+    synchronized (this) {
+      scheduled = false;
+      current = latest;
+      latest = null;
+      if (disposed || current == null) {
+        return;
+      }
+    }
+
+    if (current == previous) {
+      return;
+    }
+
+    try {
+      ModelDiff<M, D> modelDiff =
+          previous == null
+              ? new ModelDiff<M, D>(null, current, null)
+              : new ModelDiff<>(previous, current, differ.diff(previous, current));
+      observer.accept(modelDiff);
+      previous = current;
+    } catch (RuntimeException e) {
+      MobiusHooks.handleError(e);
+    }
+  }
+}
@@ -0,0 +1,114 @@
+/*
+ * -\-\-
+ * Mobius
+ * --
+ * Copyright (c) 2017-2020 Spotify AB
+ * --
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -/-/-
+ */
+package com.spotify.mobius.extras.diff;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * The changes between two lists, as a single range of the previous list that was replaced by new
+ * elements. Elements are compared using {@link Objects#equals(Object, Object)}, so the lists may
+ * contain nulls.
+ *
+ * <p>The range is found by skipping the longest common prefix and suffix of the two lists, which
+ * takes linear time and gives the smallest possible diff for the common cases of appending,
+ * removing, inserting or replacing elements in one place.
+ *
+ * @param <T> the element type
+ */
+public final class ListDiff<T> {
+  private final int index;
+  private final int removedCount;
+  private final List<T> inserted;
+
+  ListDiff(int index, int removedCount, List<T> inserted) {
+    this.index = index;
+    this.removedCount = removedCount;
+    this.inserted = Collections.unmodifiableList(inserted);
+  }
+
+  /** The index in the previous list where the changed range starts. */
+  public int index() {
+    return index;
+  }
+
+  /** The number of elements removed from the previous list, starting at {@link #index()}. */
+  public int removedCount() {
+    return removedCount;
+  }
+
+  /** The elements that took the place of the removed ones. */
+  public List<T> inserted() {
+    return inserted;
+  }
+
+  /** Returns true if the lists are equal. */
+  public boolean isEmpty() {
+    return removedCount == 0 && inserted.isEmpty();
+  }
+
+  /** Returns a new list with the changes applied to the previous list. */
+  public List<T> applyTo(List<T> previous) {
+    List<T> result = new ArrayList<>(previous.size() - removedCount + inserted.size());
+    result.addAll(previous.subList(0, index));
+    result.addAll(inserted);
+    result.addAll(previous.subList(index + removedCount, previous.size()));
+    return result;
+  }
+
+  static <T> ListDiff<T> between(List<T> previous, List<T> current) {
+    if (previous == current) {
+      return new ListDiff<>(0, 0, Collections.<T>emptyList());
+    }
+
+    int commonLength = Math.min(previous.size(), current.size());
+
+    int prefix = 0;
+    while (prefix < commonLength && Objects.equals(previous.get(prefix), current.get(prefix))) {
+      prefix++;
+    }
+
+    int suffix = 0;
+    while (suffix < commonLength - prefix
+        && Objects.equals(
+            previous.get(previous.size() - 1 - suffix),
+            current.get(current.size() - 1 - suffix))) {
+      suffix++;
+    }
+
+    return new ListDiff<>(
+        prefix,
+        previous.size() - prefix - suffix,
+        new ArrayList<>(current.subList(prefix, current.size() - suffix)));
+  }
+
+  @Override
+  public String toString() {
+    return "ListDiff{index="
+        + index
+        + ", removedCount="
+        + removedCount
+        + ", inserted="
+        + inserted
+        + "}";
+  }
+}
@@ -0,0 +1,108 @@
+/*
+ * -\-\-
+ * Mobius
+ * --
+ * Copyright (c) 2017-2020 Spotify AB
+ * --
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -/-/-
+ */
+package com.spotify.mobius.extras.diff;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The changes between two maps: the entries that were added, the entries whose values changed, and
+ * the keys that were removed. Values are compared using {@link Object#equals(Object)}.
+ *
+ * @param <K> the key type
+ * @param <V> the value type
+ */
+public final class MapDiff<K, V> {
+  private final Map<K, V> added;
+  private final Map<K, V> changed;
+  private final Set<K> removed;
+
+  MapDiff(Map<K, V> added, Map<K, V> changed, Set<K> removed) {
+    this.added = Collections.unmodifiableMap(added);
+    this.changed = Collections.unmodifiableMap(changed);
+    this.removed = Collections.unmodifiableSet(removed);
+  }
+
+  /** The entries whose keys weren't in the previous map. */
+  public Map<K, V> added() {
+    return added;
+  }
+
+  /** The entries whose keys were in the previous map with a different value. */
+  public Map<K, V> changed() {
+    return changed;
+  }
+
+  /** The keys of the previous map that aren't in the current one. */
+  public Set<K> removed() {
+    return removed;
+  }
+
+  /** Returns true if the maps are equal. */
+  public boolean isEmpty() {
+    return added.isEmpty() && changed.isEmpty() && removed.isEmpty();
+  }
+
+  /** Returns a new map with the changes applied to the previous map. */
+  public Map<K, V> applyTo(Map<K, V> previous) {
+    Map<K, V> result = new LinkedHashMap<>(previous);
+    result.keySet().removeAll(removed);
+    result.putAll(changed);
+    result.putAll(added);
+    return result;
+  }
+
+  static <K, V> MapDiff<K, V> between(Map<K, V> previous, Map<K, V> current) {
+    Map<K, V> added = new LinkedHashMap<>();
+    Map<K, V> changed = new LinkedHashMap<>();
+    Set<K> removed = new LinkedHashSet<>();
+
+    if (previous != current) {
+      for (Map.Entry<K, V> entry : current.entrySet()) {
+        V previousValue = previous.get(entry.getKey());
+        if (previousValue == null && !previous.containsKey(entry.getKey())) {
+          added.put(entry.getKey(), entry.getValue());
+        } else if (!equal(previousValue, entry.getValue())) {
+          changed.put(entry.getKey(), entry.getValue());
+        }
+      }
+
+      for (K key : previous.keySet()) {
+        if (!current.containsKey(key)) {
+          removed.add(key);
+        }
+      }
+    }
+
+    return new MapDiff<>(added, changed, removed);
+  }
+
+  private static boolean equal(Object a, Object b) {
+    return a == null ? b == null : a.equals(b);
+  }
+
+  @Override
+  public String toString() {
+    return "MapDiff{added=" + added + ", changed=" + changed + ", removed=" + removed + "}";
+  }
+}
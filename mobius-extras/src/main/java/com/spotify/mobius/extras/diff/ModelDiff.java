@@ -0,0 +1,66 @@
+/*
+ * -\-\-
+ * Mobius
+ * --
+ * Copyright (c) 2017-2020 Spotify AB
+ * --
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -/-/-
+ */
+package com.spotify.mobius.extras.diff;
+
+import javax.annotation.Nullable;
+
+/**
+ * A model along with the model before it and a diff between the two. The first model an observer
+ * receives has no previous model and no diff; it should be processed in full.
+ *
+ * @param <M> the model type
+ * @param <D> the type of diff
+ */
+public final class ModelDiff<M, D> {
+  @Nullable private final M previous;
+  private final M current;
+  @Nullable private final D diff;
+
+  ModelDiff(@Nullable M previous, M current, @Nullable D diff) {
+    this.previous = previous;
+    this.current = current;
+    this.diff = diff;
+  }
+
+  /** The model that {@link #diff()} was computed from, or null if this is the first model. */
+  @Nullable
+  public M previous() {
+    return previous;
+  }
+
+  public M current() {
+    return current;
+  }
+
+  /** The changes from the previous model to the current one, or null if this is the first model. */
+  @Nullable
+  public D diff() {
+    return diff;
+  }
+
+  public boolean isFirst() {
+    return previous == null;
+  }
+
+  @Override
+  public String toString() {
+    return "ModelDiff{previous=" + previous + ", current=" + current + ", diff=" + diff + "}";
+  }
+}
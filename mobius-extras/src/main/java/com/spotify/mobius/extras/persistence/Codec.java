@@ -0,0 +1,41 @@
+/*
+ * -\-\-
+ * Mobius
+ * --
+ * Copyright (c) 2017-2020 Spotify AB
+ * --
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -/-/-
+ */
+package com.spotify.mobius.extras.persistence;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Converts values to and from a binary representation for storage on disk.
+ *
+ * <p>Implementations must be able to read everything they have ever written, so a codec for values
+ * that change over time should include a version number in its output.
+ *
+ * @param <T> the type of values that can be converted
+ */
+public interface Codec<T> {
+
+  /** Writes the value to the output. */
+  void write(T value, DataOutput output) throws IOException;
+
+  /** Reads a value that was written by {@link #write(Object, DataOutput)}. */
+  T read(DataInput input) throws IOException;
+}
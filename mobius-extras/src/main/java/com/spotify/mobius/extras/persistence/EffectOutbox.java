@@ -0,0 +1,517 @@
+/*
+ * -\-\-
+ * Mobius
+ * --
+ * Copyright (c) 2017-2020 Spotify AB
+ * --
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -/-/-
+ */
+package com.spotify.mobius.extras.persistence;
+
+import static com.spotify.mobius.internal_util.Preconditions.checkArgument;
+import static com.spotify.mobius.internal_util.Preconditions.checkNotNull;
+
+import com.spotify.mobius.Connectable;
+import com.spotify.mobius.Connection;
+import com.spotify.mobius.ConnectionLimitExceededException;
+import com.spotify.mobius.MobiusHooks;
+import com.spotify.mobius.disposables.Disposable;
+import com.spotify.mobius.functions.Consumer;
+import com.spotify.mobius.runners.WorkRunner;
+import com.spotify.mobius.runners.WorkRunners;
+import java.io.DataInput;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * A durable outbox for effects, giving at-least-once delivery of effects across process restarts.
+ *
+ * <p>Effects that a loop dispatches to an effect handler wrapped by the outbox are appended to a
+ * log on disk before they're delivered. Appends are group-committed: the log is forced to the
+ * storage device once per batch, and the effects in the batch are delivered to the handler after
+ * that. A batch is committed when it reaches the maximum batch size or when the commit interval has
+ * passed since its first effect, whichever comes first.
+ *
+ * <p>Handlers acknowledge effects when they've been fully handled. Effects that haven't been
+ * acknowledged when the process dies are delivered again, before any new effects, the next time a
+ * handler is connected to an outbox opened on the same directory. Handlers must therefore be
+ * prepared to see an effect more than once.
+ *
+ * <p>An outbox supports one connected handler at a time.
+ *
+ * @param <F> the effect type
+ */
+public final class EffectOutbox<F> implements Disposable {
+
+  /** An effect delivered from an outbox, which must be acknowledged once it's been handled. */
+  public interface Delivery<F> {
+    /** The sequence number of the effect in the outbox. */
+    long sequence();
+
+    @Nonnull
+    F effect();
+
+    /**
+     * Marks the effect as handled, so that it isn't delivered again after a restart. Calling this
+     * more than once has no effect.
+     */
+    void acknowledge();
+  }
+
+  private static final int DEFAULT_SEGMENT_SIZE = 16 * 1024 * 1024;
+  private static final int DEFAULT_MAX_BATCH_SIZE = 256;
+  private static final long DEFAULT_COMMIT_INTERVAL_MILLIS = 10;
+
+  private static final byte EFFECT_RECORD = 0;
+  private static final byte ACKNOWLEDGEMENT_RECORD = 1;
+
+  private final Codec<F> codec;
+  private final SegmentedLog log;
+  private final int maxBatchSize;
+  private final long commitIntervalNanos;
+  private final WorkRunner commitRunner;
+  private final boolean ownsCommitRunner;
+
+  // guarded by 'this'
+  private final RecordWriter writer = new RecordWriter();
+  private final TreeMap<Long, F> unacknowledged;
+  private final List<DeliveryImpl> batch = new ArrayList<>();
+  private final Runnable commit = this::commit;
+  private boolean commitScheduled;
+  @Nullable private Consumer<Delivery<F>> handler;
+  private boolean disposed;
+
+  private EffectOutbox(
+      Codec<F> codec,
+      SegmentedLog log,
+      int maxBatchSize,
+      long commitIntervalNanos,
+      WorkRunner commitRunner,
+      boolean ownsCommitRunner) {
+    this.codec = codec;
+    this.log = log;
+    this.maxBatchSize = maxBatchSize;
+    this.commitIntervalNanos = commitIntervalNanos;
+    this.commitRunner = commitRunner;
+    this.ownsCommitRunner = ownsCommitRunner;
+    this.unacknowledged = recover();
+  }
+
+  /**
+   * Creates a builder for an outbox stored in the given directory. The directory is created if
+   * necessary, and effects left unacknowledged in it by a previous process are delivered again.
+   */
+  public static <F> Builder<F> builder(File directory, Codec<F> codec) {
+    return new Builder<>(
+        checkNotNull(directory),
+        checkNotNull(codec),
+        DEFAULT_SEGMENT_SIZE,
+        DEFAULT_MAX_BATCH_SIZE,
+        TimeUnit.MILLISECONDS.toNanos(DEFAULT_COMMIT_INTERVAL_MILLIS),
+        null);
+  }
+
+  /**
+   * Wraps an effect handler that acknowledges each delivery explicitly, which lets it acknowledge
+   * effects that complete asynchronously.
+   */
+  public <E> Connectable<F, E> wrap(final Connectable<Delivery<F>, E> handler) {
+    checkNotNull(handler);
+
+    return new Connectable<F, E>() {
+      @Nonnull
+      @Override
+      public Connection<F> connect(Consumer<E> output) {
+        final Connection<Delivery<F>> connection = handler.connect(output);
+        attach(connection);
+
+        return new Connection<F>() {
+          @Override
+          public void accept(F effect) {
+            append(effect);
+          }
+
+          @Override
+          public void dispose() {
+            detach(connection);
+            connection.dispose();
+          }
+        };
+      }
+    };
+  }
+
+  /**
+   * Wraps an effect handler that completes each effect before returning from {@link
+   * Connection#accept(Object)}. Effects are acknowledged when the handler returns without throwing.
+   */
+  public <E> Connectable<F, E> wrapSynchronous(final Connectable<F, E> handler) {
+    checkNotNull(handler);
+
+    return wrap(
+        new Connectable<Delivery<F>, E>() {
+          @Nonnull
+          @Override
+          public Connection<Delivery<F>> connect(Consumer<E> output) {
+            final Connection<F> connection = handler.connect(output);
+
+            return new Connection<Delivery<F>>() {
+              @Override
+              public void accept(Delivery<F> delivery) {
+                connection.accept(delivery.effect());
+                delivery.acknowledge();
+              }
+
+              @Override
+              public void dispose() {
+                connection.dispose();
+              }
+            };
+          }
+        });
+  }
+
+  /** Returns the number of effects that have been appended but not yet acknowledged. */
+  public synchronized int unacknowledgedCount() {
+    return unacknowledged.size();
+  }
+
+  /**
+   * Stops delivering effects, forces everything appended so far to the storage device, and releases
+   * the log files. Effects that haven't been acknowledged, including those that were never
+   * delivered, are delivered again the next time the outbox is opened.
+   */
+  @Override
+  public void dispose() {
+    synchronized (this) {
+      if (disposed) {
+        return;
+      }
+      disposed = true;
+      handler = null;
+      batch.clear();
+    }
+
+    if (ownsCommitRunner) {
+      commitRunner.dispose();
+    }
+
+    log.flush();
+    log.dispose();
+  }
+
+  private void attach(final Connection<Delivery<F>> connection) {
+    final List<DeliveryImpl> redeliveries = new ArrayList<>();
+
+    synchronized (this) {
+      if (disposed) {
+        throw new IllegalStateException("This outbox has been disposed");
+      }
+      if (handler != null) {
+        throw new ConnectionLimitExceededException("Only one handler can be connected at a time");
+      }
+      handler = connection;
+      batch.clear();
+
+      // everything that isn't acknowledged is on disk already, so deliver it right away
+      for (Map.Entry<Long, F> entry : unacknowledged.entrySet()) {
+        redeliveries.add(new DeliveryImpl(entry.getKey(), entry.getValue()));
+      }
+    }
+
+    if (!redeliveries.isEmpty()) {
+      commitRunner.post(() -> redeliver(connection, redeliveries));
+    }
+  }
+
+  private void redeliver(Connection<Delivery<F>> connection, List<DeliveryImpl> redeliveries) {
+    for (DeliveryImpl delivery : redeliveries) {
+      synchronized (this) {
+        if (handler != connection) {
+          return;
+        }
+      }
+
+      deliver(connection, delivery);
+    }
+  }
+
+  private synchronized void detach(Connection<Delivery<F>> connection) {
+    if (handler == connection) {
+      handler = null;
+      batch.clear();
+    }
+  }
+
+  private void append(F effect) {
+    checkNotNull(effect);
+    boolean commitNow;
+
+    synchronized (this) {
+      if (disposed) {
+        throw new IllegalStateException("This outbox has been disposed");
+      }
+
+      long sequence = appendRecord(EFFECT_RECORD, effect, 0);
+      unacknowledged.put(sequence, effect);
+      batch.add(new DeliveryImpl(sequence, effect));
+
+      if (commitScheduled && batch.size() < maxBatchSize) {
+        return;
+      }
+
+      commitNow = batch.size() >= maxBatchSize;
+      commitScheduled = true;
+    }
+
+    if (commitNow) {
+      commitRunner.post(commit);
+    } else {
+      commitRunner.postDelayed(commit, commitIntervalNanos, TimeUnit.NANOSECONDS);
+    }
+  }
+
+  private void commit() {
+    List<DeliveryImpl> committed;
+    Consumer<Delivery<F>> target;
+    long firstNeeded;
+
+    synchronized (this) {
+      commitScheduled = false;
+      if (disposed || batch.isEmpty()) {
+        return;
+      }
+
+      committed = new ArrayList<>(batch);
+      batch.clear();
+      target = handler;
+      firstNeeded = unacknowledged.isEmpty() ? log.lastSequence() + 1 : unacknowledged.firstKey();
+    }
+
+    // one sync covers every effect in the batch, as well as acknowledgements appended since the
+    // previous commit
+    log.flush();
+    log.deleteBefore(firstNeeded);
+
+    if (target == null) {
+      return;
+    }
+
+    for (DeliveryImpl delivery : committed) {
+      deliver(target, delivery);
+    }
+  }
+
+  private void deliver(Consumer<Delivery<F>> target, DeliveryImpl delivery) {
+    try {
+      target.accept(delivery);
+    } catch (RuntimeException e) {
+      MobiusHooks.handleError(e);
+    }
+  }
+
+  private void acknowledge(long sequence) {
+    synchronized (this) {
+      if (disposed || unacknowledged.remove(sequence) == null) {
+        return;
+      }
+
+      appendRecord(ACKNOWLEDGEMENT_RECORD, null, sequence);
+    }
+  }
+
+  // must be called with 'this' held
+  private long appendRecord(byte type, @Nullable F effect, long acknowledgedSequence) {
+    writer.reset();
+
+    try {
+      writer.output().writeByte(type);
+      if (effect != null) {
+        codec.write(effect, writer.output());
+      } else {
+        writer.output().writeLong(acknowledgedSequence);
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException("Failed to encode effect: " + effect, e);
+    }
+
+    return log.append(writer.buffer(), 0, writer.size());
+  }
+
+  private TreeMap<Long, F> recover() {
+    final TreeMap<Long, F> effects = new TreeMap<>();
+    final RecordReader reader = new RecordReader();
+
+    log.read(
+        log.firstSequence(),
+        new SegmentedLog.RecordVisitor() {
+          @Override
+          public boolean visit(long sequence, ByteBuffer payload) {
+            try {
+              DataInput input = reader.reset(payload);
+              if (input.readByte() == EFFECT_RECORD) {
+                effects.put(sequence, codec.read(input));
+              } else {
+                effects.remove(input.readLong());
+              }
+            } catch (IOException e) {
+              throw new UncheckedIOException(
+                  "Failed to decode outbox record with sequence number " + sequence, e);
+            }
+            return true;
+          }
+        });
+
+    return effects;
+  }
+
+  private final class DeliveryImpl implements Delivery<F> {
+    private final long sequence;
+    private final F effect;
+    private final AtomicBoolean acknowledged = new AtomicBoolean();
+
+    DeliveryImpl(long sequence, F effect) {
+      this.sequence = sequence;
+      this.effect = effect;
+    }
+
+    @Override
+    public long sequence() {
+      return sequence;
+    }
+
+    @Nonnull
+    @Override
+    public F effect() {
+      return effect;
+    }
+
+    @Override
+    public void acknowledge() {
+      if (acknowledged.compareAndSet(false, true)) {
+        EffectOutbox.this.acknowledge(sequence);
+      }
+    }
+
+    @Override
+    public String toString() {
+      return "Delivery{sequence=" + sequence + ", effect=" + effect + "}";
+    }
+  }
+
+  public static final class Builder<F> {
+    private final File directory;
+    private final Codec<F> codec;
+    private final int segmentSize;
+    private final int maxBatchSize;
+    private final long commitIntervalNanos;
+    @Nullable private final WorkRunner commitRunner;
+
+    private Builder(
+        File directory,
+        Codec<F> codec,
+        int segmentSize,
+        int maxBatchSize,
+        long commitIntervalNanos,
+        @Nullable WorkRunner commitRunner) {
+      this.directory = directory;
+      this.codec = codec;
+      this.segmentSize = segmentSize;
+      this.maxBatchSize = maxBatchSize;
+      this.commitIntervalNanos = commitIntervalNanos;
+      this.commitRunner = commitRunner;
+    }
+
+    /**
+     * Sets the size of each segment file, which is also the maximum size of an encoded effect. The
+     * default is 16 MB.
+     */
+    public Builder<F> segmentSize(int segmentSize) {
+      checkArgument(segmentSize > SegmentedLog.HEADER_SIZE);
+      return new Builder<>(
+          directory, codec, segmentSize, maxBatchSize, commitIntervalNanos, commitRunner);
+    }
+
+    /**
+     * Sets the number of effects that causes a batch to be committed right away, without waiting
+     * for the commit interval. The default is 256.
+     */
+    public Builder<F> maxBatchSize(int maxBatchSize) {
+      checkArgument(maxBatchSize > 0);
+      return new Builder<>(
+          directory, codec, segmentSize, maxBatchSize, commitIntervalNanos, commitRunner);
+    }
+
+    /**
+     * Sets how long the first effect in a batch waits for more effects to share its sync. Longer
+     * intervals mean fewer syncs but later delivery. The default is 10 ms.
+     *
+     * <p>With the default commit runner, the interval is measured by the timer shared by all work
+     * runners, which has a resolution of about 10 ms, so the default is one tick. Intervals are
+     * rounded up to whole ticks, so a batch may wait up to one tick longer than the interval before
+     * it's committed.
+     */
+    public Builder<F> commitInterval(long interval, TimeUnit unit) {
+      checkArgument(interval >= 0);
+      return new Builder<>(
+          directory, codec, segmentSize, maxBatchSize, unit.toNanos(interval), commitRunner);
+    }
+
+    /**
+     * Sets the work runner that commits batches and delivers effects to the handler. It must run
+     * one thing at a time, and isn't disposed with the outbox.
+     *
+     * <p>By default, each outbox creates a single background thread of its own, which is stopped
+     * when the outbox is disposed. Syncs and deliveries run one at a time on that thread, so the
+     * next batch isn't committed until the handler has returned for every effect in the previous
+     * one. Handlers that take long should hand their work off and acknowledge it when it's done.
+     */
+    public Builder<F> commitRunner(WorkRunner commitRunner) {
+      return new Builder<>(
+          directory,
+          codec,
+          segmentSize,
+          maxBatchSize,
+          commitIntervalNanos,
+          checkNotNull(commitRunner));
+    }
+
+    /**
+     * Opens the outbox, recovering the effects that haven't been acknowledged.
+     *
+     * @throws UncheckedIOException if the outbox files can't be created, opened or decoded
+     */
+    public EffectOutbox<F> open() {
+      SegmentedLog log = new SegmentedLog(directory, segmentSize, SyncPolicy.never());
+
+      if (commitRunner != null) {
+        return new EffectOutbox<>(
+            codec, log, maxBatchSize, commitIntervalNanos, commitRunner, false);
+      }
+
+      return new EffectOutbox<>(
+          codec, log, maxBatchSize, commitIntervalNanos, WorkRunners.singleThread(), true);
+    }
+  }
+}
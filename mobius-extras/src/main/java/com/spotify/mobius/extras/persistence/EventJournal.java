@@ -0,0 +1,244 @@
+/*
+ * -\-\-
+ * Mobius
+ * --
+ * Copyright (c) 2017-2020 Spotify AB
+ * --
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -/-/-
+ */
+package com.spotify.mobius.extras.persistence;
+
+import static com.spotify.mobius.internal_util.Preconditions.checkArgument;
+import static com.spotify.mobius.internal_util.Preconditions.checkNotNull;
+
+import com.spotify.mobius.First;
+import com.spotify.mobius.MobiusLoop;
+import com.spotify.mobius.Next;
+import com.spotify.mobius.Update;
+import com.spotify.mobius.disposables.Disposable;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+
+/**
+ * An append-only journal of the events processed by a loop, for reconstructing the loop's model
+ * after a crash or reproducing an incident.
+ *
+ * <p>Events are encoded with a {@link Codec} and stored with increasing sequence numbers in
+ * memory-mapped segment files. To journal the events of a loop, add the journal's {@link #logger()}
+ * to the loop, for instance using a {@link com.spotify.mobius.extras.CompositeLogger}. Only events
+ * that the update function has processed successfully are journaled.
+ *
+ * <p>{@link #replay(Update, Object)} rebuilds the model by folding the journaled events through an
+ * update function. Effects returned by the update function are ignored, and nothing else is
+ * started, so replaying runs at the speed of the update function and the codec.
+ *
+ * @param <E> the event type
+ */
+public final class EventJournal<E> implements Disposable {
+
+  /** Receives events read from a journal. */
+  public interface Visitor<E> {
+    void visit(long sequence, E event);
+  }
+
+  private static final int DEFAULT_SEGMENT_SIZE = 64 * 1024 * 1024;
+
+  private final Codec<E> codec;
+  private final SegmentedLog log;
+
+  // guarded by 'this'
+  private final RecordWriter writer = new RecordWriter();
+
+  private EventJournal(Codec<E> codec, SegmentedLog log) {
+    this.codec = codec;
+    this.log = log;
+  }
+
+  /**
+   * Creates a builder for a journal stored in the given directory. The directory is created if
+   * necessary, and existing journal files in it are appended to.
+   */
+  public static <E> Builder<E> builder(File directory, Codec<E> codec) {
+    return new Builder<>(
+        checkNotNull(directory), checkNotNull(codec), DEFAULT_SEGMENT_SIZE, SyncPolicy.never());
+  }
+
+  /**
+   * Appends an event to the journal.
+   *
+   * @return the sequence number of the event
+   * @throws UncheckedIOException if the event can't be encoded
+   */
+  public synchronized long append(E event) {
+    writer.reset();
+
+    try {
+      codec.write(event, writer.output());
+    } catch (IOException e) {
+      throw new UncheckedIOException("Failed to encode event: " + event, e);
+    }
+
+    return log.append(writer.buffer(), 0, writer.size());
+  }
+
+  /** Returns the sequence number of the last journaled event, or 0 if there are none. */
+  public long lastSequence() {
+    return log.lastSequence();
+  }
+
+  /** Reads all journaled events with a sequence number of at least {@code fromSequence}. */
+  public void read(long fromSequence, final Visitor<E> visitor) {
+    checkNotNull(visitor);
+    final RecordReader reader = new RecordReader();
+
+    log.read(
+        fromSequence,
+        new SegmentedLog.RecordVisitor() {
+          @Override
+          public boolean visit(long sequence, ByteBuffer payload) {
+            visitor.visit(sequence, decode(reader, sequence, payload));
+            return true;
+          }
+        });
+  }
+
+  /** Rebuilds a model by applying all journaled events to the start model. */
+  public <M, F> M replay(Update<M, E, F> update, M startModel) {
+    return replay(update, startModel, 0);
+  }
+
+  /**
+   * Rebuilds a model by applying all journaled events with sequence numbers higher than {@code
+   * afterSequence} to the start model. This is used when the start model is a snapshot of the model
+   * that includes all events up to that sequence number.
+   */
+  public <M, F> M replay(final Update<M, E, F> update, M startModel, long afterSequence) {
+    checkNotNull(update);
+    checkArgument(afterSequence >= 0);
+
+    final ReplayVisitor<M, E, F> visitor = new ReplayVisitor<>(update, checkNotNull(startModel));
+    read(afterSequence + 1, visitor);
+    return visitor.model;
+  }
+
+  /**
+   * Returns a {@link MobiusLoop.Logger} that appends every event the loop's update function has
+   * processed to this journal.
+   */
+  public <M, F> MobiusLoop.Logger<M, E, F> logger() {
+    return new JournalingLogger<>(this);
+  }
+
+  /** Forces all journaled events to the storage device, regardless of the {@link SyncPolicy}. */
+  public void flush() {
+    log.flush();
+  }
+
+  @Override
+  public void dispose() {
+    log.dispose();
+  }
+
+  private E decode(RecordReader reader, long sequence, ByteBuffer payload) {
+    try {
+      return codec.read(reader.reset(payload));
+    } catch (IOException e) {
+      throw new UncheckedIOException("Failed to decode event with sequence number " + sequence, e);
+    }
+  }
+
+  private static final class ReplayVisitor<M, E, F> implements Visitor<E> {
+    private final Update<M, E, F> update;
+    private M model;
+
+    ReplayVisitor(Update<M, E, F> update, M model) {
+      this.update = update;
+      this.model = model;
+    }
+
+    @Override
+    public void visit(long sequence, E event) {
+      model = update.update(model, event).modelOrElse(model);
+    }
+  }
+
+  private static final class JournalingLogger<M, E, F> implements MobiusLoop.Logger<M, E, F> {
+    private final EventJournal<E> journal;
+
+    JournalingLogger(EventJournal<E> journal) {
+      this.journal = journal;
+    }
+
+    @Override
+    public void beforeInit(M model) {}
+
+    @Override
+    public void afterInit(M model, First<M, F> result) {}
+
+    @Override
+    public void exceptionDuringInit(M model, Throwable exception) {}
+
+    @Override
+    public void beforeUpdate(M model, E event) {}
+
+    @Override
+    public void afterUpdate(M model, E event, Next<M, F> result) {
+      journal.append(event);
+    }
+
+    @Override
+    public void exceptionDuringUpdate(M model, E event, Throwable exception) {}
+  }
+
+  public static final class Builder<E> {
+    private final File directory;
+    private final Codec<E> codec;
+    private final int segmentSize;
+    private final SyncPolicy syncPolicy;
+
+    private Builder(File directory, Codec<E> codec, int segmentSize, SyncPolicy syncPolicy) {
+      this.directory = directory;
+      this.codec = codec;
+      this.segmentSize = segmentSize;
+      this.syncPolicy = syncPolicy;
+    }
+
+    /**
+     * Sets the size of each segment file, which is also the maximum size of an encoded event. The
+     * default is 64 MB.
+     */
+    public Builder<E> segmentSize(int segmentSize) {
+      checkArgument(segmentSize > SegmentedLog.HEADER_SIZE);
+      return new Builder<>(directory, codec, segmentSize, syncPolicy);
+    }
+
+    /**
+     * Sets when events are forced to the storage device; the default is {@link SyncPolicy#never()}.
+     */
+    public Builder<E> syncPolicy(SyncPolicy syncPolicy) {
+      return new Builder<>(directory, codec, segmentSize, checkNotNull(syncPolicy));
+    }
+
+    /**
+     * Opens the journal, recovering from any partially written event at the end.
+     *
+     * @throws UncheckedIOException if the journal files can't be created or opened
+     */
+    public EventJournal<E> open() {
+      return new EventJournal<>(codec, new SegmentedLog(directory, segmentSize, syncPolicy));
+    }
+  }
+}
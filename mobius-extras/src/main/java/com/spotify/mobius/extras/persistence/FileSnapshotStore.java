@@ -0,0 +1,200 @@
+/*
+ * -\-\-
+ * Mobius
+ * --
+ * Copyright (c) 2017-2020 Spotify AB
+ * --
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -/-/-
+ */
+package com.spotify.mobius.extras.persistence;
+
+import static com.spotify.mobius.internal_util.Preconditions.checkNotNull;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashSet;
+import java.util.Set;
+import javax.annotation.Nullable;
+
+/**
+ * A {@link SnapshotStore} that keeps each snapshot in a file of its own, encoded with a {@link
+ * Codec}.
+ *
+ * <p>Snapshots are written to a temporary file, which is synced to the storage device and then
+ * atomically renamed to replace the previous snapshot, so a crash never leaves a partially written
+ * snapshot behind. The directory is synced after the rename, where the platform supports it, so
+ * that the new snapshot survives a crash too. Every save hits the disk; wrap the store in a {@link
+ * WriteBehindSnapshotStore} to limit how often that happens.
+ *
+ * @param <M> the model type
+ */
+public final class FileSnapshotStore<M> implements SnapshotStore<M> {
+
+  private static final String SUFFIX = ".snapshot";
+  private static final String TEMP_SUFFIX = ".tmp";
+
+  private final File directory;
+  private final Codec<M> codec;
+
+  private FileSnapshotStore(File directory, Codec<M> codec) {
+    this.directory = directory;
+    this.codec = codec;
+  }
+
+  /**
+   * Creates a store that keeps snapshots in the given directory, creating the directory if
+   * necessary. Temporary files left in the directory by saves that were interrupted by a crash are
+   * deleted, so only one store should use a directory at a time.
+   *
+   * @throws UncheckedIOException if the directory can't be created
+   */
+  public static <M> FileSnapshotStore<M> create(File directory, Codec<M> codec) {
+    checkNotNull(directory);
+    checkNotNull(codec);
+
+    if (!directory.isDirectory() && !directory.mkdirs()) {
+      throw new UncheckedIOException(new IOException("Could not create directory " + directory));
+    }
+
+    deleteTemporaryFiles(directory);
+    return new FileSnapshotStore<>(directory, codec);
+  }
+
+  @Override
+  public void save(String key, M model) {
+    File target = fileFor(key);
+    File temp = null;
+
+    try {
+      temp = File.createTempFile(target.getName(), TEMP_SUFFIX, directory);
+
+      try (FileOutputStream file = new FileOutputStream(temp)) {
+        DataOutputStream output = new DataOutputStream(new BufferedOutputStream(file));
+        codec.write(checkNotNull(model), output);
+        output.flush();
+        file.getFD().sync();
+      }
+
+      Files.move(
+          temp.toPath(),
+          target.toPath(),
+          StandardCopyOption.ATOMIC_MOVE,
+          StandardCopyOption.REPLACE_EXISTING);
+      syncDirectory();
+    } catch (IOException e) {
+      if (temp != null) {
+        //noinspection ResultOfMethodCallIgnored
+        temp.delete();
+      }
+      throw new UncheckedIOException("Failed to save snapshot: " + key, e);
+    }
+  }
+
+  @Nullable
+  @Override
+  public M load(String key) {
+    try (DataInputStream input =
+        new DataInputStream(new BufferedInputStream(new FileInputStream(fileFor(key))))) {
+      return codec.read(input);
+    } catch (FileNotFoundException e) {
+      return null;
+    } catch (IOException e) {
+      throw new UncheckedIOException("Failed to load snapshot: " + key, e);
+    }
+  }
+
+  @Override
+  public void delete(String key) {
+    try {
+      Files.deleteIfExists(fileFor(key).toPath());
+    } catch (IOException e) {
+      throw new UncheckedIOException("Failed to delete snapshot: " + key, e);
+    }
+  }
+
+  @Override
+  public Set<String> keys() {
+    String[] names = directory.list();
+    if (names == null) {
+      throw new UncheckedIOException(new IOException("Could not list files in " + directory));
+    }
+
+    Set<String> keys = new HashSet<>();
+    for (String name : names) {
+      if (name.endsWith(SUFFIX)) {
+        keys.add(decode(name.substring(0, name.length() - SUFFIX.length())));
+      }
+    }
+    return keys;
+  }
+
+  // makes the rename durable; platforms that can't open directories, like Windows, don't need it
+  private void syncDirectory() {
+    try (FileChannel channel = FileChannel.open(directory.toPath(), StandardOpenOption.READ)) {
+      channel.force(true);
+    } catch (IOException e) {
+      // not supported on this platform
+    }
+  }
+
+  private static void deleteTemporaryFiles(File directory) {
+    File[] files = directory.listFiles();
+    if (files == null) {
+      return;
+    }
+
+    for (File file : files) {
+      if (file.getName().endsWith(TEMP_SUFFIX)) {
+        //noinspection ResultOfMethodCallIgnored
+        file.delete();
+      }
+    }
+  }
+
+  private File fileFor(String key) {
+    return new File(directory, encode(checkNotNull(key)) + SUFFIX);
+  }
+
+  // keys are URL encoded, so that any key results in a valid file name
+  private static String encode(String key) {
+    try {
+      return URLEncoder.encode(key, "UTF-8");
+    } catch (UnsupportedEncodingException e) {
+      throw new AssertionError(e);
+    }
+  }
+
+  private static String decode(String name) {
+    try {
+      return URLDecoder.decode(name, "UTF-8");
+    } catch (UnsupportedEncodingException e) {
+      throw new AssertionError(e);
+    }
+  }
+}
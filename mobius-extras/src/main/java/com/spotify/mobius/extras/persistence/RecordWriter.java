@@ -0,0 +1,56 @@
+/*
+ * -\-\-
+ * Mobius
+ * --
+ * Copyright (c) 2017-2020 Spotify AB
+ * --
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -/-/-
+ */
+package com.spotify.mobius.extras.persistence;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+
+/** A reusable buffer that a {@link Codec} writes a record into before it's appended to a log. */
+final class RecordWriter {
+  private final Buffer buffer = new Buffer();
+  private final DataOutputStream output = new DataOutputStream(buffer);
+
+  void reset() {
+    buffer.reset();
+  }
+
+  DataOutput output() {
+    return output;
+  }
+
+  byte[] buffer() {
+    return buffer.array();
+  }
+
+  int size() {
+    return buffer.size();
+  }
+
+  private static final class Buffer extends ByteArrayOutputStream {
+    Buffer() {
+      super(256);
+    }
+
+    byte[] array() {
+      return buf;
+    }
+  }
+}
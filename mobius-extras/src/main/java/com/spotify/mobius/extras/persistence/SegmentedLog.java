@@ -0,0 +1,442 @@
+/*
+ * -\-\-
+ * Mobius
+ * --
+ * Copyright (c) 2017-2020 Spotify AB
+ * --
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -/-/-
+ */
+package com.spotify.mobius.extras.persistence;
+
+import static com.spotify.mobius.internal_util.Preconditions.checkArgument;
+import static com.spotify.mobius.internal_util.Preconditions.checkNotNull;
+
+import com.spotify.mobius.disposables.Disposable;
+import com.spotify.mobius.runners.WorkRunner;
+import com.spotify.mobius.runners.WorkRunners;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+import java.util.zip.CRC32;
+import javax.annotation.Nullable;
+
+/**
+ * An append-only log of binary records, stored in a directory as a sequence of memory-mapped
+ * segment files of a fixed size. Each record gets a sequence number, starting at 1.
+ *
+ * <p>A record is stored as its length plus one, its sequence number, a CRC32 checksum of its
+ * payload, and the payload. The length is written last, so a record that was only partially written
+ * when the process crashed reads as the end of the log; it's offset by one so that empty payloads
+ * can be told apart from unwritten space.
+ *
+ * <p>Segment files are named after the sequence number of their first record. Whole segments can be
+ * deleted from the start of the log once they're no longer needed.
+ */
+final class SegmentedLog implements Disposable {
+
+  /** Receives records read from the log. */
+  interface RecordVisitor {
+    /**
+     * Called for each record; the payload buffer is only valid until this method returns.
+     *
+     * @return false to stop reading
+     */
+    boolean visit(long sequence, ByteBuffer payload);
+  }
+
+  static final int HEADER_SIZE = 4 + 8 + 4;
+
+  private static final String SUFFIX = ".log";
+  private static final Pattern SEGMENT_NAME = Pattern.compile("\\d{20}\\" + SUFFIX);
+
+  private final File directory;
+  private final int segmentSize;
+  private final SyncPolicy syncPolicy;
+  private final CRC32 crc = new CRC32();
+  private final AtomicLong forceCount = new AtomicLong();
+
+  // guarded by 'this'
+  private final List<Long> segmentStarts = new ArrayList<>();
+  private Segment active;
+  private long nextSequence;
+  private boolean dirty;
+  private boolean disposed;
+
+  @Nullable private final WorkRunner flushRunner;
+  @Nullable private final Disposable periodicFlush;
+
+  SegmentedLog(File directory, int segmentSize, SyncPolicy syncPolicy) {
+    checkArgument(segmentSize > HEADER_SIZE);
+    this.directory = checkNotNull(directory);
+    this.segmentSize = segmentSize;
+    this.syncPolicy = checkNotNull(syncPolicy);
+
+    if (!directory.isDirectory() && !directory.mkdirs()) {
+      throw new UncheckedIOException(new IOException("Could not create directory " + directory));
+    }
+
+    for (File file : listSegmentFiles(directory)) {
+      segmentStarts.add(firstSequenceOf(file));
+    }
+
+    if (segmentStarts.isEmpty()) {
+      nextSequence = 1;
+      active = Segment.open(segmentFile(1), 1, segmentSize);
+      segmentStarts.add(1L);
+    } else {
+      long start = segmentStarts.get(segmentStarts.size() - 1);
+      active = Segment.open(segmentFile(start), start, segmentSize);
+      nextSequence = active.recover(crc);
+    }
+
+    if (syncPolicy.kind() == SyncPolicy.Kind.INTERVAL) {
+      flushRunner = WorkRunners.singleThread();
+      periodicFlush =
+          flushRunner.schedulePeriodic(
+              this::flushIfDirty,
+              syncPolicy.intervalNanos(),
+              syncPolicy.intervalNanos(),
+              TimeUnit.NANOSECONDS);
+    } else {
+      flushRunner = null;
+      periodicFlush = null;
+    }
+  }
+
+  /**
+   * Appends a record to the log.
+   *
+   * @return the sequence number of the record
+   */
+  synchronized long append(byte[] payload, int offset, int length) {
+    checkArgument(offset >= 0 && length >= 0 && offset <= payload.length - length);
+    checkArgument(HEADER_SIZE + length <= segmentSize);
+    if (disposed) {
+      throw new IllegalStateException("This log has been disposed");
+    }
+
+    if (active.remaining() < HEADER_SIZE + length) {
+      roll();
+    }
+
+    long sequence = nextSequence++;
+
+    crc.reset();
+    crc.update(payload, offset, length);
+    active.write(sequence, (int) crc.getValue(), payload, offset, length);
+
+    if (syncPolicy.kind() == SyncPolicy.Kind.EVERY_APPEND) {
+      force(active);
+    } else {
+      dirty = true;
+    }
+
+    return sequence;
+  }
+
+  /** Returns the sequence number of the last record, or 0 if the log is empty. */
+  synchronized long lastSequence() {
+    return nextSequence - 1;
+  }
+
+  /** Returns the sequence number of the first record still in the log. */
+  synchronized long firstSequence() {
+    return segmentStarts.get(0);
+  }
+
+  /**
+   * Reads all records with a sequence number of at least {@code fromSequence}, in order. Records
+   * that are appended while reading may or may not be included.
+   */
+  void read(long fromSequence, RecordVisitor visitor) {
+    List<Long> starts;
+    long endSequence;
+
+    synchronized (this) {
+      starts = new ArrayList<>(segmentStarts);
+      endSequence = nextSequence;
+    }
+
+    for (int i = 0; i < starts.size(); i++) {
+      long segmentEnd = i + 1 < starts.size() ? starts.get(i + 1) : endSequence;
+      if (segmentEnd <= fromSequence) {
+        continue;
+      }
+
+      if (!readSegment(segmentFile(starts.get(i)), starts.get(i), fromSequence, visitor)) {
+        return;
+      }
+    }
+  }
+
+  /**
+   * Deletes all segments that only contain records with sequence numbers lower than the given one.
+   * The active segment is never deleted.
+   */
+  synchronized void deleteBefore(long sequence) {
+    while (segmentStarts.size() > 1 && segmentStarts.get(1) <= sequence) {
+      File file = segmentFile(segmentStarts.remove(0));
+      if (!file.delete()) {
+        throw new UncheckedIOException(new IOException("Could not delete " + file));
+      }
+    }
+  }
+
+  /** Forces all appended records to the storage device. */
+  void flush() {
+    Segment segment;
+    synchronized (this) {
+      dirty = false;
+      segment = active;
+    }
+    force(segment);
+  }
+
+  @Override
+  public void dispose() {
+    synchronized (this) {
+      if (disposed) {
+        return;
+      }
+      disposed = true;
+    }
+
+    if (periodicFlush != null) {
+      periodicFlush.dispose();
+      checkNotNull(flushRunner).dispose();
+    }
+
+    synchronized (this) {
+      if (syncPolicy.kind() != SyncPolicy.Kind.NEVER) {
+        force(active);
+      }
+      active.close();
+    }
+  }
+
+  private void flushIfDirty() {
+    Segment segment;
+    synchronized (this) {
+      if (!dirty || disposed) {
+        return;
+      }
+      dirty = false;
+      segment = active;
+    }
+
+    // forcing happens outside the lock, so that appending doesn't wait for the device
+    force(segment);
+  }
+
+  // must be called with 'this' held
+  private void roll() {
+    // always forced, since flush() only forces the active segment; with the NEVER policy this
+    // costs one sync per segment
+    force(active);
+    active.close();
+
+    active = Segment.open(segmentFile(nextSequence), nextSequence, segmentSize);
+    segmentStarts.add(nextSequence);
+  }
+
+  private void force(Segment segment) {
+    segment.force();
+    forceCount.incrementAndGet();
+  }
+
+  // for tests
+  long forceCount() {
+    return forceCount.get();
+  }
+
+  private boolean readSegment(
+      File file, long firstSequence, long fromSequence, RecordVisitor visitor) {
+    ByteBuffer buffer;
+    try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+      buffer = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, raf.length());
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+
+    CRC32 readCrc = new CRC32();
+    long expectedSequence = firstSequence;
+
+    while (buffer.remaining() >= HEADER_SIZE) {
+      int position = buffer.position();
+      int length = buffer.getInt(position) - 1;
+      long sequence = buffer.getLong(position + 4);
+      int checksum = buffer.getInt(position + 12);
+
+      if (length < 0
+          || sequence != expectedSequence
+          || length > buffer.remaining() - HEADER_SIZE) {
+        return true;
+      }
+
+      ByteBuffer payload = buffer.duplicate();
+      payload.position(position + HEADER_SIZE);
+      payload.limit(position + HEADER_SIZE + length);
+
+      readCrc.reset();
+      readCrc.update(payload.duplicate());
+      if ((int) readCrc.getValue() != checksum) {
+        return true;
+      }
+
+      if (sequence >= fromSequence && !visitor.visit(sequence, payload.slice())) {
+        return false;
+      }
+
+      buffer.position(position + HEADER_SIZE + length);
+      expectedSequence++;
+    }
+
+    return true;
+  }
+
+  private File segmentFile(long firstSequence) {
+    return new File(directory, String.format(Locale.ENGLISH, "%020d%s", firstSequence, SUFFIX));
+  }
+
+  private static long firstSequenceOf(File file) {
+    String name = file.getName();
+    return Long.parseLong(name.substring(0, name.length() - SUFFIX.length()));
+  }
+
+  private static File[] listSegmentFiles(File directory) {
+    File[] files = directory.listFiles((dir, name) -> SEGMENT_NAME.matcher(name).matches());
+    if (files == null) {
+      throw new UncheckedIOException(new IOException("Could not list files in " + directory));
+    }
+
+    // the names are zero-padded, so they sort in sequence order
+    Arrays.sort(files);
+    return files;
+  }
+
+  /** A segment file that's mapped for writing. */
+  private static final class Segment {
+    private final RandomAccessFile file;
+    private final MappedByteBuffer buffer;
+    private final long firstSequence;
+
+    private Segment(RandomAccessFile file, MappedByteBuffer buffer, long firstSequence) {
+      this.file = file;
+      this.buffer = buffer;
+      this.firstSequence = firstSequence;
+    }
+
+    static Segment open(File path, long firstSequence, int segmentSize) {
+      try {
+        RandomAccessFile file = new RandomAccessFile(path, "rw");
+        MappedByteBuffer buffer =
+            file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+        return new Segment(file, buffer, firstSequence);
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }
+
+    /**
+     * Finds the end of the valid records in this segment, and clears anything after them.
+     *
+     * @return the sequence number of the next record
+     */
+    long recover(CRC32 crc) {
+      long nextSequence = firstSequence;
+      int position = 0;
+
+      while (buffer.capacity() - position >= HEADER_SIZE) {
+        int length = buffer.getInt(position) - 1;
+        long sequence = buffer.getLong(position + 4);
+        int checksum = buffer.getInt(position + 12);
+
+        if (length < 0
+            || sequence != nextSequence
+            || length > buffer.capacity() - position - HEADER_SIZE) {
+          break;
+        }
+
+        ByteBuffer payload = buffer.duplicate();
+        payload.position(position + HEADER_SIZE);
+        payload.limit(position + HEADER_SIZE + length);
+        crc.reset();
+        crc.update(payload);
+        if ((int) crc.getValue() != checksum) {
+          break;
+        }
+
+        position += HEADER_SIZE + length;
+        nextSequence++;
+      }
+
+      // a partially written record leaves garbage behind, which must not be mistaken for a record
+      if (hasDataAt(position)) {
+        for (int i = position; i < buffer.capacity(); i++) {
+          buffer.put(i, (byte) 0);
+        }
+      }
+
+      buffer.position(position);
+      return nextSequence;
+    }
+
+    private boolean hasDataAt(int position) {
+      for (int i = position; i < Math.min(position + HEADER_SIZE, buffer.capacity()); i++) {
+        if (buffer.get(i) != 0) {
+          return true;
+        }
+      }
+      return false;
+    }
+
+    int remaining() {
+      return buffer.remaining();
+    }
+
+    void write(long sequence, int checksum, byte[] payload, int offset, int length) {
+      int position = buffer.position();
+
+      buffer.position(position + HEADER_SIZE);
+      buffer.put(payload, offset, length);
+      buffer.putLong(position + 4, sequence);
+      buffer.putInt(position + 12, checksum);
+      // the length goes last, marking the record as complete
+      buffer.putInt(position, length + 1);
+    }
+
+    void force() {
+      buffer.force();
+    }
+
+    void close() {
+      try {
+        file.close();
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }
+  }
+}
@@ -0,0 +1,90 @@
+/*
+ * -\-\-
+ * Mobius
+ * --
+ * Copyright (c) 2017-2020 Spotify AB
+ * --
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -/-/-
+ */
+package com.spotify.mobius.extras.persistence;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import javax.annotation.Nullable;
+
+/**
+ * Stores the most recent model of any number of loops, each identified by a key, so that the loops
+ * can be restored after the process is restarted.
+ *
+ * <p>Implementations must be thread-safe.
+ *
+ * @param <M> the model type
+ */
+public interface SnapshotStore<M> {
+
+  /** Stores a snapshot of a model, replacing any previous snapshot with the same key. */
+  void save(String key, M model);
+
+  /** Returns the most recently saved snapshot with the given key, or null if there is none. */
+  @Nullable
+  M load(String key);
+
+  /** Deletes the snapshot with the given key, if there is one. */
+  void delete(String key);
+
+  /** Returns the keys of all stored snapshots. */
+  Set<String> keys();
+
+  /**
+   * Loads the snapshots with the given keys in parallel, using the supplied executor. Keys without
+   * a snapshot are left out of the result.
+   */
+  default Map<String, M> loadAll(Collection<String> keys, ExecutorService executor) {
+    List<String> keyList = new ArrayList<>(keys);
+    List<Future<M>> futures = new ArrayList<>(keyList.size());
+
+    for (final String key : keyList) {
+      futures.add(executor.submit(() -> load(key)));
+    }
+
+    Map<String, M> snapshots = new HashMap<>();
+
+    try {
+      for (int i = 0; i < keyList.size(); i++) {
+        M snapshot = futures.get(i).get();
+        if (snapshot != null) {
+          snapshots.put(keyList.get(i), snapshot);
+        }
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Interrupted while loading snapshots", e);
+    } catch (ExecutionException e) {
+      throw new IllegalStateException("Failed to load snapshots", e.getCause());
+    } finally {
+      for (Future<M> future : futures) {
+        future.cancel(false);
+      }
+    }
+
+    return snapshots;
+  }
+}
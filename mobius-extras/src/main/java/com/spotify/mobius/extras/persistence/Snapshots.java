@@ -0,0 +1,104 @@
+/*
+ * -\-\-
+ * Mobius
+ * --
+ * Copyright (c) 2017-2020 Spotify AB
+ * --
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -/-/-
+ */
+package com.spotify.mobius.extras.persistence;
+
+import static com.spotify.mobius.internal_util.Preconditions.checkNotNull;
+
+import com.spotify.mobius.Connectable;
+import com.spotify.mobius.Connection;
+import com.spotify.mobius.MobiusLoop;
+import com.spotify.mobius.functions.Consumer;
+import javax.annotation.Nonnull;
+
+/** Connects {@link SnapshotStore}s to loops and loop controllers. */
+public final class Snapshots {
+
+  private Snapshots() {
+    // prevent instantiation
+  }
+
+  /**
+   * Replaces the model of a controller with the stored snapshot, if there is one. The controller
+   * must not be running.
+   *
+   * @return true if a snapshot was found and restored
+   */
+  public static <M> boolean restore(
+      SnapshotStore<M> store, String key, MobiusLoop.Controller<M, ?> controller) {
+    checkNotNull(controller);
+
+    M snapshot = checkNotNull(store).load(checkNotNull(key));
+    if (snapshot == null) {
+      return false;
+    }
+
+    controller.replaceModel(snapshot);
+    return true;
+  }
+
+  /**
+   * Wraps a view so that every model it receives is also saved to the store. Use the returned
+   * {@link Connectable} when connecting a {@link MobiusLoop.Controller}; combine it with a {@link
+   * WriteBehindSnapshotStore} to limit how often snapshots are written.
+   */
+  public static <M, E> Connectable<M, E> savingModels(
+      final SnapshotStore<M> store, final String key, final Connectable<M, E> view) {
+    checkNotNull(store);
+    checkNotNull(key);
+    checkNotNull(view);
+
+    return new Connectable<M, E>() {
+      @Nonnull
+      @Override
+      public Connection<M> connect(Consumer<E> output) {
+        final Connection<M> delegate = view.connect(output);
+
+        return new Connection<M>() {
+          @Override
+          public void accept(M model) {
+            store.save(key, model);
+            delegate.accept(model);
+          }
+
+          @Override
+          public void dispose() {
+            delegate.dispose();
+          }
+        };
+      }
+    };
+  }
+
+  /**
+   * Returns a model observer that saves every model to the store, for use with {@link
+   * MobiusLoop#observe(Consumer)}.
+   */
+  public static <M> Consumer<M> modelSaver(final SnapshotStore<M> store, final String key) {
+    checkNotNull(store);
+    checkNotNull(key);
+
+    return new Consumer<M>() {
+      @Override
+      public void accept(M model) {
+        store.save(key, model);
+      }
+    };
+  }
+}
@@ -0,0 +1,87 @@
+/*
+ * -\-\-
+ * Mobius
+ * --
+ * Copyright (c) 2017-2020 Spotify AB
+ * --
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -/-/-
+ */
+package com.spotify.mobius.extras.persistence;
+
+import static com.spotify.mobius.internal_util.Preconditions.checkArgument;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decides when appended records are forced to the storage device.
+ *
+ * <p>Records are written to memory-mapped files, so they survive a crash of the process as soon as
+ * they're appended. Forcing them to the device is only needed to survive a crash of the operating
+ * system or a power loss, and is by far the most expensive part of appending.
+ */
+public final class SyncPolicy {
+
+  enum Kind {
+    NEVER,
+    EVERY_APPEND,
+    INTERVAL
+  }
+
+  private static final SyncPolicy NEVER = new SyncPolicy(Kind.NEVER, 0);
+  private static final SyncPolicy EVERY_APPEND = new SyncPolicy(Kind.EVERY_APPEND, 0);
+
+  private final Kind kind;
+  private final long intervalNanos;
+
+  private SyncPolicy(Kind kind, long intervalNanos) {
+    this.kind = kind;
+    this.intervalNanos = intervalNanos;
+  }
+
+  /**
+   * Only forces records when a segment file is full and a new one is started, leaving it to the
+   * operating system to write them back otherwise.
+   */
+  public static SyncPolicy never() {
+    return NEVER;
+  }
+
+  /** Forces each record to the device before the call that appended it returns. */
+  public static SyncPolicy everyAppend() {
+    return EVERY_APPEND;
+  }
+
+  /**
+   * Forces records to the device on a background thread at most once per interval, so that all
+   * records appended during an interval share a single sync. Appending never waits for the sync,
+   * and a crash of the operating system can lose up to one interval of records.
+   */
+  public static SyncPolicy interval(long interval, TimeUnit unit) {
+    checkArgument(interval > 0);
+    return new SyncPolicy(Kind.INTERVAL, unit.toNanos(interval));
+  }
+
+  Kind kind() {
+    return kind;
+  }
+
+  long intervalNanos() {
+    return intervalNanos;
+  }
+
+  @Override
+  public String toString() {
+    return kind == Kind.INTERVAL ? "SyncPolicy{interval=" + intervalNanos + "ns}" : kind.toString();
+  }
+}
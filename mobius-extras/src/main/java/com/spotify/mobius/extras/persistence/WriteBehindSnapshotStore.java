@@ -0,0 +1,315 @@
+/*
+ * -\-\-
+ * Mobius
+ * --
+ * Copyright (c) 2017-2020 Spotify AB
+ * --
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -/-/-
+ */
+package com.spotify.mobius.extras.persistence;
+
+import static com.spotify.mobius.internal_util.Preconditions.checkArgument;
+import static com.spotify.mobius.internal_util.Preconditions.checkNotNull;
+
+import com.spotify.mobius.MobiusHooks;
+import com.spotify.mobius.disposables.Disposable;
+import com.spotify.mobius.runners.WorkRunner;
+import com.spotify.mobius.runners.WorkRunners;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.Nullable;
+
+/**
+ * A {@link SnapshotStore} that saves snapshots to another store in the background, at most once per
+ * interval for each key.
+ *
+ * <p>The first snapshot for a key is written right away. Snapshots saved while that write is in
+ * progress, or during the interval after it, are coalesced, so that only the most recent one is
+ * written when the interval has passed. Loading a key returns the most recent snapshot even if it
+ * hasn't been written yet.
+ *
+ * <p>Writes that fail are reported to {@link MobiusHooks#handleError(Throwable)}, and retried after
+ * the interval unless a newer snapshot has been saved by then. Disposing the store writes all
+ * pending snapshots before returning; snapshots saved after that are written right away.
+ *
+ * @param <M> the model type
+ */
+public final class WriteBehindSnapshotStore<M> implements SnapshotStore<M>, Disposable {
+
+  private final SnapshotStore<M> delegate;
+  private final long intervalNanos;
+  private final WorkRunner runner;
+  private final boolean ownsRunner;
+
+  // guarded by 'this'
+  private final Map<String, KeyState<M>> states = new HashMap<>();
+  private boolean disposed;
+
+  // held while writing to the delegate, so that writes for a key never overtake each other
+  private final Object writeLock = new Object();
+
+  private WriteBehindSnapshotStore(
+      SnapshotStore<M> delegate, long intervalNanos, WorkRunner runner, boolean ownsRunner) {
+    this.delegate = delegate;
+    this.intervalNanos = intervalNanos;
+    this.runner = runner;
+    this.ownsRunner = ownsRunner;
+  }
+
+  /**
+   * Creates a store that writes snapshots to the delegate at most once per interval for each key,
+   * using a background thread of its own.
+   */
+  public static <M> WriteBehindSnapshotStore<M> create(
+      SnapshotStore<M> delegate, long interval, TimeUnit unit) {
+    checkArgument(interval >= 0);
+    return new WriteBehindSnapshotStore<>(
+        checkNotNull(delegate), unit.toNanos(interval), WorkRunners.singleThread(), true);
+  }
+
+  /**
+   * Creates a store that writes snapshots to the delegate at most once per interval for each key,
+   * using the supplied work runner for writing and scheduling. The work runner must run one thing
+   * at a time, and isn't disposed when the store is disposed.
+   */
+  public static <M> WriteBehindSnapshotStore<M> create(
+      SnapshotStore<M> delegate, long interval, TimeUnit unit, WorkRunner runner) {
+    checkArgument(interval >= 0);
+    return new WriteBehindSnapshotStore<>(
+        checkNotNull(delegate), unit.toNanos(interval), checkNotNull(runner), false);
+  }
+
+  @Override
+  public void save(String key, M model) {
+    checkNotNull(key);
+    checkNotNull(model);
+
+    boolean writeNow;
+
+    synchronized (this) {
+      KeyState<M> state = stateFor(key);
+      state.pending = model;
+      state.deleted = false;
+
+      // there's no runner to write in the background once disposed
+      writeNow = disposed;
+
+      if (!writeNow) {
+        if (state.scheduled) {
+          return;
+        }
+        state.scheduled = true;
+      }
+    }
+
+    if (!writeNow) {
+      runner.post(new WriteTask(key));
+      return;
+    }
+
+    writePending(key);
+
+    synchronized (this) {
+      KeyState<M> state = states.get(key);
+      if (state != null && state.pending == null && state.inFlight == null && !state.deleted) {
+        states.remove(key);
+      }
+    }
+  }
+
+  @Nullable
+  @Override
+  public M load(String key) {
+    synchronized (this) {
+      KeyState<M> state = states.get(key);
+      if (state != null && state.pending != null) {
+        return state.pending;
+      }
+      if (state != null && state.inFlight != null) {
+        return state.inFlight;
+      }
+      if (state != null && state.deleted) {
+        return null;
+      }
+    }
+
+    return delegate.load(key);
+  }
+
+  @Override
+  public void delete(String key) {
+    synchronized (this) {
+      KeyState<M> state = stateFor(key);
+      state.pending = null;
+      state.inFlight = null;
+      state.deleted = true;
+    }
+
+    synchronized (writeLock) {
+      delegate.delete(key);
+    }
+
+    synchronized (this) {
+      KeyState<M> state = states.get(key);
+      if (state != null && state.deleted) {
+        state.deleted = false;
+        if (!state.scheduled) {
+          states.remove(key);
+        }
+      }
+    }
+  }
+
+  @Override
+  public Set<String> keys() {
+    Set<String> keys = new HashSet<>(delegate.keys());
+
+    synchronized (this) {
+      for (Map.Entry<String, KeyState<M>> entry : states.entrySet()) {
+        if (entry.getValue().pending != null || entry.getValue().inFlight != null) {
+          keys.add(entry.getKey());
+        } else if (entry.getValue().deleted) {
+          keys.remove(entry.getKey());
+        }
+      }
+    }
+
+    return keys;
+  }
+
+  /** Writes all pending snapshots to the delegate store before returning. */
+  public void flush() {
+    List<String> keys;
+    synchronized (this) {
+      keys = new ArrayList<>(states.keySet());
+    }
+
+    for (String key : keys) {
+      writePending(key);
+    }
+  }
+
+  @Override
+  public void dispose() {
+    synchronized (this) {
+      disposed = true;
+    }
+
+    flush();
+
+    if (ownsRunner) {
+      runner.dispose();
+    }
+  }
+
+  // must be called with 'this' held
+  private KeyState<M> stateFor(String key) {
+    KeyState<M> state = states.get(key);
+    if (state == null) {
+      state = new KeyState<>();
+      states.put(key, state);
+    }
+    return state;
+  }
+
+  /** Writes the pending snapshot for the key, returning false if there was none. */
+  private boolean writePending(String key) {
+    synchronized (writeLock) {
+      M model;
+      synchronized (this) {
+        KeyState<M> state = states.get(key);
+        if (state == null || state.pending == null) {
+          return false;
+        }
+        model = state.pending;
+        state.pending = null;
+        // keep the model visible to load() until the delegate has it
+        state.inFlight = model;
+      }
+
+      boolean saved = false;
+      try {
+        delegate.save(key, model);
+        saved = true;
+      } catch (RuntimeException e) {
+        MobiusHooks.handleError(e);
+      } finally {
+        writeCompleted(key, model, saved);
+      }
+      return true;
+    }
+  }
+
+  private synchronized void writeCompleted(String key, M model, boolean saved) {
+    KeyState<M> state = states.get(key);
+    if (state == null || state.inFlight != model) {
+      // deleted while writing
+      return;
+    }
+
+    state.inFlight = null;
+    if (!saved && state.pending == null) {
+      // try again later, unless a newer snapshot has replaced it
+      state.pending = model;
+    }
+  }
+
+  private static final class KeyState<M> {
+    @Nullable private M pending;
+    @Nullable private M inFlight;
+    private boolean scheduled;
+    private boolean deleted;
+  }
+
+  private final class WriteTask implements Runnable {
+    private final String key;
+
+    WriteTask(String key) {
+      this.key = key;
+    }
+
+    @Override
+    public void run() {
+      if (writePending(key)) {
+        // wait for the interval to pass before writing anything else for this key
+        runner.postDelayed(this, intervalNanos, TimeUnit.NANOSECONDS);
+        return;
+      }
+
+      synchronized (WriteBehindSnapshotStore.this) {
+        KeyState<M> state = states.get(key);
+        if (state == null) {
+          return;
+        }
+
+        if (state.pending != null) {
+          // saved after writePending checked; write it right away
+          runner.post(this);
+          return;
+        }
+
+        state.scheduled = false;
+        if (!state.deleted) {
+          // nothing is pending, so the state can be dropped
+          states.remove(key);
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,180 @@
+/*
+ * -\-\-
+ * Mobius
+ * --
+ * Copyright (c) 2017-2020 Spotify AB
+ * --
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -/-/-
+ */
+package com.spotify.mobius.extras.replay;
+
+import static com.spotify.mobius.internal_util.Preconditions.checkNotNull;
+
+import com.spotify.mobius.First;
+import com.spotify.mobius.Init;
+import com.spotify.mobius.Next;
+import com.spotify.mobius.Update;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import javax.annotation.Nullable;
+
+/**
+ * Replays recorded event streams through an {@link Update} function, without running a loop.
+ *
+ * <p>Each {@link ReplaySession} is folded through the optional {@link Init} function and the update
+ * function on a {@link ForkJoinPool}, one session per task. Nothing else is involved: there are no
+ * work runners, event sources or effect handlers, so the throughput in the {@link ReplayReport} is
+ * that of the init and update functions alone. This makes it possible to replay large numbers of
+ * production sessions to check how a change to the update logic affects its results or its cost.
+ *
+ * <p>An exception thrown by the init or update function ends the session it was thrown in, and is
+ * recorded in that session's {@link ReplayResult}; the other sessions are unaffected.
+ *
+ * <p>Instances are immutable; the configuration methods return new instances.
+ *
+ * @param <M> the model type
+ * @param <E> the event type
+ * @param <F> the effect type
+ */
+public final class ReplayEngine<M, E, F> {
+
+  private final Update<M, E, F> update;
+  @Nullable private final Init<M, F> init;
+  @Nullable private final ForkJoinPool pool;
+  private final boolean collectEffects;
+
+  private ReplayEngine(
+      Update<M, E, F> update,
+      @Nullable Init<M, F> init,
+      @Nullable ForkJoinPool pool,
+      boolean collectEffects) {
+    this.update = update;
+    this.init = init;
+    this.pool = pool;
+    this.collectEffects = collectEffects;
+  }
+
+  /** Creates an engine that replays sessions through the given update function. */
+  public static <M, E, F> ReplayEngine<M, E, F> create(Update<M, E, F> update) {
+    return new ReplayEngine<>(checkNotNull(update), null, null, true);
+  }
+
+  /** Returns an engine that passes the start model of each session through an init function. */
+  public ReplayEngine<M, E, F> init(Init<M, F> init) {
+    return new ReplayEngine<>(update, checkNotNull(init), pool, collectEffects);
+  }
+
+  /**
+   * Returns an engine that replays sessions on the given pool. The default is {@link
+   * ForkJoinPool#commonPool()}.
+   */
+  public ReplayEngine<M, E, F> pool(ForkJoinPool pool) {
+    return new ReplayEngine<>(update, init, checkNotNull(pool), collectEffects);
+  }
+
+  /**
+   * Returns an engine that doesn't keep the effects of each session, which saves memory when only
+   * the resulting models are of interest.
+   */
+  public ReplayEngine<M, E, F> discardEffects() {
+    return new ReplayEngine<>(update, init, pool, false);
+  }
+
+  /** Replays a single session on the calling thread. */
+  public ReplayResult<M, F> replay(ReplaySession<M, E> session) {
+    checkNotNull(session);
+
+    M model = session.startModel();
+    List<F> effects = collectEffects ? new ArrayList<F>() : Collections.<F>emptyList();
+    int eventCount = 0;
+
+    try {
+      if (init != null) {
+        First<M, F> first = init.init(model);
+        model = first.model();
+        addEffects(effects, first.effects());
+      }
+
+      for (E event : session.events()) {
+        Next<M, F> next = update.update(model, event);
+        model = next.modelOrElse(model);
+        addEffects(effects, next.effects());
+        eventCount++;
+      }
+    } catch (RuntimeException e) {
+      return new ReplayResult<>(session, model, effects, eventCount, e);
+    }
+
+    return new ReplayResult<>(session, model, effects, eventCount, null);
+  }
+
+  /**
+   * Replays all sessions in parallel, and returns their results in the order the sessions were
+   * supplied.
+   */
+  public ReplayReport<M, F> replayAll(List<ReplaySession<M, E>> sessions) {
+    checkNotNull(sessions);
+
+    @SuppressWarnings("unchecked")
+    ReplayResult<M, F>[] results = new ReplayResult[sessions.size()];
+    ForkJoinPool target = pool != null ? pool : ForkJoinPool.commonPool();
+
+    long start = System.nanoTime();
+    target.invoke(new ReplayTask(sessions, results, 0, sessions.size()));
+    long elapsed = System.nanoTime() - start;
+
+    return new ReplayReport<>(Arrays.asList(results), elapsed);
+  }
+
+  private void addEffects(List<F> effects, Set<F> newEffects) {
+    if (collectEffects) {
+      effects.addAll(newEffects);
+    }
+  }
+
+  /** Splits a range of sessions in halves until there's a single session left to replay. */
+  private final class ReplayTask extends RecursiveAction {
+    private final List<ReplaySession<M, E>> sessions;
+    private final ReplayResult<M, F>[] results;
+    private final int from;
+    private final int to;
+
+    ReplayTask(List<ReplaySession<M, E>> sessions, ReplayResult<M, F>[] results, int from, int to) {
+      this.sessions = sessions;
+      this.results = results;
+      this.from = from;
+      this.to = to;
+    }
+
+    @Override
+    protected void compute() {
+      if (to - from <= 1) {
+        if (to > from) {
+          results[from] = replay(sessions.get(from));
+        }
+        return;
+      }
+
+      int middle = (from + to) >>> 1;
+      invokeAll(
+          new ReplayTask(sessions, results, from, middle),
+          new ReplayTask(sessions, results, middle, to));
+    }
+  }
+}
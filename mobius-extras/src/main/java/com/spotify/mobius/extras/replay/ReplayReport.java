@@ -0,0 +1,103 @@
+/*
+ * -\-\-
+ * Mobius
+ * --
+ * Copyright (c) 2017-2020 Spotify AB
+ * --
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -/-/-
+ */
+package com.spotify.mobius.extras.replay;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The results of a replay run, along with its throughput.
+ *
+ * @param <M> the model type
+ * @param <F> the effect type
+ */
+public final class ReplayReport<M, F> {
+  private final List<ReplayResult<M, F>> results;
+  private final long eventCount;
+  private final int failedCount;
+  private final long elapsedNanos;
+
+  ReplayReport(List<ReplayResult<M, F>> results, long elapsedNanos) {
+    long events = 0;
+    int failed = 0;
+    for (ReplayResult<M, F> result : results) {
+      events += result.eventCount();
+      if (result.failed()) {
+        failed++;
+      }
+    }
+
+    this.results = Collections.unmodifiableList(results);
+    this.eventCount = events;
+    this.failedCount = failed;
+    this.elapsedNanos = elapsedNanos;
+  }
+
+  /** The result of each session, in the order the sessions were supplied. */
+  public List<ReplayResult<M, F>> results() {
+    return results;
+  }
+
+  public int sessionCount() {
+    return results.size();
+  }
+
+  /** The total number of events processed successfully. */
+  public long eventCount() {
+    return eventCount;
+  }
+
+  /** The number of sessions where the init or update function threw an exception. */
+  public int failedCount() {
+    return failedCount;
+  }
+
+  /** The wall-clock time the run took. */
+  public long elapsed(TimeUnit unit) {
+    return unit.convert(elapsedNanos, TimeUnit.NANOSECONDS);
+  }
+
+  public double eventsPerSecond() {
+    return perSecond(eventCount);
+  }
+
+  public double sessionsPerSecond() {
+    return perSecond(results.size());
+  }
+
+  private double perSecond(long count) {
+    return elapsedNanos == 0 ? 0 : count * (double) TimeUnit.SECONDS.toNanos(1) / elapsedNanos;
+  }
+
+  @Override
+  public String toString() {
+    return String.format(
+        Locale.ENGLISH,
+        "%d sessions (%d failed), %d events in %.1f ms: %.0f sessions/s, %.0f events/s",
+        sessionCount(),
+        failedCount,
+        eventCount,
+        elapsedNanos / 1e6,
+        sessionsPerSecond(),
+        eventsPerSecond());
+  }
+}
@@ -0,0 +1,100 @@
+/*
+ * -\-\-
+ * Mobius
+ * --
+ * Copyright (c) 2017-2020 Spotify AB
+ * --
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -/-/-
+ */
+package com.spotify.mobius.extras.replay;
+
+import java.util.Collections;
+import java.util.List;
+import javax.annotation.Nullable;
+
+/**
+ * The outcome of replaying a single {@link ReplaySession}.
+ *
+ * @param <M> the model type
+ * @param <F> the effect type
+ */
+public final class ReplayResult<M, F> {
+  private final ReplaySession<M, ?> session;
+  private final M model;
+  private final List<F> effects;
+  private final int eventCount;
+  @Nullable private final Throwable error;
+
+  ReplayResult(
+      ReplaySession<M, ?> session,
+      M model,
+      List<F> effects,
+      int eventCount,
+      @Nullable Throwable error) {
+    this.session = session;
+    this.model = model;
+    this.effects = Collections.unmodifiableList(effects);
+    this.eventCount = eventCount;
+    this.error = error;
+  }
+
+  /** The session that was replayed. */
+  public ReplaySession<M, ?> session() {
+    return session;
+  }
+
+  /**
+   * The model after the last event, or after the last event that was processed successfully if the
+   * session failed.
+   */
+  public M model() {
+    return model;
+  }
+
+  /**
+   * All effects returned by the init and update functions, in order. Empty if the engine doesn't
+   * collect effects.
+   */
+  public List<F> effects() {
+    return effects;
+  }
+
+  /** The number of events that were processed successfully. */
+  public int eventCount() {
+    return eventCount;
+  }
+
+  /** The exception thrown by the init or update function, or null if the session succeeded. */
+  @Nullable
+  public Throwable error() {
+    return error;
+  }
+
+  public boolean failed() {
+    return error != null;
+  }
+
+  @Override
+  public String toString() {
+    return "ReplayResult{model="
+        + model
+        + ", effects="
+        + effects
+        + ", eventCount="
+        + eventCount
+        + ", error="
+        + error
+        + "}";
+  }
+}
@@ -0,0 +1,59 @@
+/*
+ * -\-\-
+ * Mobius
+ * --
+ * Copyright (c) 2017-2020 Spotify AB
+ * --
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -/-/-
+ */
+package com.spotify.mobius.extras.replay;
+
+import static com.spotify.mobius.internal_util.Preconditions.checkNotNull;
+
+/**
+ * A recorded stream of events, together with the model the stream started from.
+ *
+ * @param <M> the model type
+ * @param <E> the event type
+ */
+public final class ReplaySession<M, E> {
+  private final M startModel;
+  private final Iterable<E> events;
+
+  private ReplaySession(M startModel, Iterable<E> events) {
+    this.startModel = startModel;
+    this.events = events;
+  }
+
+  /**
+   * Creates a session that folds the events through an update function, starting from the given
+   * model. The events are iterated once, on the thread that replays the session.
+   */
+  public static <M, E> ReplaySession<M, E> of(M startModel, Iterable<E> events) {
+    return new ReplaySession<>(checkNotNull(startModel), checkNotNull(events));
+  }
+
+  public M startModel() {
+    return startModel;
+  }
+
+  public Iterable<E> events() {
+    return events;
+  }
+
+  @Override
+  public String toString() {
+    return "ReplaySession{startModel=" + startModel + "}";
+  }
+}
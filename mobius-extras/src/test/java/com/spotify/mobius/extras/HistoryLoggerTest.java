@@ -0,0 +1,107 @@
+/*
+ * -\-\-
+ * Mobius
+ * --
+ * Copyright (c) 2017-2020 Spotify AB
+ * --
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -/-/-
+ */
+package com.spotify.mobius.extras;
+
+import static com.spotify.mobius.Next.next;
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.spotify.mobius.Next;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Before;
+import org.junit.Test;
+
+public class HistoryLoggerTest {
+
+  private HistoryLogger<String, Integer, String> underTest;
+
+  @Before
+  public void setUp() throws Exception {
+    underTest = HistoryLogger.create(3);
+  }
+
+  @Test
+  public void shouldRecordUpdatesOldestFirst() throws Exception {
+    Next<String, String> first = next("a1");
+    Next<String, String> second = next("a12");
+
+    underTest.afterUpdate("a", 1, first);
+    underTest.afterUpdate("a1", 2, second);
+
+    List<HistoryLogger.Record<String, Integer, String>> records = underTest.records();
+    assertThat(records).hasSize(2);
+    assertThat(records.get(0).model()).isEqualTo("a");
+    assertThat(records.get(0).event()).isEqualTo(1);
+    assertThat(records.get(0).next()).isSameAs(first);
+    assertThat(records.get(1).next()).isSameAs(second);
+    assertThat(records.get(1).timestampMillis())
+        .isGreaterThanOrEqualTo(records.get(0).timestampMillis());
+  }
+
+  @Test
+  public void shouldKeepOnlyMostRecentUpdates() throws Exception {
+    for (int i = 0; i < 10; i++) {
+      underTest.afterUpdate("model", i, Next.<String, String>noChange());
+    }
+
+    List<Integer> events = new ArrayList<>();
+    for (HistoryLogger.Record<String, Integer, String> record : underTest.records()) {
+      events.add(record.event());
+    }
+
+    assertThat(events).containsExactly(7, 8, 9);
+    assertThat(underTest.recordCount()).isEqualTo(10);
+  }
+
+  @Test
+  public void shouldRecordExceptions() throws Exception {
+    RuntimeException exception = new RuntimeException("update failed");
+
+    underTest.exceptionDuringUpdate("model", 1, exception);
+
+    HistoryLogger.Record<String, Integer, String> record = underTest.records().get(0);
+    assertThat(record.exception()).isSameAs(exception);
+    assertThat(record.next()).isNull();
+  }
+
+  @Test
+  public void shouldPassHistoryToCallbackWhenUpdateThrows() throws Exception {
+    List<List<HistoryLogger.Record<String, Integer, String>>> dumps = new ArrayList<>();
+    underTest = HistoryLogger.create(5, dumps::add);
+
+    underTest.afterUpdate("model", 1, Next.<String, String>noChange());
+    underTest.exceptionDuringUpdate("model", 2, new RuntimeException());
+
+    assertThat(dumps).hasSize(1);
+    assertThat(dumps.get(0)).hasSize(2);
+    assertThat(dumps.get(0).get(1).event()).isEqualTo(2);
+    assertThat(dumps.get(0).get(1).exception()).isNotNull();
+  }
+
+  @Test
+  public void shouldDropRecordsWhenCleared() throws Exception {
+    underTest.afterUpdate("model", 1, Next.<String, String>noChange());
+
+    underTest.clear();
+
+    assertThat(underTest.records()).isEmpty();
+    assertThat(underTest.recordCount()).isZero();
+  }
+}
@@ -0,0 +1,290 @@
+/*
+ * -\-\-
+ * Mobius
+ * --
+ * Copyright (c) 2017-2020 Spotify AB
+ * --
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -/-/-
+ */
+package com.spotify.mobius.extras;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.spotify.mobius.Connection;
+import com.spotify.mobius.EventSource;
+import com.spotify.mobius.disposables.Disposable;
+import com.spotify.mobius.functions.Consumer;
+import com.spotify.mobius.runners.WorkRunner;
+import com.spotify.mobius.test.RecordingConnection;
+import com.spotify.mobius.test.RecordingConsumer;
+import com.spotify.mobius.test.VirtualTimeScheduler;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.Test;
+
+public class TimersTest {
+
+  @Test
+  public void intervalShouldEmitEventsPeriodically() throws Exception {
+    final CountDownLatch latch = new CountDownLatch(3);
+    final AtomicInteger counter = new AtomicInteger();
+
+    Disposable subscription =
+        Timers.interval(20, TimeUnit.MILLISECONDS, counter::incrementAndGet)
+            .subscribe(event -> latch.countDown());
+
+    assertThat(latch.await(1, TimeUnit.SECONDS)).isTrue();
+    subscription.dispose();
+  }
+
+  @Test
+  public void intervalShouldStopEmittingWhenDisposed() throws Exception {
+    final List<String> received = new CopyOnWriteArrayList<>();
+
+    Disposable subscription =
+        Timers.interval(10, TimeUnit.MILLISECONDS, () -> "tick").subscribe(received::add);
+    subscription.dispose();
+    Thread.sleep(100);
+
+    assertThat(received).isEmpty();
+  }
+
+  @Test
+  public void delayShouldEmitEventAfterDelay() throws Exception {
+    final CountDownLatch latch = new CountDownLatch(1);
+    final List<String> received = new CopyOnWriteArrayList<>();
+    long start = System.nanoTime();
+
+    Connection<Integer> connection =
+        Timers.<Integer, String>delay(50, TimeUnit.MILLISECONDS, effect -> "timeout " + effect)
+            .connect(
+                event -> {
+                  received.add(event);
+                  latch.countDown();
+                });
+    connection.accept(1);
+
+    assertThat(latch.await(1, TimeUnit.SECONDS)).isTrue();
+    assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start))
+        .isGreaterThanOrEqualTo(50L);
+    assertThat(received).containsExactly("timeout 1");
+    connection.dispose();
+  }
+
+  @Test
+  public void delayShouldDiscardPendingEventsWhenDisposed() throws Exception {
+    final List<String> received = new CopyOnWriteArrayList<>();
+
+    Connection<Integer> connection =
+        Timers.<Integer, String>delay(20, TimeUnit.MILLISECONDS, effect -> "timeout " + effect)
+            .connect(received::add);
+    connection.accept(1);
+    connection.accept(2);
+    connection.dispose();
+    Thread.sleep(100);
+
+    assertThat(received).isEmpty();
+  }
+
+  @Test
+  public void debounceEffectsShouldPassOnLastEffectPerKeyAfterQuietWindow() throws Exception {
+    VirtualTimeScheduler scheduler = new VirtualTimeScheduler();
+    RecordingConnection<String> delegate = new RecordingConnection<>();
+
+    Connection<String> connection =
+        Timers.<String, String>debounceEffects(
+                scheduler.createWorkRunner(),
+                output -> delegate,
+                effect -> effect.substring(0, 1),
+                100,
+                TimeUnit.MILLISECONDS)
+            .connect(event -> {});
+    connection.accept("a1");
+    scheduler.advanceTimeBy(60, TimeUnit.MILLISECONDS);
+    connection.accept("a2");
+    connection.accept("b1");
+    scheduler.advanceTimeBy(60, TimeUnit.MILLISECONDS);
+    delegate.assertValues();
+
+    scheduler.advanceTimeBy(40, TimeUnit.MILLISECONDS);
+    delegate.assertValues("a2", "b1");
+
+    connection.dispose();
+    assertThat(delegate.disposed).isTrue();
+  }
+
+  @Test
+  public void throttleEffectsShouldPassOnFirstAndLatestEffectPerWindow() throws Exception {
+    VirtualTimeScheduler scheduler = new VirtualTimeScheduler();
+    RecordingConnection<Integer> delegate = new RecordingConnection<>();
+
+    Connection<Integer> connection =
+        Timers.<Integer, String>throttleEffects(
+                scheduler.createWorkRunner(), output -> delegate, 100, TimeUnit.MILLISECONDS)
+            .connect(event -> {});
+    connection.accept(1);
+    connection.accept(2);
+    connection.accept(3);
+    delegate.assertValues(1);
+
+    scheduler.advanceTimeBy(100, TimeUnit.MILLISECONDS);
+    delegate.assertValues(1, 3);
+
+    scheduler.advanceTimeBy(100, TimeUnit.MILLISECONDS);
+    connection.accept(4);
+    delegate.assertValues(1, 3, 4);
+  }
+
+  @Test
+  public void debounceEffectsShouldNotBlockTimerThreadByDefault() throws Exception {
+    final CountDownLatch release = new CountDownLatch(1);
+    final CountDownLatch delayed = new CountDownLatch(1);
+
+    Connection<String> debounced =
+        Timers.<String, String>debounceEffects(
+                output ->
+                    new RecordingConnection<String>() {
+                      @Override
+                      public void accept(String value) {
+                        try {
+                          release.await();
+                        } catch (InterruptedException e) {
+                          throw new RuntimeException(e);
+                        }
+                      }
+                    },
+                effect -> effect,
+                10,
+                TimeUnit.MILLISECONDS)
+            .connect(event -> {});
+    Connection<Integer> delay =
+        Timers.<Integer, String>delay(50, TimeUnit.MILLISECONDS, effect -> "timeout")
+            .connect(event -> delayed.countDown());
+
+    debounced.accept("blocking");
+    delay.accept(1);
+
+    assertThat(delayed.await(1, TimeUnit.SECONDS)).isTrue();
+    release.countDown();
+    debounced.dispose();
+    delay.dispose();
+  }
+
+  @Test
+  public void throttleEffectsShouldNotWaitForSlowHandlerWhenDisposed() throws Exception {
+    final CountDownLatch passingOn = new CountDownLatch(1);
+    final CountDownLatch release = new CountDownLatch(1);
+    final List<Integer> received = new CopyOnWriteArrayList<>();
+
+    final Connection<Integer> connection =
+        Timers.<Integer, String>throttleEffects(
+                output ->
+                    new RecordingConnection<Integer>() {
+                      @Override
+                      public void accept(Integer value) {
+                        passingOn.countDown();
+                        try {
+                          release.await();
+                        } catch (InterruptedException e) {
+                          throw new RuntimeException(e);
+                        }
+                        received.add(value);
+                      }
+                    },
+                10,
+                TimeUnit.MILLISECONDS)
+            .connect(event -> {});
+    Thread first = new Thread(() -> connection.accept(1));
+    first.start();
+    assertThat(passingOn.await(1, TimeUnit.SECONDS)).isTrue();
+
+    Thread disposing = new Thread(connection::dispose);
+    disposing.start();
+    disposing.join(1000);
+    assertThat(disposing.isAlive()).isFalse();
+
+    release.countDown();
+    first.join(1000);
+    connection.accept(2);
+
+    assertThat(received).containsExactly(1);
+  }
+
+  @Test
+  public void throttleEffectsShouldIgnoreWindowEndsFromBeforeDispose() throws Exception {
+    VirtualTimeScheduler scheduler = new VirtualTimeScheduler();
+    RecordingConnection<Integer> delegate = new RecordingConnection<>();
+
+    Connection<Integer> connection =
+        Timers.<Integer, String>throttleEffects(
+                scheduler.createWorkRunner(), output -> delegate, 100, TimeUnit.MILLISECONDS)
+            .connect(event -> {});
+    connection.accept(1);
+    connection.accept(2);
+    connection.dispose();
+    scheduler.advanceTimeBy(100, TimeUnit.MILLISECONDS);
+
+    delegate.assertValues(1);
+  }
+
+  @Test
+  public void debounceEventsShouldEmitLastEventAfterQuietWindow() throws Exception {
+    VirtualTimeScheduler scheduler = new VirtualTimeScheduler();
+    AtomicReference<Consumer<String>> source = new AtomicReference<>();
+    RecordingConsumer<String> received = new RecordingConsumer<>();
+
+    Timers.debounceEvents(
+            scheduler.createWorkRunner(),
+            capturing(source),
+            event -> "all",
+            100,
+            TimeUnit.MILLISECONDS)
+        .subscribe(received);
+    source.get().accept("first");
+    source.get().accept("second");
+    scheduler.advanceTimeBy(100, TimeUnit.MILLISECONDS);
+
+    received.assertValues("second");
+  }
+
+  @Test
+  public void throttleEventsShouldDiscardPendingEventWhenDisposed() throws Exception {
+    VirtualTimeScheduler scheduler = new VirtualTimeScheduler();
+    WorkRunner runner = scheduler.createWorkRunner();
+    AtomicReference<Consumer<String>> source = new AtomicReference<>();
+    RecordingConsumer<String> received = new RecordingConsumer<>();
+
+    Disposable subscription =
+        Timers.throttleEvents(runner, capturing(source), 100, TimeUnit.MILLISECONDS)
+            .subscribe(received);
+    source.get().accept("first");
+    source.get().accept("second");
+    subscription.dispose();
+    scheduler.advanceTimeBy(100, TimeUnit.MILLISECONDS);
+
+    received.assertValues("first");
+    assertThat(source.get()).isNull();
+  }
+
+  private static EventSource<String> capturing(AtomicReference<Consumer<String>> source) {
+    return consumer -> {
+      source.set(consumer);
+      return () -> source.set(null);
+    };
+  }
+}
@@ -0,0 +1,150 @@
+/*
+ * -\-\-
+ * Mobius
+ * --
+ * Copyright (c) 2017-2020 Spotify AB
+ * --
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -/-/-
+ */
+package com.spotify.mobius.extras.collections;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import org.junit.Test;
+
+public class PersistentHashMapTest {
+
+  @Test
+  public void shouldBehaveLikeHashMapForRandomChanges() throws Exception {
+    Random random = new Random(5678);
+    PersistentHashMap<Integer, Integer> map = PersistentHashMap.empty();
+    Map<Integer, Integer> expected = new HashMap<>();
+
+    for (int i = 0; i < 50_000; i++) {
+      int key = random.nextInt(5_000);
+      if (random.nextInt(4) == 0) {
+        map = map.minus(key);
+        expected.remove(key);
+      } else {
+        map = map.plus(key, i);
+        expected.put(key, i);
+      }
+    }
+
+    assertThat(map).isEqualTo(expected);
+    assertThat(map.size()).isEqualTo(expected.size());
+    assertThat(map.hashCode()).isEqualTo(expected.hashCode());
+    assertThat(map.entrySet()).hasSize(expected.size());
+  }
+
+  @Test
+  public void shouldHandleKeysWithCollidingHashes() throws Exception {
+    PersistentHashMap<Collider, String> map = PersistentHashMap.empty();
+    for (int i = 0; i < 10; i++) {
+      map = map.plus(new Collider(i, 42), "value " + i);
+    }
+    map = map.plus(new Collider(100, 7), "other");
+    map = map.minus(new Collider(3, 42));
+
+    assertThat(map.size()).isEqualTo(10);
+    assertThat(map.get(new Collider(5, 42))).isEqualTo("value 5");
+    assertThat(map.get(new Collider(100, 7))).isEqualTo("other");
+    assertThat(map.containsKey(new Collider(3, 42))).isFalse();
+  }
+
+  @Test
+  public void shouldLeavePreviousVersionsUnchanged() throws Exception {
+    PersistentHashMap<String, Integer> first =
+        PersistentHashMap.<String, Integer>empty().plus("a", 1);
+    PersistentHashMap<String, Integer> second = first.plus("b", 2).plus("a", 10);
+    PersistentHashMap<String, Integer> third = second.minus("b");
+
+    assertThat(first.get("a")).isEqualTo(1);
+    assertThat(first.containsKey("b")).isFalse();
+    assertThat(second.get("a")).isEqualTo(10);
+    assertThat(second.get("b")).isEqualTo(2);
+    assertThat(third.size()).isEqualTo(1);
+  }
+
+  @Test
+  public void shouldReturnSameMapWhenNothingChanges() throws Exception {
+    Integer value = 1;
+    PersistentHashMap<String, Integer> map =
+        PersistentHashMap.<String, Integer>empty().plus("a", value);
+
+    assertThat(map.plus("a", value)).isSameAs(map);
+    assertThat(map.minus("missing")).isSameAs(map);
+  }
+
+  @Test
+  public void shouldBuildInBatches() throws Exception {
+    PersistentHashMap<Integer, String> original =
+        PersistentHashMap.<Integer, String>builder().put(1, "one").put(2, "two").build();
+
+    PersistentHashMap.Builder<Integer, String> builder = original.toBuilder();
+    for (int i = 3; i < 3_000; i++) {
+      builder.put(i, "value " + i);
+    }
+    builder.remove(1);
+    builder.put(2, "TWO");
+    PersistentHashMap<Integer, String> built = builder.build();
+
+    assertThat(original.size()).isEqualTo(2);
+    assertThat(original.get(1)).isEqualTo("one");
+    assertThat(original.get(2)).isEqualTo("two");
+    assertThat(built.size()).isEqualTo(2_998);
+    assertThat(built.get(2)).isEqualTo("TWO");
+    assertThat(built.get(2_999)).isEqualTo("value 2999");
+    assertThat(built.containsKey(1)).isFalse();
+    assertThatThrownBy(() -> builder.put(1, "one")).isInstanceOf(IllegalStateException.class);
+  }
+
+  @Test
+  public void shouldShortCircuitEqualityForSharedStructure() throws Exception {
+    PersistentHashMap<String, Integer> map =
+        PersistentHashMap.<String, Integer>builder().put("a", 1).put("b", 2).build();
+    Map<String, Integer> expected = new HashMap<>();
+    expected.put("a", 1);
+    expected.put("b", 2);
+
+    assertThat(map).isEqualTo(PersistentHashMap.copyOf(map));
+    assertThat(map).isEqualTo(expected);
+    assertThat(map).isEqualTo(PersistentHashMap.copyOf(expected));
+    assertThat(map).isNotEqualTo(map.plus("c", 3));
+  }
+
+  private static class Collider {
+    private final int id;
+    private final int hash;
+
+    Collider(int id, int hash) {
+      this.id = id;
+      this.hash = hash;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      return o instanceof Collider && ((Collider) o).id == id;
+    }
+
+    @Override
+    public int hashCode() {
+      return hash;
+    }
+  }
+}
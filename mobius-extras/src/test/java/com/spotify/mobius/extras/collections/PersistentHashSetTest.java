@@ -0,0 +1,71 @@
+/*
+ * -\-\-
+ * Mobius
+ * --
+ * Copyright (c) 2017-2020 Spotify AB
+ * --
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -/-/-
+ */
+package com.spotify.mobius.extras.collections;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+import org.junit.Test;
+
+public class PersistentHashSetTest {
+
+  @Test
+  public void shouldBehaveLikeHashSetForRandomChanges() throws Exception {
+    Random random = new Random(91011);
+    PersistentHashSet<Integer> set = PersistentHashSet.empty();
+    Set<Integer> expected = new HashSet<>();
+
+    for (int i = 0; i < 20_000; i++) {
+      int element = random.nextInt(2_000);
+      if (random.nextBoolean()) {
+        set = set.plus(element);
+        expected.add(element);
+      } else {
+        set = set.minus(element);
+        expected.remove(element);
+      }
+    }
+
+    assertThat(set).isEqualTo(expected);
+    assertThat(set.hashCode()).isEqualTo(expected.hashCode());
+    assertThat(new HashSet<>(set)).isEqualTo(expected);
+  }
+
+  @Test
+  public void shouldReturnSameSetWhenNothingChanges() throws Exception {
+    PersistentHashSet<String> set = PersistentHashSet.of("a", "b");
+
+    assertThat(set.plus("a")).isSameAs(set);
+    assertThat(set.minus("c")).isSameAs(set);
+  }
+
+  @Test
+  public void shouldBuildInBatches() throws Exception {
+    PersistentHashSet<String> original = PersistentHashSet.of("a", "b");
+    PersistentHashSet<String> built = original.toBuilder().add("c").remove("a").build();
+
+    assertThat(original).containsExactlyInAnyOrder("a", "b");
+    assertThat(built).containsExactlyInAnyOrder("b", "c");
+    assertThat(built).isEqualTo(new HashSet<>(Arrays.asList("b", "c")));
+  }
+}
@@ -0,0 +1,153 @@
+/*
+ * -\-\-
+ * Mobius
+ * --
+ * Copyright (c) 2017-2020 Spotify AB
+ * --
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -/-/-
+ */
+package com.spotify.mobius.extras.collections;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import org.junit.Test;
+
+public class PersistentVectorTest {
+
+  @Test
+  public void shouldBehaveLikeArrayListForAppends() throws Exception {
+    PersistentVector<Integer> vector = PersistentVector.empty();
+    List<Integer> expected = new ArrayList<>();
+
+    // enough elements for a tree that is three levels deep
+    for (int i = 0; i < 40_000; i++) {
+      vector = vector.plus(i);
+      expected.add(i);
+    }
+
+    assertThat(vector).isEqualTo(expected);
+    assertThat(vector.get(33_333)).isEqualTo(33_333);
+    assertThat(vector.hashCode()).isEqualTo(expected.hashCode());
+  }
+
+  @Test
+  public void shouldBehaveLikeArrayListForRandomChanges() throws Exception {
+    Random random = new Random(1234);
+    PersistentVector<Integer> vector = PersistentVector.empty();
+    List<Integer> expected = new ArrayList<>();
+
+    for (int i = 0; i < 20_000; i++) {
+      int operation = random.nextInt(10);
+      if (operation < 6 || expected.isEmpty()) {
+        vector = vector.plus(i);
+        expected.add(i);
+      } else if (operation < 9) {
+        int index = random.nextInt(expected.size());
+        vector = vector.with(index, -i);
+        expected.set(index, -i);
+      } else {
+        vector = vector.minusLast();
+        expected.remove(expected.size() - 1);
+      }
+    }
+
+    assertThat(vector).isEqualTo(expected);
+    assertThat(vector.size()).isEqualTo(expected.size());
+  }
+
+  @Test
+  public void shouldLeavePreviousVersionsUnchanged() throws Exception {
+    PersistentVector<String> first = PersistentVector.of("a", "b", "c");
+    PersistentVector<String> second = first.plus("d").with(0, "x");
+    PersistentVector<String> third = second.minusLast();
+
+    assertThat(first).containsExactly("a", "b", "c");
+    assertThat(second).containsExactly("x", "b", "c", "d");
+    assertThat(third).containsExactly("x", "b", "c");
+  }
+
+  @Test
+  public void shouldShrinkBackToEmpty() throws Exception {
+    PersistentVector<Integer> vector = PersistentVector.empty();
+    for (int i = 0; i < 2_000; i++) {
+      vector = vector.plus(i);
+    }
+    for (int i = 0; i < 2_000; i++) {
+      vector = vector.minusLast();
+    }
+
+    assertThat(vector).isEmpty();
+    assertThat(vector).isSameAs(PersistentVector.empty());
+  }
+
+  @Test
+  public void shouldBuildInBatches() throws Exception {
+    PersistentVector<Integer> original = PersistentVector.empty();
+    for (int i = 0; i < 1_000; i++) {
+      original = original.plus(i);
+    }
+
+    PersistentVector.Builder<Integer> builder = original.toBuilder();
+    for (int i = 1_000; i < 5_000; i++) {
+      builder.add(i);
+    }
+    builder.set(10, -10);
+    builder.set(4_999, -4_999);
+    PersistentVector<Integer> built = builder.build();
+
+    assertThat(original.size()).isEqualTo(1_000);
+    assertThat(original.get(10)).isEqualTo(10);
+    assertThat(built.size()).isEqualTo(5_000);
+    assertThat(built.get(10)).isEqualTo(-10);
+    assertThat(built.get(4_999)).isEqualTo(-4_999);
+    assertThat(built.get(2_500)).isEqualTo(2_500);
+  }
+
+  @Test
+  public void shouldNotAllowUsingBuilderAfterBuilding() throws Exception {
+    PersistentVector.Builder<String> builder = PersistentVector.builder();
+    builder.add("a").build();
+
+    assertThatThrownBy(() -> builder.add("b")).isInstanceOf(IllegalStateException.class);
+  }
+
+  @Test
+  public void shouldReturnSameVectorWhenReplacingWithSameElement() throws Exception {
+    String element = "b";
+    PersistentVector<String> vector = PersistentVector.of("a", element);
+
+    assertThat(vector.with(1, element)).isSameAs(vector);
+  }
+
+  @Test
+  public void shouldCompareEqualToOtherLists() throws Exception {
+    PersistentVector<String> vector = PersistentVector.of("a", "b");
+
+    assertThat(vector).isEqualTo(Arrays.asList("a", "b"));
+    assertThat(vector).isEqualTo(PersistentVector.of("a").plus("b"));
+    assertThat(vector).isNotEqualTo(PersistentVector.of("a", "c"));
+  }
+
+  @Test
+  public void shouldNotSupportMutatingListMethods() throws Exception {
+    PersistentVector<String> vector = PersistentVector.of("a");
+
+    assertThatThrownBy(() -> vector.add("b")).isInstanceOf(UnsupportedOperationException.class);
+  }
+}
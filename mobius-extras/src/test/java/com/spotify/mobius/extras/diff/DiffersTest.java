@@ -0,0 +1,133 @@
+/*
+ * -\-\-
+ * Mobius
+ * --
+ * Copyright (c) 2017-2020 Spotify AB
+ * --
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -/-/-
+ */
+package com.spotify.mobius.extras.diff;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.Test;
+
+public class DiffersTest {
+
+  @Test
+  public void shouldDiffAppendToList() throws Exception {
+    ListDiff<String> diff = diffLists(Arrays.asList("a", "b"), Arrays.asList("a", "b", "c", "d"));
+
+    assertThat(diff.index()).isEqualTo(2);
+    assertThat(diff.removedCount()).isEqualTo(0);
+    assertThat(diff.inserted()).containsExactly("c", "d");
+  }
+
+  @Test
+  public void shouldDiffReplacementInMiddleOfList() throws Exception {
+    ListDiff<String> diff =
+        diffLists(Arrays.asList("a", "b", "c", "d"), Arrays.asList("a", "x", "y", "z", "d"));
+
+    assertThat(diff.index()).isEqualTo(1);
+    assertThat(diff.removedCount()).isEqualTo(2);
+    assertThat(diff.inserted()).containsExactly("x", "y", "z");
+  }
+
+  @Test
+  public void shouldDiffRemovalWithRepeatedElements() throws Exception {
+    List<String> previous = Arrays.asList("a", "a", "a");
+    List<String> current = Arrays.asList("a", "a");
+
+    ListDiff<String> diff = diffLists(previous, current);
+
+    assertThat(diff.removedCount()).isEqualTo(1);
+    assertThat(diff.inserted()).isEmpty();
+    assertThat(diff.applyTo(previous)).isEqualTo(current);
+  }
+
+  @Test
+  public void shouldDiffListsWithNullElements() throws Exception {
+    List<String> previous = Arrays.asList("a", null, "c");
+    List<String> current = Arrays.asList("a", null, "x", null);
+
+    ListDiff<String> diff = diffLists(previous, current);
+
+    assertThat(diff.index()).isEqualTo(2);
+    assertThat(diff.inserted()).containsExactly("x", null);
+    assertThat(diff.applyTo(previous)).isEqualTo(current);
+  }
+
+  @Test
+  public void shouldReportEqualListsAsEmptyDiff() throws Exception {
+    assertThat(diffLists(Arrays.asList("a", "b"), Arrays.asList("a", "b")).isEmpty()).isTrue();
+  }
+
+  @Test
+  public void shouldApplyListDiffs() throws Exception {
+    List<String> previous = Arrays.asList("a", "b", "c", "d", "e");
+    List<String> current = Arrays.asList("x", "b", "d", "e", "f");
+
+    assertThat(diffLists(previous, current).applyTo(previous)).isEqualTo(current);
+  }
+
+  @Test
+  public void shouldDiffMaps() throws Exception {
+    Map<String, Integer> previous = new HashMap<>();
+    previous.put("kept", 1);
+    previous.put("changed", 2);
+    previous.put("removed", 3);
+    Map<String, Integer> current = new HashMap<>();
+    current.put("kept", 1);
+    current.put("changed", 20);
+    current.put("added", 4);
+
+    MapDiff<String, Integer> diff = Differs.<String, Integer>map().diff(previous, current);
+
+    assertThat(diff.added()).isEqualTo(Collections.singletonMap("added", 4));
+    assertThat(diff.changed()).isEqualTo(Collections.singletonMap("changed", 20));
+    assertThat(diff.removed()).containsExactly("removed");
+    assertThat(diff.applyTo(previous)).isEqualTo(current);
+  }
+
+  @Test
+  public void shouldDiffFieldsOfModel() throws Exception {
+    Differ<Model, ListDiff<String>> differ = Differs.field(Model::items, Differs.<String>list());
+
+    ListDiff<String> diff =
+        differ.diff(new Model(Arrays.asList("a")), new Model(Arrays.asList("a", "b")));
+
+    assertThat(diff.inserted()).containsExactly("b");
+  }
+
+  private static ListDiff<String> diffLists(List<String> previous, List<String> current) {
+    return Differs.<String>list().diff(previous, current);
+  }
+
+  private static class Model {
+    private final List<String> items;
+
+    Model(List<String> items) {
+      this.items = items;
+    }
+
+    List<String> items() {
+      return items;
+    }
+  }
+}
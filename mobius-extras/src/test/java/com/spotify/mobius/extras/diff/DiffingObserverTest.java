@@ -0,0 +1,135 @@
+/*
+ * -\-\-
+ * Mobius
+ * --
+ * Copyright (c) 2017-2020 Spotify AB
+ * --
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -/-/-
+ */
+package com.spotify.mobius.extras.diff;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.spotify.mobius.MobiusHooks;
+import com.spotify.mobius.test.VirtualTimeScheduler;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class DiffingObserverTest {
+
+  private VirtualTimeScheduler scheduler;
+  private List<ModelDiff<List<String>, ListDiff<String>>> received;
+  private DiffingObserver<List<String>, ListDiff<String>> observer;
+  private List<Throwable> errors;
+
+  @Before
+  public void setUp() throws Exception {
+    scheduler = new VirtualTimeScheduler();
+    received = new ArrayList<>();
+    observer =
+        DiffingObserver.create(Differs.<String>list(), scheduler.createWorkRunner(), received::add);
+    errors = new ArrayList<>();
+    MobiusHooks.setErrorHandler(errors::add);
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    MobiusHooks.setDefaultErrorHandler();
+  }
+
+  @Test
+  public void shouldDeliverFirstModelWithoutDiff() throws Exception {
+    observer.accept(Arrays.asList("a", "b"));
+    scheduler.runUntilIdle();
+
+    assertThat(received).hasSize(1);
+    assertThat(received.get(0).isFirst()).isTrue();
+    assertThat(received.get(0).current()).containsExactly("a", "b");
+    assertThat(received.get(0).diff()).isNull();
+  }
+
+  @Test
+  public void shouldDiffOffTheCallingThread() throws Exception {
+    observer.accept(Arrays.asList("a", "b"));
+    observer.accept(Arrays.asList("a", "b", "c"));
+
+    assertThat(received).isEmpty();
+  }
+
+  @Test
+  public void shouldDiffConsecutiveModels() throws Exception {
+    observer.accept(Arrays.asList("a", "b"));
+    scheduler.runUntilIdle();
+    observer.accept(Arrays.asList("a", "b", "c"));
+    scheduler.runUntilIdle();
+
+    ModelDiff<List<String>, ListDiff<String>> second = received.get(1);
+    assertThat(second.previous()).containsExactly("a", "b");
+    assertThat(second.diff().index()).isEqualTo(2);
+    assertThat(second.diff().inserted()).containsExactly("c");
+  }
+
+  @Test
+  public void shouldSkipIntermediateModelsWhenBehind() throws Exception {
+    observer.accept(Arrays.asList("a"));
+    scheduler.runUntilIdle();
+
+    observer.accept(Arrays.asList("a", "b"));
+    observer.accept(Arrays.asList("a", "b", "c"));
+    scheduler.runUntilIdle();
+
+    assertThat(received).hasSize(2);
+    ListDiff<String> diff = received.get(1).diff();
+    assertThat(diff.applyTo(received.get(0).current())).containsExactly("a", "b", "c");
+  }
+
+  @Test
+  public void shouldStopDeliveringWhenDisposed() throws Exception {
+    observer.accept(Arrays.asList("a"));
+    observer.dispose();
+    scheduler.runUntilIdle();
+
+    assertThat(received).isEmpty();
+  }
+
+  @Test
+  public void shouldDiffFromLastDeliveredModelWhenObserverThrows() throws Exception {
+    observer =
+        DiffingObserver.create(
+            Differs.<String>list(),
+            scheduler.createWorkRunner(),
+            modelDiff -> {
+              if (modelDiff.current().contains("fail")) {
+                throw new IllegalStateException("observer failed");
+              }
+              received.add(modelDiff);
+            });
+
+    observer.accept(Arrays.asList("a"));
+    scheduler.runUntilIdle();
+    observer.accept(Arrays.asList("a", "fail"));
+    scheduler.runUntilIdle();
+    observer.accept(Arrays.asList("a", "b"));
+    scheduler.runUntilIdle();
+
+    assertThat(errors).hasSize(1);
+    assertThat(received).hasSize(2);
+    assertThat(received.get(1).previous()).containsExactly("a");
+    assertThat(received.get(1).diff().inserted()).containsExactly("b");
+  }
+}
@@ -0,0 +1,195 @@
+/*
+ * -\-\-
+ * Mobius
+ * --
+ * Copyright (c) 2017-2020 Spotify AB
+ * --
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -/-/-
+ */
+package com.spotify.mobius.extras.persistence;
+
+import static com.spotify.mobius.extras.persistence.TestFiles.deleteRecursively;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
+
+import com.spotify.mobius.Connectable;
+import com.spotify.mobius.Connection;
+import com.spotify.mobius.ConnectionLimitExceededException;
+import com.spotify.mobius.extras.persistence.EffectOutbox.Delivery;
+import com.spotify.mobius.functions.Consumer;
+import com.spotify.mobius.test.RecordingConsumer;
+import com.spotify.mobius.test.SimpleConnection;
+import com.spotify.mobius.test.VirtualTimeScheduler;
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import javax.annotation.Nonnull;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class EffectOutboxTest {
+
+  private File directory;
+  private VirtualTimeScheduler scheduler;
+  private EffectOutbox<String> outbox;
+  private RecordingHandler handler;
+
+  @Before
+  public void setUp() throws Exception {
+    directory = Files.createTempDirectory("outbox").toFile();
+    scheduler = new VirtualTimeScheduler();
+    handler = new RecordingHandler();
+    outbox = open(EffectOutbox.builder(directory, new StringCodec()));
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    outbox.dispose();
+    deleteRecursively(directory);
+  }
+
+  @Test
+  public void shouldDeliverBatchAfterCommitInterval() throws Exception {
+    Connection<String> connection = outbox.wrap(handler).connect(new RecordingConsumer<>());
+
+    connection.accept("first");
+    scheduler.advanceTimeBy(4, MILLISECONDS);
+    connection.accept("second");
+    scheduler.advanceTimeBy(4, MILLISECONDS);
+    assertThat(handler.effects()).isEmpty();
+
+    scheduler.advanceTimeBy(2, MILLISECONDS);
+    assertThat(handler.effects()).containsExactly("first", "second");
+  }
+
+  @Test
+  public void shouldCommitRightAwayWhenBatchIsFull() throws Exception {
+    outbox.dispose();
+    outbox = open(EffectOutbox.builder(directory, new StringCodec()).maxBatchSize(2));
+    Connection<String> connection = outbox.wrap(handler).connect(new RecordingConsumer<>());
+
+    connection.accept("first");
+    connection.accept("second");
+    scheduler.runUntilIdle();
+
+    assertThat(handler.effects()).containsExactly("first", "second");
+  }
+
+  @Test
+  public void shouldRedeliverUnacknowledgedEffectsAfterReopening() throws Exception {
+    Connection<String> connection = outbox.wrap(handler).connect(new RecordingConsumer<>());
+    connection.accept("handled");
+    connection.accept("lost");
+    connection.accept("never delivered");
+    scheduler.advanceTimeBy(10, MILLISECONDS);
+    handler.deliveries.get(0).acknowledge();
+    connection.accept("not committed");
+    outbox.dispose();
+
+    outbox = open(EffectOutbox.builder(directory, new StringCodec()));
+    RecordingHandler restarted = new RecordingHandler();
+    outbox.wrap(restarted).connect(new RecordingConsumer<>());
+    scheduler.runUntilIdle();
+
+    assertThat(restarted.effects()).containsExactly("lost", "never delivered", "not committed");
+    assertThat(outbox.unacknowledgedCount()).isEqualTo(3);
+  }
+
+  @Test
+  public void shouldAcknowledgeSynchronousEffectsWhenHandlerReturns() throws Exception {
+    final List<String> handled = new ArrayList<>();
+    Connectable<String, String> synchronousHandler =
+        output ->
+            new SimpleConnection<String>() {
+              @Override
+              public void accept(String effect) {
+                handled.add(effect);
+              }
+            };
+
+    Connection<String> connection =
+        outbox.wrapSynchronous(synchronousHandler).connect(new RecordingConsumer<>());
+    connection.accept("effect");
+    scheduler.advanceTimeBy(10, MILLISECONDS);
+    outbox.dispose();
+
+    outbox = open(EffectOutbox.builder(directory, new StringCodec()));
+
+    assertThat(handled).containsExactly("effect");
+    assertThat(outbox.unacknowledgedCount()).isEqualTo(0);
+  }
+
+  @Test
+  public void shouldOnlyAllowOneConnectedHandler() throws Exception {
+    Connectable<String, String> connectable = outbox.wrap(handler);
+    Connection<String> connection = connectable.connect(new RecordingConsumer<>());
+
+    try {
+      connectable.connect(new RecordingConsumer<>());
+      fail("expected ConnectionLimitExceededException");
+    } catch (ConnectionLimitExceededException expected) {
+      // expected
+    }
+
+    connection.dispose();
+    connectable.connect(new RecordingConsumer<>());
+  }
+
+  @Test
+  public void shouldDeleteSegmentsWithOnlyAcknowledgedEffects() throws Exception {
+    outbox.dispose();
+    outbox = open(EffectOutbox.builder(directory, new StringCodec()).segmentSize(256));
+    Connection<String> connection = outbox.wrap(handler).connect(new RecordingConsumer<>());
+
+    for (int i = 0; i < 100; i++) {
+      connection.accept("effect " + i);
+      scheduler.advanceTimeBy(10, MILLISECONDS);
+      handler.deliveries.get(i).acknowledge();
+    }
+    connection.accept("last");
+    scheduler.advanceTimeBy(10, MILLISECONDS);
+
+    assertThat(directory.list()).hasSize(1);
+  }
+
+  private EffectOutbox<String> open(EffectOutbox.Builder<String> builder) {
+    return builder.commitRunner(scheduler.createWorkRunner()).open();
+  }
+
+  private static class RecordingHandler implements Connectable<Delivery<String>, String> {
+    private final List<Delivery<String>> deliveries = new ArrayList<>();
+
+    @Nonnull
+    @Override
+    public Connection<Delivery<String>> connect(Consumer<String> output) {
+      return new SimpleConnection<Delivery<String>>() {
+        @Override
+        public void accept(Delivery<String> delivery) {
+          deliveries.add(delivery);
+        }
+      };
+    }
+
+    List<String> effects() {
+      List<String> effects = new ArrayList<>();
+      for (Delivery<String> delivery : deliveries) {
+        effects.add(delivery.effect());
+      }
+      return effects;
+    }
+  }
+}
@@ -0,0 +1,205 @@
+/*
+ * -\-\-
+ * Mobius
+ * --
+ * Copyright (c) 2017-2020 Spotify AB
+ * --
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -/-/-
+ */
+package com.spotify.mobius.extras.persistence;
+
+import static com.spotify.mobius.extras.persistence.TestFiles.deleteRecursively;
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.spotify.mobius.Connectable;
+import com.spotify.mobius.Mobius;
+import com.spotify.mobius.MobiusLoop;
+import com.spotify.mobius.Next;
+import com.spotify.mobius.Update;
+import com.spotify.mobius.runners.WorkRunners;
+import com.spotify.mobius.test.SimpleConnection;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class EventJournalTest {
+
+  private static final Update<String, String, String> UPDATE =
+      (model, event) -> Next.next(model + "," + event);
+
+  private File directory;
+  private EventJournal<String> journal;
+
+  @Before
+  public void setUp() throws Exception {
+    directory = Files.createTempDirectory("journal").toFile();
+    journal = EventJournal.builder(directory, new StringCodec()).open();
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    journal.dispose();
+    deleteRecursively(directory);
+  }
+
+  @Test
+  public void shouldAssignIncreasingSequenceNumbers() throws Exception {
+    assertThat(journal.lastSequence()).isEqualTo(0L);
+
+    assertThat(journal.append("a")).isEqualTo(1L);
+    assertThat(journal.append("b")).isEqualTo(2L);
+    assertThat(journal.lastSequence()).isEqualTo(2L);
+  }
+
+  @Test
+  public void shouldReplayEventsThroughUpdate() throws Exception {
+    journal.append("a");
+    journal.append("b");
+    journal.append("c");
+
+    assertThat(journal.replay(UPDATE, "init")).isEqualTo("init,a,b,c");
+    assertThat(journal.replay(UPDATE, "snapshot", 2)).isEqualTo("snapshot,c");
+  }
+
+  @Test
+  public void shouldContinueExistingJournalWhenReopened() throws Exception {
+    journal.append("a");
+    journal.append("b");
+    journal.dispose();
+
+    journal = EventJournal.builder(directory, new StringCodec()).open();
+
+    assertThat(journal.append("c")).isEqualTo(3L);
+    assertThat(journal.replay(UPDATE, "init")).isEqualTo("init,a,b,c");
+  }
+
+  @Test
+  public void shouldRollOverToNewSegments() throws Exception {
+    journal.dispose();
+    journal = EventJournal.builder(directory, new StringCodec()).segmentSize(100).open();
+
+    List<String> expected = new ArrayList<>();
+    for (int i = 0; i < 50; i++) {
+      journal.append("event " + i);
+      expected.add("event " + i);
+    }
+
+    assertThat(directory.listFiles().length).isGreaterThan(1);
+    assertThat(read(journal, 1)).isEqualTo(expected);
+    assertThat(read(journal, 48)).containsExactly("event 47", "event 48", "event 49");
+  }
+
+  @Test
+  public void shouldIgnorePartiallyWrittenEventWhenReopened() throws Exception {
+    journal.append("a");
+    journal.append("b");
+    journal.dispose();
+
+    // simulate a crash in the middle of writing the second event by corrupting its payload
+    File segment = directory.listFiles()[0];
+    try (RandomAccessFile file = new RandomAccessFile(segment, "rw")) {
+      int secondRecord = SegmentedLog.HEADER_SIZE + 3;
+      file.seek(secondRecord + SegmentedLog.HEADER_SIZE + 2);
+      file.write('X');
+    }
+
+    journal = EventJournal.builder(directory, new StringCodec()).open();
+
+    assertThat(journal.lastSequence()).isEqualTo(1L);
+    assertThat(journal.append("c")).isEqualTo(2L);
+    assertThat(journal.replay(UPDATE, "init")).isEqualTo("init,a,c");
+  }
+
+  @Test
+  public void shouldKeepEventsAfterEmptyPayloadWhenReopened() throws Exception {
+    journal.dispose();
+    journal = EventJournal.builder(directory, new EmptyableCodec()).open();
+
+    journal.append("a");
+    journal.append("");
+    journal.append("b");
+    assertThat(read(journal, 1)).containsExactly("a", "", "b");
+    journal.dispose();
+
+    journal = EventJournal.builder(directory, new EmptyableCodec()).open();
+
+    assertThat(journal.lastSequence()).isEqualTo(3L);
+    assertThat(journal.append("c")).isEqualTo(4L);
+    assertThat(read(journal, 1)).containsExactly("a", "", "b", "c");
+  }
+
+  @Test
+  public void shouldJournalEventsProcessedByLoop() throws Exception {
+    journal.dispose();
+    journal =
+        EventJournal.builder(directory, new StringCodec())
+            .syncPolicy(SyncPolicy.interval(10, TimeUnit.MILLISECONDS))
+            .open();
+
+    Connectable<String, String> effectHandler =
+        output ->
+            new SimpleConnection<String>() {
+              @Override
+              public void accept(String value) {}
+            };
+
+    MobiusLoop<String, String, String> loop =
+        Mobius.loop(UPDATE, effectHandler)
+            .eventRunner(WorkRunners::immediate)
+            .effectRunner(WorkRunners::immediate)
+            .logger(journal.<String, String>logger())
+            .startFrom("init");
+
+    loop.dispatchEvent("a");
+    loop.dispatchEvent("b");
+    loop.dispose();
+
+    assertThat(journal.replay(UPDATE, "init")).isEqualTo(loop.getMostRecentModel());
+  }
+
+  private static List<String> read(EventJournal<String> journal, long fromSequence) {
+    List<String> events = new ArrayList<>();
+    journal.read(fromSequence, (sequence, event) -> events.add(event));
+    return events;
+  }
+
+  /** Writes nothing at all for empty strings. */
+  private static class EmptyableCodec implements Codec<String> {
+    @Override
+    public void write(String value, DataOutput output) throws IOException {
+      if (!value.isEmpty()) {
+        output.writeUTF(value);
+      }
+    }
+
+    @Override
+    public String read(DataInput input) throws IOException {
+      try {
+        return input.readUTF();
+      } catch (EOFException e) {
+        return "";
+      }
+    }
+  }
+}
@@ -0,0 +1,113 @@
+/*
+ * -\-\-
+ * Mobius
+ * --
+ * Copyright (c) 2017-2020 Spotify AB
+ * --
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -/-/-
+ */
+package com.spotify.mobius.extras.persistence;
+
+import static com.spotify.mobius.extras.persistence.TestFiles.deleteRecursively;
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class FileSnapshotStoreTest {
+
+  private File directory;
+  private FileSnapshotStore<String> store;
+
+  @Before
+  public void setUp() throws Exception {
+    directory = Files.createTempDirectory("snapshots").toFile();
+    store = FileSnapshotStore.create(directory, new StringCodec());
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    deleteRecursively(directory);
+  }
+
+  @Test
+  public void shouldLoadLatestSavedSnapshot() throws Exception {
+    store.save("loop", "first");
+    store.save("loop", "second");
+
+    assertThat(store.load("loop")).isEqualTo("second");
+    assertThat(store.load("unknown")).isNull();
+  }
+
+  @Test
+  public void shouldSupportKeysThatAreNotValidFileNames() throws Exception {
+    store.save("a/b:c*d", "model");
+
+    assertThat(store.load("a/b:c*d")).isEqualTo("model");
+    assertThat(store.keys()).containsExactly("a/b:c*d");
+  }
+
+  @Test
+  public void shouldNotLeaveTemporaryFilesBehind() throws Exception {
+    store.save("loop", "first");
+    store.save("loop", "second");
+
+    assertThat(directory.list()).containsExactly("loop.snapshot");
+  }
+
+  @Test
+  public void shouldDeleteTemporaryFilesLeftByCrashedSave() throws Exception {
+    store.save("loop", "model");
+    assertThat(new File(directory, "loop.snapshot123.tmp").createNewFile()).isTrue();
+
+    store = FileSnapshotStore.create(directory, new StringCodec());
+
+    assertThat(directory.list()).containsExactly("loop.snapshot");
+    assertThat(store.load("loop")).isEqualTo("model");
+  }
+
+  @Test
+  public void shouldDeleteSnapshots() throws Exception {
+    store.save("loop", "model");
+    store.delete("loop");
+
+    assertThat(store.load("loop")).isNull();
+    assertThat(store.keys()).isEmpty();
+  }
+
+  @Test
+  public void shouldLoadManySnapshotsInParallel() throws Exception {
+    Set<String> keys = new HashSet<>();
+    for (int i = 0; i < 1000; i++) {
+      store.save("loop " + i, "model " + i);
+      keys.add("loop " + i);
+    }
+    keys.add("missing");
+
+    ExecutorService executor = Executors.newFixedThreadPool(8);
+    Map<String, String> snapshots = store.loadAll(keys, executor);
+    executor.shutdown();
+
+    assertThat(snapshots).hasSize(1000);
+    assertThat(snapshots).containsEntry("loop 123", "model 123");
+  }
+}
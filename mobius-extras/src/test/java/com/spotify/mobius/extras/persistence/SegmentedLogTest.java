@@ -0,0 +1,96 @@
+/*
+ * -\-\-
+ * Mobius
+ * --
+ * Copyright (c) 2017-2020 Spotify AB
+ * --
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -/-/-
+ */
+package com.spotify.mobius.extras.persistence;
+
+import static com.spotify.mobius.extras.persistence.TestFiles.deleteRecursively;
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class SegmentedLogTest {
+
+  private File directory;
+  private SegmentedLog log;
+
+  @Before
+  public void setUp() throws Exception {
+    directory = Files.createTempDirectory("log").toFile();
+    log = new SegmentedLog(directory, 64, SyncPolicy.never());
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    log.dispose();
+    deleteRecursively(directory);
+  }
+
+  @Test
+  public void shouldForceFullSegmentWhenRollingOverWithoutSyncPolicy() throws Exception {
+    append("first record");
+    append("second record");
+    assertThat(log.forceCount()).isEqualTo(0L);
+
+    append("third record");
+    assertThat(directory.list()).hasSize(2);
+    assertThat(log.forceCount()).isEqualTo(1L);
+
+    log.flush();
+    assertThat(log.forceCount()).isEqualTo(2L);
+  }
+
+  @Test
+  public void shouldReadRecordsAcrossSegmentsAfterReopening() throws Exception {
+    append("first record");
+    append("");
+    append("second record");
+    append("third record");
+    log.dispose();
+
+    log = new SegmentedLog(directory, 64, SyncPolicy.never());
+
+    assertThat(log.lastSequence()).isEqualTo(4L);
+    assertThat(readAll()).containsExactly("first record", "", "second record", "third record");
+  }
+
+  private void append(String value) {
+    byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+    log.append(bytes, 0, bytes.length);
+  }
+
+  private List<String> readAll() {
+    List<String> values = new ArrayList<>();
+    log.read(
+        1,
+        (sequence, payload) -> {
+          byte[] bytes = new byte[payload.remaining()];
+          payload.get(bytes);
+          values.add(new String(bytes, StandardCharsets.UTF_8));
+          return true;
+        });
+    return values;
+  }
+}
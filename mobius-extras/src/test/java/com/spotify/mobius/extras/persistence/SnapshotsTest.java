@@ -0,0 +1,107 @@
+/*
+ * -\-\-
+ * Mobius
+ * --
+ * Copyright (c) 2017-2020 Spotify AB
+ * --
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -/-/-
+ */
+package com.spotify.mobius.extras.persistence;
+
+import static com.spotify.mobius.extras.persistence.TestFiles.deleteRecursively;
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.spotify.mobius.Connectable;
+import com.spotify.mobius.Mobius;
+import com.spotify.mobius.MobiusLoop;
+import com.spotify.mobius.Next;
+import com.spotify.mobius.Update;
+import com.spotify.mobius.functions.Consumer;
+import com.spotify.mobius.runners.WorkRunners;
+import com.spotify.mobius.test.RecordingConnection;
+import com.spotify.mobius.test.SimpleConnection;
+import java.io.File;
+import java.nio.file.Files;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class SnapshotsTest {
+
+  private File directory;
+  private FileSnapshotStore<String> store;
+  private MobiusLoop.Controller<String, String> controller;
+
+  @Before
+  public void setUp() throws Exception {
+    directory = Files.createTempDirectory("snapshots").toFile();
+    store = FileSnapshotStore.create(directory, new StringCodec());
+
+    Connectable<String, String> effectHandler =
+        output ->
+            new SimpleConnection<String>() {
+              @Override
+              public void accept(String value) {}
+            };
+
+    Update<String, String, String> update = (model, event) -> Next.next(model + "," + event);
+
+    MobiusLoop.Builder<String, String, String> loopFactory =
+        Mobius.loop(update, effectHandler)
+            .eventRunner(WorkRunners::immediate)
+            .effectRunner(WorkRunners::immediate);
+
+    controller = Mobius.controller(loopFactory, "default");
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    deleteRecursively(directory);
+  }
+
+  @Test
+  public void shouldRestoreSnapshotIntoController() throws Exception {
+    store.save("loop", "restored");
+
+    assertThat(Snapshots.restore(store, "loop", controller)).isTrue();
+    assertThat(controller.getModel()).isEqualTo("restored");
+  }
+
+  @Test
+  public void shouldKeepDefaultModelWithoutSnapshot() throws Exception {
+    assertThat(Snapshots.restore(store, "loop", controller)).isFalse();
+    assertThat(controller.getModel()).isEqualTo("default");
+  }
+
+  @Test
+  public void shouldSaveModelsRenderedByView() throws Exception {
+    final RecordingConnection<String> view = new RecordingConnection<>();
+    final AtomicReference<Consumer<String>> events = new AtomicReference<>();
+
+    controller.connect(
+        Snapshots.savingModels(
+            store,
+            "loop",
+            output -> {
+              events.set(output);
+              return view;
+            }));
+    controller.start();
+    events.get().accept("event");
+    controller.stop();
+
+    assertThat(store.load("loop")).isEqualTo("default,event");
+  }
+}
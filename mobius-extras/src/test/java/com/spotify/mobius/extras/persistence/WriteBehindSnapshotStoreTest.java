@@ -0,0 +1,202 @@
+/*
+ * -\-\-
+ * Mobius
+ * --
+ * Copyright (c) 2017-2020 Spotify AB
+ * --
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -/-/-
+ */
+package com.spotify.mobius.extras.persistence;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.spotify.mobius.MobiusHooks;
+import com.spotify.mobius.test.VirtualTimeScheduler;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import javax.annotation.Nullable;
+import org.junit.Before;
+import org.junit.Test;
+
+public class WriteBehindSnapshotStoreTest {
+
+  private VirtualTimeScheduler scheduler;
+  private RecordingStore delegate;
+  private WriteBehindSnapshotStore<String> store;
+
+  @Before
+  public void setUp() throws Exception {
+    scheduler = new VirtualTimeScheduler();
+    delegate = new RecordingStore();
+    store =
+        WriteBehindSnapshotStore.create(delegate, 100, MILLISECONDS, scheduler.createWorkRunner());
+  }
+
+  @Test
+  public void shouldWriteFirstSnapshotRightAway() throws Exception {
+    store.save("loop", "first");
+    scheduler.runUntilIdle();
+
+    assertThat(delegate.writes).containsExactly("loop=first");
+  }
+
+  @Test
+  public void shouldCoalesceSnapshotsWithinInterval() throws Exception {
+    store.save("loop", "first");
+    scheduler.runUntilIdle();
+
+    store.save("loop", "second");
+    store.save("loop", "third");
+    scheduler.advanceTimeBy(99, MILLISECONDS);
+    assertThat(delegate.writes).containsExactly("loop=first");
+
+    scheduler.advanceTimeBy(1, MILLISECONDS);
+    assertThat(delegate.writes).containsExactly("loop=first", "loop=third");
+  }
+
+  @Test
+  public void shouldLimitWritesPerKeyIndependently() throws Exception {
+    store.save("a", "a1");
+    store.save("b", "b1");
+    scheduler.runUntilIdle();
+
+    assertThat(delegate.writes).containsExactly("a=a1", "b=b1");
+  }
+
+  @Test
+  public void shouldLoadPendingSnapshotsBeforeTheyAreWritten() throws Exception {
+    store.save("loop", "first");
+    scheduler.runUntilIdle();
+    store.save("loop", "second");
+
+    assertThat(store.load("loop")).isEqualTo("second");
+    assertThat(store.keys()).containsExactly("loop");
+  }
+
+  @Test
+  public void shouldWriteAgainRightAwayAfterQuietInterval() throws Exception {
+    store.save("loop", "first");
+    scheduler.advanceTimeBy(1000, MILLISECONDS);
+
+    store.save("loop", "second");
+    scheduler.runUntilIdle();
+
+    assertThat(delegate.writes).containsExactly("loop=first", "loop=second");
+  }
+
+  @Test
+  public void shouldWritePendingSnapshotsWhenDisposed() throws Exception {
+    store.save("loop", "first");
+    scheduler.runUntilIdle();
+    store.save("loop", "second");
+
+    store.dispose();
+
+    assertThat(delegate.writes).containsExactly("loop=first", "loop=second");
+  }
+
+  @Test
+  public void shouldDiscardPendingSnapshotWhenDeleted() throws Exception {
+    store.save("loop", "first");
+    scheduler.runUntilIdle();
+    store.save("loop", "second");
+
+    store.delete("loop");
+    scheduler.advanceTimeBy(1000, MILLISECONDS);
+
+    assertThat(delegate.writes).containsExactly("loop=first");
+    assertThat(store.load("loop")).isNull();
+  }
+
+  @Test
+  public void shouldLoadSnapshotWhileItIsBeingWritten() throws Exception {
+    List<String> loadedDuringSave = new ArrayList<>();
+    delegate.duringSave = () -> loadedDuringSave.add(store.load("loop"));
+
+    store.save("loop", "first");
+    scheduler.runUntilIdle();
+
+    assertThat(loadedDuringSave).containsExactly("first");
+  }
+
+  @Test
+  public void shouldRetryFailedWriteAfterInterval() throws Exception {
+    List<Throwable> errors = new ArrayList<>();
+    MobiusHooks.setErrorHandler(errors::add);
+    try {
+      delegate.failures = 1;
+
+      store.save("loop", "first");
+      scheduler.runUntilIdle();
+      assertThat(errors).hasSize(1);
+      assertThat(store.load("loop")).isEqualTo("first");
+
+      scheduler.advanceTimeBy(100, MILLISECONDS);
+      assertThat(delegate.writes).containsExactly("loop=first");
+    } finally {
+      MobiusHooks.setDefaultErrorHandler();
+    }
+  }
+
+  @Test
+  public void shouldWriteRightAwayWhenSavedAfterDispose() throws Exception {
+    store.save("loop", "first");
+    store.dispose();
+
+    store.save("loop", "second");
+
+    assertThat(delegate.writes).containsExactly("loop=first", "loop=second");
+    assertThat(store.load("loop")).isEqualTo("second");
+  }
+
+  private static class RecordingStore implements SnapshotStore<String> {
+    private final Map<String, String> snapshots = new HashMap<>();
+    private final List<String> writes = new ArrayList<>();
+    @Nullable private Runnable duringSave;
+    private int failures;
+
+    @Override
+    public synchronized void save(String key, String model) {
+      if (duringSave != null) {
+        duringSave.run();
+      }
+      if (failures > 0) {
+        failures--;
+        throw new IllegalStateException("disk full");
+      }
+      snapshots.put(key, model);
+      writes.add(key + "=" + model);
+    }
+
+    @Nullable
+    @Override
+    public synchronized String load(String key) {
+      return snapshots.get(key);
+    }
+
+    @Override
+    public synchronized void delete(String key) {
+      snapshots.remove(key);
+    }
+
+    @Override
+    public synchronized Set<String> keys() {
+      return snapshots.keySet();
+    }
+  }
+}
@@ -0,0 +1,127 @@
+/*
+ * -\-\-
+ * Mobius
+ * --
+ * Copyright (c) 2017-2020 Spotify AB
+ * --
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -/-/-
+ */
+package com.spotify.mobius.extras.replay;
+
+import static com.spotify.mobius.Effects.effects;
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.spotify.mobius.First;
+import com.spotify.mobius.Next;
+import com.spotify.mobius.Update;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ReplayEngineTest {
+
+  private ReplayEngine<Integer, String, String> engine;
+
+  @Before
+  public void setUp() throws Exception {
+    Update<Integer, String, String> update =
+        (model, event) -> {
+          switch (event) {
+            case "add":
+              return Next.next(model + 1, effects("added " + (model + 1)));
+            case "noop":
+              return Next.noChange();
+            default:
+              throw new IllegalArgumentException(event);
+          }
+        };
+
+    engine = ReplayEngine.create(update);
+  }
+
+  @Test
+  public void shouldFoldEventsThroughUpdate() throws Exception {
+    ReplayResult<Integer, String> result =
+        engine.replay(ReplaySession.of(0, Arrays.asList("add", "noop", "add")));
+
+    assertThat(result.model()).isEqualTo(2);
+    assertThat(result.effects()).containsExactly("added 1", "added 2");
+    assertThat(result.eventCount()).isEqualTo(3);
+    assertThat(result.failed()).isFalse();
+  }
+
+  @Test
+  public void shouldApplyInitBeforeEvents() throws Exception {
+    ReplayResult<Integer, String> result =
+        engine
+            .init(model -> First.first(model * 10, effects("initialised")))
+            .replay(ReplaySession.of(1, Collections.singletonList("add")));
+
+    assertThat(result.model()).isEqualTo(11);
+    assertThat(result.effects()).containsExactly("initialised", "added 11");
+  }
+
+  @Test
+  public void shouldRecordFailuresPerSession() throws Exception {
+    ReplayReport<Integer, String> report =
+        engine.replayAll(
+            Arrays.asList(
+                ReplaySession.of(0, Arrays.asList("add", "boom", "add")),
+                ReplaySession.of(5, Collections.singletonList("add"))));
+
+    ReplayResult<Integer, String> failed = report.results().get(0);
+    assertThat(failed.model()).isEqualTo(1);
+    assertThat(failed.eventCount()).isEqualTo(1);
+    assertThat(failed.error()).isInstanceOf(IllegalArgumentException.class);
+
+    assertThat(report.results().get(1).model()).isEqualTo(6);
+    assertThat(report.failedCount()).isEqualTo(1);
+    assertThat(report.eventCount()).isEqualTo(2);
+  }
+
+  @Test
+  public void shouldReplayManySessionsInParallelInOrder() throws Exception {
+    List<ReplaySession<Integer, String>> sessions = new ArrayList<>();
+    for (int i = 0; i < 10_000; i++) {
+      sessions.add(ReplaySession.of(i, Collections.nCopies(i % 50, "add")));
+    }
+
+    ForkJoinPool pool = new ForkJoinPool(4);
+    ReplayReport<Integer, String> report = engine.pool(pool).discardEffects().replayAll(sessions);
+    pool.shutdown();
+
+    assertThat(report.sessionCount()).isEqualTo(10_000);
+    for (int i = 0; i < 10_000; i++) {
+      assertThat(report.results().get(i).model()).isEqualTo(i + i % 50);
+      assertThat(report.results().get(i).effects()).isEmpty();
+    }
+    assertThat(report.eventCount()).isEqualTo(245_000);
+    assertThat(report.eventsPerSecond()).isGreaterThan(0.0);
+    assertThat(report.elapsed(TimeUnit.NANOSECONDS)).isGreaterThan(0L);
+  }
+
+  @Test
+  public void shouldReportEmptyRun() throws Exception {
+    ReplayReport<Integer, String> report =
+        engine.replayAll(Collections.<ReplaySession<Integer, String>>emptyList());
+
+    assertThat(report.sessionCount()).isEqualTo(0);
+    assertThat(report.results()).isEmpty();
+  }
+}
@@ -24,12 +24,15 @@ import static com.spotify.mobius.internal_util.Preconditions.checkNotNull;
 import com.spotify.mobius.Mobius;
 import com.spotify.mobius.MobiusLoop;
 import com.spotify.mobius.Update;
+import com.spotify.mobius.effects.Bulkhead;
+import com.spotify.mobius.effects.CircuitBreaker;
 import io.reactivex.Observable;
 import io.reactivex.ObservableTransformer;
 import io.reactivex.Scheduler;
 import io.reactivex.functions.Action;
 import io.reactivex.functions.Consumer;
 import io.reactivex.functions.Function;
+import io.reactivex.functions.Predicate;
 import io.reactivex.plugins.RxJavaPlugins;
 import java.util.HashMap;
 import java.util.Map;
@@ -342,6 +345,104 @@ public final class RxMobius {
       return addTransformer(effectClass, Transformers.fromFunction(function, scheduler));
     }
 
+    /**
+     * Add an {@link ObservableTransformer} for handling effects of a given type, limiting the
+     * number of effects it handles at the same time with a {@link Bulkhead}. Each effect is passed
+     * to the transformer in an observable of its own, which counts as running until it terminates.
+     * Effects discarded by the bulkhead don't produce any events.
+     *
+     * <p>Adding handlers for two effect classes where one is a super-class of the other is
+     * considered a collision and is not allowed. Registering the same class twice is also
+     * considered a collision.
+     *
+     * @param effectClass the class to handle
+     * @param effectHandler the effect handler for the given effect class
+     * @param bulkhead the bulkhead limiting concurrent effects; may be shared with other handlers
+     * @param <G> the effect class as a type parameter
+     * @return this builder
+     * @throws IllegalArgumentException if there is a handler collision
+     */
+    public <G extends F> SubtypeEffectHandlerBuilder<F, E> addTransformer(
+        final Class<G> effectClass,
+        final ObservableTransformer<G, E> effectHandler,
+        Bulkhead bulkhead) {
+      //noinspection ResultOfMethodCallIgnored
+      checkNotNull(effectHandler);
+      //noinspection ResultOfMethodCallIgnored
+      checkNotNull(bulkhead);
+
+      return addTransformer(effectClass, Transformers.withBulkhead(bulkhead, effectHandler));
+    }
+
+    /**
+     * Add a {@link Function} for handling effects of a given type, limiting the number of
+     * concurrent invocations with a {@link Bulkhead}. Effects beyond the limit wait in the queue of
+     * the bulkhead rather than occupying a thread of the scheduler.
+     *
+     * <p>Adding handlers for two effect classes where one is a super-class of the other is
+     * considered a collision and is not allowed. Registering the same class twice is also
+     * considered a collision.
+     *
+     * @param effectClass the class to handle
+     * @param function the function that should be invoked for the effect
+     * @param scheduler the scheduler that should be used when invoking the function
+     * @param bulkhead the bulkhead limiting concurrent invocations
+     * @param <G> the effect class as a type parameter
+     * @return this builder
+     * @throws IllegalArgumentException if there is a handler collision
+     */
+    public <G extends F> SubtypeEffectHandlerBuilder<F, E> addFunction(
+        final Class<G> effectClass,
+        final Function<G, E> function,
+        Scheduler scheduler,
+        Bulkhead bulkhead) {
+      //noinspection ResultOfMethodCallIgnored
+      checkNotNull(function);
+
+      return addTransformer(
+          effectClass, Transformers.<G, E>fromFunction(function, scheduler), bulkhead);
+    }
+
+    /**
+     * Add an {@link ObservableTransformer} for handling effects of a given type, guarded by a
+     * {@link CircuitBreaker}. Each effect that the breaker lets through is passed to the
+     * transformer in an observable of its own; effects that it refuses are answered with the event
+     * returned by {@code openEvent} instead, without involving the transformer. Observables that
+     * terminate with an error, or emit an event matching {@code isFailure}, count as failed calls.
+     *
+     * <p>Adding handlers for two effect classes where one is a super-class of the other is
+     * considered a collision and is not allowed. Registering the same class twice is also
+     * considered a collision.
+     *
+     * @param effectClass the class to handle
+     * @param effectHandler the effect handler for the given effect class
+     * @param breaker the circuit breaker; may be shared with other handlers of the same dependency
+     * @param openEvent returns the event to emit for effects that the breaker refuses
+     * @param isFailure tells failure events apart from other events
+     * @param <G> the effect class as a type parameter
+     * @return this builder
+     * @throws IllegalArgumentException if there is a handler collision
+     */
+    public <G extends F> SubtypeEffectHandlerBuilder<F, E> addTransformer(
+        final Class<G> effectClass,
+        final ObservableTransformer<G, E> effectHandler,
+        CircuitBreaker breaker,
+        Function<G, E> openEvent,
+        Predicate<E> isFailure) {
+      //noinspection ResultOfMethodCallIgnored
+      checkNotNull(effectHandler);
+      //noinspection ResultOfMethodCallIgnored
+      checkNotNull(breaker);
+      //noinspection ResultOfMethodCallIgnored
+      checkNotNull(openEvent);
+      //noinspection ResultOfMethodCallIgnored
+      checkNotNull(isFailure);
+
+      return addTransformer(
+          effectClass,
+          Transformers.withCircuitBreaker(breaker, openEvent, isFailure, effectHandler));
+    }
+
     /**
      * Add an {@link Action} for handling effects of a given type. The action will be invoked once
      * for every received effect object that extends the given class.
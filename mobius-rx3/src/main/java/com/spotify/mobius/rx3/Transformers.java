@@ -19,18 +19,24 @@
  */
 package com.spotify.mobius.rx3;
 
+import com.spotify.mobius.effects.Bulkhead;
+import com.spotify.mobius.effects.CircuitBreaker;
 import io.reactivex.rxjava3.annotations.NonNull;
 import io.reactivex.rxjava3.annotations.Nullable;
 import io.reactivex.rxjava3.core.Completable;
 import io.reactivex.rxjava3.core.CompletableSource;
 import io.reactivex.rxjava3.core.Observable;
+import io.reactivex.rxjava3.core.ObservableEmitter;
+import io.reactivex.rxjava3.core.ObservableOnSubscribe;
 import io.reactivex.rxjava3.core.ObservableSource;
 import io.reactivex.rxjava3.core.ObservableTransformer;
 import io.reactivex.rxjava3.core.Scheduler;
 import io.reactivex.rxjava3.functions.Action;
 import io.reactivex.rxjava3.functions.Consumer;
 import io.reactivex.rxjava3.functions.Function;
+import io.reactivex.rxjava3.functions.Predicate;
 import io.reactivex.rxjava3.functions.Supplier;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /** Transformers. */
 final class Transformers {
@@ -198,4 +204,177 @@ final class Transformers {
   static <F, E> ObservableTransformer<F, E> fromFunction(final Function<F, E> function) {
     return fromFunction(function, null);
   }
+
+  /**
+   * Creates an {@link ObservableTransformer} that passes each effect to the provided transformer in
+   * an observable of its own, once the {@link Bulkhead} lets it start. The effect counts as running
+   * until that observable terminates or the returned transformer is disposed. Effects that the
+   * bulkhead discards don't produce any events.
+   *
+   * @param bulkhead the bulkhead limiting concurrent effects
+   * @param transformer the transformer that handles the effects
+   * @param <F> the type of Effect this transformer handles
+   * @param <E> the type of Event this transformer emits
+   * @return an {@link ObservableTransformer} that can be used with a {@link
+   *     RxMobius.SubtypeEffectHandlerBuilder}.
+   */
+  static <F, E> ObservableTransformer<F, E> withBulkhead(
+      final Bulkhead bulkhead, final ObservableTransformer<F, E> transformer) {
+    return new ObservableTransformer<F, E>() {
+      @Override
+      public ObservableSource<E> apply(Observable<F> effectStream) {
+        return effectStream.flatMap(
+            new Function<F, ObservableSource<E>>() {
+              @Override
+              public ObservableSource<E> apply(@NonNull final F effect) {
+                return Observable.create(
+                    new ObservableOnSubscribe<E>() {
+                      @Override
+                      public void subscribe(@NonNull final ObservableEmitter<E> emitter) {
+                        bulkhead.submit(new BulkheadExecution<>(effect, transformer, emitter));
+                      }
+                    });
+              }
+            });
+      }
+    };
+  }
+
+  /**
+   * Creates an {@link ObservableTransformer} that passes each effect to the provided transformer in
+   * an observable of its own if the {@link CircuitBreaker} lets it through, and otherwise emits the
+   * event returned by {@code openEvent} right away. The outcome of each observable is recorded by
+   * the breaker: it fails if it terminates with an error, or if it emits an event that matches
+   * {@code isFailure}. Errors are still passed on.
+   *
+   * @param breaker the circuit breaker guarding the transformer
+   * @param openEvent returns the event to emit for effects that the breaker refuses
+   * @param isFailure tells failure events apart from other events
+   * @param transformer the transformer that handles the effects
+   * @param <F> the type of Effect this transformer handles
+   * @param <E> the type of Event this transformer emits
+   * @return an {@link ObservableTransformer} that can be used with a {@link
+   *     RxMobius.SubtypeEffectHandlerBuilder}.
+   */
+  static <F, E> ObservableTransformer<F, E> withCircuitBreaker(
+      final CircuitBreaker breaker,
+      final Function<F, E> openEvent,
+      final Predicate<E> isFailure,
+      final ObservableTransformer<F, E> transformer) {
+    return new ObservableTransformer<F, E>() {
+      @Override
+      public ObservableSource<E> apply(Observable<F> effectStream) {
+        return effectStream.flatMap(
+            new Function<F, ObservableSource<E>>() {
+              @Override
+              public ObservableSource<E> apply(@NonNull final F effect) throws Throwable {
+                final CircuitBreaker.Permit permit = breaker.tryAcquire();
+                if (permit == null) {
+                  return Observable.just(openEvent.apply(effect));
+                }
+
+                final AtomicBoolean failed = new AtomicBoolean();
+                return Observable.just(effect)
+                    .compose(transformer)
+                    .doOnNext(
+                        new Consumer<E>() {
+                          @Override
+                          public void accept(E event) throws Throwable {
+                            if (isFailure.test(event)) {
+                              failed.set(true);
+                            }
+                          }
+                        })
+                    .doOnError(
+                        new Consumer<Throwable>() {
+                          @Override
+                          public void accept(Throwable throwable) {
+                            permit.recordFailure();
+                          }
+                        })
+                    .doOnComplete(
+                        new Action() {
+                          @Override
+                          public void run() {
+                            if (failed.get()) {
+                              permit.recordFailure();
+                            } else {
+                              permit.recordSuccess();
+                            }
+                          }
+                        })
+                    .doOnDispose(
+                        new Action() {
+                          @Override
+                          public void run() {
+                            permit.release();
+                          }
+                        });
+              }
+            });
+      }
+    };
+  }
+
+  private static class BulkheadExecution<F, E> implements Bulkhead.Execution {
+    private final F effect;
+    private final ObservableTransformer<F, E> transformer;
+    private final ObservableEmitter<E> emitter;
+
+    BulkheadExecution(
+        F effect, ObservableTransformer<F, E> transformer, ObservableEmitter<E> emitter) {
+      this.effect = effect;
+      this.transformer = transformer;
+      this.emitter = emitter;
+    }
+
+    @Override
+    public void start(final Runnable onComplete) {
+      if (emitter.isDisposed()) {
+        // the effect handler was disposed while this execution was queued
+        onComplete.run();
+        return;
+      }
+
+      emitter.setDisposable(
+          Observable.just(effect)
+              .compose(transformer)
+              .doFinally(
+                  new Action() {
+                    @Override
+                    public void run() {
+                      onComplete.run();
+                    }
+                  })
+              .subscribe(
+                  new Consumer<E>() {
+                    @Override
+                    public void accept(E event) {
+                      emitter.onNext(event);
+                    }
+                  },
+                  new Consumer<Throwable>() {
+                    @Override
+                    public void accept(Throwable throwable) {
+                      emitter.tryOnError(throwable);
+                    }
+                  },
+                  new Action() {
+                    @Override
+                    public void run() {
+                      emitter.onComplete();
+                    }
+                  }));
+    }
+
+    @Override
+    public void discard() {
+      emitter.onComplete();
+    }
+
+    @Override
+    public String toString() {
+      return "BulkheadExecution{effect=" + effect + "}";
+    }
+  }
 }
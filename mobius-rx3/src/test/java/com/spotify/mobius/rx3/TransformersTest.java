@@ -25,6 +25,8 @@ import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.equalTo;
 import static org.hamcrest.Matchers.is;
 
+import com.spotify.mobius.effects.Bulkhead;
+import com.spotify.mobius.effects.CircuitBreaker;
 import io.reactivex.rxjava3.core.Observable;
 import io.reactivex.rxjava3.disposables.Disposable;
 import io.reactivex.rxjava3.functions.Function;
@@ -106,6 +108,91 @@ public class TransformersTest {
     observer.assertValue(5);
   }
 
+  @Test
+  public void effectPerformerWithBulkheadLimitsConcurrentEffects() {
+    PublishSubject<String> upstream = PublishSubject.create();
+    TestScheduler scheduler = new TestScheduler();
+    Bulkhead bulkhead = Bulkhead.create("test", 1, 10, Bulkhead.OverflowPolicy.REJECT);
+    Function<String, Integer> function = s -> s.length();
+    TestObserver<Integer> observer =
+        upstream
+            .compose(
+                Transformers.withBulkhead(bulkhead, Transformers.fromFunction(function, scheduler)))
+            .test();
+
+    upstream.onNext("Hello");
+    upstream.onNext("World!");
+    assertThat(bulkhead.runningCount(), is(1));
+    assertThat(bulkhead.queueDepth(), is(1));
+
+    scheduler.triggerActions();
+    observer.assertValues(5, 6);
+    assertThat(bulkhead.runningCount(), is(0));
+  }
+
+  @Test
+  public void effectPerformerWithBulkheadCompletesDiscardedEffects() {
+    PublishSubject<String> upstream = PublishSubject.create();
+    TestScheduler scheduler = new TestScheduler();
+    Bulkhead bulkhead = Bulkhead.create("test", 1, 0, Bulkhead.OverflowPolicy.DROP_NEWEST);
+    Function<String, Integer> function = s -> s.length();
+    TestObserver<Integer> observer =
+        upstream
+            .compose(
+                Transformers.withBulkhead(bulkhead, Transformers.fromFunction(function, scheduler)))
+            .test();
+
+    upstream.onNext("Hello");
+    upstream.onNext("World!");
+    upstream.onComplete();
+    scheduler.triggerActions();
+
+    observer.assertValues(5);
+    observer.assertComplete();
+    assertThat(bulkhead.droppedCount(), is(1L));
+  }
+
+  @Test
+  public void effectPerformerWithCircuitBreakerEmitsOpenEventOnceOpen() {
+    PublishSubject<String> upstream = PublishSubject.create();
+    CircuitBreaker breaker = CircuitBreaker.builder("test").windowSize(2).minimumCalls(2).build();
+    Function<String, Integer> function = s -> s.length();
+    TestObserver<Integer> observer =
+        upstream
+            .compose(
+                Transformers.withCircuitBreaker(
+                    breaker, s -> -1, length -> length == 0, Transformers.fromFunction(function)))
+            .test();
+
+    upstream.onNext("");
+    upstream.onNext("");
+    upstream.onNext("Hello");
+
+    observer.assertValues(0, 0, -1);
+    assertThat(breaker.state(), is(CircuitBreaker.State.OPEN));
+  }
+
+  @Test
+  public void effectPerformerWithCircuitBreakerRecordsErrorsAsFailures() {
+    PublishSubject<String> upstream = PublishSubject.create();
+    CircuitBreaker breaker = CircuitBreaker.builder("test").windowSize(1).minimumCalls(1).build();
+    Function<String, Integer> function =
+        s -> {
+          throw new RuntimeException("Something bad happened");
+        };
+    TestObserver<Integer> observer =
+        upstream
+            .compose(
+                Transformers.withCircuitBreaker(
+                    breaker, s -> -1, length -> false, Transformers.fromFunction(function)))
+            .test();
+
+    upstream.onNext("Hello");
+
+    observer.assertError(RuntimeException.class);
+    assertThat(breaker.state(), is(CircuitBreaker.State.OPEN));
+  }
+
   @Test
   public void effectPerformerInvokesFunctionWithReceivedEffectAndErrorsForUnhandledExceptions() {
     PublishSubject<String> upstream = PublishSubject.create();
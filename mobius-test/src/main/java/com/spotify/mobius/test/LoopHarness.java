@@ -0,0 +1,270 @@
+/*
+ * -\-\-
+ * Mobius
+ * --
+ * Copyright (c) 2017-2020 Spotify AB
+ * --
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -/-/-
+ */
+package com.spotify.mobius.test;
+
+import static com.spotify.mobius.internal_util.Preconditions.checkNotNull;
+
+import com.spotify.mobius.Connectable;
+import com.spotify.mobius.Connection;
+import com.spotify.mobius.EventSource;
+import com.spotify.mobius.Mobius;
+import com.spotify.mobius.MobiusLoop;
+import com.spotify.mobius.Update;
+import com.spotify.mobius.disposables.Disposable;
+import com.spotify.mobius.functions.Consumer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * Runs a {@link MobiusLoop} synchronously, for integration tests of loops with their effect
+ * handlers and event sources.
+ *
+ * <p>The loop uses work runners from a {@link VirtualTimeScheduler}, so events and effects are
+ * queued until the test runs them, and everything happens on the test thread. Models and the
+ * effects received by the effect handler are recorded in the order they occur:
+ *
+ * <pre>{@code
+ * LoopHarness<Model, Event, Effect> harness =
+ *     LoopHarness.loop(update, effectHandler).startFrom(Model.DEFAULT);
+ *
+ * harness.dispatch(Event.refresh());
+ *
+ * assertThat(harness.models(), contains(Model.DEFAULT, Model.LOADING, Model.LOADED));
+ * assertThat(harness.effects(), contains(Effect.load()));
+ * }</pre>
+ *
+ * <p>Effect handlers and event sources that use {@link
+ * com.spotify.mobius.runners.WorkRunner#postDelayed(Runnable, long, TimeUnit)} can be made
+ * deterministic too, by scheduling on a work runner from {@link #scheduler()}.
+ */
+public final class LoopHarness<M, E, F> implements Disposable {
+
+  private final VirtualTimeScheduler scheduler;
+  private final MobiusLoop<M, E, F> loop;
+
+  // guarded by 'this'
+  private final List<M> models = new ArrayList<>();
+  private final List<F> effects = new ArrayList<>();
+
+  private LoopHarness(Builder<M, E, F> builder, M startModel, Set<F> startEffects) {
+    this.scheduler = builder.scheduler;
+
+    MobiusLoop.Builder<M, E, F> loopBuilder =
+        Mobius.loop(builder.update, new RecordingEffectHandler(builder.effectHandler))
+            .eventRunner(scheduler::createWorkRunner)
+            .effectRunner(scheduler::createWorkRunner);
+
+    if (builder.eventSource != null) {
+      loopBuilder = loopBuilder.eventSource(builder.eventSource);
+    }
+
+    if (builder.logger != null) {
+      loopBuilder = loopBuilder.logger(builder.logger);
+    }
+
+    this.loop = loopBuilder.startFrom(startModel, startEffects);
+
+    loop.observe(
+        new Consumer<M>() {
+          @Override
+          public void accept(M model) {
+            synchronized (LoopHarness.this) {
+              models.add(model);
+            }
+          }
+        });
+
+    runPending();
+  }
+
+  /** Creates a harness builder for a loop with the given update function and effect handler. */
+  public static <M, E, F> Builder<M, E, F> loop(
+      Update<M, E, F> update, Connectable<F, E> effectHandler) {
+    return new Builder<>(
+        checkNotNull(update), checkNotNull(effectHandler), null, null, new VirtualTimeScheduler());
+  }
+
+  /** Dispatches an event to the loop, and runs everything that's pending as a result. */
+  public void dispatch(E event) {
+    loop.dispatchEvent(event);
+    runPending();
+  }
+
+  /**
+   * Runs all events and effects that are pending at the current virtual time, for instance events
+   * emitted by an event source, until there is nothing more to run.
+   */
+  public void runPending() {
+    scheduler.runUntilIdle();
+  }
+
+  /** Advances virtual time, running everything that becomes due along the way. */
+  public void advanceTimeBy(long time, TimeUnit unit) {
+    scheduler.advanceTimeBy(time, unit);
+  }
+
+  /** Returns all models the loop has had, starting with the start model. */
+  public List<M> models() {
+    synchronized (this) {
+      return Collections.unmodifiableList(new ArrayList<>(models));
+    }
+  }
+
+  /** Returns all effects that have been received by the effect handler, in the order received. */
+  public List<F> effects() {
+    synchronized (this) {
+      return Collections.unmodifiableList(new ArrayList<>(effects));
+    }
+  }
+
+  /** Returns the most recent model of the loop. */
+  @Nullable
+  public M mostRecentModel() {
+    return loop.getMostRecentModel();
+  }
+
+  /** Forgets all models and effects recorded so far. */
+  public void clearRecorded() {
+    synchronized (this) {
+      models.clear();
+      effects.clear();
+    }
+  }
+
+  /** Returns the scheduler that controls the loop's work runners. */
+  public VirtualTimeScheduler scheduler() {
+    return scheduler;
+  }
+
+  /** Returns the loop under test. */
+  public MobiusLoop<M, E, F> loop() {
+    return loop;
+  }
+
+  @Override
+  public void dispose() {
+    loop.dispose();
+  }
+
+  private final class RecordingEffectHandler implements Connectable<F, E> {
+    private final Connectable<F, E> delegate;
+
+    RecordingEffectHandler(Connectable<F, E> delegate) {
+      this.delegate = delegate;
+    }
+
+    @Nonnull
+    @Override
+    public Connection<F> connect(Consumer<E> output) {
+      final Connection<F> connection = delegate.connect(output);
+
+      return new Connection<F>() {
+        @Override
+        public void accept(F effect) {
+          synchronized (LoopHarness.this) {
+            effects.add(effect);
+          }
+          connection.accept(effect);
+        }
+
+        @Override
+        public void dispose() {
+          connection.dispose();
+        }
+      };
+    }
+  }
+
+  public static final class Builder<M, E, F> {
+    private final Update<M, E, F> update;
+    private final Connectable<F, E> effectHandler;
+    @Nullable private final Connectable<M, E> eventSource;
+    @Nullable private final MobiusLoop.Logger<M, E, F> logger;
+    private final VirtualTimeScheduler scheduler;
+
+    private Builder(
+        Update<M, E, F> update,
+        Connectable<F, E> effectHandler,
+        @Nullable Connectable<M, E> eventSource,
+        @Nullable MobiusLoop.Logger<M, E, F> logger,
+        VirtualTimeScheduler scheduler) {
+      this.update = update;
+      this.effectHandler = effectHandler;
+      this.eventSource = eventSource;
+      this.logger = logger;
+      this.scheduler = scheduler;
+    }
+
+    /** Connects an event source that observes the loop's models. */
+    public Builder<M, E, F> eventSource(Connectable<M, E> eventSource) {
+      return new Builder<>(update, effectHandler, checkNotNull(eventSource), logger, scheduler);
+    }
+
+    /** Connects an event source that doesn't need the loop's models. */
+    public Builder<M, E, F> eventSource(final EventSource<E> eventSource) {
+      checkNotNull(eventSource);
+      return eventSource(
+          new Connectable<M, E>() {
+            @Nonnull
+            @Override
+            public Connection<M> connect(Consumer<E> output) {
+              final Disposable subscription = eventSource.subscribe(output);
+              return new Connection<M>() {
+                @Override
+                public void accept(M value) {}
+
+                @Override
+                public void dispose() {
+                  subscription.dispose();
+                }
+              };
+            }
+          });
+    }
+
+    /** Sets the logger of the loop. */
+    public Builder<M, E, F> logger(MobiusLoop.Logger<M, E, F> logger) {
+      return new Builder<>(update, effectHandler, eventSource, checkNotNull(logger), scheduler);
+    }
+
+    /**
+     * Uses the given scheduler for the loop's work runners, so that it can be shared with effect
+     * handlers or event sources that need to schedule work.
+     */
+    public Builder<M, E, F> scheduler(VirtualTimeScheduler scheduler) {
+      return new Builder<>(update, effectHandler, eventSource, logger, checkNotNull(scheduler));
+    }
+
+    /** Starts the loop, and runs everything that's pending after starting it. */
+    public LoopHarness<M, E, F> startFrom(M startModel) {
+      return startFrom(startModel, Collections.<F>emptySet());
+    }
+
+    /** Starts the loop, and runs everything that's pending after starting it. */
+    public LoopHarness<M, E, F> startFrom(M startModel, Set<F> startEffects) {
+      return new LoopHarness<>(this, checkNotNull(startModel), checkNotNull(startEffects));
+    }
+  }
+}
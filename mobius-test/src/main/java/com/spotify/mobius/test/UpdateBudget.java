@@ -0,0 +1,156 @@
+/*
+ * -\-\-
+ * Mobius
+ * --
+ * Copyright (c) 2017-2020 Spotify AB
+ * --
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -/-/-
+ */
+package com.spotify.mobius.test;
+
+import static com.spotify.mobius.internal_util.Preconditions.checkArgument;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Upper bounds on the cost of a single call to an update function, for use with {@link
+ * UpdateSpec.Then#thenWithinBudget(UpdateBudget)}. Each bound applies separately to each event
+ * class in the scenario.
+ *
+ * <p>Timings depend on the machine running the tests, so time budgets should leave generous
+ * margins. Allocation budgets are much more stable, and are the better way to catch regressions.
+ */
+public final class UpdateBudget {
+
+  private static final long UNBOUNDED = -1;
+
+  private final int warmupIterations;
+  private final int measuredIterations;
+  private final long maxBytesPerUpdate;
+  private final long maxMeanNanos;
+  private final long maxP99Nanos;
+
+  private UpdateBudget(
+      int warmupIterations,
+      int measuredIterations,
+      long maxBytesPerUpdate,
+      long maxMeanNanos,
+      long maxP99Nanos) {
+    this.warmupIterations = warmupIterations;
+    this.measuredIterations = measuredIterations;
+    this.maxBytesPerUpdate = maxBytesPerUpdate;
+    this.maxMeanNanos = maxMeanNanos;
+    this.maxP99Nanos = maxP99Nanos;
+  }
+
+  /**
+   * Creates a budget without any bounds, that runs the scenario 2000 times to warm up and then
+   * measures 5000 runs.
+   */
+  public static UpdateBudget budget() {
+    return new UpdateBudget(2000, 5000, UNBOUNDED, UNBOUNDED, UNBOUNDED);
+  }
+
+  /** Sets how many times the scenario is run before measuring starts. */
+  public UpdateBudget warmupIterations(int warmupIterations) {
+    checkArgument(warmupIterations >= 0);
+    return new UpdateBudget(
+        warmupIterations, measuredIterations, maxBytesPerUpdate, maxMeanNanos, maxP99Nanos);
+  }
+
+  /** Sets how many times the scenario is run while measuring. */
+  public UpdateBudget measuredIterations(int measuredIterations) {
+    checkArgument(measuredIterations > 0);
+    return new UpdateBudget(
+        warmupIterations, measuredIterations, maxBytesPerUpdate, maxMeanNanos, maxP99Nanos);
+  }
+
+  /**
+   * Sets the maximum mean number of bytes allocated by one update. This is only checked on JVMs
+   * that support measuring thread allocations; on others, the bound is ignored.
+   */
+  public UpdateBudget maxBytesPerUpdate(long maxBytesPerUpdate) {
+    checkArgument(maxBytesPerUpdate >= 0);
+    return new UpdateBudget(
+        warmupIterations, measuredIterations, maxBytesPerUpdate, maxMeanNanos, maxP99Nanos);
+  }
+
+  /** Sets the maximum mean time taken by one update. */
+  public UpdateBudget maxMeanTime(long time, TimeUnit unit) {
+    checkArgument(time >= 0);
+    return new UpdateBudget(
+        warmupIterations, measuredIterations, maxBytesPerUpdate, unit.toNanos(time), maxP99Nanos);
+  }
+
+  /** Sets the maximum 99th percentile of the time taken by one update. */
+  public UpdateBudget maxP99Time(long time, TimeUnit unit) {
+    checkArgument(time >= 0);
+    return new UpdateBudget(
+        warmupIterations, measuredIterations, maxBytesPerUpdate, maxMeanNanos, unit.toNanos(time));
+  }
+
+  int warmupIterations() {
+    return warmupIterations;
+  }
+
+  int measuredIterations() {
+    return measuredIterations;
+  }
+
+  /** Returns a description of every way the measurements exceed this budget; empty if none. */
+  List<String> violations(UpdatePerformanceReport report) {
+    List<String> violations = new ArrayList<>();
+
+    for (UpdatePerformanceReport.EventStats stats : report.stats()) {
+      String eventClass = stats.eventClass().getSimpleName();
+
+      if (maxBytesPerUpdate != UNBOUNDED
+          && report.allocationsMeasured()
+          && stats.meanBytes() > maxBytesPerUpdate) {
+        violations.add(
+            String.format(
+                Locale.ENGLISH,
+                "%s: allocated %.1f bytes per update, budget is %d",
+                eventClass,
+                stats.meanBytes(),
+                maxBytesPerUpdate));
+      }
+
+      if (maxMeanNanos != UNBOUNDED && stats.meanNanos() > maxMeanNanos) {
+        violations.add(
+            String.format(
+                Locale.ENGLISH,
+                "%s: mean time %.0f ns per update, budget is %d ns",
+                eventClass,
+                stats.meanNanos(),
+                maxMeanNanos));
+      }
+
+      if (maxP99Nanos != UNBOUNDED && stats.p99Nanos() > maxP99Nanos) {
+        violations.add(
+            String.format(
+                Locale.ENGLISH,
+                "%s: p99 time %d ns per update, budget is %d ns",
+                eventClass,
+                stats.p99Nanos(),
+                maxP99Nanos));
+      }
+    }
+
+    return violations;
+  }
+}
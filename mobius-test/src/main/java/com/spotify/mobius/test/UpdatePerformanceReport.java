@@ -0,0 +1,267 @@
+/*
+ * -\-\-
+ * Mobius
+ * --
+ * Copyright (c) 2017-2020 Spotify AB
+ * --
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -/-/-
+ */
+package com.spotify.mobius.test;
+
+import com.spotify.mobius.Next;
+import com.spotify.mobius.Update;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import javax.annotation.Nullable;
+
+/**
+ * The cost of the updates in an {@link UpdateSpec} scenario, as measured by {@link
+ * UpdateSpec.Then#thenWithinBudget(UpdateBudget)}, grouped by event class.
+ */
+public final class UpdatePerformanceReport {
+
+  private final List<EventStats> stats;
+  private final boolean allocationsMeasured;
+
+  private UpdatePerformanceReport(List<EventStats> stats, boolean allocationsMeasured) {
+    this.stats = Collections.unmodifiableList(stats);
+    this.allocationsMeasured = allocationsMeasured;
+  }
+
+  /** Returns the measurements for each event class, in the order the classes first occur. */
+  public List<EventStats> stats() {
+    return stats;
+  }
+
+  /** Returns the measurements for the given event class, or null if there were no such events. */
+  @Nullable
+  public EventStats statsFor(Class<?> eventClass) {
+    for (EventStats eventStats : stats) {
+      if (eventStats.eventClass() == eventClass) {
+        return eventStats;
+      }
+    }
+    return null;
+  }
+
+  /** Returns false if the JVM doesn't support measuring allocations per thread. */
+  public boolean allocationsMeasured() {
+    return allocationsMeasured;
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder builder = new StringBuilder();
+
+    for (EventStats eventStats : stats) {
+      builder.append(
+          String.format(
+              Locale.ENGLISH,
+              "%s: %d updates, mean %.0f ns, p99 %d ns, %s bytes/update%n",
+              eventStats.eventClass().getName(),
+              eventStats.count(),
+              eventStats.meanNanos(),
+              eventStats.p99Nanos(),
+              allocationsMeasured
+                  ? String.format(Locale.ENGLISH, "%.1f", eventStats.meanBytes())
+                  : "n/a"));
+    }
+
+    return builder.toString();
+  }
+
+  /** The cost of updates for one event class. */
+  public static final class EventStats {
+    private final Class<?> eventClass;
+    private final int count;
+    private final double meanNanos;
+    private final long p99Nanos;
+    private final double meanBytes;
+
+    private EventStats(
+        Class<?> eventClass, int count, double meanNanos, long p99Nanos, double meanBytes) {
+      this.eventClass = eventClass;
+      this.count = count;
+      this.meanNanos = meanNanos;
+      this.p99Nanos = p99Nanos;
+      this.meanBytes = meanBytes;
+    }
+
+    public Class<?> eventClass() {
+      return eventClass;
+    }
+
+    /** Returns the number of measured updates. */
+    public int count() {
+      return count;
+    }
+
+    public double meanNanos() {
+      return meanNanos;
+    }
+
+    public long p99Nanos() {
+      return p99Nanos;
+    }
+
+    /** Returns the mean number of bytes allocated per update, or 0 if not measured. */
+    public double meanBytes() {
+      return meanBytes;
+    }
+  }
+
+  static <M, E, F> UpdatePerformanceReport measure(
+      Update<M, E, F> update, M model, List<E> events, UpdateBudget budget) {
+    AllocationCounter allocations = AllocationCounter.create();
+    Map<Class<?>, Samples> samples = new LinkedHashMap<>();
+
+    for (E event : events) {
+      Samples eventSamples = samples.get(event.getClass());
+      if (eventSamples == null) {
+        eventSamples = new Samples();
+        samples.put(event.getClass(), eventSamples);
+      }
+      eventSamples.capacity += budget.measuredIterations();
+    }
+
+    for (Samples eventSamples : samples.values()) {
+      eventSamples.nanos = new long[eventSamples.capacity];
+    }
+
+    Object sink = null;
+
+    for (int i = 0; i < budget.warmupIterations(); i++) {
+      M lastModel = model;
+      for (E event : events) {
+        Next<M, F> next = update.update(lastModel, event);
+        lastModel = next.modelOrElse(lastModel);
+        sink = next;
+      }
+    }
+
+    for (int i = 0; i < budget.measuredIterations(); i++) {
+      M lastModel = model;
+      for (E event : events) {
+        long bytesBefore = allocations.allocatedBytes();
+        long start = System.nanoTime();
+
+        Next<M, F> next = update.update(lastModel, event);
+
+        long nanos = System.nanoTime() - start;
+        long bytes = allocations.allocatedBytes() - bytesBefore;
+
+        lastModel = next.modelOrElse(lastModel);
+        sink = next;
+
+        Samples eventSamples = samples.get(event.getClass());
+        eventSamples.nanos[eventSamples.count++] = nanos;
+        eventSamples.bytes += Math.max(bytes - allocations.overhead(), 0);
+      }
+    }
+
+    // keep the JIT from optimising away the updates
+    if (sink == samples) {
+      throw new AssertionError();
+    }
+
+    List<EventStats> stats = new ArrayList<>(samples.size());
+    for (Map.Entry<Class<?>, Samples> entry : samples.entrySet()) {
+      stats.add(entry.getValue().toStats(entry.getKey()));
+    }
+
+    return new UpdatePerformanceReport(stats, allocations.isSupported());
+  }
+
+  private static final class Samples {
+    private int capacity;
+    private int count;
+    private long[] nanos;
+    private long bytes;
+
+    EventStats toStats(Class<?> eventClass) {
+      Arrays.sort(nanos, 0, count);
+
+      long totalNanos = 0;
+      for (int i = 0; i < count; i++) {
+        totalNanos += nanos[i];
+      }
+
+      int p99Index = Math.max((int) Math.ceil(count * 0.99) - 1, 0);
+
+      return new EventStats(
+          eventClass, count, (double) totalNanos / count, nanos[p99Index], (double) bytes / count);
+    }
+  }
+
+  /** Reads the number of bytes allocated by the current thread, if the JVM supports it. */
+  private static final class AllocationCounter {
+    @Nullable private final com.sun.management.ThreadMXBean threadBean;
+    private final long threadId;
+    private final long overhead;
+
+    private AllocationCounter(@Nullable com.sun.management.ThreadMXBean threadBean) {
+      this.threadBean = threadBean;
+      this.threadId = Thread.currentThread().getId();
+      this.overhead = threadBean != null ? measureOverhead() : 0;
+    }
+
+    static AllocationCounter create() {
+      try {
+        ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+        if (threadBean instanceof com.sun.management.ThreadMXBean) {
+          com.sun.management.ThreadMXBean sunThreadBean =
+              (com.sun.management.ThreadMXBean) threadBean;
+          if (sunThreadBean.isThreadAllocatedMemorySupported()) {
+            sunThreadBean.setThreadAllocatedMemoryEnabled(true);
+            return new AllocationCounter(sunThreadBean);
+          }
+        }
+      } catch (LinkageError | UnsupportedOperationException | SecurityException e) {
+        // fall through; allocations can't be measured on this JVM
+      }
+
+      return new AllocationCounter(null);
+    }
+
+    boolean isSupported() {
+      return threadBean != null;
+    }
+
+    long allocatedBytes() {
+      return threadBean != null ? threadBean.getThreadAllocatedBytes(threadId) : 0;
+    }
+
+    /** Returns the number of bytes allocated by reading the allocated bytes itself. */
+    long overhead() {
+      return overhead;
+    }
+
+    private long measureOverhead() {
+      long min = Long.MAX_VALUE;
+      for (int i = 0; i < 1000; i++) {
+        long before = allocatedBytes();
+        long after = allocatedBytes();
+        min = Math.min(min, after - before);
+      }
+      return min;
+    }
+  }
+}
@@ -119,6 +119,16 @@ public class UpdateSpec<M, E, F> {
      * @param assertion an expectation on the exception
      */
     void thenError(AssertError assertion);
+
+    /**
+     * Runs the specified test repeatedly, first to warm up and then while measuring the time taken
+     * and memory allocated by each call to the update function, and fails if any event class
+     * exceeds the supplied {@link UpdateBudget}. Each run starts from the given model.
+     *
+     * @param budget the upper bounds on the cost of each update
+     * @return the measurements, grouped by event class
+     */
+    UpdatePerformanceReport thenWithinBudget(UpdateBudget budget);
   }
 
   /** Interface for defining your error assertions. */
@@ -199,5 +209,19 @@ public class UpdateSpec<M, E, F> {
       }
       assertion.assertError(error);
     }
+
+    @Override
+    public UpdatePerformanceReport thenWithinBudget(UpdateBudget budget) {
+      UpdatePerformanceReport report =
+          UpdatePerformanceReport.measure(update, model, events, checkNotNull(budget));
+
+      List<String> violations = budget.violations(report);
+      if (!violations.isEmpty()) {
+        throw new AssertionError(
+            "Update exceeded its budget:\n" + String.join("\n", violations) + "\n\n" + report);
+      }
+
+      return report;
+    }
   }
 }
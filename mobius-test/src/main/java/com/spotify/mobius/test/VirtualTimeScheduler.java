@@ -0,0 +1,215 @@
+/*
+ * -\-\-
+ * Mobius
+ * --
+ * Copyright (c) 2017-2020 Spotify AB
+ * --
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -/-/-
+ */
+package com.spotify.mobius.test;
+
+import static com.spotify.mobius.internal_util.Preconditions.checkNotNull;
+
+import com.spotify.mobius.disposables.Disposable;
+import com.spotify.mobius.runners.WorkRunner;
+import java.util.PriorityQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A virtual clock and the work runners that use it. Nothing runs until the test calls {@link
+ * #runUntilIdle()} or {@link #advanceTimeBy(long, TimeUnit)}, and then everything runs on the
+ * calling thread, in the order it was scheduled for.
+ *
+ * <p>Use {@link #createWorkRunner()} for the event runner, the effect runner, and anything that
+ * needs {@link WorkRunner#postDelayed(Runnable, long, TimeUnit)}, so that they all follow the same
+ * clock:
+ *
+ * <pre>{@code
+ * VirtualTimeScheduler scheduler = new VirtualTimeScheduler();
+ * MobiusLoop<M, E, F> loop =
+ *     Mobius.loop(update, effectHandler)
+ *         .eventRunner(scheduler::createWorkRunner)
+ *         .effectRunner(scheduler::createWorkRunner)
+ *         .startFrom(model);
+ *
+ * scheduler.advanceTimeBy(2, TimeUnit.HOURS);
+ * }</pre>
+ */
+public class VirtualTimeScheduler {
+
+  private final Object lock = new Object();
+  private final PriorityQueue<ScheduledTask> queue = new PriorityQueue<>();
+
+  // guarded by 'lock'
+  private long nowNanos;
+  private long sequence;
+
+  /** Creates a new {@link WorkRunner} that executes work according to this scheduler's clock. */
+  public WorkRunner createWorkRunner() {
+    return new VirtualTimeWorkRunner();
+  }
+
+  /** Returns the time that has passed on the virtual clock since this scheduler was created. */
+  public long now(TimeUnit unit) {
+    synchronized (lock) {
+      return unit.convert(nowNanos, TimeUnit.NANOSECONDS);
+    }
+  }
+
+  /**
+   * Runs everything that is due at the current virtual time, including work that is posted by the
+   * work being run, without advancing the clock.
+   */
+  public void runUntilIdle() {
+    synchronized (lock) {
+      advanceTimeTo(nowNanos);
+    }
+  }
+
+  /**
+   * Advances the virtual clock by the given amount of time, running all work that becomes due in
+   * the order it's scheduled for. While a piece of work is running, {@link #now(TimeUnit)} returns
+   * the time that work was scheduled for.
+   */
+  public void advanceTimeBy(long time, TimeUnit unit) {
+    if (time < 0) {
+      throw new IllegalArgumentException("time cannot go backwards, was: " + time);
+    }
+
+    synchronized (lock) {
+      advanceTimeTo(nowNanos + unit.toNanos(time));
+    }
+  }
+
+  /** Returns true if there is no work due at the current virtual time. */
+  public boolean isIdle() {
+    synchronized (lock) {
+      ScheduledTask next = queue.peek();
+      return next == null || next.timeNanos > nowNanos;
+    }
+  }
+
+  /** Returns the number of pieces of work that are scheduled to run now or in the future. */
+  public int pendingTaskCount() {
+    synchronized (lock) {
+      return queue.size();
+    }
+  }
+
+  // must be called with 'lock' held; the lock is reentrant, so tasks can schedule more work
+  private void advanceTimeTo(long targetNanos) {
+    while (true) {
+      ScheduledTask task = queue.peek();
+      if (task == null || task.timeNanos > targetNanos) {
+        nowNanos = targetNanos;
+        return;
+      }
+
+      queue.remove();
+      nowNanos = task.timeNanos;
+      task.run();
+    }
+  }
+
+  private ScheduledTask schedule(
+      VirtualTimeWorkRunner runner, Runnable runnable, long delayNanos, long periodNanos) {
+    synchronized (lock) {
+      ScheduledTask task = new ScheduledTask(runner, checkNotNull(runnable), periodNanos);
+      enqueue(task, nowNanos + Math.max(delayNanos, 0));
+      return task;
+    }
+  }
+
+  private void enqueue(ScheduledTask task, long timeNanos) {
+    task.timeNanos = timeNanos;
+    task.sequence = sequence++;
+    queue.add(task);
+  }
+
+  private final class VirtualTimeWorkRunner implements WorkRunner {
+    // guarded by 'lock'
+    private boolean disposed;
+
+    @Override
+    public void post(Runnable runnable) {
+      postDelayed(runnable, 0, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public Disposable postDelayed(Runnable runnable, long delay, TimeUnit unit) {
+      return schedule(this, runnable, unit.toNanos(delay), 0);
+    }
+
+    @Override
+    public Disposable schedulePeriodic(
+        Runnable runnable, long initialDelay, long period, TimeUnit unit) {
+      if (period <= 0) {
+        throw new IllegalArgumentException("period must be positive, was: " + period);
+      }
+
+      return schedule(this, runnable, unit.toNanos(initialDelay), unit.toNanos(period));
+    }
+
+    @Override
+    public void dispose() {
+      synchronized (lock) {
+        disposed = true;
+        queue.removeIf(task -> task.runner == this);
+      }
+    }
+  }
+
+  private final class ScheduledTask implements Disposable, Comparable<ScheduledTask> {
+    private final VirtualTimeWorkRunner runner;
+    private final Runnable runnable;
+    private final long periodNanos;
+
+    // guarded by 'lock'
+    private long timeNanos;
+    private long sequence;
+    private boolean cancelled;
+
+    ScheduledTask(VirtualTimeWorkRunner runner, Runnable runnable, long periodNanos) {
+      this.runner = runner;
+      this.runnable = runnable;
+      this.periodNanos = periodNanos;
+    }
+
+    void run() {
+      if (cancelled || runner.disposed) {
+        return;
+      }
+
+      runnable.run();
+
+      if (periodNanos > 0 && !cancelled && !runner.disposed) {
+        enqueue(this, timeNanos + periodNanos);
+      }
+    }
+
+    @Override
+    public void dispose() {
+      synchronized (lock) {
+        cancelled = true;
+        queue.remove(this);
+      }
+    }
+
+    @Override
+    public int compareTo(ScheduledTask other) {
+      int byTime = Long.compare(timeNanos, other.timeNanos);
+      return byTime != 0 ? byTime : Long.compare(sequence, other.sequence);
+    }
+  }
+}
@@ -0,0 +1,137 @@
+/*
+ * -\-\-
+ * Mobius
+ * --
+ * Copyright (c) 2017-2020 Spotify AB
+ * --
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -/-/-
+ */
+package com.spotify.mobius.test;
+
+import static com.spotify.mobius.Effects.effects;
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.spotify.mobius.Connectable;
+import com.spotify.mobius.EventSource;
+import com.spotify.mobius.Next;
+import com.spotify.mobius.Update;
+import com.spotify.mobius.functions.Consumer;
+import com.spotify.mobius.runners.WorkRunner;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.Before;
+import org.junit.Test;
+
+public class LoopHarnessTest {
+
+  private Update<String, String, String> update;
+  private Connectable<String, String> effectHandler;
+
+  @Before
+  public void setUp() throws Exception {
+    // events starting with "load" produce an effect, which the effect handler answers with an event
+    update =
+        (model, event) -> {
+          if (event.startsWith("load")) {
+            return Next.next(model + "->" + event, effects("fetch " + event));
+          }
+          return Next.next(model + "->" + event);
+        };
+
+    effectHandler =
+        output ->
+            new SimpleConnection<String>() {
+              @Override
+              public void accept(String effect) {
+                output.accept("done");
+              }
+            };
+  }
+
+  @Test
+  public void shouldRunDispatchedEventsAndEffectsSynchronously() throws Exception {
+    LoopHarness<String, String, String> harness =
+        LoopHarness.loop(update, effectHandler).startFrom("init");
+
+    harness.dispatch("load");
+
+    assertThat(harness.models()).containsExactly("init", "init->load", "init->load->done");
+    assertThat(harness.effects()).containsExactly("fetch load");
+    assertThat(harness.mostRecentModel()).isEqualTo("init->load->done");
+  }
+
+  @Test
+  public void shouldRunStartEffects() throws Exception {
+    LoopHarness<String, String, String> harness =
+        LoopHarness.loop(update, effectHandler).startFrom("init", effects("start"));
+
+    assertThat(harness.effects()).containsExactly("start");
+    assertThat(harness.models()).containsExactly("init", "init->done");
+  }
+
+  @Test
+  public void shouldQueueEventSourceEventsUntilRunPending() throws Exception {
+    final AtomicReference<Consumer<String>> eventSourceOutput = new AtomicReference<>();
+    EventSource<String> eventSource =
+        eventConsumer -> {
+          eventSourceOutput.set(eventConsumer);
+          return () -> {};
+        };
+
+    LoopHarness<String, String, String> harness =
+        LoopHarness.loop(update, effectHandler).eventSource(eventSource).startFrom("init");
+
+    eventSourceOutput.get().accept("external");
+    assertThat(harness.models()).containsExactly("init");
+
+    harness.runPending();
+    assertThat(harness.models()).containsExactly("init", "init->external");
+  }
+
+  @Test
+  public void shouldAdvanceVirtualTimeForDelayedWork() throws Exception {
+    VirtualTimeScheduler scheduler = new VirtualTimeScheduler();
+    final WorkRunner timerRunner = scheduler.createWorkRunner();
+    Connectable<String, String> delayingHandler =
+        output ->
+            new SimpleConnection<String>() {
+              @Override
+              public void accept(String effect) {
+                timerRunner.postDelayed(() -> output.accept("timeout"), 30, TimeUnit.SECONDS);
+              }
+            };
+
+    LoopHarness<String, String, String> harness =
+        LoopHarness.loop(update, delayingHandler).scheduler(scheduler).startFrom("init");
+
+    harness.dispatch("load");
+    assertThat(harness.mostRecentModel()).isEqualTo("init->load");
+
+    harness.advanceTimeBy(30, TimeUnit.SECONDS);
+    assertThat(harness.mostRecentModel()).isEqualTo("init->load->timeout");
+  }
+
+  @Test
+  public void shouldSupportClearingRecordedModelsAndEffects() throws Exception {
+    LoopHarness<String, String, String> harness =
+        LoopHarness.loop(update, effectHandler).startFrom("init");
+
+    harness.dispatch("load");
+    harness.clearRecorded();
+    harness.dispatch("other");
+
+    assertThat(harness.models()).containsExactly("init->load->done->other");
+    assertThat(harness.effects()).isEmpty();
+  }
+}
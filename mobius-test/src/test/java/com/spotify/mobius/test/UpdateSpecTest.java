@@ -26,11 +26,14 @@ import static com.spotify.mobius.test.NextMatchers.hasNothing;
 import static com.spotify.mobius.test.UpdateSpec.assertThatNext;
 import static org.assertj.core.api.Assertions.assertThatThrownBy;
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
 import static org.hamcrest.Matchers.instanceOf;
 import static org.hamcrest.Matchers.is;
+import static org.junit.Assume.assumeTrue;
 
 import com.spotify.mobius.Next;
 import com.spotify.mobius.Update;
+import java.util.concurrent.TimeUnit;
 import org.junit.Before;
 import org.junit.Test;
 
@@ -158,4 +161,72 @@ public class UpdateSpecTest {
         .isInstanceOf(AssertionError.class)
         .hasMessage("An exception was expected but was not thrown");
   }
+
+  @Test
+  public void shouldReportCostPerEventClass() throws Exception {
+    UpdateSpec<String, Object, Integer> spec =
+        new UpdateSpec<>((model, event) -> Next.next(model + event));
+
+    UpdatePerformanceReport report =
+        spec.given("init")
+            .when("string", 1, "another string")
+            .thenWithinBudget(UpdateBudget.budget().warmupIterations(10).measuredIterations(100));
+
+    assertThat(report.stats().size(), is(2));
+    assertThat(report.statsFor(String.class).count(), is(200));
+    assertThat(report.statsFor(Integer.class).count(), is(100));
+    assertThat(report.toString(), containsString("java.lang.Integer: 100 updates"));
+  }
+
+  @Test
+  public void shouldFailWhenAllocatingMoreThanBudget() throws Exception {
+    UpdateSpec<String, String, Integer> spec =
+        new UpdateSpec<>((model, event) -> Next.next(model + new byte[10_000].length));
+
+    UpdatePerformanceReport report =
+        spec.given("init")
+            .when("allocate")
+            .thenWithinBudget(UpdateBudget.budget().warmupIterations(10).measuredIterations(10));
+    assumeTrue(report.allocationsMeasured());
+
+    assertThatThrownBy(
+            () ->
+                spec.given("init")
+                    .when("allocate")
+                    .thenWithinBudget(
+                        UpdateBudget.budget()
+                            .warmupIterations(10)
+                            .measuredIterations(10)
+                            .maxBytesPerUpdate(1000)))
+        .isInstanceOf(AssertionError.class)
+        .hasMessageContaining("String: allocated");
+  }
+
+  @Test
+  public void shouldFailWhenSlowerThanBudget() throws Exception {
+    UpdateSpec<String, String, Integer> spec =
+        new UpdateSpec<>(
+            (model, event) -> {
+              try {
+                Thread.sleep(1);
+              } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+              }
+              return Next.noChange();
+            });
+
+    assertThatThrownBy(
+            () ->
+                spec.given("init")
+                    .when("slow")
+                    .thenWithinBudget(
+                        UpdateBudget.budget()
+                            .warmupIterations(0)
+                            .measuredIterations(5)
+                            .maxMeanTime(100, TimeUnit.MICROSECONDS)
+                            .maxP99Time(100, TimeUnit.MICROSECONDS)))
+        .isInstanceOf(AssertionError.class)
+        .hasMessageContaining("String: mean time")
+        .hasMessageContaining("String: p99 time");
+  }
 }
@@ -0,0 +1,163 @@
+/*
+ * -\-\-
+ * Mobius
+ * --
+ * Copyright (c) 2017-2020 Spotify AB
+ * --
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -/-/-
+ */
+package com.spotify.mobius.test;
+
+import static com.spotify.mobius.Effects.effects;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import com.spotify.mobius.Connectable;
+import com.spotify.mobius.Mobius;
+import com.spotify.mobius.MobiusLoop;
+import com.spotify.mobius.Next;
+import com.spotify.mobius.Update;
+import com.spotify.mobius.disposables.Disposable;
+import com.spotify.mobius.runners.WorkRunner;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.junit.Before;
+import org.junit.Test;
+
+public class VirtualTimeSchedulerTest {
+
+  private VirtualTimeScheduler scheduler;
+  private WorkRunner runner;
+  private List<String> executed;
+
+  @Before
+  public void setUp() throws Exception {
+    scheduler = new VirtualTimeScheduler();
+    runner = scheduler.createWorkRunner();
+    executed = new ArrayList<>();
+  }
+
+  @Test
+  public void shouldNotRunAnythingUntilAsked() throws Exception {
+    runner.post(() -> executed.add("posted"));
+
+    assertThat(executed).isEmpty();
+    assertThat(scheduler.isIdle()).isFalse();
+
+    scheduler.runUntilIdle();
+
+    assertThat(executed).containsExactly("posted");
+    assertThat(scheduler.isIdle()).isTrue();
+  }
+
+  @Test
+  public void shouldRunWorkPostedByWorkWhenRunningUntilIdle() throws Exception {
+    runner.post(
+        () -> {
+          executed.add("first");
+          runner.post(() -> executed.add("second"));
+        });
+
+    scheduler.runUntilIdle();
+
+    assertThat(executed).containsExactly("first", "second");
+  }
+
+  @Test
+  public void shouldOnlyRunDelayedWorkWhenTimeHasPassed() throws Exception {
+    runner.postDelayed(() -> executed.add("delayed"), 10, SECONDS);
+
+    scheduler.runUntilIdle();
+    scheduler.advanceTimeBy(9, SECONDS);
+    assertThat(executed).isEmpty();
+
+    scheduler.advanceTimeBy(1, SECONDS);
+    assertThat(executed).containsExactly("delayed");
+  }
+
+  @Test
+  public void shouldRunWorkInScheduledOrderAcrossRunners() throws Exception {
+    WorkRunner other = scheduler.createWorkRunner();
+
+    runner.postDelayed(() -> executed.add("3 at " + scheduler.now(SECONDS)), 3, SECONDS);
+    other.postDelayed(() -> executed.add("1 at " + scheduler.now(SECONDS)), 1, SECONDS);
+    runner.postDelayed(() -> executed.add("2 at " + scheduler.now(SECONDS)), 2, SECONDS);
+
+    scheduler.advanceTimeBy(5, SECONDS);
+
+    assertThat(executed).containsExactly("1 at 1", "2 at 2", "3 at 3");
+    assertThat(scheduler.now(SECONDS)).isEqualTo(5L);
+  }
+
+  @Test
+  public void shouldRepeatPeriodicWorkUntilDisposed() throws Exception {
+    Disposable periodic = runner.schedulePeriodic(() -> executed.add("tick"), 1, 2, SECONDS);
+
+    scheduler.advanceTimeBy(5, SECONDS);
+    assertThat(executed).containsExactly("tick", "tick", "tick");
+
+    periodic.dispose();
+    scheduler.advanceTimeBy(5, SECONDS);
+    assertThat(executed).hasSize(3);
+    assertThat(scheduler.pendingTaskCount()).isEqualTo(0);
+  }
+
+  @Test
+  public void shouldDiscardWorkForDisposedRunners() throws Exception {
+    WorkRunner other = scheduler.createWorkRunner();
+    runner.postDelayed(() -> executed.add("disposed"), 1, SECONDS);
+    other.postDelayed(() -> executed.add("kept"), 1, SECONDS);
+
+    runner.dispose();
+    runner.post(() -> executed.add("after dispose"));
+    scheduler.advanceTimeBy(1, SECONDS);
+
+    assertThat(executed).containsExactly("kept");
+  }
+
+  @Test
+  public void shouldNotAllowTimeToGoBackwards() throws Exception {
+    assertThatThrownBy(() -> scheduler.advanceTimeBy(-1, SECONDS))
+        .isInstanceOf(IllegalArgumentException.class);
+  }
+
+  @Test
+  public void shouldSimulateLoopWithTimersInVirtualTime() throws Exception {
+    // a loop that polls once a minute, driven entirely by the virtual clock
+    final WorkRunner timerRunner = scheduler.createWorkRunner();
+    Update<Integer, String, String> update =
+        (model, event) -> Next.next(model + 1, effects("schedule poll"));
+    Connectable<String, String> effectHandler =
+        output ->
+            new SimpleConnection<String>() {
+              @Override
+              public void accept(String effect) {
+                timerRunner.postDelayed(() -> output.accept("poll"), 1, TimeUnit.MINUTES);
+              }
+            };
+
+    MobiusLoop<Integer, String, String> loop =
+        Mobius.loop(update, effectHandler)
+            .eventRunner(scheduler::createWorkRunner)
+            .effectRunner(scheduler::createWorkRunner)
+            .startFrom(0, effects("schedule poll"));
+
+    scheduler.advanceTimeBy(24, TimeUnit.HOURS);
+
+    assertThat(loop.getMostRecentModel()).isEqualTo(24 * 60);
+    loop.dispose();
+  }
+}